@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.core.databinding.observable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.databinding.observable.list.IObservableList;
+import org.eclipse.core.databinding.observable.list.ListChangeEvent;
+import org.eclipse.core.databinding.observable.list.ListDiffEntry;
+import org.eclipse.core.databinding.observable.map.IObservableMap;
+import org.eclipse.core.databinding.observable.map.MapChangeEvent;
+import org.eclipse.core.databinding.observable.map.MapDiff;
+import org.eclipse.core.databinding.observable.set.IObservableSet;
+import org.eclipse.core.databinding.observable.set.SetChangeEvent;
+import org.eclipse.core.databinding.observable.set.SetDiff;
+import org.eclipse.core.databinding.observable.value.IObservableValue;
+import org.eclipse.core.databinding.observable.value.ValueChangeEvent;
+import org.eclipse.core.databinding.observable.value.ValueDiff;
+
+/**
+ * The change events held back while a realm runs a batch of changes, see
+ * {@link Realm#runBatch(Runnable)}. The events of each observable are merged
+ * into one change event and one list, set, map or value change event, fired
+ * in the order the observables first changed.
+ */
+/* package */class ChangeBatch {
+
+	private static final Object NO_VALUE = new Object();
+
+	/**
+	 * The change managers with events held back, their events are in
+	 * {@link ChangeManager#batchedEvents}
+	 */
+	private final List managers = new ArrayList();
+
+	/**
+	 * Holds back the given event of the given change manager if it is a change
+	 * event.
+	 *
+	 * @param manager
+	 * @param event
+	 * @return <code>true</code> if the event is held back, <code>false</code>
+	 *         if it must be fired now
+	 */
+	boolean add(ChangeManager manager, ObservableEvent event) {
+		if (!(event instanceof ChangeEvent || event instanceof ListChangeEvent
+				|| event instanceof SetChangeEvent
+				|| event instanceof MapChangeEvent || event instanceof ValueChangeEvent)) {
+			return false;
+		}
+		if (manager.batchedEvents == null) {
+			manager.batchedEvents = new ArrayList();
+			managers.add(manager);
+		}
+		manager.batchedEvents.add(event);
+		return true;
+	}
+
+	/**
+	 * Fires the merged events of every change manager.
+	 */
+	void fireEvents() {
+		// detach the events of every manager before notifying anyone, a
+		// listener throwing must not leave events behind for the next batch
+		List[] batchedEvents = new List[managers.size()];
+		for (int i = 0; i < batchedEvents.length; i++) {
+			ChangeManager manager = (ChangeManager) managers.get(i);
+			batchedEvents[i] = manager.batchedEvents;
+			manager.batchedEvents = null;
+		}
+
+		for (int i = 0; i < batchedEvents.length; i++) {
+			ChangeManager manager = (ChangeManager) managers.get(i);
+			List events = batchedEvents[i];
+
+			ObservableEvent changeEvent = null;
+			List diffEvents = new ArrayList(events.size());
+			for (Iterator eventIt = events.iterator(); eventIt.hasNext();) {
+				ObservableEvent event = (ObservableEvent) eventIt.next();
+				if (event instanceof ChangeEvent) {
+					if (changeEvent == null) {
+						changeEvent = event;
+					}
+				} else {
+					diffEvents.add(event);
+				}
+			}
+
+			ObservableEvent diffEvent = null;
+			if (diffEvents.size() == 1) {
+				diffEvent = (ObservableEvent) diffEvents.get(0);
+			} else if (!diffEvents.isEmpty()) {
+				diffEvent = merge(diffEvents);
+				if (diffEvent == null) {
+					// the changes cancel each other out
+					continue;
+				}
+			}
+
+			if (changeEvent != null) {
+				manager.dispatchEvent(changeEvent);
+			}
+			if (diffEvent != null) {
+				manager.dispatchEvent(diffEvent);
+			}
+		}
+	}
+
+	/**
+	 * @param events
+	 *            the list, set, map or value change events of an observable
+	 * @return the event with the merged diff, or <code>null</code> if the
+	 *         changes cancel each other out
+	 */
+	private static ObservableEvent merge(List events) {
+		ObservableEvent first = (ObservableEvent) events.get(0);
+		if (first instanceof ListChangeEvent) {
+			return mergeListChanges(events);
+		} else if (first instanceof SetChangeEvent) {
+			return mergeSetChanges(events);
+		} else if (first instanceof MapChangeEvent) {
+			return mergeMapChanges(events);
+		}
+		return mergeValueChanges(events);
+	}
+
+	private static ObservableEvent mergeListChanges(List events) {
+		List entries = new ArrayList();
+		for (Iterator it = events.iterator(); it.hasNext();) {
+			ListDiffEntry[] differences = ((ListChangeEvent) it.next()).diff
+					.getDifferences();
+			for (int i = 0; i < differences.length; i++) {
+				entries.add(differences[i]);
+			}
+		}
+		if (entries.isEmpty()) {
+			return null;
+		}
+		ListChangeEvent first = (ListChangeEvent) events.get(0);
+		return new ListChangeEvent(first.getObservableList(), Diffs
+				.createListDiff((ListDiffEntry[]) entries
+						.toArray(new ListDiffEntry[entries.size()])));
+	}
+
+	private static ObservableEvent mergeSetChanges(List events) {
+		Set additions = new HashSet();
+		Set removals = new HashSet();
+		for (Iterator it = events.iterator(); it.hasNext();) {
+			SetDiff diff = ((SetChangeEvent) it.next()).diff;
+			for (Iterator removed = diff.getRemovals().iterator(); removed
+					.hasNext();) {
+				Object element = removed.next();
+				if (!additions.remove(element)) {
+					removals.add(element);
+				}
+			}
+			for (Iterator added = diff.getAdditions().iterator(); added
+					.hasNext();) {
+				Object element = added.next();
+				if (!removals.remove(element)) {
+					additions.add(element);
+				}
+			}
+		}
+		if (additions.isEmpty() && removals.isEmpty()) {
+			return null;
+		}
+		IObservableSet set = ((SetChangeEvent) events.get(0))
+				.getObservableSet();
+		return new SetChangeEvent(set, Diffs.createSetDiff(additions,
+				removals));
+	}
+
+	private static ObservableEvent mergeMapChanges(List events) {
+		// the value of each changed key before the batch, and now
+		Map oldValues = new HashMap();
+		Map newValues = new HashMap();
+		for (Iterator it = events.iterator(); it.hasNext();) {
+			MapDiff diff = ((MapChangeEvent) it.next()).diff;
+			for (Iterator keys = diff.getRemovedKeys().iterator(); keys
+					.hasNext();) {
+				Object key = keys.next();
+				if (!oldValues.containsKey(key)) {
+					oldValues.put(key, diff.getOldValue(key));
+				}
+				newValues.put(key, NO_VALUE);
+			}
+			for (Iterator keys = diff.getAddedKeys().iterator(); keys
+					.hasNext();) {
+				Object key = keys.next();
+				if (!oldValues.containsKey(key)) {
+					oldValues.put(key, NO_VALUE);
+				}
+				newValues.put(key, diff.getNewValue(key));
+			}
+			for (Iterator keys = diff.getChangedKeys().iterator(); keys
+					.hasNext();) {
+				Object key = keys.next();
+				if (!oldValues.containsKey(key)) {
+					oldValues.put(key, diff.getOldValue(key));
+				}
+				newValues.put(key, diff.getNewValue(key));
+			}
+		}
+
+		Set addedKeys = new HashSet();
+		Set removedKeys = new HashSet();
+		Set changedKeys = new HashSet();
+		Map mergedOldValues = new HashMap();
+		Map mergedNewValues = new HashMap();
+		for (Iterator it = oldValues.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			Object key = entry.getKey();
+			Object oldValue = entry.getValue();
+			Object newValue = newValues.get(key);
+			if (oldValue == NO_VALUE) {
+				if (newValue != NO_VALUE) {
+					addedKeys.add(key);
+					mergedNewValues.put(key, newValue);
+				}
+			} else if (newValue == NO_VALUE) {
+				removedKeys.add(key);
+				mergedOldValues.put(key, oldValue);
+			} else if (!Diffs.equals(oldValue, newValue)) {
+				changedKeys.add(key);
+				mergedOldValues.put(key, oldValue);
+				mergedNewValues.put(key, newValue);
+			}
+		}
+		if (addedKeys.isEmpty() && removedKeys.isEmpty()
+				&& changedKeys.isEmpty()) {
+			return null;
+		}
+		IObservableMap map = ((MapChangeEvent) events.get(0))
+				.getObservableMap();
+		return new MapChangeEvent(map, Diffs.createMapDiff(addedKeys,
+				removedKeys, changedKeys, mergedOldValues, mergedNewValues));
+	}
+
+	private static ObservableEvent mergeValueChanges(List events) {
+		final ValueDiff first = ((ValueChangeEvent) events.get(0)).diff;
+		final ValueDiff last = ((ValueChangeEvent) events
+				.get(events.size() - 1)).diff;
+		if (Diffs.equals(first.getOldValue(), last.getNewValue())) {
+			return null;
+		}
+		IObservableValue value = ((ValueChangeEvent) events.get(0))
+				.getObservableValue();
+		return new ValueChangeEvent(value, new ValueDiff() {
+			public Object getOldValue() {
+				return first.getOldValue();
+			}
+
+			public Object getNewValue() {
+				return last.getNewValue();
+			}
+		});
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,8 +13,10 @@
 
 package org.eclipse.core.databinding.observable;
 
+import java.util.List;
+
+import org.eclipse.core.internal.databinding.observable.ComputedNode;
 import org.eclipse.core.runtime.Assert;
-import org.eclipse.core.runtime.ListenerList;
 
 /**
  * Listener management implementation. Exposed to subclasses in form of
@@ -25,10 +27,22 @@ import org.eclipse.core.runtime.ListenerList;
  */
 /* package */class ChangeManager {
 
-	ListenerList[] listenerLists = null;
-	Object listenerTypes[] = null;
+	/**
+	 * The listeners, as pairs of a listener type and a listener in the order
+	 * they were added, or <code>null</code> if there are none. Most
+	 * observables have no or few listeners, so they are kept in a single array
+	 * searched linearly. The array is replaced rather than modified, so events
+	 * are dispatched to the listeners registered when they were fired.
+	 */
+	private volatile Object[] listeners = null;
 	private final Realm realm;
 
+	/**
+	 * The events held back while the realm runs a batch of changes, or
+	 * <code>null</code>
+	 */
+	List batchedEvents = null;
+
 	/**
 	 * @param realm
 	 * 
@@ -44,28 +58,22 @@ import org.eclipse.core.runtime.ListenerList;
 	 */
 	protected void addListener(Object listenerType,
 			IObservablesListener listener) {
-		int listenerTypeIndex = findListenerTypeIndex(listenerType);
-		if (listenerTypeIndex == -1) {
-			int length;
-			if (listenerTypes == null) {
-				length = 0;
-				listenerTypes = new Object[1];
-				listenerLists = new ListenerList[1];
-			} else {
-				length = listenerTypes.length;
-				System.arraycopy(listenerTypes, 0,
-						listenerTypes = new Object[length + 1], 0, length);
-				System
-						.arraycopy(listenerLists, 0,
-								listenerLists = new ListenerList[length + 1],
-								0, length);
+		Object[] oldListeners = listeners;
+		int length = 0;
+		if (oldListeners != null) {
+			if (indexOf(oldListeners, listenerType, listener) != -1) {
+				return;
 			}
-			listenerTypes[length] = listenerType;
-			listenerLists[length] = new ListenerList();
-			listenerTypeIndex = length;
+			length = oldListeners.length;
 		}
 		boolean hadListeners = hasListeners();
-		listenerLists[listenerTypeIndex].add(listener);
+		Object[] newListeners = new Object[length + 2];
+		if (length > 0) {
+			System.arraycopy(oldListeners, 0, newListeners, 0, length);
+		}
+		newListeners[length] = listenerType;
+		newListeners[length + 1] = listener;
+		listeners = newListeners;
 		if (!hadListeners && hasListeners()) {
 			firstListenerAdded();
 		}
@@ -77,46 +85,94 @@ import org.eclipse.core.runtime.ListenerList;
 	 */
 	protected void removeListener(Object listenerType,
 			IObservablesListener listener) {
-		int listenerTypeIndex = findListenerTypeIndex(listenerType);
-		if (listenerTypeIndex != -1) {
+		Object[] oldListeners = listeners;
+		if (oldListeners == null) {
+			return;
+		}
+		int index = indexOf(oldListeners, listenerType, listener);
+		if (index != -1) {
 			boolean hadListeners = hasListeners();
-			listenerLists[listenerTypeIndex].remove(listener);
-			if (listenerLists[listenerTypeIndex].size() == 0) {
-				if (hadListeners && !hasListeners()) {
-					this.lastListenerRemoved();
-				}
+			int length = oldListeners.length - 2;
+			if (length == 0) {
+				listeners = null;
+			} else {
+				Object[] newListeners = new Object[length];
+				System.arraycopy(oldListeners, 0, newListeners, 0, index);
+				System.arraycopy(oldListeners, index + 2, newListeners, index,
+						length - index);
+				listeners = newListeners;
+			}
+			if (hadListeners && !hasListeners()) {
+				this.lastListenerRemoved();
 			}
 		}
 	}
 
 	protected boolean hasListeners() {
-		if (listenerTypes != null)
-			for (int i = 0; i < listenerTypes.length; i++)
-				if (listenerTypes[i] != DisposeEvent.TYPE)
-					if (listenerLists[i].size() > 0)
-						return true;
+		Object[] listeners = this.listeners;
+		if (listeners != null)
+			for (int i = 0; i < listeners.length; i += 2)
+				if (listeners[i] != DisposeEvent.TYPE)
+					return true;
 		return false;
 	}
 
-	private int findListenerTypeIndex(Object listenerType) {
-		if (listenerTypes != null) {
-			for (int i = 0; i < listenerTypes.length; i++) {
-				if (listenerTypes[i] == listenerType) {
-					return i;
-				}
+	private static int indexOf(Object[] listeners, Object listenerType,
+			IObservablesListener listener) {
+		for (int i = 0; i < listeners.length; i += 2) {
+			if (listeners[i] == listenerType
+					&& listener.equals(listeners[i + 1])) {
+				return i;
 			}
 		}
 		return -1;
 	}
 
 	protected void fireEvent(ObservableEvent event) {
-		Object listenerType = event.getListenerType();
-		int listenerTypeIndex = findListenerTypeIndex(listenerType);
-		if (listenerTypeIndex != -1) {
-			Object[] listeners = listenerLists[listenerTypeIndex]
-					.getListeners();
-			for (int i = 0; i < listeners.length; i++) {
-				event.dispatch((IObservablesListener) listeners[i]);
+		Object[] listeners = this.listeners;
+		List dirty = null;
+		if (listeners != null && event instanceof ChangeEvent) {
+			// the computed observables depending on this one are all marked
+			// dirty before anyone is notified
+			for (int i = 0; i < listeners.length; i += 2) {
+				if (listeners[i] == ChangeEvent.TYPE
+						&& listeners[i + 1] instanceof ComputedNode) {
+					ComputedNode node = (ComputedNode) listeners[i + 1];
+					dirty = node.markDirty(dirty);
+				}
+			}
+		}
+		ChangeBatch batch = realm.batch;
+		if (batch == null || !batch.add(this, event)) {
+			dispatchEvent(event, listeners);
+		}
+		if (dirty != null) {
+			ComputedNode.fireDirty(dirty);
+		}
+	}
+
+	/**
+	 * Notifies the listeners of the given event, the computed observables
+	 * being marked dirty by {@link #fireEvent(ObservableEvent)} already.
+	 * 
+	 * @param event
+	 */
+	void dispatchEvent(ObservableEvent event) {
+		dispatchEvent(event, listeners);
+	}
+
+	private static void dispatchEvent(ObservableEvent event,
+			Object[] listeners) {
+		if (listeners != null) {
+			Object listenerType = event.getListenerType();
+			boolean changeEvent = event instanceof ChangeEvent;
+			for (int i = 0; i < listeners.length; i += 2) {
+				if (listeners[i] == listenerType) {
+					Object listener = listeners[i + 1];
+					if (!changeEvent || !(listener instanceof ComputedNode)) {
+						event.dispatch((IObservablesListener) listener);
+					}
+				}
 			}
 		}
 	}
@@ -137,8 +193,7 @@ import org.eclipse.core.runtime.ListenerList;
 	 * 
 	 */
 	public void dispose() {
-		listenerLists = null;
-		listenerTypes = null;
+		listeners = null;
 	}
 
 	/**
@@ -150,8 +205,8 @@ import org.eclipse.core.runtime.ListenerList;
 
 	protected Object clone() throws CloneNotSupportedException {
 		ChangeManager duplicate = (ChangeManager) super.clone();
-		duplicate.listenerLists = null;
-		duplicate.listenerTypes = null;
+		duplicate.listeners = null;
+		duplicate.batchedEvents = null;
 		return duplicate;
 	}
 }
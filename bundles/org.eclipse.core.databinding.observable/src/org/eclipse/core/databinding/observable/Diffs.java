@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2010 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@
 package org.eclipse.core.databinding.observable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -35,9 +36,31 @@ import org.eclipse.core.internal.databinding.observable.Util;
  */
 public class Diffs {
 
+	/**
+	 * The largest number of elements, old and new, left after the common
+	 * prefix and suffix are skipped, which is diffed by detecting moves.
+	 */
+	private static final int MOVE_DIFF_LIMIT = 32;
+
+	/**
+	 * The largest number of additions and removals computed element by
+	 * element. Lists differing more are diffed by removing all the old
+	 * elements and adding the new ones.
+	 */
+	private static final int MAX_EDIT_DISTANCE = 4000;
+
 	/**
 	 * Returns a {@link ListDiff} describing the change between the specified
 	 * old and new list states.
+	 * <p>
+	 * The elements the lists begin and end with in common are skipped. The
+	 * remaining elements are diffed with the O(ND) algorithm of E. Myers,
+	 * which takes time proportional to the size of the lists times the
+	 * number of differences, and with the elements compared by their hash
+	 * codes first. Lists differing by more than about 4000 additions and
+	 * removals are diffed by removing all the old elements and adding the new
+	 * ones.
+	 * </p>
 	 * 
 	 * @param oldList
 	 *            the old list state
@@ -47,7 +70,7 @@ public class Diffs {
 	 */
 	public static ListDiff computeListDiff(List oldList, List newList) {
 		List diffEntries = new ArrayList();
-		createListDiffs(new ArrayList(oldList), newList, diffEntries);
+		createListDiffs(oldList.toArray(), newList.toArray(), diffEntries);
 		ListDiff listDiff = createListDiff((ListDiffEntry[]) diffEntries
 				.toArray(new ListDiffEntry[diffEntries.size()]));
 		return listDiff;
@@ -79,17 +102,260 @@ public class Diffs {
 		};
 	}
 
+	private static void createListDiffs(Object[] oldArray, Object[] newArray,
+			List listDiffs) {
+		int start = 0;
+		int oldEnd = oldArray.length;
+		int newEnd = newArray.length;
+		while (start < oldEnd && start < newEnd
+				&& equals(oldArray[start], newArray[start])) {
+			start++;
+		}
+		while (oldEnd > start && newEnd > start
+				&& equals(oldArray[oldEnd - 1], newArray[newEnd - 1])) {
+			oldEnd--;
+			newEnd--;
+		}
+
+		if (oldEnd == start || newEnd == start) {
+			createReplaceListDiffs(oldArray, start, oldEnd, newArray, start,
+					newEnd, listDiffs);
+		} else if (oldEnd + newEnd - 2 * start <= MOVE_DIFF_LIMIT) {
+			// short lists keep the diffs of moved elements computed so far
+			createMoveListDiffs(start, new ArrayList(Arrays.asList(oldArray)
+					.subList(start, oldEnd)), Arrays.asList(newArray).subList(
+					start, newEnd), listDiffs);
+		} else {
+			ListDiffer differ = new ListDiffer(oldArray, newArray, start,
+					oldEnd, newEnd, listDiffs);
+			if (differ.minDistance > MAX_EDIT_DISTANCE) {
+				createReplaceListDiffs(oldArray, start, oldEnd, newArray,
+						start, newEnd, listDiffs);
+			} else {
+				differ.diff(start, oldEnd, start, newEnd);
+			}
+		}
+	}
+
+	/**
+	 * Removes the old elements from <code>oldStart</code> to
+	 * <code>oldEnd</code> and adds the new elements from <code>newStart</code>
+	 * to <code>newEnd</code>, the new elements before <code>newStart</code>
+	 * being in the list already.
+	 */
+	private static void createReplaceListDiffs(Object[] oldArray,
+			int oldStart, int oldEnd, Object[] newArray, int newStart,
+			int newEnd, List listDiffs) {
+		for (int i = oldEnd; i > oldStart;) {
+			i--;
+			listDiffs.add(createListDiffEntry(newStart + i - oldStart, false,
+					oldArray[i]));
+		}
+		for (int i = newStart; i < newEnd; i++) {
+			listDiffs.add(createListDiffEntry(i, true, newArray[i]));
+		}
+	}
+
+	/**
+	 * Computes the shortest sequence of additions and removals turning the old
+	 * list into the new one, with the linear space variation of the O(ND)
+	 * algorithm of E. Myers, "An O(ND) Difference Algorithm and Its
+	 * Variations". The elements are numbered by equality first, so they are
+	 * compared as ints.
+	 */
+	private static class ListDiffer {
+		private final Object[] oldArray;
+		private final Object[] newArray;
+		private final int[] oldIds;
+		private final int[] newIds;
+		private final List listDiffs;
+
+		/**
+		 * The number of elements added or removed anyway, as they occur more
+		 * in one list than in the other
+		 */
+		final int minDistance;
+
+		ListDiffer(Object[] oldArray, Object[] newArray, int start,
+				int oldEnd, int newEnd, List listDiffs) {
+			this.oldArray = oldArray;
+			this.newArray = newArray;
+			this.listDiffs = listDiffs;
+
+			Map ids = new HashMap();
+			oldIds = new int[oldEnd];
+			for (int i = start; i < oldEnd; i++) {
+				oldIds[i] = id(ids, oldArray[i]);
+			}
+			newIds = new int[newEnd];
+			for (int i = start; i < newEnd; i++) {
+				newIds[i] = id(ids, newArray[i]);
+			}
+
+			int[] counts = new int[ids.size()];
+			for (int i = start; i < oldEnd; i++) {
+				counts[oldIds[i]]++;
+			}
+			for (int i = start; i < newEnd; i++) {
+				counts[newIds[i]]--;
+			}
+			int distance = 0;
+			for (int i = 0; i < counts.length; i++) {
+				distance += Math.abs(counts[i]);
+			}
+			minDistance = distance;
+		}
+
+		private static int id(Map ids, Object element) {
+			Integer id = (Integer) ids.get(element);
+			if (id == null) {
+				id = new Integer(ids.size());
+				ids.put(element, id);
+			}
+			return id.intValue();
+		}
+
+		/**
+		 * Adds the diffs turning the old elements from <code>oldStart</code> to
+		 * <code>oldEnd</code> into the new elements from <code>newStart</code>
+		 * to <code>newEnd</code>.
+		 */
+		void diff(int oldStart, int oldEnd, int newStart, int newEnd) {
+			while (oldStart < oldEnd && newStart < newEnd
+					&& oldIds[oldStart] == newIds[newStart]) {
+				oldStart++;
+				newStart++;
+			}
+			while (oldStart < oldEnd && newStart < newEnd
+					&& oldIds[oldEnd - 1] == newIds[newEnd - 1]) {
+				oldEnd--;
+				newEnd--;
+			}
+			if (oldStart == oldEnd || newStart == newEnd
+					|| !split(oldStart, oldEnd, newStart, newEnd)) {
+				createReplaceListDiffs(oldArray, oldStart, oldEnd, newArray,
+						newStart, newEnd, listDiffs);
+			}
+		}
+
+		/**
+		 * Searches the shortest edit path forward from the start and backward
+		 * from the end at once, and diffs the elements on both sides of the
+		 * point where the searches meet.
+		 * 
+		 * @return <code>false</code> if the searches don't meet within
+		 *         MAX_EDIT_DISTANCE additions and removals
+		 */
+		private boolean split(int oldStart, int oldEnd, int newStart,
+				int newEnd) {
+			int n = oldEnd - oldStart;
+			int m = newEnd - newStart;
+			int maxD = Math.min((n + m + 1) / 2, MAX_EDIT_DISTANCE / 2);
+			// forward[offset + k] is the furthest x reached from the start on
+			// diagonal k = x - y, backward[offset + k] the furthest reached
+			// from the end, with x and y counted from the end
+			int offset = maxD + 1;
+			int[] forward = new int[2 * offset + 1];
+			int[] backward = new int[2 * offset + 1];
+			Arrays.fill(forward, -1);
+			Arrays.fill(backward, -1);
+			forward[offset + 1] = 0;
+			backward[offset + 1] = 0;
+			int delta = n - m;
+			// the searches meet going forward when delta is odd
+			boolean front = (delta & 1) != 0;
+
+			// the diagonals leaving the edit graph are not searched further
+			int k1start = 0;
+			int k1end = 0;
+			int k2start = 0;
+			int k2end = 0;
+			for (int d = 0; d < maxD; d++) {
+				for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+					int x1;
+					if (k1 == -d
+							|| (k1 != d && forward[offset + k1 - 1] < forward[offset
+									+ k1 + 1])) {
+						x1 = forward[offset + k1 + 1];
+					} else {
+						x1 = forward[offset + k1 - 1] + 1;
+					}
+					int y1 = x1 - k1;
+					while (x1 < n && y1 < m
+							&& oldIds[oldStart + x1] == newIds[newStart + y1]) {
+						x1++;
+						y1++;
+					}
+					forward[offset + k1] = x1;
+					if (x1 > n) {
+						k1end += 2;
+					} else if (y1 > m) {
+						k1start += 2;
+					} else if (front) {
+						int k2 = offset + delta - k1;
+						if (k2 >= 0 && k2 < backward.length
+								&& backward[k2] != -1 && x1 >= n - backward[k2]) {
+							diff(oldStart, oldStart + x1, newStart, newStart
+									+ y1);
+							diff(oldStart + x1, oldEnd, newStart + y1, newEnd);
+							return true;
+						}
+					}
+				}
+
+				for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+					int x2;
+					if (k2 == -d
+							|| (k2 != d && backward[offset + k2 - 1] < backward[offset
+									+ k2 + 1])) {
+						x2 = backward[offset + k2 + 1];
+					} else {
+						x2 = backward[offset + k2 - 1] + 1;
+					}
+					int y2 = x2 - k2;
+					while (x2 < n
+							&& y2 < m
+							&& oldIds[oldEnd - x2 - 1] == newIds[newEnd - y2 - 1]) {
+						x2++;
+						y2++;
+					}
+					backward[offset + k2] = x2;
+					if (x2 > n) {
+						k2end += 2;
+					} else if (y2 > m) {
+						k2start += 2;
+					} else if (!front) {
+						int k1 = offset + delta - k2;
+						if (k1 >= 0 && k1 < forward.length
+								&& forward[k1] != -1) {
+							int x1 = forward[k1];
+							int y1 = offset + x1 - k1;
+							if (x1 >= n - x2) {
+								diff(oldStart, oldStart + x1, newStart,
+										newStart + y1);
+								diff(oldStart + x1, oldEnd, newStart + y1,
+										newEnd);
+								return true;
+							}
+						}
+					}
+				}
+			}
+			return false;
+		}
+	}
+
 	/**
 	 * adapted from EMF's ListDifferenceAnalyzer
 	 */
-	private static void createListDiffs(List oldList, List newList,
-			List listDiffs) {
+	private static void createMoveListDiffs(int offset, List oldList,
+			List newList, List listDiffs) {
 		int index = 0;
 		for (Iterator it = newList.iterator(); it.hasNext();) {
 			Object newValue = it.next();
 			if (oldList.size() <= index) {
 				// append newValue to newList
-				listDiffs.add(createListDiffEntry(index, true, newValue));
+				listDiffs.add(createListDiffEntry(offset + index, true, newValue));
 			} else {
 				boolean done;
 				do {
@@ -104,7 +370,7 @@ public class Diffs {
 									oldValue, index);
 							if (newIndexOfOldValue == -1) {
 								// removing oldValue from list[index]
-								listDiffs.add(createListDiffEntry(index, false,
+								listDiffs.add(createListDiffEntry(offset + index, false,
 										oldValue));
 								oldList.remove(index);
 								done = false;
@@ -121,28 +387,28 @@ public class Diffs {
 									// correct spot.
 									newIndexOfOldValue = oldList.size() - 1;
 								}
-								listDiffs.add(createListDiffEntry(index, false,
+								listDiffs.add(createListDiffEntry(offset + index, false,
 										oldValue));
 								oldList.remove(index);
 								listDiffs.add(createListDiffEntry(
-										newIndexOfOldValue, true, oldValue));
+										offset + newIndexOfOldValue, true, oldValue));
 								oldList.add(newIndexOfOldValue, oldValue);
 								done = false;
 							} else {
 								// move newValue from list[oldIndexOfNewValue]
 								// to [index]
 								listDiffs.add(createListDiffEntry(
-										oldIndexOfNewValue, false, newValue));
+										offset + oldIndexOfNewValue, false, newValue));
 								oldList.remove(oldIndexOfNewValue);
-								listDiffs.add(createListDiffEntry(index, true,
+								listDiffs.add(createListDiffEntry(offset + index, true,
 										newValue));
 								oldList.add(index, newValue);
 							}
 						} else {
 							// add newValue at list[index]
 							oldList.add(index, newValue);
-							listDiffs.add(createListDiffEntry(index, true,
-									newValue));
+							listDiffs.add(createListDiffEntry(offset + index,
+									true, newValue));
 						}
 					}
 				} while (!done);
@@ -151,7 +417,8 @@ public class Diffs {
 		}
 		for (int i = oldList.size(); i > index;) {
 			// remove excess trailing elements not present in newList
-			listDiffs.add(createListDiffEntry(--i, false, oldList.get(i)));
+			listDiffs.add(createListDiffEntry(offset + --i, false,
+					oldList.get(i)));
 		}
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -60,20 +60,36 @@ import org.eclipse.core.runtime.Status;
 public class ObservableTracker {
 
 	/**
-	 * Threadlocal storage pointing to the current Set of IObservables, or null
-	 * if none. Note that this is actually the top of a stack. Whenever a method
-	 * changes the current value, it remembers the old value as a local variable
-	 * and restores the old value when the method exits.
+	 * The tracking state of a thread. Note that each field is actually the top
+	 * of a stack. Whenever a method changes the current value, it remembers the
+	 * old value as a local variable and restores the old value when the method
+	 * exits. The state is kept in a single thread local, so that getterCalled,
+	 * invoked by every tracked getter, needs only one lookup.
 	 */
-	private static ThreadLocal currentChangeListener = new ThreadLocal();
+	private static final class State {
+		/**
+		 * The current Set of IObservables read from, or null if none
+		 */
+		Set getterCalledSet;
 
-	private static ThreadLocal currentStaleListener = new ThreadLocal();
+		IChangeListener changeListener;
 
-	private static ThreadLocal currentGetterCalledSet = new ThreadLocal();
+		IStaleListener staleListener;
 
-	private static ThreadLocal currentObservableCreatedSet = new ThreadLocal();
+		Set observableCreatedSet;
 
-	private static ThreadLocal currentIgnoreCount = new ThreadLocal();
+		int ignoreCount;
+	}
+
+	private static ThreadLocal currentState = new ThreadLocal() {
+		protected Object initialValue() {
+			return new State();
+		}
+	};
+
+	private static State getState() {
+		return (State) currentState.get();
+	}
 
 	/**
 	 * Invokes the given runnable, and returns the set of IObservables that were
@@ -92,30 +108,29 @@ public class ObservableTracker {
 	 */
 	public static IObservable[] runAndMonitor(Runnable runnable,
 			IChangeListener changeListener, IStaleListener staleListener) {
+		State state = getState();
 		// Remember the previous value in the listener stack
-		Set lastObservableSet = (Set) currentGetterCalledSet.get();
-		IChangeListener lastChangeListener = (IChangeListener) currentChangeListener
-				.get();
-		IStaleListener lastStaleListener = (IStaleListener) currentStaleListener
-				.get();
-		Integer lastIgnore = (Integer) currentIgnoreCount.get();
+		Set lastObservableSet = state.getterCalledSet;
+		IChangeListener lastChangeListener = state.changeListener;
+		IStaleListener lastStaleListener = state.staleListener;
+		int lastIgnore = state.ignoreCount;
 
 		Set observableSet = new IdentitySet();
 		// Push the new listeners to the top of the stack
-		currentGetterCalledSet.set(observableSet);
-		currentChangeListener.set(changeListener);
-		currentStaleListener.set(staleListener);
-		currentIgnoreCount.set(null);
+		state.getterCalledSet = observableSet;
+		state.changeListener = changeListener;
+		state.staleListener = staleListener;
+		state.ignoreCount = 0;
 		try {
 			runnable.run();
 		} finally {
 			// Pop the new listener off the top of the stack (by restoring the
 			// previous listener)
-			currentGetterCalledSet.set(lastObservableSet);
-			currentChangeListener.set(lastChangeListener);
-			currentStaleListener.set(lastStaleListener);
-			checkUnmatchedIgnore(runnable);
-			currentIgnoreCount.set(lastIgnore);
+			state.getterCalledSet = lastObservableSet;
+			state.changeListener = lastChangeListener;
+			state.staleListener = lastStaleListener;
+			checkUnmatchedIgnore(state, runnable);
+			state.ignoreCount = lastIgnore;
 		}
 
 		return (IObservable[]) observableSet
@@ -139,29 +154,30 @@ public class ObservableTracker {
 	 * @since 1.2
 	 */
 	public static IObservable[] runAndCollect(Runnable runnable) {
-		Set lastObservableCreatedSet = (Set) currentObservableCreatedSet.get();
-		Integer lastIgnore = (Integer) currentIgnoreCount.get();
+		State state = getState();
+		Set lastObservableCreatedSet = state.observableCreatedSet;
+		int lastIgnore = state.ignoreCount;
 
 		Set observableSet = new IdentitySet();
 		// Push the new listeners to the top of the stack
-		currentObservableCreatedSet.set(observableSet);
-		currentIgnoreCount.set(null);
+		state.observableCreatedSet = observableSet;
+		state.ignoreCount = 0;
 		try {
 			runnable.run();
 		} finally {
 			// Pop the new listener off the top of the stack (by restoring the
 			// previous listener)
-			currentObservableCreatedSet.set(lastObservableCreatedSet);
-			checkUnmatchedIgnore(runnable);
-			currentIgnoreCount.set(lastIgnore);
+			state.observableCreatedSet = lastObservableCreatedSet;
+			checkUnmatchedIgnore(state, runnable);
+			state.ignoreCount = lastIgnore;
 		}
 
 		return (IObservable[]) observableSet
 				.toArray(new IObservable[observableSet.size()]);
 	}
 
-	private static void checkUnmatchedIgnore(Runnable runnable) {
-		if (isIgnore()) {
+	private static void checkUnmatchedIgnore(State state, Runnable runnable) {
+		if (state.ignoreCount > 0) {
 			Policy
 					.getLog()
 					.log(
@@ -169,7 +185,7 @@ public class ObservableTracker {
 									IStatus.ERROR,
 									Policy.JFACE_DATABINDING,
 									"There were " //$NON-NLS-1$
-											+ currentIgnoreCount.get()
+											+ state.ignoreCount
 											+ " unmatched setIgnore(true) invocations in runnable " //$NON-NLS-1$
 											+ runnable));
 		}
@@ -196,15 +212,13 @@ public class ObservableTracker {
 	 * @since 1.3
 	 */
 	public static void setIgnore(boolean ignore) {
-		Integer lastCount = (Integer) currentIgnoreCount.get();
-
-		int newCount = (lastCount == null ? 0 : lastCount.intValue())
-				+ (ignore ? 1 : -1);
+		State state = getState();
+		int newCount = state.ignoreCount + (ignore ? 1 : -1);
 
 		if (newCount < 0)
 			throw new IllegalStateException("Ignore count is already zero"); //$NON-NLS-1$
 
-		currentIgnoreCount.set(newCount == 0 ? null : new Integer(newCount));
+		state.ignoreCount = newCount;
 	}
 
 	/**
@@ -233,10 +247,6 @@ public class ObservableTracker {
 				+ Integer.toHexString(System.identityHashCode(observable));
 	}
 
-	private static boolean isIgnore() {
-		return currentIgnoreCount.get() != null;
-	}
-
 	/**
 	 * Notifies the ObservableTracker that an observable was read from. The
 	 * JavaDoc for methods that invoke this method should include the following
@@ -256,18 +266,17 @@ public class ObservableTracker {
 			Assert.isTrue(false, "Getter called outside realm of observable " //$NON-NLS-1$
 					+ toString(observable));
 
-		if (isIgnore())
+		State state = getState();
+		if (state.ignoreCount > 0)
 			return;
 
-		Set getterCalledSet = (Set) currentGetterCalledSet.get();
+		Set getterCalledSet = state.getterCalledSet;
 		if (getterCalledSet != null && getterCalledSet.add(observable)) {
 			// If anyone is listening for observable usage...
-			IChangeListener changeListener = (IChangeListener) currentChangeListener
-					.get();
+			IChangeListener changeListener = state.changeListener;
 			if (changeListener != null)
 				observable.addChangeListener(changeListener);
-			IStaleListener staleListener = (IStaleListener) currentStaleListener
-					.get();
+			IStaleListener staleListener = state.staleListener;
 			if (staleListener != null)
 				observable.addStaleListener(staleListener);
 		}
@@ -281,9 +290,10 @@ public class ObservableTracker {
 	 * @since 1.2
 	 */
 	public static void observableCreated(IObservable observable) {
-		if (isIgnore())
+		State state = getState();
+		if (state.ignoreCount > 0)
 			return;
-		Set observableCreatedSet = (Set) currentObservableCreatedSet.get();
+		Set observableCreatedSet = state.observableCreatedSet;
 		if (observableCreatedSet != null) {
 			observableCreatedSet.add(observable);
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -119,6 +119,12 @@ public abstract class Realm {
 	private volatile Timer timer;
 
 	Queue workQueue = new Queue();
+
+	/**
+	 * The events held back by {@link #runBatch(Runnable)}, or
+	 * <code>null</code>. Accessed within this realm only.
+	 */
+	ChangeBatch batch;
 	
 	/**
 	 * Runs the given runnable. If an exception occurs within the runnable, it
@@ -317,6 +323,42 @@ public abstract class Realm {
 		}
 	}
 
+	/**
+	 * Runs the given runnable as a batch of changes. The observables of this
+	 * realm don't notify their listeners of changes while the runnable runs.
+	 * When it completes, every observable that changed fires one change event,
+	 * and one list, set, map or value change event with the differences of
+	 * all its changes merged, unless they cancel each other out. The
+	 * observables notify their listeners in the order they first changed.
+	 * <p>
+	 * Use this method to make many changes, such as loading a large amount of
+	 * data into bound observables, without notifying listeners of each change.
+	 * Other events, such as stale and dispose events, are fired right away.
+	 * Batches run from within a batch are part of the enclosing batch.
+	 * </p>
+	 * <p>
+	 * This method must be called from within this realm.
+	 * </p>
+	 * 
+	 * @param runnable
+	 *            the runnable making the changes
+	 * @since 1.5
+	 */
+	public void runBatch(Runnable runnable) {
+		if (batch != null) {
+			runnable.run();
+			return;
+		}
+		batch = new ChangeBatch();
+		try {
+			runnable.run();
+		} finally {
+			ChangeBatch changes = batch;
+			batch = null;
+			changes.fireEvents();
+		}
+	}
+
 	/**
 	 * Sets the provided <code>realm</code> as the default for the duration of
 	 * {@link Runnable#run()} and resets the previous realm after completion.
@@ -1,5 +1,5 @@
 /************************************************************************************************************
- * Copyright (c) 2007, 2009 Matthew Hall and others.
+ * Copyright (c) 2007, 2012 Matthew Hall and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,15 +17,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import org.eclipse.core.databinding.observable.ChangeEvent;
 import org.eclipse.core.databinding.observable.Diffs;
 import org.eclipse.core.databinding.observable.IChangeListener;
 import org.eclipse.core.databinding.observable.IObservable;
-import org.eclipse.core.databinding.observable.IStaleListener;
 import org.eclipse.core.databinding.observable.ObservableTracker;
 import org.eclipse.core.databinding.observable.Realm;
 import org.eclipse.core.databinding.observable.StaleEvent;
 import org.eclipse.core.databinding.observable.value.IObservableValue;
+import org.eclipse.core.internal.databinding.observable.ComputedNode;
 
 /**
  * A lazily calculated list that automatically computes and registers listeners
@@ -79,8 +78,6 @@ public abstract class ComputedList extends AbstractObservableList {
 	private boolean dirty = true;
 	private boolean stale = false;
 
-	private IObservable[] dependencies = new IObservable[0];
-
 	/**
 	 * Creates a computed list in the default realm and with an unknown (null)
 	 * element type.
@@ -139,18 +136,12 @@ public abstract class ComputedList extends AbstractObservableList {
 	 * </p>
 	 * 
 	 * <p>
-	 * The IChangeListener stores each observable in the dependencies list. This
-	 * is registered as the listener when calling ObservableTracker, to detect
-	 * every observable that is used by computeValue.
-	 * </p>
-	 * 
-	 * <p>
-	 * The IChangeListener is attached to every dependency.
+	 * The ComputedNode is attached to every dependency, and marks this list
+	 * dirty when one of them changes.
 	 * </p>
 	 * 
 	 */
-	private class PrivateInterface implements Runnable, IChangeListener,
-			IStaleListener {
+	private class PrivateInterface extends ComputedNode {
 		public void run() {
 			cachedList = calculate();
 			if (cachedList == null)
@@ -162,8 +153,37 @@ public abstract class ComputedList extends AbstractObservableList {
 				makeStale();
 		}
 
-		public void handleChange(ChangeEvent event) {
-			makeDirty();
+		protected Runnable markDirty() {
+			if (dirty) {
+				return null;
+			}
+			dirty = true;
+			if (!hasListeners()) {
+				// nobody is told about the changes, stop listening until
+				// computed again
+				stopListening();
+			}
+
+			// copy the old list
+			final List oldList = new ArrayList(cachedList);
+			return new Runnable() {
+				public void run() {
+					makeStale();
+
+					// Fire the "dirty" event. This implementation recomputes
+					// the new list lazily.
+					fireListChange(new ListDiff() {
+						ListDiffEntry[] differences;
+
+						public ListDiffEntry[] getDifferences() {
+							if (differences == null)
+								differences = Diffs.computeListDiff(
+										oldList, getList()).getDifferences();
+							return differences;
+						}
+					});
+				}
+			};
 		}
 	}
 
@@ -191,8 +211,8 @@ public abstract class ComputedList extends AbstractObservableList {
 			// - Run the calculate method
 			// - While doing so, add any observable that is touched to the
 			// dependencies list
-			IObservable[] newDependencies = ObservableTracker.runAndMonitor(
-					privateInterface, privateInterface, null);
+			// - Listen to the dependencies not listened to yet
+			IObservable[] newDependencies = privateInterface.compute();
 
 			// If any dependencies are stale, a stale event will be fired here
 			// even if we were already stale before recomputing. This is in case
@@ -205,14 +225,6 @@ public abstract class ComputedList extends AbstractObservableList {
 				}
 			}
 
-			if (!stale) {
-				for (int i = 0; i < newDependencies.length; i++) {
-					newDependencies[i].addStaleListener(privateInterface);
-				}
-			}
-
-			dependencies = newDependencies;
-
 			dirty = false;
 		}
 
@@ -233,43 +245,6 @@ public abstract class ComputedList extends AbstractObservableList {
 	 */
 	protected abstract List calculate();
 
-	private void makeDirty() {
-		if (!dirty) {
-			dirty = true;
-
-			makeStale();
-
-			stopListening();
-
-			// copy the old list
-			final List oldList = new ArrayList(cachedList);
-			// Fire the "dirty" event. This implementation recomputes the new
-			// list lazily.
-			fireListChange(new ListDiff() {
-				ListDiffEntry[] differences;
-
-				public ListDiffEntry[] getDifferences() {
-					if (differences == null)
-						differences = Diffs.computeListDiff(oldList, getList())
-								.getDifferences();
-					return differences;
-				}
-			});
-		}
-	}
-
-	private void stopListening() {
-		if (dependencies != null) {
-			for (int i = 0; i < dependencies.length; i++) {
-				IObservable observable = dependencies[i];
-
-				observable.removeChangeListener(privateInterface);
-				observable.removeStaleListener(privateInterface);
-			}
-			dependencies = null;
-		}
-	}
-
 	private void makeStale() {
 		if (!stale) {
 			stale = true;
@@ -289,11 +264,17 @@ public abstract class ComputedList extends AbstractObservableList {
 
 	public synchronized void addChangeListener(IChangeListener listener) {
 		super.addChangeListener(listener);
+		privateInterface.addDependent(listener);
 		// If somebody is listening, we need to make sure we attach our own
 		// listeners
 		computeListForListeners();
 	}
 
+	public synchronized void removeChangeListener(IChangeListener listener) {
+		super.removeChangeListener(listener);
+		privateInterface.removeDependent(listener);
+	}
+
 	public synchronized void addListChangeListener(IListChangeListener listener) {
 		super.addListChangeListener(listener);
 		// If somebody is listening, we need to make sure we attach our own
@@ -312,7 +293,7 @@ public abstract class ComputedList extends AbstractObservableList {
 		// notifications.
 		getRealm().exec(new Runnable() {
 			public void run() {
-				if (dependencies == null) {
+				if (!privateInterface.isListening()) {
 					// We are not currently listening.
 					// But someone is listening for changes. Call getValue()
 					// to make sure we start listening to the observables we
@@ -324,7 +305,7 @@ public abstract class ComputedList extends AbstractObservableList {
 	}
 
 	public synchronized void dispose() {
-		stopListening();
+		privateInterface.dispose();
 		super.dispose();
 	}
 }
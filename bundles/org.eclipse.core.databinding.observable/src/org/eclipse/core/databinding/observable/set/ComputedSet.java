@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2009 Matthew Hall and others.
+ * Copyright (c) 2008, 2012 Matthew Hall and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,15 +15,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.eclipse.core.databinding.observable.ChangeEvent;
 import org.eclipse.core.databinding.observable.Diffs;
 import org.eclipse.core.databinding.observable.IChangeListener;
 import org.eclipse.core.databinding.observable.IObservable;
-import org.eclipse.core.databinding.observable.IStaleListener;
-import org.eclipse.core.databinding.observable.ObservableTracker;
 import org.eclipse.core.databinding.observable.Realm;
 import org.eclipse.core.databinding.observable.StaleEvent;
 import org.eclipse.core.databinding.observable.value.IObservableValue;
+import org.eclipse.core.internal.databinding.observable.ComputedNode;
 
 /**
  * A lazily calculated set that automatically computes and registers listeners
@@ -74,8 +72,6 @@ public abstract class ComputedSet extends AbstractObservableSet {
 	private boolean dirty = true;
 	private boolean stale = false;
 
-	private IObservable[] dependencies = new IObservable[0];
-
 	/**
 	 * Creates a computed set in the default realm and with an unknown (null)
 	 * element type.
@@ -134,18 +130,12 @@ public abstract class ComputedSet extends AbstractObservableSet {
 	 * </p>
 	 * 
 	 * <p>
-	 * The IChangeListener stores each observable in the dependencies list. This
-	 * is registered as the listener when calling ObservableTracker, to detect
-	 * every observable that is used by computeValue.
-	 * </p>
-	 * 
-	 * <p>
-	 * The IChangeListener is attached to every dependency.
+	 * The ComputedNode is attached to every dependency, and marks this set
+	 * dirty when one of them changes.
 	 * </p>
 	 * 
 	 */
-	private class PrivateInterface implements Runnable, IChangeListener,
-			IStaleListener {
+	private class PrivateInterface extends ComputedNode {
 		public void run() {
 			cachedSet = calculate();
 			if (cachedSet == null)
@@ -157,8 +147,44 @@ public abstract class ComputedSet extends AbstractObservableSet {
 				makeStale();
 		}
 
-		public void handleChange(ChangeEvent event) {
-			makeDirty();
+		protected Runnable markDirty() {
+			if (dirty) {
+				return null;
+			}
+			dirty = true;
+			if (!hasListeners()) {
+				// nobody is told about the changes, stop listening until
+				// computed again
+				stopListening();
+			}
+
+			// copy the old set
+			final Set oldSet = new HashSet(cachedSet);
+			return new Runnable() {
+				public void run() {
+					makeStale();
+
+					// Fire the "dirty" event. This implementation recomputes
+					// the new set lazily.
+					fireSetChange(new SetDiff() {
+						SetDiff delegate;
+
+						private SetDiff getDelegate() {
+							if (delegate == null)
+								delegate = Diffs.computeSetDiff(oldSet, getSet());
+							return delegate;
+						}
+
+						public Set getAdditions() {
+							return getDelegate().getAdditions();
+						}
+
+						public Set getRemovals() {
+							return getDelegate().getRemovals();
+						}
+					});
+				}
+			};
 		}
 	}
 
@@ -185,8 +211,8 @@ public abstract class ComputedSet extends AbstractObservableSet {
 			// - Run the calculate method
 			// - While doing so, add any observable that is touched to the
 			// dependencies list
-			IObservable[] newDependencies = ObservableTracker.runAndMonitor(
-					privateInterface, privateInterface, null);
+			// - Listen to the dependencies not listened to yet
+			IObservable[] newDependencies = privateInterface.compute();
 
 			// If any dependencies are stale, a stale event will be fired here
 			// even if we were already stale before recomputing. This is in case
@@ -199,14 +225,6 @@ public abstract class ComputedSet extends AbstractObservableSet {
 				}
 			}
 
-			if (!stale) {
-				for (int i = 0; i < newDependencies.length; i++) {
-					newDependencies[i].addStaleListener(privateInterface);
-				}
-			}
-
-			dependencies = newDependencies;
-
 			dirty = false;
 		}
 
@@ -223,50 +241,6 @@ public abstract class ComputedSet extends AbstractObservableSet {
 	 */
 	protected abstract Set calculate();
 
-	private void makeDirty() {
-		if (!dirty) {
-			dirty = true;
-
-			makeStale();
-
-			stopListening();
-
-			// copy the old set
-			final Set oldSet = new HashSet(cachedSet);
-			// Fire the "dirty" event. This implementation recomputes the new
-			// set lazily.
-			fireSetChange(new SetDiff() {
-				SetDiff delegate;
-
-				private SetDiff getDelegate() {
-					if (delegate == null)
-						delegate = Diffs.computeSetDiff(oldSet, getSet());
-					return delegate;
-				}
-
-				public Set getAdditions() {
-					return getDelegate().getAdditions();
-				}
-
-				public Set getRemovals() {
-					return getDelegate().getRemovals();
-				}
-			});
-		}
-	}
-
-	private void stopListening() {
-		if (dependencies != null) {
-			for (int i = 0; i < dependencies.length; i++) {
-				IObservable observable = dependencies[i];
-
-				observable.removeChangeListener(privateInterface);
-				observable.removeStaleListener(privateInterface);
-			}
-			dependencies = null;
-		}
-	}
-
 	private void makeStale() {
 		if (!stale) {
 			stale = true;
@@ -286,11 +260,17 @@ public abstract class ComputedSet extends AbstractObservableSet {
 
 	public synchronized void addChangeListener(IChangeListener listener) {
 		super.addChangeListener(listener);
+		privateInterface.addDependent(listener);
 		// If somebody is listening, we need to make sure we attach our own
 		// listeners
 		computeSetForListeners();
 	}
 
+	public synchronized void removeChangeListener(IChangeListener listener) {
+		super.removeChangeListener(listener);
+		privateInterface.removeDependent(listener);
+	}
+
 	public synchronized void addSetChangeListener(ISetChangeListener listener) {
 		super.addSetChangeListener(listener);
 		// If somebody is listening, we need to make sure we attach our own
@@ -309,7 +289,7 @@ public abstract class ComputedSet extends AbstractObservableSet {
 		// notifications.
 		getRealm().exec(new Runnable() {
 			public void run() {
-				if (dependencies == null) {
+				if (!privateInterface.isListening()) {
 					// We are not currently listening.
 					// But someone is listening for changes. Call getValue()
 					// to make sure we start listening to the observables we
@@ -321,7 +301,7 @@ public abstract class ComputedSet extends AbstractObservableSet {
 	}
 
 	public synchronized void dispose() {
-		stopListening();
+		privateInterface.dispose();
 		super.dispose();
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,14 +12,12 @@
  *******************************************************************************/
 package org.eclipse.core.databinding.observable.value;
 
-import org.eclipse.core.databinding.observable.ChangeEvent;
 import org.eclipse.core.databinding.observable.IChangeListener;
 import org.eclipse.core.databinding.observable.IObservable;
-import org.eclipse.core.databinding.observable.IStaleListener;
-import org.eclipse.core.databinding.observable.ObservableTracker;
 import org.eclipse.core.databinding.observable.Realm;
 import org.eclipse.core.databinding.observable.StaleEvent;
 import org.eclipse.core.databinding.observable.list.IObservableList;
+import org.eclipse.core.internal.databinding.observable.ComputedNode;
 
 /**
  * A Lazily calculated value that automatically computes and registers listeners
@@ -27,6 +25,13 @@ import org.eclipse.core.databinding.observable.list.IObservableList;
  * {@link IObservable} objects. Any change to one of the observable dependencies
  * causes the value to be recomputed.
  * <p>
+ * When an observable changes, all the computed values, lists and sets
+ * depending on it, directly or through each other, are marked dirty before any
+ * listener is notified, so listeners never see a computed value based on out
+ * of date dependencies. Each of them is recomputed at most once per change,
+ * when its value is asked for.
+ * </p>
+ * <p>
  * This class is thread safe. All state accessing methods must be invoked from
  * the {@link Realm#isCurrent() current realm}. Methods for adding and removing
  * listeners may be invoked from any thread.
@@ -69,12 +74,6 @@ public abstract class ComputedValue extends AbstractObservableValue {
 
 	private Object cachedValue = null;
 
-	/**
-	 * Array of observables this computed value depends on. This field has a
-	 * value of <code>null</code> if we are not currently listening.
-	 */
-	private IObservable[] dependencies = null;
-
 	/**
 	 * 
 	 */
@@ -118,18 +117,12 @@ public abstract class ComputedValue extends AbstractObservableValue {
 	 * </p>
 	 * 
 	 * <p>
-	 * The IChangeListener stores each observable in the dependencies list. This
-	 * is registered as the listener when calling ObservableTracker, to detect
-	 * every observable that is used by computeValue.
-	 * </p>
-	 * 
-	 * <p>
-	 * The IChangeListener is attached to every dependency.
+	 * The ComputedNode is attached to every dependency, and marks this value
+	 * dirty when one of them changes.
 	 * </p>
 	 * 
 	 */
-	private class PrivateInterface implements Runnable, IChangeListener,
-			IStaleListener {
+	private class PrivateInterface extends ComputedNode {
 		public void run() {
 			cachedValue = calculate();
 		}
@@ -141,8 +134,35 @@ public abstract class ComputedValue extends AbstractObservableValue {
 			}
 		}
 
-		public void handleChange(ChangeEvent event) {
-			makeDirty();
+		protected Runnable markDirty() {
+			if (dirty) {
+				return null;
+			}
+			dirty = true;
+			if (!hasListeners()) {
+				// nobody is told about the changes, stop listening until
+				// computed again
+				stopListening();
+			}
+
+			// copy the old value
+			final Object oldValue = cachedValue;
+			return new Runnable() {
+				public void run() {
+					// Fire the "dirty" event. This implementation recomputes
+					// the new value lazily.
+					fireValueChange(new ValueDiff() {
+
+						public Object getOldValue() {
+							return oldValue;
+						}
+
+						public Object getNewValue() {
+							return getValue();
+						}
+					});
+				}
+			};
 		}
 	}
 
@@ -156,22 +176,17 @@ public abstract class ComputedValue extends AbstractObservableValue {
 			// - Run the calculate method
 			// - While doing so, add any observable that is touched to the
 			// dependencies list
-			IObservable[] newDependencies = ObservableTracker.runAndMonitor(
-					privateInterface, privateInterface, null);
+			// - Listen to the dependencies not listened to yet
+			IObservable[] newDependencies = privateInterface.compute();
 
 			stale = false;
 			for (int i = 0; i < newDependencies.length; i++) {
-				IObservable observable = newDependencies[i];
-				// Add a change listener to the new dependency.
-				if (observable.isStale()) {
+				if (newDependencies[i].isStale()) {
 					stale = true;
-				} else {
-					observable.addStaleListener(privateInterface);
+					break;
 				}
 			}
 
-			dependencies = newDependencies;
-
 			dirty = false;
 		}
 
@@ -189,41 +204,9 @@ public abstract class ComputedValue extends AbstractObservableValue {
 	protected abstract Object calculate();
 
 	protected final void makeDirty() {
-		if (!dirty) {
-			dirty = true;
-
-			stopListening();
-
-			// copy the old value
-			final Object oldValue = cachedValue;
-			// Fire the "dirty" event. This implementation recomputes the new
-			// value lazily.
-			fireValueChange(new ValueDiff() {
-
-				public Object getOldValue() {
-					return oldValue;
-				}
-
-				public Object getNewValue() {
-					return getValue();
-				}
-			});
-		}
-	}
-
-	/**
-	 * 
-	 */
-	private void stopListening() {
-		// Stop listening for dependency changes.
-		if (dependencies != null) {
-			for (int i = 0; i < dependencies.length; i++) {
-				IObservable observable = dependencies[i];
-
-				observable.removeChangeListener(privateInterface);
-				observable.removeStaleListener(privateInterface);
-			}
-			dependencies = null;
+		Runnable notifier = privateInterface.markDirty();
+		if (notifier != null) {
+			notifier.run();
 		}
 	}
 
@@ -247,11 +230,17 @@ public abstract class ComputedValue extends AbstractObservableValue {
 
 	public synchronized void addChangeListener(IChangeListener listener) {
 		super.addChangeListener(listener);
+		privateInterface.addDependent(listener);
 		// If somebody is listening, we need to make sure we attach our own
 		// listeners
 		computeValueForListeners();
 	}
 
+	public synchronized void removeChangeListener(IChangeListener listener) {
+		super.removeChangeListener(listener);
+		privateInterface.removeDependent(listener);
+	}
+
 	/**
 	 * Some clients just add a listener and expect to get notified even if they
 	 * never called getValue(), so we have to call getValue() ourselves here to
@@ -264,7 +253,7 @@ public abstract class ComputedValue extends AbstractObservableValue {
 	private void computeValueForListeners() {
 		getRealm().exec(new Runnable() {
 			public void run() {
-				if (dependencies == null) {
+				if (!privateInterface.isListening()) {
 					// We are not currently listening.
 					if (hasListeners()) {
 						// But someone is listening for changes. Call getValue()
@@ -287,7 +276,7 @@ public abstract class ComputedValue extends AbstractObservableValue {
 
 	public synchronized void dispose() {
 		super.dispose();
-		stopListening();
+		privateInterface.dispose();
 	}
 
 }
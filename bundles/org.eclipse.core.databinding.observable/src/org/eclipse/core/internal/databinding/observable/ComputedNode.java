@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.core.internal.databinding.observable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.databinding.observable.ChangeEvent;
+import org.eclipse.core.databinding.observable.IChangeListener;
+import org.eclipse.core.databinding.observable.IObservable;
+import org.eclipse.core.databinding.observable.IStaleListener;
+import org.eclipse.core.databinding.observable.ObservableTracker;
+import org.eclipse.core.internal.databinding.identity.IdentitySet;
+import org.eclipse.core.runtime.ListenerList;
+
+/**
+ * The listener a computed observable registers with the observables it is
+ * computed from, its dependencies. The computation is run by {@link #run()}.
+ * <p>
+ * When an observable changes, the computed observables depending on it,
+ * directly or through other computed observables, are all marked dirty before
+ * any listener is notified. Their listeners are then notified in topological
+ * order, dependencies first. So a listener never gets a computed value from
+ * dependencies of which some are out of date, and every computed observable is
+ * computed at most once per change. The computed observables depending on this
+ * one are tracked as they register as its change listeners.
+ * </p>
+ * <p>
+ * While the computed observable has listeners, the listeners of the
+ * dependencies are kept when it is dirty, and only the listeners of the
+ * dependencies added or removed by a computation are changed. A computed
+ * observable without listeners calls {@link #stopListening()} when marked
+ * dirty, so that it is not kept by its dependencies once it is not used
+ * anymore.
+ * </p>
+ *
+ * @since 1.5
+ */
+public abstract class ComputedNode implements Runnable, IChangeListener,
+		IStaleListener {
+
+	private static final Object computeCountLock = new Object();
+
+	private static long computeCount;
+
+	private final ListenerList dependents = new ListenerList(
+			ListenerList.IDENTITY);
+
+	/**
+	 * The dependencies of the last computation, or <code>null</code> if not
+	 * listening to them.
+	 */
+	private IObservable[] dependencies;
+
+	/**
+	 * Marks the computed observable dirty, without notifying its listeners.
+	 *
+	 * @return a runnable notifying the listeners of the change, or
+	 *         <code>null</code> if the observable was dirty already
+	 */
+	protected abstract Runnable markDirty();
+
+	/**
+	 * Called by dependencies which don't mark their computed dependents dirty
+	 * before notifying their listeners.
+	 */
+	public void handleChange(ChangeEvent event) {
+		List marked = new ArrayList();
+		mark(marked);
+		fireDirty(marked);
+	}
+
+	private void mark(List marked) {
+		Runnable notifier = markDirty();
+		if (notifier != null) {
+			Object[] nodes = dependents.getListeners();
+			for (int i = 0; i < nodes.length; i++) {
+				((ComputedNode) nodes[i]).mark(marked);
+			}
+			// the nodes are added after their dependents, in reverse
+			// topological order
+			marked.add(notifier);
+		}
+	}
+
+	/**
+	 * Marks this computed observable dirty, and those depending on it, when an
+	 * observable it depends on changed.
+	 *
+	 * @param marked
+	 *            the notifiers of the computed observables marked so far for
+	 *            the change, or <code>null</code> if none
+	 * @return the notifiers to pass to {@link #fireDirty(List)}
+	 */
+	public List markDirty(List marked) {
+		if (marked == null) {
+			marked = new ArrayList();
+		}
+		mark(marked);
+		return marked;
+	}
+
+	/**
+	 * Notifies the listeners of the computed observables marked dirty, in
+	 * topological order.
+	 *
+	 * @param marked
+	 *            the notifiers returned by {@link #markDirty(List)}
+	 */
+	public static void fireDirty(List marked) {
+		for (int i = marked.size() - 1; i >= 0; i--) {
+			((Runnable) marked.get(i)).run();
+		}
+	}
+
+	/**
+	 * Runs the computation, and updates the listeners registered with the
+	 * dependencies.
+	 *
+	 * @return the dependencies of the computation
+	 */
+	public IObservable[] compute() {
+		IObservable[] newDependencies = ObservableTracker.runAndMonitor(this,
+				null, null);
+		synchronized (computeCountLock) {
+			computeCount++;
+		}
+
+		IObservable[] oldDependencies = dependencies;
+		dependencies = newDependencies;
+		if (oldDependencies == null) {
+			for (int i = 0; i < newDependencies.length; i++) {
+				addListeners(newDependencies[i]);
+			}
+		} else if (!sameDependencies(oldDependencies, newDependencies)) {
+			Set removed = new IdentitySet();
+			for (int i = 0; i < oldDependencies.length; i++) {
+				removed.add(oldDependencies[i]);
+			}
+			for (int i = 0; i < newDependencies.length; i++) {
+				if (!removed.remove(newDependencies[i])) {
+					addListeners(newDependencies[i]);
+				}
+			}
+			for (int i = 0; i < oldDependencies.length; i++) {
+				if (removed.contains(oldDependencies[i])) {
+					removeListeners(oldDependencies[i]);
+				}
+			}
+		}
+		return newDependencies;
+	}
+
+	private static boolean sameDependencies(IObservable[] oldDependencies,
+			IObservable[] newDependencies) {
+		if (oldDependencies.length != newDependencies.length) {
+			return false;
+		}
+		for (int i = 0; i < oldDependencies.length; i++) {
+			if (oldDependencies[i] != newDependencies[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addListeners(IObservable dependency) {
+		// also listen to the stale events of a stale dependency, as it is not
+		// listened to again when it becomes non-stale later
+		dependency.addChangeListener(this);
+		dependency.addStaleListener(this);
+	}
+
+	private void removeListeners(IObservable dependency) {
+		dependency.removeChangeListener(this);
+		dependency.removeStaleListener(this);
+	}
+
+	/**
+	 * @return whether listeners are registered with the dependencies
+	 */
+	public boolean isListening() {
+		return dependencies != null;
+	}
+
+	/**
+	 * Removes the listeners registered with the dependencies.
+	 */
+	public void stopListening() {
+		if (dependencies != null) {
+			for (int i = 0; i < dependencies.length; i++) {
+				removeListeners(dependencies[i]);
+			}
+			dependencies = null;
+		}
+	}
+
+	/**
+	 * To be called when a change listener is added to the computed observable.
+	 *
+	 * @param listener
+	 */
+	public void addDependent(IChangeListener listener) {
+		if (listener instanceof ComputedNode) {
+			dependents.add(listener);
+		}
+	}
+
+	/**
+	 * To be called when a change listener is removed from the computed
+	 * observable.
+	 *
+	 * @param listener
+	 */
+	public void removeDependent(IChangeListener listener) {
+		if (listener instanceof ComputedNode) {
+			dependents.remove(listener);
+		}
+	}
+
+	/**
+	 * To be called when the computed observable is disposed.
+	 */
+	public void dispose() {
+		stopListening();
+		dependents.clear();
+	}
+
+	/**
+	 * Returns the number of computations run by computed observables since the
+	 * start, for instance to measure how many times the computed observables
+	 * of an application are computed when a value changes.
+	 *
+	 * @return the number of computations
+	 */
+	public static long getComputeCount() {
+		synchronized (computeCountLock) {
+			return computeCount;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,6 +18,7 @@ import java.util.Date;
 import java.util.HashMap;
 
 import org.eclipse.core.databinding.conversion.IConverter;
+import org.eclipse.core.databinding.observable.Realm;
 import org.eclipse.core.databinding.observable.value.IObservableValue;
 import org.eclipse.core.databinding.validation.IValidator;
 import org.eclipse.core.databinding.validation.ValidationStatus;
@@ -94,6 +95,16 @@ import org.eclipse.core.runtime.Status;
  * {@link #POLICY_NEVER}, {@link #POLICY_CONVERT}, {@link #POLICY_ON_REQUEST},
  * {@link #POLICY_UPDATE}).
  * </p>
+ * <p>
+ * Asynchronous processing:<br/>
+ * When a {@link #setConversionRealm(Realm) conversion realm} is set, the
+ * validation and conversion phases run in that realm, for instance a realm
+ * running on a background thread, so that expensive validators and converters
+ * don't block the realm of the observables. The value is set on the
+ * destination asynchronously. Meanwhile the binding validation status is
+ * stale, and the results of an update are discarded if a newer update was
+ * started.
+ * </p>
  * 
  * @see DataBindingContext#bindValue(IObservableValue, IObservableValue,
  *      UpdateValueStrategy, UpdateValueStrategy)
@@ -164,6 +175,8 @@ public class UpdateValueStrategy extends UpdateStrategy {
 	 */
 	private boolean defaultedConverter = false;
 
+	private Realm conversionRealm;
+
 	/**
 	 * Creates a new update value strategy for automatically updating the
 	 * destination observable value whenever the source observable value
@@ -425,6 +438,33 @@ public class UpdateValueStrategy extends UpdateStrategy {
 		return this;
 	}
 
+	/**
+	 * Sets the realm in which the validation and conversion phases run,
+	 * asynchronously, or <code>null</code> to run them synchronously in the
+	 * realm of the source observable. The validators and the converter must be
+	 * safe to call from the conversion realm, and must not access the source or
+	 * destination observables.
+	 * 
+	 * @param realm
+	 *            the realm, or <code>null</code>
+	 * @return the receiver, to enable method call chaining
+	 * @since 1.5
+	 */
+	public UpdateValueStrategy setConversionRealm(Realm realm) {
+		this.conversionRealm = realm;
+		return this;
+	}
+
+	/**
+	 * @return the realm in which the validation and conversion phases run, or
+	 *         <code>null</code> if they run synchronously
+	 * @see #setConversionRealm(Realm)
+	 * @since 1.5
+	 */
+	public Realm getConversionRealm() {
+		return conversionRealm;
+	}
+
 	/**
 	 * Validates the value after it is converted.
 	 * <p>
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,13 +13,14 @@
 package org.eclipse.core.databinding;
 
 import org.eclipse.core.databinding.observable.ObservableTracker;
+import org.eclipse.core.databinding.observable.Realm;
 import org.eclipse.core.databinding.observable.value.IObservableValue;
 import org.eclipse.core.databinding.observable.value.IValueChangeListener;
 import org.eclipse.core.databinding.observable.value.ValueChangeEvent;
-import org.eclipse.core.databinding.observable.value.WritableValue;
 import org.eclipse.core.databinding.util.Policy;
 import org.eclipse.core.internal.databinding.BindingStatus;
 import org.eclipse.core.internal.databinding.Util;
+import org.eclipse.core.internal.databinding.ValidationStatusObservableValue;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
@@ -29,14 +30,33 @@ import org.eclipse.core.runtime.Status;
  * 
  */
 class ValueBinding extends Binding {
+	/**
+	 * Returned by {@link #validateAndConvert} when the value must not be set
+	 */
+	private static final Object NO_VALUE = new Object();
+
 	private final UpdateValueStrategy targetToModel;
 	private final UpdateValueStrategy modelToTarget;
-	private WritableValue validationStatusObservable;
+	private ValidationStatusObservableValue validationStatusObservable;
 	private IObservableValue target;
 	private IObservableValue model;
 
 	private boolean updatingTarget;
 	private boolean updatingModel;
+
+	/*
+	 * The number of the last asynchronous update started towards the model and
+	 * the target, and whether its result is pending. Validations are numbered
+	 * separately, so that a validation does not supersede a pending update.
+	 * Guarded by this.
+	 */
+	private int modelUpdateCount;
+	private int targetUpdateCount;
+	private boolean modelUpdatePending;
+	private boolean targetUpdatePending;
+	private int modelValidationCount;
+	private int targetValidationCount;
+
 	private IValueChangeListener targetChangeListener = new IValueChangeListener() {
 		public void handleValueChange(ValueChangeEvent event) {
 			if (!updatingTarget
@@ -85,8 +105,8 @@ class ValueBinding extends Binding {
 	protected void preInit() {
 		ObservableTracker.setIgnore(true);
 		try {
-			validationStatusObservable = new WritableValue(context
-					.getValidationRealm(), Status.OK_STATUS, IStatus.class);
+			validationStatusObservable = new ValidationStatusObservableValue(
+					context.getValidationRealm());
 		} finally {
 			ObservableTracker.setIgnore(false);
 		}
@@ -156,66 +176,32 @@ class ValueBinding extends Binding {
 					// Get value
 					Object value = source.getValue();
 
-					// Validate after get
-					IStatus status = updateValueStrategy
-							.validateAfterGet(value);
-					if (!mergeStatus(multiStatus, status))
-						return;
-
-					// Convert value
-					final Object convertedValue = updateValueStrategy
-							.convert(value);
-
-					// Validate after convert
-					status = updateValueStrategy
-							.validateAfterConvert(convertedValue);
-					if (!mergeStatus(multiStatus, status))
-						return;
-					if (policy == UpdateValueStrategy.POLICY_CONVERT
-							&& !explicit)
+					Realm conversionRealm = updateValueStrategy
+							.getConversionRealm();
+					if (conversionRealm != null) {
+						// the status is set when the update completes
+						destinationRealmReached = true;
+						doUpdateAsync(conversionRealm, value, destination,
+								updateValueStrategy, explicit, validateOnly);
 						return;
+					}
 
-					// Validate before set
-					status = updateValueStrategy
-							.validateBeforeSet(convertedValue);
-					if (!mergeStatus(multiStatus, status))
-						return;
-					if (validateOnly)
+					final Object convertedValue = validateAndConvert(value,
+							updateValueStrategy, explicit, validateOnly,
+							multiStatus);
+					if (convertedValue == NO_VALUE)
 						return;
 
 					// Set value
 					destinationRealmReached = true;
 					destination.getRealm().exec(new Runnable() {
 						public void run() {
-							if (destination == target) {
-								updatingTarget = true;
-							} else {
-								updatingModel = true;
-							}
-							try {
-								IStatus setterStatus = updateValueStrategy
-										.doSet(destination, convertedValue);
-
-								mergeStatus(multiStatus, setterStatus);
-							} finally {
-								if (destination == target) {
-									updatingTarget = false;
-								} else {
-									updatingModel = false;
-								}
-								setValidationStatus(multiStatus);
-							}
+							setDestination(destination, updateValueStrategy,
+									convertedValue, multiStatus);
 						}
 					});
 				} catch (Exception ex) {
-					// This check is necessary as in 3.2.2 Status
-					// doesn't accept a null message (bug 177264).
-					String message = (ex.getMessage() != null) ? ex
-							.getMessage() : ""; //$NON-NLS-1$
-
-					mergeStatus(multiStatus, new Status(IStatus.ERROR,
-							Policy.JFACE_DATABINDING, IStatus.ERROR, message,
-							ex));
+					mergeException(multiStatus, ex);
 				} finally {
 					if (!destinationRealmReached) {
 						setValidationStatus(multiStatus);
@@ -226,6 +212,179 @@ class ValueBinding extends Binding {
 		});
 	}
 
+	/**
+	 * Runs the validation and conversion phases of an update.
+	 * 
+	 * @return the converted value, or {@link #NO_VALUE} if it must not be set
+	 */
+	private Object validateAndConvert(Object value,
+			UpdateValueStrategy updateValueStrategy, boolean explicit,
+			boolean validateOnly, MultiStatus multiStatus) {
+		int policy = updateValueStrategy.getUpdatePolicy();
+
+		// Validate after get
+		IStatus status = updateValueStrategy.validateAfterGet(value);
+		if (!mergeStatus(multiStatus, status))
+			return NO_VALUE;
+
+		// Convert value
+		Object convertedValue = updateValueStrategy.convert(value);
+
+		// Validate after convert
+		status = updateValueStrategy.validateAfterConvert(convertedValue);
+		if (!mergeStatus(multiStatus, status))
+			return NO_VALUE;
+		if (policy == UpdateValueStrategy.POLICY_CONVERT && !explicit)
+			return NO_VALUE;
+
+		// Validate before set
+		status = updateValueStrategy.validateBeforeSet(convertedValue);
+		if (!mergeStatus(multiStatus, status))
+			return NO_VALUE;
+		if (validateOnly)
+			return NO_VALUE;
+
+		return convertedValue;
+	}
+
+	private void mergeException(MultiStatus multiStatus, Exception ex) {
+		// This check is necessary as in 3.2.2 Status
+		// doesn't accept a null message (bug 177264).
+		String message = (ex.getMessage() != null) ? ex.getMessage() : ""; //$NON-NLS-1$
+
+		mergeStatus(multiStatus, new Status(IStatus.ERROR,
+				Policy.JFACE_DATABINDING, IStatus.ERROR, message, ex));
+	}
+
+	/**
+	 * Sets the converted value on the destination, in the realm of the
+	 * destination.
+	 */
+	private void setDestination(IObservableValue destination,
+			UpdateValueStrategy updateValueStrategy, Object convertedValue,
+			MultiStatus multiStatus) {
+		if (destination == target) {
+			updatingTarget = true;
+		} else {
+			updatingModel = true;
+		}
+		try {
+			IStatus setterStatus = updateValueStrategy.doSet(destination,
+					convertedValue);
+
+			mergeStatus(multiStatus, setterStatus);
+		} finally {
+			if (destination == target) {
+				updatingTarget = false;
+			} else {
+				updatingModel = false;
+			}
+			// an update from the former value of the destination is out of
+			// date
+			synchronized (this) {
+				if (destination == target) {
+					modelUpdateCount++;
+					modelValidationCount++;
+					modelUpdatePending = false;
+				} else {
+					targetUpdateCount++;
+					targetValidationCount++;
+					targetUpdatePending = false;
+				}
+			}
+			setValidationStatus(multiStatus);
+		}
+	}
+
+	/**
+	 * Runs the validation and conversion phases of an update in the given
+	 * realm, then sets the value in the realm of the destination. The results
+	 * are discarded if a newer update towards the same destination was started
+	 * meanwhile, or if the destination was set from another value. A
+	 * validation is only superseded by a newer validation or update, and does
+	 * not make the validation status pending.
+	 */
+	private void doUpdateAsync(Realm conversionRealm, final Object value,
+			final IObservableValue destination,
+			final UpdateValueStrategy updateValueStrategy,
+			final boolean explicit, final boolean validateOnly) {
+		final boolean toModel = destination == model;
+		final int count;
+		synchronized (this) {
+			if (validateOnly) {
+				count = toModel ? ++modelValidationCount
+						: ++targetValidationCount;
+			} else if (toModel) {
+				count = ++modelUpdateCount;
+				modelValidationCount++;
+				modelUpdatePending = true;
+			} else {
+				count = ++targetUpdateCount;
+				targetValidationCount++;
+				targetUpdatePending = true;
+			}
+		}
+		if (!validateOnly) {
+			setValidationStatusPending();
+		}
+
+		conversionRealm.asyncExec(new Runnable() {
+			public void run() {
+				if (!isCurrentUpdate(toModel, validateOnly, count))
+					return;
+				final MultiStatus multiStatus = BindingStatus.ok();
+				Object convertedValue = NO_VALUE;
+				try {
+					convertedValue = validateAndConvert(value,
+							updateValueStrategy, explicit, validateOnly,
+							multiStatus);
+				} catch (Exception ex) {
+					mergeException(multiStatus, ex);
+				}
+
+				final Object result = convertedValue;
+				Realm realm = result == NO_VALUE ? validationStatusObservable
+						.getRealm() : destination.getRealm();
+				realm.asyncExec(new Runnable() {
+					public void run() {
+						synchronized (ValueBinding.this) {
+							if (!isCurrentUpdate(toModel, validateOnly, count))
+								return;
+							// a validation leaves a pending update pending
+							if (!validateOnly) {
+								if (toModel) {
+									modelUpdatePending = false;
+								} else {
+									targetUpdatePending = false;
+								}
+							}
+						}
+						if (result == NO_VALUE) {
+							setValidationStatus(multiStatus);
+						} else {
+							setDestination(destination, updateValueStrategy,
+									result, multiStatus);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	private synchronized boolean isCurrentUpdate(boolean toModel,
+			boolean validateOnly, int count) {
+		if (isDisposed())
+			return false;
+		if (validateOnly)
+			return count == (toModel ? modelValidationCount
+					: targetValidationCount);
+		return count == (toModel ? modelUpdateCount : targetUpdateCount);
+	}
+
+	private synchronized boolean isUpdatePending() {
+		return modelUpdatePending || targetUpdatePending;
+	}
+
 	public void validateModelToTarget() {
 		doUpdate(model, target, modelToTarget, true, true);
 	}
@@ -237,7 +396,15 @@ class ValueBinding extends Binding {
 	private void setValidationStatus(final IStatus status) {
 		validationStatusObservable.getRealm().exec(new Runnable() {
 			public void run() {
-				validationStatusObservable.setValue(status);
+				validationStatusObservable.setStatus(status, isUpdatePending());
+			}
+		});
+	}
+
+	private void setValidationStatusPending() {
+		validationStatusObservable.getRealm().exec(new Runnable() {
+			public void run() {
+				validationStatusObservable.setPending(isUpdatePending());
 			}
 		});
 	}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.core.internal.databinding;
+
+import org.eclipse.core.databinding.observable.ObservableTracker;
+import org.eclipse.core.databinding.observable.Realm;
+import org.eclipse.core.databinding.observable.value.WritableValue;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * The validation status of a binding, stale while a new status is being
+ * computed asynchronously.
+ *
+ * @since 1.5
+ */
+public class ValidationStatusObservableValue extends WritableValue {
+	private boolean pending;
+
+	/**
+	 * @param realm
+	 */
+	public ValidationStatusObservableValue(Realm realm) {
+		super(realm, Status.OK_STATUS, IStatus.class);
+	}
+
+	public boolean isStale() {
+		ObservableTracker.getterCalled(this);
+		return pending;
+	}
+
+	/**
+	 * Sets whether a new status is being computed. A stale event is fired when
+	 * the status becomes pending, and a change event when it is not pending
+	 * anymore.
+	 *
+	 * @param pending
+	 */
+	public void setPending(boolean pending) {
+		checkRealm();
+		if (this.pending != pending) {
+			this.pending = pending;
+			if (pending) {
+				fireStale();
+			} else {
+				fireChange();
+			}
+		}
+	}
+
+	/**
+	 * Sets the status, and whether a new one is being computed still.
+	 *
+	 * @param status
+	 * @param pending
+	 */
+	public void setStatus(IStatus status, boolean pending) {
+		if (this.pending && !pending && doGetValue() != status) {
+			// the value change event notifies that the status is not stale
+			// anymore
+			this.pending = false;
+		}
+		setValue(status);
+		setPending(pending);
+	}
+}
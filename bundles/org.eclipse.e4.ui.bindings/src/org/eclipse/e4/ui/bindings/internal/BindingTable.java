@@ -16,6 +16,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.eclipse.core.commands.ParameterizedCommand;
 import org.eclipse.core.commands.contexts.Context;
@@ -32,6 +33,8 @@ import org.eclipse.jface.bindings.keys.KeyStroke;
 public class BindingTable {
 	static class BindingComparator implements Comparator<Binding> {
 		private String[] activeSchemeIds;
+		// incremented each time the order changes, lets the tables know their lists are stale
+		private int revision;
 
 		private final int compareSchemes(final String schemeId1, final String schemeId2) {
 			if (activeSchemeIds == null || activeSchemeIds.length == 0) {
@@ -52,6 +55,14 @@ public class BindingTable {
 
 		public void setActiveSchemes(String[] activeSchemeIds) {
 			this.activeSchemeIds = activeSchemeIds;
+			revision++;
+		}
+
+		/**
+		 * @return a number which changes each time the active schemes change the order
+		 */
+		int getRevision() {
+			return revision;
 		}
 
 		public int compare(Binding o1, Binding o2) {
@@ -113,13 +124,80 @@ public class BindingTable {
 		}
 	}
 
+	/**
+	 * A node of the trigger trie: the node reached from the root by following the triggers of a
+	 * sequence holds the binding for that sequence, and its descendants hold the bindings the
+	 * sequence is a prefix of.
+	 */
+	static final class TriggerNode {
+		private Map<Trigger, TriggerNode> children;
+		private Binding binding;
+		// when the binding was added to the table, partial matches are returned in that order
+		private int order;
+		// number of bindings held by this node and its descendants
+		private int size;
+
+		TriggerNode getChild(Trigger trigger) {
+			return children == null ? null : children.get(trigger);
+		}
+
+		TriggerNode getOrCreateChild(Trigger trigger) {
+			if (children == null) {
+				children = new HashMap<Trigger, TriggerNode>(4);
+			}
+			TriggerNode child = children.get(trigger);
+			if (child == null) {
+				child = new TriggerNode();
+				children.put(trigger, child);
+			}
+			return child;
+		}
+
+		void removeChild(Trigger trigger) {
+			children.remove(trigger);
+			if (children.isEmpty()) {
+				children = null;
+			}
+		}
+
+		/**
+		 * @return true if a binding starts with the sequence of this node and is longer
+		 */
+		boolean hasDescendants() {
+			return size > (binding == null ? 0 : 1);
+		}
+
+		void collectDescendants(List<TriggerNode> result) {
+			if (children == null) {
+				return;
+			}
+			for (TriggerNode child : children.values()) {
+				if (child.binding != null) {
+					result.add(child);
+				}
+				child.collectDescendants(result);
+			}
+		}
+	}
+
+	private static final Comparator<TriggerNode> INSERTION_ORDER = new Comparator<TriggerNode>() {
+		public int compare(TriggerNode node1, TriggerNode node2) {
+			return node1.order < node2.order ? -1 : (node1.order == node2.order ? 0 : 1);
+		}
+	};
+
 	public static final BindingComparator BEST_SEQUENCE = new BindingComparator();
 
 	private Context tableId;
 	private ArrayList<Binding> bindings = new ArrayList<Binding>();
-	private Map<TriggerSequence, Binding> bindingsByTrigger = new HashMap<TriggerSequence, Binding>();
 	private Map<ParameterizedCommand, ArrayList<Binding>> bindingsByCommand = new HashMap<ParameterizedCommand, ArrayList<Binding>>();
-	private Map<TriggerSequence, ArrayList<Binding>> bindingsByPrefix = new HashMap<TriggerSequence, ArrayList<Binding>>();
+	// the revision of BEST_SEQUENCE the lists of bindingsByCommand are sorted with
+	private int sequencesRevision = BEST_SEQUENCE.getRevision();
+	private TriggerNode bindingsByTrigger = new TriggerNode();
+	// number of bindings ever added to the trie, orders the partial matches
+	private int insertions;
+	// incremented on each change, lets BindingTableManager know its lookups are stale
+	private int revision;
 	private Map<TriggerSequence, ArrayList<Binding>> conflicts = new HashMap<TriggerSequence, ArrayList<Binding>>();
 
 	/**
@@ -158,15 +236,16 @@ public class BindingTable {
 			throw new IllegalArgumentException("Binding context " + binding.getContextId() //$NON-NLS-1$
 					+ " does not match " + getId()); //$NON-NLS-1$
 		}
+		revision++;
 
 		Binding conflict;
 		ArrayList<Binding> conflictsList;
 		boolean isConflict = false;
 
 		// if this binding conflicts with one other active binding
-		if (bindingsByTrigger.containsKey(binding.getTriggerSequence())) {
+		conflict = getPerfectMatch(binding.getTriggerSequence());
+		if (conflict != null) {
 			// remove the active binding and put it in the conflicts map
-			conflict = bindingsByTrigger.get(binding.getTriggerSequence());
 			removeBinding(conflict);
 			conflictsList = new ArrayList<Binding>();
 			conflictsList.add(conflict);
@@ -188,26 +267,91 @@ public class BindingTable {
 		// if there are no conflicts, then add to the table
 		if (!isConflict) {
 			bindings.add(binding);
-			bindingsByTrigger.put(binding.getTriggerSequence(), binding);
+			addTriggerNode(binding);
 
+			checkSequencesOrder();
 			ArrayList<Binding> sequences = bindingsByCommand.get(binding.getParameterizedCommand());
 			if (sequences == null) {
 				sequences = new ArrayList<Binding>();
 				bindingsByCommand.put(binding.getParameterizedCommand(), sequences);
 			}
-			sequences.add(binding);
+			insertSorted(sequences, binding);
+		}
+	}
+
+	private void addTriggerNode(Binding binding) {
+		Trigger[] triggers = binding.getTriggerSequence().getTriggers();
+		TriggerNode node = bindingsByTrigger;
+		node.size++;
+		for (int i = 0; i < triggers.length; i++) {
+			node = node.getOrCreateChild(triggers[i]);
+			node.size++;
+		}
+		node.binding = binding;
+		node.order = insertions++;
+	}
+
+	private void removeTriggerNode(Binding binding) {
+		Trigger[] triggers = binding.getTriggerSequence().getTriggers();
+		TriggerNode[] path = new TriggerNode[triggers.length + 1];
+		path[0] = bindingsByTrigger;
+		for (int i = 0; i < triggers.length; i++) {
+			path[i + 1] = path[i].getChild(triggers[i]);
+			if (path[i + 1] == null) {
+				return;
+			}
+		}
+		if (path[triggers.length].binding == null) {
+			return;
+		}
+		path[triggers.length].binding = null;
+		for (int i = triggers.length; i >= 0; i--) {
+			path[i].size--;
+			if (i > 0 && path[i].size == 0) {
+				path[i - 1].removeChild(triggers[i - 1]);
+			}
+		}
+	}
+
+	private TriggerNode findTriggerNode(TriggerSequence sequence) {
+		Trigger[] triggers = sequence.getTriggers();
+		TriggerNode node = bindingsByTrigger;
+		for (int i = 0; i < triggers.length && node != null; i++) {
+			node = node.getChild(triggers[i]);
+		}
+		return node;
+	}
+
+	/**
+	 * Sort the bindings of each command again if the active schemes changed the order of
+	 * {@link #BEST_SEQUENCE} since they were sorted.
+	 */
+	private void checkSequencesOrder() {
+		int currentRevision = BEST_SEQUENCE.getRevision();
+		if (sequencesRevision == currentRevision) {
+			return;
+		}
+		for (ArrayList<Binding> sequences : bindingsByCommand.values()) {
 			Collections.sort(sequences, BEST_SEQUENCE);
+		}
+		sequencesRevision = currentRevision;
+	}
 
-			TriggerSequence[] prefs = binding.getTriggerSequence().getPrefixes();
-			for (int i = 1; i < prefs.length; i++) {
-				ArrayList<Binding> bindings = bindingsByPrefix.get(prefs[i]);
-				if (bindings == null) {
-					bindings = new ArrayList<Binding>();
-					bindingsByPrefix.put(prefs[i], bindings);
-				}
-				bindings.add(binding);
+	/**
+	 * Insert the binding after the bindings which are not worse, as sorting the list with
+	 * {@link #BEST_SEQUENCE} after appending it would.
+	 */
+	private static void insertSorted(List<Binding> sequences, Binding binding) {
+		int index = Collections.binarySearch(sequences, binding, BEST_SEQUENCE);
+		if (index < 0) {
+			index = -index - 1;
+		} else {
+			while (index < sequences.size()
+					&& BEST_SEQUENCE.compare(sequences.get(index), binding) == 0) {
+				index++;
 			}
 		}
+		sequences.add(index, binding);
 	}
 
 	public void removeBinding(Binding binding) {
@@ -215,10 +359,11 @@ public class BindingTable {
 			throw new IllegalArgumentException("Binding context " + binding.getContextId() //$NON-NLS-1$
 					+ " does not match " + getId()); //$NON-NLS-1$
 		}
+		revision++;
 		ArrayList<Binding> conflictBindings = conflicts.get(binding.getTriggerSequence());
 
 		// if this binding is in the conflicts map, then remove it
-		if (!bindingsByTrigger.containsKey(binding.getTriggerSequence())
+		if (getPerfectMatch(binding.getTriggerSequence()) == null
 				&& conflictBindings != null) {
 
 			conflictBindings.remove(binding);
@@ -232,25 +377,22 @@ public class BindingTable {
 
 		} else {
 			bindings.remove(binding);
-			bindingsByTrigger.remove(binding.getTriggerSequence());
+			removeTriggerNode(binding);
 			ArrayList<Binding> sequences = bindingsByCommand.get(binding.getParameterizedCommand());
 
 			if (sequences != null) {
 				sequences.remove(binding);
 			}
-			TriggerSequence[] prefs = binding.getTriggerSequence().getPrefixes();
-			for (int i = 1; i < prefs.length; i++) {
-				ArrayList<Binding> bindings = bindingsByPrefix.get(prefs[i]);
-				bindings.remove(binding);
-			}
 		}
 	}
 
 	public Binding getPerfectMatch(TriggerSequence trigger) {
-		return bindingsByTrigger.get(trigger);
+		TriggerNode node = findTriggerNode(trigger);
+		return node == null ? null : node.binding;
 	}
 
 	public Binding getBestSequenceFor(ParameterizedCommand command) {
+		checkSequencesOrder();
 		ArrayList<Binding> sequences = bindingsByCommand.get(command);
 		if (sequences != null && sequences.size() > 0) {
 			return sequences.get(0);
@@ -259,20 +401,47 @@ public class BindingTable {
 	}
 
 	public Collection<Binding> getSequencesFor(ParameterizedCommand command) {
+		checkSequencesOrder();
 		ArrayList<Binding> triggers = bindingsByCommand.get(command);
 		return (Collection<Binding>) (triggers == null ? Collections.EMPTY_LIST : triggers.clone());
 	}
 
 	public Collection<Binding> getPartialMatches(TriggerSequence sequence) {
-		return bindingsByPrefix.get(sequence);
+		if (sequence.isEmpty()) {
+			return null;
+		}
+		TriggerNode node = findTriggerNode(sequence);
+		if (node == null || !node.hasDescendants()) {
+			return null;
+		}
+		ArrayList<TriggerNode> descendants = new ArrayList<TriggerNode>(node.size);
+		node.collectDescendants(descendants);
+		// the trie is walked depth first, return the bindings in the order they were added
+		Collections.sort(descendants, INSERTION_ORDER);
+		ArrayList<Binding> partialMatches = new ArrayList<Binding>(descendants.size());
+		for (TriggerNode descendant : descendants) {
+			partialMatches.add(descendant.binding);
+		}
+		return partialMatches;
 	}
 
 	public boolean isPartialMatch(TriggerSequence seq) {
-		return bindingsByPrefix.get(seq) != null;
+		if (seq.isEmpty()) {
+			return false;
+		}
+		TriggerNode node = findTriggerNode(seq);
+		return node != null && node.hasDescendants();
 	}
 
 	public Collection<Binding> getBindings() {
 		return Collections.unmodifiableCollection(bindings);
 	}
 
+	/**
+	 * @return a number which changes each time a binding is added or removed
+	 */
+	int getRevision() {
+		return revision;
+	}
+
 }
@@ -14,8 +14,13 @@ package org.eclipse.e4.ui.bindings.internal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 import javax.inject.Inject;
 import org.eclipse.core.commands.ParameterizedCommand;
 import org.eclipse.core.commands.contexts.Context;
@@ -27,8 +32,40 @@ import org.eclipse.jface.bindings.TriggerSequence;
  * manage tables of bindings that can be used to look up commands from keys.
  */
 public class BindingTableManager {
+	/**
+	 * The active bindings of the tables of a context set, flattened so that the lookups done for
+	 * each key stroke don't have to go through every table. Only valid while none of its tables
+	 * change.
+	 */
+	static class ResolvedBindings {
+		private final BindingTable[] tables;
+		private final int[] revisions;
+		private final Map<TriggerSequence, Binding> perfectMatches = new HashMap<TriggerSequence, Binding>();
+		private final Set<TriggerSequence> partialMatches = new HashSet<TriggerSequence>();
+
+		ResolvedBindings(List<BindingTable> tables) {
+			this.tables = tables.toArray(new BindingTable[tables.size()]);
+			revisions = new int[this.tables.length];
+			for (int i = 0; i < this.tables.length; i++) {
+				revisions[i] = this.tables[i].getRevision();
+			}
+		}
+
+		boolean isValid() {
+			for (int i = 0; i < tables.length; i++) {
+				if (tables[i].getRevision() != revisions[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
 	private static final String BINDING_TABLE_PREFIX = "bindingTable:"; //$NON-NLS-1$
 
+	// a few context sets are active at a time, one per window and dialog
+	private static final int RESOLVED_BINDINGS_CACHE_SIZE = 8;
+
 	@Inject
 	private IEclipseContext eclipseContext;
 
@@ -36,6 +73,16 @@ public class BindingTableManager {
 
 	private String[] activeSchemeIds;
 
+	private Map<ContextSet, ResolvedBindings> resolvedBindings = new LinkedHashMap<ContextSet, ResolvedBindings>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ContextSet, ResolvedBindings> eldest) {
+			return size() > RESOLVED_BINDINGS_CACHE_SIZE;
+		}
+	};
+
 	public void addTable(BindingTable table) {
 		String contextId = getTableId(table.getId());
 		if (eclipseContext.containsKey(contextId)) {
@@ -43,6 +90,7 @@ public class BindingTableManager {
 			//			throw new IllegalArgumentException("Already contains table " + contextId); //$NON-NLS-1$
 		}
 		eclipseContext.set(contextId, table);
+		resolvedBindings.clear();
 		final List<Context> contexts = definedTables.getContexts();
 		if (!contexts.contains(table.getTableId())) {
 			// this is only valid because I'm throwing away the old definedTables contextSet
@@ -61,6 +109,7 @@ public class BindingTableManager {
 			throw new IllegalArgumentException("Does not contains table " + contextId); //$NON-NLS-1$
 		}
 		eclipseContext.remove(contextId);
+		resolvedBindings.clear();
 		final List<Context> contexts = definedTables.getContexts();
 		if (contexts.contains(table.getTableId())) {
 			// this is only valid because I'm throwing away the old definedTables contextSet
@@ -120,31 +169,57 @@ public class BindingTableManager {
 	}
 
 	public Binding getPerfectMatch(ContextSet contextSet, TriggerSequence triggerSequence) {
-		Binding result = null;
-		Binding currentResult = null;
+		return getResolvedBindings(contextSet).perfectMatches.get(triggerSequence);
+	}
+
+	/**
+	 * Return the flattened bindings of the context set, computed again when a context set is
+	 * looked up for the first time or after one of its tables changed.
+	 */
+	private ResolvedBindings getResolvedBindings(ContextSet contextSet) {
+		ResolvedBindings resolved = resolvedBindings.get(contextSet);
+		if (resolved == null || !resolved.isValid()) {
+			resolved = resolveBindings(contextSet);
+			resolvedBindings.put(contextSet, resolved);
+		}
+		return resolved;
+	}
+
+	private ResolvedBindings resolveBindings(ContextSet contextSet) {
+		ArrayList<BindingTable> tables = new ArrayList<BindingTable>();
 		List<Context> contexts = contextSet.getContexts();
 		ListIterator<Context> it = contexts.listIterator(contexts.size());
 		while (it.hasPrevious()) {
-			Context c = it.previous();
-			BindingTable table = getTable(c.getId());
+			BindingTable table = getTable(it.previous().getId());
 			if (table != null) {
-				currentResult = table.getPerfectMatch(triggerSequence);
+				tables.add(table);
 			}
-			if (currentResult != null) {
-				if (isMostActiveScheme(currentResult)) {
-					return currentResult;
-				}
-				if (result == null) {
-					result = currentResult;
-				} else {
-					int rc = compareSchemes(result.getSchemeId(), currentResult.getSchemeId());
-					if (rc < 0) {
-						result = currentResult;
+		}
+		ResolvedBindings resolved = new ResolvedBindings(tables);
+		// the triggers bound in the most active scheme, those cannot be overridden
+		Set<TriggerSequence> resolvedTriggers = new HashSet<TriggerSequence>();
+		for (BindingTable table : tables) {
+			for (Binding binding : table.getBindings()) {
+				TriggerSequence triggerSequence = binding.getTriggerSequence();
+				// the table decides between its own bindings for the sequence
+				Binding match = table.getPerfectMatch(triggerSequence);
+				if (match != null && !resolvedTriggers.contains(triggerSequence)) {
+					Binding result = resolved.perfectMatches.get(triggerSequence);
+					if (isMostActiveScheme(match)) {
+						resolved.perfectMatches.put(triggerSequence, match);
+						resolvedTriggers.add(triggerSequence);
+					} else if (result == null
+							|| compareSchemes(result.getSchemeId(), match.getSchemeId()) < 0) {
+						resolved.perfectMatches.put(triggerSequence, match);
 					}
 				}
+				TriggerSequence[] prefixes = triggerSequence.getPrefixes();
+				for (int i = 1; i < prefixes.length; i++) {
+					resolved.partialMatches.add(prefixes[i]);
+				}
 			}
 		}
-		return result;
+		return resolved;
 	}
 
 	/**
@@ -203,18 +278,7 @@ public class BindingTableManager {
 	}
 
 	public boolean isPartialMatch(ContextSet contextSet, TriggerSequence sequence) {
-		List<Context> contexts = contextSet.getContexts();
-		ListIterator<Context> it = contexts.listIterator(contexts.size());
-		while (it.hasPrevious()) {
-			Context c = it.previous();
-			BindingTable table = getTable(c.getId());
-			if (table != null) {
-				if (table.isPartialMatch(sequence)) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return getResolvedBindings(contextSet).partialMatches.contains(sequence);
 	}
 
 	public Collection<Binding> getPartialMatches(ContextSet contextSet, TriggerSequence sequence) {
@@ -239,6 +303,7 @@ public class BindingTableManager {
 	 */
 	public void setActiveSchemes(String[] activeSchemeIds) {
 		this.activeSchemeIds = activeSchemeIds;
+		resolvedBindings.clear();
 		BindingTable.BEST_SEQUENCE.setActiveSchemes(activeSchemeIds);
 	}
 
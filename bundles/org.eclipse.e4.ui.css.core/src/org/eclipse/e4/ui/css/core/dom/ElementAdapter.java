@@ -387,4 +387,16 @@ public abstract class ElementAdapter implements Element, CSSStylableElement {
 			engine.handleExceptions(ex);
 		}
 	}
+
+	/**
+	 * Apply styles after the pseudo class or attribute <code>name</code> of
+	 * the native widget changed, to the elements whose styles depend on it.
+	 */
+	protected void doApplyStyles(String name) {
+		try {
+			engine.applyStylesOnAttributeChange(getNativeWidget(), name);
+		} catch (Exception ex) {
+			engine.handleExceptions(ex);
+		}
+	}
 }
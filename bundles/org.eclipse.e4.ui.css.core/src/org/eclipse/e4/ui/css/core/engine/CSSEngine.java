@@ -221,6 +221,18 @@ public interface CSSEngine {
 	public void applyStyles(Object node, boolean applyStylesToChildNodes,
 			boolean computeDefaultStyle);
 
+	/**
+	 * Apply styles after the attribute or pseudo class <code>attribute</code>
+	 * (ex : class, id, selected) of the Object node has changed. Only the
+	 * nodes which can be affected by this attribute according to the
+	 * selectors of the style sheets, and whose computed styles actually
+	 * changed, are styled again.
+	 * 
+	 * @param node
+	 * @param attribute
+	 */
+	public void applyStylesOnAttributeChange(Object node, String attribute);
+
 	/*--------------- Apply style declaration -----------------*/
 
 	/**
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.css.core.impl.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.e4.ui.css.core.dom.CSSStylableElement;
+import org.eclipse.e4.ui.css.core.dom.ExtendedCSSRule;
+import org.eclipse.e4.ui.css.core.impl.sac.ExtendedSelector;
+import org.w3c.css.sac.AttributeCondition;
+import org.w3c.css.sac.CombinatorCondition;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.DescendantSelector;
+import org.w3c.css.sac.ElementSelector;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.css.sac.SiblingSelector;
+import org.w3c.css.sac.SimpleSelector;
+import org.w3c.dom.Element;
+import org.w3c.dom.css.CSSRule;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleRule;
+
+/**
+ * Index of the style rules of a style sheet, bucketed by the rightmost simple
+ * selector of each of their selectors (id, class, element local name or
+ * universal). The index only narrows down the rules which could match a given
+ * element: every candidate returned by {@link #getCandidates(Element)} must
+ * still be tested with {@link ExtendedSelector#match(Element, String)}.
+ */
+public class CSSRuleIndex {
+
+	/**
+	 * A selector of a style rule together with its position in the style
+	 * sheet.
+	 */
+	public static final class Entry {
+
+		private final CSSStyleRule rule;
+		private final ExtendedSelector selector;
+		private final int order;
+
+		Entry(CSSStyleRule rule, ExtendedSelector selector, int order) {
+			this.rule = rule;
+			this.selector = selector;
+			this.order = order;
+		}
+
+		public CSSStyleRule getRule() {
+			return rule;
+		}
+
+		public ExtendedSelector getSelector() {
+			return selector;
+		}
+
+		/**
+		 * Returns the position of this selector in the style sheet, counting
+		 * every selector of every style rule.
+		 */
+		public int getOrder() {
+			return order;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER_COMPARATOR = new Comparator<Entry>() {
+		public int compare(Entry entry1, Entry entry2) {
+			return entry1.order - entry2.order;
+		}
+	};
+
+	private final Map<String, List<Entry>> idRules = new HashMap<String, List<Entry>>();
+
+	private final Map<String, List<Entry>> classRules = new HashMap<String, List<Entry>>();
+
+	private final Map<String, List<Entry>> elementRules = new HashMap<String, List<Entry>>();
+
+	private final List<Entry> universalRules = new ArrayList<Entry>();
+
+	private final List<Entry> allRules = new ArrayList<Entry>();
+
+	private final int ruleCount;
+
+	/**
+	 * Builds the index for the style rules of the given rule list.
+	 */
+	public CSSRuleIndex(CSSRuleList ruleList) {
+		int order = 0;
+		int length = ruleList.getLength();
+		ruleCount = length;
+		for (int i = 0; i < length; i++) {
+			CSSRule rule = ruleList.item(i);
+			if (rule.getType() != CSSRule.STYLE_RULE
+					|| !(rule instanceof ExtendedCSSRule)) {
+				continue;
+			}
+			SelectorList selectorList = ((ExtendedCSSRule) rule)
+					.getSelectorList();
+			int l = selectorList.getLength();
+			for (int j = 0; j < l; j++) {
+				Selector selector = selectorList.item(j);
+				if (selector instanceof ExtendedSelector) {
+					Entry entry = new Entry((CSSStyleRule) rule,
+							(ExtendedSelector) selector, order++);
+					allRules.add(entry);
+					addEntry(entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of rules of the rule list when this index was built.
+	 */
+	int getRuleCount() {
+		return ruleCount;
+	}
+
+	/**
+	 * Returns all indexed selectors, in style sheet order.
+	 */
+	public List<Entry> getEntries() {
+		return allRules;
+	}
+
+	/**
+	 * Returns the selectors which could match the given element, in style
+	 * sheet order. The returned list must not be modified.
+	 */
+	public List<Entry> getCandidates(Element element) {
+		List<List<Entry>> buckets = new ArrayList<List<Entry>>(4);
+		addBucket(buckets, universalRules);
+		addBucket(buckets, elementRules.get(getElementName(element)));
+		String id = getId(element);
+		if (id != null && id.length() > 0) {
+			addBucket(buckets, idRules.get(id));
+		}
+		String classes = getClasses(element);
+		if (classes != null && classes.length() > 0 && !classRules.isEmpty()) {
+			int length = classes.length();
+			int start = -1;
+			for (int i = 0; i <= length; i++) {
+				if (i == length || Character.isSpaceChar(classes.charAt(i))) {
+					if (start != -1) {
+						addBucket(buckets,
+								classRules.get(classes.substring(start, i)));
+						start = -1;
+					}
+				} else if (start == -1) {
+					start = i;
+				}
+			}
+		}
+		switch (buckets.size()) {
+		case 0:
+			return Collections.emptyList();
+		case 1:
+			return buckets.get(0);
+		}
+		List<Entry> candidates = new ArrayList<Entry>();
+		for (List<Entry> bucket : buckets) {
+			candidates.addAll(bucket);
+		}
+		Collections.sort(candidates, ORDER_COMPARATOR);
+		return candidates;
+	}
+
+	private static void addBucket(List<List<Entry>> buckets,
+			List<Entry> bucket) {
+		// a class may be listed twice in the class attribute
+		if (bucket != null && !bucket.isEmpty()
+				&& !containsBucket(buckets, bucket)) {
+			buckets.add(bucket);
+		}
+	}
+
+	private static boolean containsBucket(List<List<Entry>> buckets,
+			List<Entry> bucket) {
+		for (List<Entry> b : buckets) {
+			if (b == bucket) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addEntry(Entry entry) {
+		SimpleSelector subject = getSubject(entry.selector);
+		if (subject instanceof ConditionalSelector) {
+			Condition condition = ((ConditionalSelector) subject)
+					.getCondition();
+			String id = findConditionValue(condition,
+					Condition.SAC_ID_CONDITION);
+			if (id != null) {
+				addEntry(idRules, id, entry);
+				return;
+			}
+			String cssClass = findConditionValue(condition,
+					Condition.SAC_CLASS_CONDITION);
+			if (cssClass != null) {
+				addEntry(classRules, cssClass, entry);
+				return;
+			}
+			subject = ((ConditionalSelector) subject).getSimpleSelector();
+		}
+		if (subject != null
+				&& subject.getSelectorType() == Selector.SAC_ELEMENT_NODE_SELECTOR) {
+			String name = ((ElementSelector) subject).getLocalName();
+			if (name != null) {
+				addEntry(elementRules, name, entry);
+				return;
+			}
+		}
+		universalRules.add(entry);
+	}
+
+	private static void addEntry(Map<String, List<Entry>> map, String key,
+			Entry entry) {
+		List<Entry> entries = map.get(key);
+		if (entries == null) {
+			entries = new ArrayList<Entry>();
+			map.put(key, entries);
+		}
+		entries.add(entry);
+	}
+
+	/**
+	 * Returns the simple selector which is tested against the element itself
+	 * (as opposed to its ancestors or siblings), or <code>null</code> if it
+	 * cannot be determined.
+	 */
+	private static SimpleSelector getSubject(Selector selector) {
+		switch (selector.getSelectorType()) {
+		case Selector.SAC_DESCENDANT_SELECTOR:
+		case Selector.SAC_CHILD_SELECTOR:
+			return getSubject(((DescendantSelector) selector)
+					.getSimpleSelector());
+		case Selector.SAC_DIRECT_ADJACENT_SELECTOR:
+			return getSubject(((SiblingSelector) selector)
+					.getSiblingSelector());
+		}
+		if (selector instanceof SimpleSelector) {
+			return (SimpleSelector) selector;
+		}
+		return null;
+	}
+
+	private static String findConditionValue(Condition condition, short type) {
+		if (condition.getConditionType() == type) {
+			return ((AttributeCondition) condition).getValue();
+		}
+		if (condition.getConditionType() == Condition.SAC_AND_CONDITION) {
+			CombinatorCondition combinator = (CombinatorCondition) condition;
+			String value = findConditionValue(combinator.getFirstCondition(),
+					type);
+			if (value == null) {
+				value = findConditionValue(combinator.getSecondCondition(),
+						type);
+			}
+			return value;
+		}
+		return null;
+	}
+
+	private static String getElementName(Element element) {
+		// same name as the one used by CSSElementSelectorImpl#match
+		if (element.getPrefix() == null) {
+			return element.getNodeName();
+		}
+		return element.getLocalName();
+	}
+
+	private static String getId(Element element) {
+		if (element instanceof CSSStylableElement) {
+			return ((CSSStylableElement) element).getCSSId();
+		}
+		return element.getAttribute("id");
+	}
+
+	private static String getClasses(Element element) {
+		if (element instanceof CSSStylableElement) {
+			return ((CSSStylableElement) element).getCSSClass();
+		}
+		return element.getAttribute("class");
+	}
+}
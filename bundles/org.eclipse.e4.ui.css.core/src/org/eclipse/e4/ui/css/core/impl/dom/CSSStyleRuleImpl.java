@@ -89,8 +89,7 @@ public class CSSStyleRuleImpl extends CSSRuleImpl implements CSSStyleRule, Exten
 
 
 	public CSSPropertyList getCSSPropertyList() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException("NOT YET IMPLEMENTED");
+		return styleDeclaration.getCSSPropertyList();
 	}
 
 	public void setStyle(CSSStyleDeclarationImpl styleDeclaration) {
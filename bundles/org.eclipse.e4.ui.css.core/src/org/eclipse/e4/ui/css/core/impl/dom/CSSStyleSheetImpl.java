@@ -25,6 +25,8 @@ import org.w3c.dom.stylesheets.StyleSheet;
 public class CSSStyleSheetImpl extends AbstractCSSNode implements CSSStyleSheet, Serializable {
 
 	private CSSRuleList rules = null;
+
+	private transient CSSRuleIndex ruleIndex = null;
 	
 	public CSSStyleSheetImpl() {
 		super();
@@ -38,7 +40,8 @@ public class CSSStyleSheetImpl extends AbstractCSSNode implements CSSStyleSheet,
 	 */
 	public void deleteRule(int position) throws DOMException {
 		try {
-			((CSSRuleListImpl) rules).remove(position);			
+			((CSSRuleListImpl) rules).remove(position);
+			ruleIndex = null;
 		} catch (IndexOutOfBoundsException ex) {
 			throw new DOMExceptionImpl(DOMException.INDEX_SIZE_ERR, DOMExceptionImpl.ARRAY_OUT_OF_BOUNDS, ex.getMessage());
 		}
@@ -149,5 +152,21 @@ public class CSSStyleSheetImpl extends AbstractCSSNode implements CSSStyleSheet,
 
 	public void setRuleList(CSSRuleList rules) {
 		this.rules = rules;
+		this.ruleIndex = null;
+	}
+
+	/**
+	 * Return the index of the style rules of this style sheet, built on first
+	 * access and discarded when the rule list changes.
+	 */
+	public CSSRuleIndex getRuleIndex() {
+		if (rules == null) {
+			return null;
+		}
+		if (ruleIndex == null
+				|| ruleIndex.getRuleCount() != rules.getLength()) {
+			ruleIndex = new CSSRuleIndex(rules);
+		}
+		return ruleIndex;
 	}
 }
@@ -0,0 +1,592 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.css.core.impl.dom;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.batik.css.parser.CSSLexicalUnit;
+import org.apache.batik.css.parser.CSSSelectorList;
+import org.eclipse.e4.ui.css.core.dom.CSSProperty;
+import org.eclipse.e4.ui.css.core.dom.CSSPropertyList;
+import org.w3c.css.sac.AttributeCondition;
+import org.w3c.css.sac.CSSException;
+import org.w3c.css.sac.CombinatorCondition;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionFactory;
+import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.DescendantSelector;
+import org.w3c.css.sac.ElementSelector;
+import org.w3c.css.sac.LangCondition;
+import org.w3c.css.sac.LexicalUnit;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorFactory;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.css.sac.SiblingSelector;
+import org.w3c.css.sac.SimpleSelector;
+import org.w3c.dom.css.CSSRule;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleSheet;
+import org.w3c.dom.css.CSSValue;
+
+/**
+ * Writes and reads the rules of a parsed style sheet in a compact binary
+ * format, so that a style sheet can be loaded again without running the CSS
+ * parser. Selectors and conditions are recreated with the selector and
+ * condition factories of the parser, and property values from SAC lexical
+ * units, so the loaded style sheet is the same as the parsed one.
+ * <p>
+ * Only the content produced by the default document handler is supported:
+ * style rules with {@link Measure}, {@link RGBColorImpl} and
+ * {@link CSSValueListImpl} values, and unknown rules. An {@link IOException}
+ * is thrown for anything else.
+ * </p>
+ */
+public class CSSStyleSheetSerializer {
+
+	/**
+	 * Version of the format, written first and checked when reading.
+	 */
+	private static final int VERSION = 1;
+
+	private static final byte STYLE_RULE = 1;
+	private static final byte UNKNOWN_RULE = 2;
+
+	private static final int NULL_STRING = -1;
+	private static final int NEW_STRING = -2;
+
+	private final Map<String, Integer> writtenStrings = new HashMap<String, Integer>();
+
+	private final List<String> readStrings = new ArrayList<String>();
+
+	private SelectorFactory selectorFactory;
+
+	private ConditionFactory conditionFactory;
+
+	/**
+	 * Write the rules of <code>styleSheet</code> to <code>out</code>.
+	 *
+	 * @throws IOException
+	 *             if the style sheet cannot be written, either because of an
+	 *             I/O error or because it contains unsupported content
+	 */
+	public static void writeStyleSheet(CSSStyleSheet styleSheet,
+			DataOutputStream out) throws IOException {
+		new CSSStyleSheetSerializer().write(styleSheet, out);
+	}
+
+	/**
+	 * Read a style sheet previously written by
+	 * {@link #writeStyleSheet(CSSStyleSheet, DataOutputStream)}, creating
+	 * the selectors with the given factories.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read or was written with another
+	 *             version of the format
+	 */
+	public static CSSStyleSheetImpl readStyleSheet(DataInputStream in,
+			SelectorFactory selectorFactory, ConditionFactory conditionFactory)
+			throws IOException {
+		CSSStyleSheetSerializer serializer = new CSSStyleSheetSerializer();
+		serializer.selectorFactory = selectorFactory;
+		serializer.conditionFactory = conditionFactory;
+		try {
+			return serializer.read(in);
+		} catch (CSSException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	private CSSStyleSheetSerializer() {
+	}
+
+	/*--------------- Write -----------------*/
+
+	private void write(CSSStyleSheet styleSheet, DataOutputStream out)
+			throws IOException {
+		out.writeInt(VERSION);
+		CSSRuleList rules = styleSheet.getCssRules();
+		int length = rules.getLength();
+		out.writeInt(length);
+		for (int i = 0; i < length; i++) {
+			writeRule(rules.item(i), out);
+		}
+	}
+
+	private void writeRule(CSSRule rule, DataOutputStream out)
+			throws IOException {
+		if (rule instanceof CSSStyleRuleImpl) {
+			CSSStyleRuleImpl styleRule = (CSSStyleRuleImpl) rule;
+			out.writeByte(STYLE_RULE);
+			SelectorList selectors = styleRule.getSelectorList();
+			int length = selectors.getLength();
+			out.writeInt(length);
+			for (int i = 0; i < length; i++) {
+				writeSelector(selectors.item(i), out);
+			}
+			CSSPropertyList properties = styleRule.getCSSPropertyList();
+			length = properties.getLength();
+			out.writeInt(length);
+			for (int i = 0; i < length; i++) {
+				CSSProperty property = properties.item(i);
+				writeString(property.getName(), out);
+				out.writeBoolean(property.isImportant());
+				writeValue(property.getValue(), out);
+			}
+		} else if (rule instanceof CSSUnknownRuleImpl) {
+			out.writeByte(UNKNOWN_RULE);
+		} else {
+			throw new IOException("Unsupported rule type: " + rule.getType());
+		}
+	}
+
+	private void writeSelector(Selector selector, DataOutputStream out)
+			throws IOException {
+		short type = selector.getSelectorType();
+		out.writeShort(type);
+		switch (type) {
+		case Selector.SAC_ELEMENT_NODE_SELECTOR:
+		case Selector.SAC_PSEUDO_ELEMENT_SELECTOR:
+			ElementSelector elementSelector = (ElementSelector) selector;
+			writeString(elementSelector.getNamespaceURI(), out);
+			writeString(elementSelector.getLocalName(), out);
+			break;
+		case Selector.SAC_CONDITIONAL_SELECTOR:
+			ConditionalSelector conditionalSelector = (ConditionalSelector) selector;
+			writeSelector(conditionalSelector.getSimpleSelector(), out);
+			writeCondition(conditionalSelector.getCondition(), out);
+			break;
+		case Selector.SAC_DESCENDANT_SELECTOR:
+		case Selector.SAC_CHILD_SELECTOR:
+			DescendantSelector descendantSelector = (DescendantSelector) selector;
+			writeSelector(descendantSelector.getAncestorSelector(), out);
+			writeSelector(descendantSelector.getSimpleSelector(), out);
+			break;
+		case Selector.SAC_DIRECT_ADJACENT_SELECTOR:
+			SiblingSelector siblingSelector = (SiblingSelector) selector;
+			out.writeShort(siblingSelector.getNodeType());
+			writeSelector(siblingSelector.getSelector(), out);
+			writeSelector(siblingSelector.getSiblingSelector(), out);
+			break;
+		default:
+			throw new IOException("Unsupported selector type: " + type);
+		}
+	}
+
+	private void writeCondition(Condition condition, DataOutputStream out)
+			throws IOException {
+		short type = condition.getConditionType();
+		out.writeShort(type);
+		switch (type) {
+		case Condition.SAC_AND_CONDITION:
+			CombinatorCondition combinatorCondition = (CombinatorCondition) condition;
+			writeCondition(combinatorCondition.getFirstCondition(), out);
+			writeCondition(combinatorCondition.getSecondCondition(), out);
+			break;
+		case Condition.SAC_ATTRIBUTE_CONDITION:
+		case Condition.SAC_ONE_OF_ATTRIBUTE_CONDITION:
+		case Condition.SAC_BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+			AttributeCondition attributeCondition = (AttributeCondition) condition;
+			writeString(attributeCondition.getLocalName(), out);
+			writeString(attributeCondition.getNamespaceURI(), out);
+			out.writeBoolean(attributeCondition.getSpecified());
+			writeString(attributeCondition.getValue(), out);
+			break;
+		case Condition.SAC_ID_CONDITION:
+		case Condition.SAC_CLASS_CONDITION:
+		case Condition.SAC_PSEUDO_CLASS_CONDITION:
+			attributeCondition = (AttributeCondition) condition;
+			writeString(attributeCondition.getNamespaceURI(), out);
+			writeString(attributeCondition.getValue(), out);
+			break;
+		case Condition.SAC_LANG_CONDITION:
+			writeString(((LangCondition) condition).getLang(), out);
+			break;
+		default:
+			throw new IOException("Unsupported condition type: " + type);
+		}
+	}
+
+	/**
+	 * Write the lexical units of a value: one unit for a primitive value, one
+	 * per item for a list.
+	 */
+	private void writeValue(CSSValue value, DataOutputStream out)
+			throws IOException {
+		if (value instanceof CSSValueListImpl) {
+			List<CSSValue> values = ((CSSValueListImpl) value).values;
+			out.writeInt(values.size());
+			for (CSSValue item : values) {
+				writePrimitiveValue(item, out);
+			}
+		} else {
+			out.writeInt(1);
+			writePrimitiveValue(value, out);
+		}
+	}
+
+	private void writePrimitiveValue(CSSValue value, DataOutputStream out)
+			throws IOException {
+		if (value instanceof Measure) {
+			writeLexicalUnit(((Measure) value).value, out);
+		} else if (value instanceof RGBColorImpl) {
+			// the color doesn't keep its lexical unit, write the one
+			// RGBColorImpl(LexicalUnit) expects
+			RGBColorImpl color = (RGBColorImpl) value;
+			out.writeShort(LexicalUnit.SAC_RGBCOLOR);
+			out.writeInt(5);
+			writeMeasure(color.getRed(), out);
+			out.writeShort(LexicalUnit.SAC_OPERATOR_COMMA);
+			writeMeasure(color.getGreen(), out);
+			out.writeShort(LexicalUnit.SAC_OPERATOR_COMMA);
+			writeMeasure(color.getBlue(), out);
+		} else {
+			throw new IOException("Unsupported value: "
+					+ value.getClass().getName());
+		}
+	}
+
+	private void writeMeasure(CSSValue value, DataOutputStream out)
+			throws IOException {
+		if (!(value instanceof Measure)) {
+			throw new IOException("Unsupported value: "
+					+ value.getClass().getName());
+		}
+		writeLexicalUnit(((Measure) value).value, out);
+	}
+
+	/**
+	 * Write a single lexical unit, without the units following it.
+	 */
+	private void writeLexicalUnit(LexicalUnit unit, DataOutputStream out)
+			throws IOException {
+		short type = unit.getLexicalUnitType();
+		out.writeShort(type);
+		switch (type) {
+		case LexicalUnit.SAC_INTEGER:
+			out.writeInt(unit.getIntegerValue());
+			break;
+		case LexicalUnit.SAC_DIMENSION:
+			out.writeFloat(unit.getFloatValue());
+			writeString(unit.getDimensionUnitText(), out);
+			break;
+		case LexicalUnit.SAC_FUNCTION:
+			writeString(unit.getFunctionName(), out);
+			writeLexicalUnits(unit.getParameters(), out);
+			break;
+		case LexicalUnit.SAC_RGBCOLOR:
+		case LexicalUnit.SAC_RECT_FUNCTION:
+		case LexicalUnit.SAC_COUNTER_FUNCTION:
+		case LexicalUnit.SAC_COUNTERS_FUNCTION:
+			writeLexicalUnits(unit.getParameters(), out);
+			break;
+		case LexicalUnit.SAC_IDENT:
+		case LexicalUnit.SAC_STRING_VALUE:
+		case LexicalUnit.SAC_URI:
+		case LexicalUnit.SAC_ATTR:
+		case LexicalUnit.SAC_UNICODERANGE:
+			writeString(unit.getStringValue(), out);
+			break;
+		default:
+			if (isFloatType(type)) {
+				out.writeFloat(unit.getFloatValue());
+			} else if (!isSimpleType(type)) {
+				throw new IOException("Unsupported lexical unit type: " + type);
+			}
+		}
+	}
+
+	private void writeLexicalUnits(LexicalUnit unit, DataOutputStream out)
+			throws IOException {
+		int count = 0;
+		for (LexicalUnit u = unit; u != null; u = u.getNextLexicalUnit()) {
+			count++;
+		}
+		out.writeInt(count);
+		for (LexicalUnit u = unit; u != null; u = u.getNextLexicalUnit()) {
+			writeLexicalUnit(u, out);
+		}
+	}
+
+	private void writeString(String s, DataOutputStream out)
+			throws IOException {
+		if (s == null) {
+			out.writeInt(NULL_STRING);
+			return;
+		}
+		// every string is written once, selectors and values repeat a lot
+		Integer index = writtenStrings.get(s);
+		if (index != null) {
+			out.writeInt(index.intValue());
+		} else {
+			writtenStrings.put(s, new Integer(writtenStrings.size()));
+			out.writeInt(NEW_STRING);
+			out.writeUTF(s);
+		}
+	}
+
+	/*--------------- Read -----------------*/
+
+	private CSSStyleSheetImpl read(DataInputStream in) throws IOException {
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version: " + version);
+		}
+		CSSStyleSheetImpl styleSheet = new CSSStyleSheetImpl();
+		CSSRuleListImpl rules = new CSSRuleListImpl();
+		int length = in.readInt();
+		for (int i = 0; i < length; i++) {
+			rules.add(readRule(styleSheet, in));
+		}
+		styleSheet.setRuleList(rules);
+		return styleSheet;
+	}
+
+	private CSSRule readRule(CSSStyleSheet styleSheet, DataInputStream in)
+			throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case STYLE_RULE:
+			CSSSelectorList selectors = new CSSSelectorList();
+			int length = in.readInt();
+			for (int i = 0; i < length; i++) {
+				selectors.append(readSelector(in));
+			}
+			CSSStyleRuleImpl rule = new CSSStyleRuleImpl(styleSheet, null,
+					selectors);
+			CSSStyleDeclarationImpl declaration = new CSSStyleDeclarationImpl(
+					rule);
+			rule.setStyle(declaration);
+			length = in.readInt();
+			for (int i = 0; i < length; i++) {
+				String name = readString(in);
+				boolean important = in.readBoolean();
+				declaration.addProperty(new CSSPropertyImpl(name,
+						readValue(in), important));
+			}
+			return rule;
+		case UNKNOWN_RULE:
+			return new CSSUnknownRuleImpl(styleSheet, null, null);
+		default:
+			throw new IOException("Unknown rule type: " + type);
+		}
+	}
+
+	private Selector readSelector(DataInputStream in) throws IOException {
+		short type = in.readShort();
+		switch (type) {
+		case Selector.SAC_ELEMENT_NODE_SELECTOR:
+			String namespaceURI = readString(in);
+			return selectorFactory.createElementSelector(namespaceURI,
+					readString(in));
+		case Selector.SAC_PSEUDO_ELEMENT_SELECTOR:
+			namespaceURI = readString(in);
+			return selectorFactory.createPseudoElementSelector(namespaceURI,
+					readString(in));
+		case Selector.SAC_CONDITIONAL_SELECTOR:
+			SimpleSelector simpleSelector = readSimpleSelector(in);
+			return selectorFactory.createConditionalSelector(simpleSelector,
+					readCondition(in));
+		case Selector.SAC_DESCENDANT_SELECTOR:
+			Selector ancestorSelector = readSelector(in);
+			return selectorFactory.createDescendantSelector(ancestorSelector,
+					readSimpleSelector(in));
+		case Selector.SAC_CHILD_SELECTOR:
+			ancestorSelector = readSelector(in);
+			return selectorFactory.createChildSelector(ancestorSelector,
+					readSimpleSelector(in));
+		case Selector.SAC_DIRECT_ADJACENT_SELECTOR:
+			short nodeType = in.readShort();
+			Selector selector = readSelector(in);
+			return selectorFactory.createDirectAdjacentSelector(nodeType,
+					selector, readSimpleSelector(in));
+		default:
+			throw new IOException("Unknown selector type: " + type);
+		}
+	}
+
+	private SimpleSelector readSimpleSelector(DataInputStream in)
+			throws IOException {
+		Selector selector = readSelector(in);
+		if (!(selector instanceof SimpleSelector)) {
+			throw new IOException("Simple selector expected: "
+					+ selector.getSelectorType());
+		}
+		return (SimpleSelector) selector;
+	}
+
+	private Condition readCondition(DataInputStream in) throws IOException {
+		short type = in.readShort();
+		switch (type) {
+		case Condition.SAC_AND_CONDITION:
+			Condition first = readCondition(in);
+			return conditionFactory.createAndCondition(first,
+					readCondition(in));
+		case Condition.SAC_ATTRIBUTE_CONDITION:
+		case Condition.SAC_ONE_OF_ATTRIBUTE_CONDITION:
+		case Condition.SAC_BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+			String localName = readString(in);
+			String namespaceURI = readString(in);
+			boolean specified = in.readBoolean();
+			String value = readString(in);
+			if (type == Condition.SAC_ATTRIBUTE_CONDITION) {
+				return conditionFactory.createAttributeCondition(localName,
+						namespaceURI, specified, value);
+			}
+			if (type == Condition.SAC_ONE_OF_ATTRIBUTE_CONDITION) {
+				return conditionFactory.createOneOfAttributeCondition(
+						localName, namespaceURI, specified, value);
+			}
+			return conditionFactory.createBeginHyphenAttributeCondition(
+					localName, namespaceURI, specified, value);
+		case Condition.SAC_ID_CONDITION:
+			readString(in);
+			return conditionFactory.createIdCondition(readString(in));
+		case Condition.SAC_CLASS_CONDITION:
+			namespaceURI = readString(in);
+			return conditionFactory.createClassCondition(namespaceURI,
+					readString(in));
+		case Condition.SAC_PSEUDO_CLASS_CONDITION:
+			namespaceURI = readString(in);
+			return conditionFactory.createPseudoClassCondition(namespaceURI,
+					readString(in));
+		case Condition.SAC_LANG_CONDITION:
+			return conditionFactory.createLangCondition(readString(in));
+		default:
+			throw new IOException("Unknown condition type: " + type);
+		}
+	}
+
+	private CSSValue readValue(DataInputStream in) throws IOException {
+		LexicalUnit unit = readLexicalUnits(in);
+		if (unit == null) {
+			throw new IOException("Empty value");
+		}
+		return CSSValueFactory.newValue(unit);
+	}
+
+	private LexicalUnit readLexicalUnit(LexicalUnit previous,
+			DataInputStream in) throws IOException {
+		short type = in.readShort();
+		switch (type) {
+		case LexicalUnit.SAC_INTEGER:
+			return CSSLexicalUnit.createInteger(in.readInt(), previous);
+		case LexicalUnit.SAC_DIMENSION:
+			float value = in.readFloat();
+			return CSSLexicalUnit.createDimension(value, readString(in),
+					previous);
+		case LexicalUnit.SAC_FUNCTION:
+			String name = readString(in);
+			return CSSLexicalUnit.createFunction(name, readLexicalUnits(in),
+					previous);
+		case LexicalUnit.SAC_RGBCOLOR:
+		case LexicalUnit.SAC_RECT_FUNCTION:
+		case LexicalUnit.SAC_COUNTER_FUNCTION:
+		case LexicalUnit.SAC_COUNTERS_FUNCTION:
+			return CSSLexicalUnit.createPredefinedFunction(type,
+					readLexicalUnits(in), previous);
+		case LexicalUnit.SAC_IDENT:
+		case LexicalUnit.SAC_STRING_VALUE:
+		case LexicalUnit.SAC_URI:
+		case LexicalUnit.SAC_ATTR:
+		case LexicalUnit.SAC_UNICODERANGE:
+			return CSSLexicalUnit.createString(type, readString(in), previous);
+		default:
+			if (isFloatType(type)) {
+				return CSSLexicalUnit.createFloat(type, in.readFloat(),
+						previous);
+			}
+			if (isSimpleType(type)) {
+				return CSSLexicalUnit.createSimple(type, previous);
+			}
+			throw new IOException("Unknown lexical unit type: " + type);
+		}
+	}
+
+	private LexicalUnit readLexicalUnits(DataInputStream in)
+			throws IOException {
+		int count = in.readInt();
+		LexicalUnit first = null;
+		LexicalUnit previous = null;
+		for (int i = 0; i < count; i++) {
+			previous = readLexicalUnit(previous, in);
+			if (first == null) {
+				first = previous;
+			}
+		}
+		return first;
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		int index = in.readInt();
+		if (index == NULL_STRING) {
+			return null;
+		}
+		if (index == NEW_STRING) {
+			String s = in.readUTF();
+			readStrings.add(s);
+			return s;
+		}
+		if (index < 0 || index >= readStrings.size()) {
+			throw new IOException("Invalid string index: " + index);
+		}
+		return readStrings.get(index);
+	}
+
+	private static boolean isFloatType(short type) {
+		switch (type) {
+		case LexicalUnit.SAC_REAL:
+		case LexicalUnit.SAC_EM:
+		case LexicalUnit.SAC_EX:
+		case LexicalUnit.SAC_PIXEL:
+		case LexicalUnit.SAC_INCH:
+		case LexicalUnit.SAC_CENTIMETER:
+		case LexicalUnit.SAC_MILLIMETER:
+		case LexicalUnit.SAC_POINT:
+		case LexicalUnit.SAC_PICA:
+		case LexicalUnit.SAC_PERCENTAGE:
+		case LexicalUnit.SAC_DEGREE:
+		case LexicalUnit.SAC_GRADIAN:
+		case LexicalUnit.SAC_RADIAN:
+		case LexicalUnit.SAC_MILLISECOND:
+		case LexicalUnit.SAC_SECOND:
+		case LexicalUnit.SAC_HERTZ:
+		case LexicalUnit.SAC_KILOHERTZ:
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean isSimpleType(short type) {
+		switch (type) {
+		case LexicalUnit.SAC_OPERATOR_COMMA:
+		case LexicalUnit.SAC_OPERATOR_PLUS:
+		case LexicalUnit.SAC_OPERATOR_MINUS:
+		case LexicalUnit.SAC_OPERATOR_MULTIPLY:
+		case LexicalUnit.SAC_OPERATOR_SLASH:
+		case LexicalUnit.SAC_OPERATOR_MOD:
+		case LexicalUnit.SAC_OPERATOR_EXP:
+		case LexicalUnit.SAC_OPERATOR_LT:
+		case LexicalUnit.SAC_OPERATOR_GT:
+		case LexicalUnit.SAC_OPERATOR_LE:
+		case LexicalUnit.SAC_OPERATOR_GE:
+		case LexicalUnit.SAC_OPERATOR_TILDE:
+		case LexicalUnit.SAC_INHERIT:
+			return true;
+		}
+		return false;
+	}
+}
@@ -72,6 +72,13 @@ public class ViewCSSImpl implements ViewCSS {
 
 	public CSSStyleDeclaration getComputedStyle(CSSStyleSheet styleSheet,
 			Element elt, String pseudoElt) {
+		if (styleSheet instanceof CSSStyleSheetImpl) {
+			CSSRuleIndex ruleIndex = ((CSSStyleSheetImpl) styleSheet)
+					.getRuleIndex();
+			if (ruleIndex != null) {
+				return getComputedStyle(ruleIndex, elt, pseudoElt);
+			}
+		}
 		List styleDeclarations = null;
 		StyleWrapper firstStyleDeclaration = null;
 		CSSRuleList ruleList = styleSheet.getCssRules();
@@ -133,4 +140,42 @@ public class ViewCSSImpl implements ViewCSS {
 		}
 		return null;
 	}
+
+	/**
+	 * Compute the style of <code>elt</code> by testing only the rules of the
+	 * index which could match it.
+	 */
+	private CSSStyleDeclaration getComputedStyle(CSSRuleIndex ruleIndex,
+			Element elt, String pseudoElt) {
+		List styleDeclarations = null;
+		StyleWrapper firstStyleDeclaration = null;
+		int position = 0;
+		List candidates = ruleIndex.getCandidates(elt);
+		int size = candidates.size();
+		for (int i = 0; i < size; i++) {
+			CSSRuleIndex.Entry entry = (CSSRuleIndex.Entry) candidates.get(i);
+			ExtendedSelector extendedSelector = entry.getSelector();
+			if (extendedSelector.match(elt, pseudoElt)) {
+				StyleWrapper wrapper = new StyleWrapper(entry.getRule()
+						.getStyle(), extendedSelector.getSpecificity(),
+						position++);
+				if (firstStyleDeclaration == null) {
+					firstStyleDeclaration = wrapper;
+				} else {
+					if (styleDeclarations == null) {
+						styleDeclarations = new ArrayList();
+						styleDeclarations.add(firstStyleDeclaration);
+					}
+					styleDeclarations.add(wrapper);
+				}
+			}
+		}
+		if (styleDeclarations != null) {
+			return new CSSComputedStyleImpl(styleDeclarations);
+		}
+		if (firstStyleDeclaration != null) {
+			return firstStyleDeclaration.style;
+		}
+		return null;
+	}
 }
@@ -48,6 +48,7 @@ import org.eclipse.e4.ui.css.core.impl.dom.CSSStyleSheetImpl;
 import org.eclipse.e4.ui.css.core.impl.dom.DocumentCSSImpl;
 import org.eclipse.e4.ui.css.core.impl.dom.ViewCSSImpl;
 import org.eclipse.e4.ui.css.core.impl.sac.ExtendedSelector;
+import org.eclipse.e4.ui.css.core.impl.sac.SelectorDependencies;
 import org.eclipse.e4.ui.css.core.resources.CSSResourcesHelpers;
 import org.eclipse.e4.ui.css.core.resources.IResourcesRegistry;
 import org.eclipse.e4.ui.css.core.util.impl.resources.ResourcesLocatorManager;
@@ -60,6 +61,7 @@ import org.w3c.css.sac.InputSource;
 import org.w3c.css.sac.Selector;
 import org.w3c.css.sac.SelectorList;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.css.CSSImportRule;
 import org.w3c.dom.css.CSSRule;
@@ -85,6 +87,12 @@ import org.w3c.dom.stylesheets.StyleSheet;
  */
 public abstract class AbstractCSSEngine implements CSSEngine {
 
+	/**
+	 * Key of the {@link CSSElementContext} data which stores the styles last
+	 * computed for the element and for its static pseudo instances.
+	 */
+	private static final String COMPUTED_STYLES_KEY = "org.eclipse.e4.ui.css.core.computedStyles";
+
 	/**
 	 * Default {@link IResourcesLocatorManager} used to get InputStream, Reader
 	 * resource like Image.
@@ -101,6 +109,12 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	 */
 	private ViewCSS viewCSS;
 
+	/**
+	 * Cache of the styles computed by {@link #viewCSS}, shared by the elements
+	 * with the same signature.
+	 */
+	private CSSComputedStyleCache computedStyleCache;
+
 	/**
 	 * {@link IElementProvider} used to retrieve w3c Element linked to the
 	 * widget.
@@ -134,6 +148,18 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	protected HashMap widgetsMap = new HashMap();
 	
 	private boolean parseImport;
+
+	/**
+	 * Disk cache of parsed style sheets, <code>null</code> if style sheets
+	 * are always parsed.
+	 */
+	private CSSStyleSheetCache styleSheetCache;
+
+	/**
+	 * URIs of the files the style sheet being parsed comes from, recorded
+	 * for {@link #styleSheetCache}.
+	 */
+	private List<String> styleSheetDependencies;
 	
 	public AbstractCSSEngine() {
 		this(new DocumentCSSImpl());
@@ -142,6 +168,8 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	public AbstractCSSEngine(ExtendedDocumentCSS documentCSS) {
 		this.documentCSS = documentCSS;
 		this.viewCSS = new ViewCSSImpl(documentCSS);
+		this.computedStyleCache = new CSSComputedStyleCache(documentCSS,
+				viewCSS);
 	}
 
 	/*--------------- Parse style sheet -----------------*/
@@ -177,6 +205,22 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 		// Check that CharacterStream or ByteStream is not null
 		checkInputSource(source);
 		CSSParser parser = makeCSSParser();
+		boolean useCache = !parseImport && styleSheetCache != null
+				&& styleSheetCache.isCacheable(source.getURI());
+		if (!parseImport) {
+			styleSheetDependencies = null;
+		}
+		if (useCache) {
+			CSSStyleSheetImpl cachedStyleSheet = styleSheetCache.load(
+					source.getURI(), parser.getSelectorFactory(),
+					parser.getConditionFactory());
+			if (cachedStyleSheet != null) {
+				addStyleSheet(cachedStyleSheet);
+				return cachedStyleSheet;
+			}
+			styleSheetDependencies = new ArrayList<String>();
+			styleSheetDependencies.add(source.getURI());
+		}
 		CSSStyleSheet styleSheet = parser.parseStyleSheet(source);
 		
 		CSSRuleList rules = styleSheet.getCssRules();
@@ -201,6 +245,9 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 		    		url = new URL(path);
 		    	}
 		    }
+			if (styleSheetDependencies != null) {
+				styleSheetDependencies.add(url.toString());
+			}
 			InputStream stream = url.openStream();
 			InputSource tempStream = new InputSource();
 			tempStream.setURI(url.toString());
@@ -222,14 +269,39 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 		//final stylesheet
 		CSSStyleSheetImpl s = new CSSStyleSheetImpl();
 		s.setRuleList(masterList);
-		if (documentCSS instanceof ExtendedDocumentCSS) {
-			if (!parseImport) {
-				documentCSS.addStyleSheet(s);
+		if (!parseImport) {
+			addStyleSheet(s);
+			if (useCache) {
+				styleSheetCache.store(source.getURI(), styleSheetDependencies,
+						s);
+				styleSheetDependencies = null;
 			}
 		}
 		return s;
 	}
 
+	private void addStyleSheet(CSSStyleSheet styleSheet) {
+		if (documentCSS instanceof ExtendedDocumentCSS) {
+			documentCSS.addStyleSheet(styleSheet);
+			computedStyleCache.invalidate();
+		}
+	}
+
+	/**
+	 * Set the disk cache used to load the style sheets parsed from a file
+	 * without parsing them again, <code>null</code> to always parse them.
+	 */
+	public void setStyleSheetCache(CSSStyleSheetCache styleSheetCache) {
+		this.styleSheetCache = styleSheetCache;
+	}
+
+	/**
+	 * Return the disk cache of parsed style sheets, or <code>null</code>.
+	 */
+	public CSSStyleSheetCache getStyleSheetCache() {
+		return styleSheetCache;
+	}
+
 	/**
 	 * Return true if <code>source</code> is valid and false otherwise.
 	 * 
@@ -418,7 +490,8 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 			/*
 			 * Compute new Style to apply.
 			 */
-			CSSStyleDeclaration style = viewCSS.getComputedStyle(elt, null);
+			CSSStyleDeclaration style = computedStyleCache.getComputedStyle(
+					elt, null);
 			if (computeDefaultStyle) {
 				if (applyStylesToChildNodes)
 					this.computeDefaultStyle = computeDefaultStyle;
@@ -432,13 +505,18 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 			 * Manage static pseudo instances
 			 */
 			String[] pseudoInstances = getStaticPseudoInstances(elt);
+			int count = pseudoInstances == null ? 1
+					: pseudoInstances.length + 1;
+			CSSStyleDeclaration[] computedStyles = new CSSStyleDeclaration[count];
+			computedStyles[0] = style;
 			if (pseudoInstances != null) {
 				// there are static pseudo instances definied, loop for it and
 				// apply styles for each pseudo instance.
 				for (int i = 0; i < pseudoInstances.length; i++) {
 					String pseudoInstance = pseudoInstances[i];
-					CSSStyleDeclaration styleWithPseudoInstance = viewCSS
+					CSSStyleDeclaration styleWithPseudoInstance = computedStyleCache
 							.getComputedStyle(elt, pseudoInstance);
+					computedStyles[i + 1] = styleWithPseudoInstance;
 					if (computeDefaultStyle) {
 						/*
 						 * Apply default style for the current pseudo instance.
@@ -464,6 +542,10 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 				//applyStyleDeclaration(element, style, null);
 				applyStyleDeclaration(elt, style, null);
 			}
+			CSSElementContext elementContext = getCSSElementContext(elt);
+			if (elementContext != null) {
+				elementContext.setData(COMPUTED_STYLES_KEY, computedStyles);
+			}
 			try {
 				// Apply inline style
 				applyInlineStyle(elt, false);
@@ -487,6 +569,100 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.e4.ui.css.core.engine.CSSEngine#applyStylesOnAttributeChange(java.lang.Object,
+	 *      java.lang.String)
+	 */
+	public void applyStylesOnAttributeChange(Object element, String attribute) {
+		Element elt = getElement(element);
+		if (elt == null) {
+			return;
+		}
+		SelectorDependencies dependencies = computedStyleCache
+				.getDependencies();
+		if (!dependencies.isKnown()) {
+			applyChangedStyles(elt, true, true);
+			return;
+		}
+		if (dependencies.isTestedOnSiblings(attribute)) {
+			// the following siblings and their children may be affected
+			Node parent = elt.getParentNode();
+			if (parent != null) {
+				applyChangedStyles(parent, true, false);
+				return;
+			}
+		}
+		if (dependencies.isTestedOnAncestors(attribute)) {
+			applyChangedStyles(elt, true, false);
+		} else if (dependencies.isTestedOnElement(attribute)) {
+			applyChangedStyles(elt, false, false);
+		}
+	}
+
+	/**
+	 * Apply styles to <code>node</code> only if the styles computed for it
+	 * differ from the styles computed the last time styles were applied to
+	 * it, or unconditionally if <code>force</code> is true. If
+	 * <code>applyStylesToChildNodes</code> is true, the children of
+	 * <code>node</code> are styled the same way. The default style is
+	 * computed first, so that the properties which are no longer styled are
+	 * reset.
+	 */
+	private void applyChangedStyles(Node node,
+			boolean applyStylesToChildNodes, boolean force) {
+		Element elt = getElement(node);
+		if (elt == null) {
+			return;
+		}
+		CSSElementContext elementContext = getCSSElementContext(elt);
+		CSSStyleDeclaration[] oldStyles = elementContext == null ? null
+				: (CSSStyleDeclaration[]) elementContext
+						.getData(COMPUTED_STYLES_KEY);
+		if (force || oldStyles == null
+				|| hasComputedStylesChanged(elt, oldStyles)) {
+			applyStyles(elt, false, true);
+		}
+		if (applyStylesToChildNodes) {
+			NodeList nodes = elt.getChildNodes();
+			if (nodes != null) {
+				for (int k = 0; k < nodes.getLength(); k++) {
+					applyChangedStyles(nodes.item(k), applyStylesToChildNodes,
+							force);
+				}
+			}
+		}
+	}
+
+	private boolean hasComputedStylesChanged(Element elt,
+			CSSStyleDeclaration[] oldStyles) {
+		String[] pseudoInstances = getStaticPseudoInstances(elt);
+		int length = pseudoInstances == null ? 1 : pseudoInstances.length + 1;
+		if (length != oldStyles.length) {
+			return true;
+		}
+		for (int i = 0; i < length; i++) {
+			CSSStyleDeclaration style = computedStyleCache.getComputedStyle(
+					elt, i == 0 ? null : pseudoInstances[i - 1]);
+			if (!isSameStyle(style, oldStyles[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSameStyle(CSSStyleDeclaration style1,
+			CSSStyleDeclaration style2) {
+		if (style1 == style2) {
+			return true;
+		}
+		if (style1 == null || style2 == null) {
+			return false;
+		}
+		return style1.getCssText().equals(style2.getCssText());
+	}
+
 	private void applyConditionalPseudoStyle(ExtendedCSSRule parentRule, String pseudoInstance, Object element, CSSStyleDeclaration styleWithPseudoInstance) {
 		SelectorList selectorList = parentRule.getSelectorList();
 		for (int j = 0; j < selectorList.getLength(); j++) {
@@ -1062,6 +1238,7 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	public void reset() {
 		// Remove All Style Sheets
 		((ExtendedDocumentCSS) documentCSS).removeAllStyleSheets();
+		computedStyleCache.invalidate();
 	}
 
 	/*--------------- Resources Registry -----------------*/
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.css.core.impl.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.e4.ui.css.core.dom.CSSStylableElement;
+import org.eclipse.e4.ui.css.core.dom.ExtendedCSSRule;
+import org.eclipse.e4.ui.css.core.impl.sac.SelectorDependencies;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.css.CSSRule;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleDeclaration;
+import org.w3c.dom.css.CSSStyleSheet;
+import org.w3c.dom.css.DocumentCSS;
+import org.w3c.dom.css.ViewCSS;
+import org.w3c.dom.stylesheets.StyleSheetList;
+
+/**
+ * Cache of the {@link CSSStyleDeclaration} computed by a {@link ViewCSS},
+ * keyed by a signature of the element. The signature is made of the element
+ * name, and of the attributes and pseudo classes tested by the selectors of
+ * the style sheets, for the element and its ancestors when a selector tests
+ * them. Elements which share a signature, like the items of a tree or of a
+ * tool bar, share the computed style.
+ * <p>
+ * When the selectors cannot be analyzed (sibling, lang or positional
+ * selectors) the cache is disabled and every style is computed.
+ * </p>
+ * <p>
+ * The signatures of elements with an id are often unique, so only the most
+ * recently used styles are kept.
+ * </p>
+ */
+public class CSSComputedStyleCache {
+
+	/**
+	 * Marker for the elements which don't match any rule.
+	 */
+	private static final Object NO_STYLE = new Object();
+
+	private static final int MAX_STYLES = 1024;
+
+	private final DocumentCSS documentCSS;
+
+	private final ViewCSS viewCSS;
+
+	private Map<String, Object> styles = null;
+
+	private SelectorDependencies dependencies = null;
+
+	private String[] attributes;
+
+	private String[] pseudoClasses;
+
+	private int styleSheetCount = -1;
+
+	private boolean enabled;
+
+	public CSSComputedStyleCache(DocumentCSS documentCSS, ViewCSS viewCSS) {
+		this.documentCSS = documentCSS;
+		this.viewCSS = viewCSS;
+	}
+
+	/**
+	 * Return the style computed by the view for <code>elt</code>, from the
+	 * cache if an element with the same signature was already computed.
+	 */
+	public CSSStyleDeclaration getComputedStyle(Element elt, String pseudoElt) {
+		checkStyleSheets();
+		if (!enabled) {
+			return viewCSS.getComputedStyle(elt, pseudoElt);
+		}
+		StringBuilder key = new StringBuilder();
+		key.append(pseudoElt).append('|');
+		appendSignature(key, elt);
+		String signature = key.toString();
+		Object style = styles.get(signature);
+		if (style == null) {
+			style = viewCSS.getComputedStyle(elt, pseudoElt);
+			styles.put(signature, style == null ? NO_STYLE : style);
+		}
+		return style == NO_STYLE ? null : (CSSStyleDeclaration) style;
+	}
+
+	/**
+	 * Discard every cached style, they are computed again on next access.
+	 * Must be called when the style sheets change.
+	 */
+	public void invalidate() {
+		styles = null;
+		dependencies = null;
+		styleSheetCount = -1;
+	}
+
+	/**
+	 * Return the dependencies of the selectors of all the style sheets.
+	 */
+	public SelectorDependencies getDependencies() {
+		checkStyleSheets();
+		return dependencies;
+	}
+
+	private void checkStyleSheets() {
+		StyleSheetList styleSheetList = documentCSS.getStyleSheets();
+		int count = styleSheetList.getLength();
+		if (dependencies != null && count == styleSheetCount) {
+			return;
+		}
+		styleSheetCount = count;
+		dependencies = new SelectorDependencies();
+		for (int i = 0; i < count; i++) {
+			CSSRuleList ruleList = ((CSSStyleSheet) styleSheetList.item(i))
+					.getCssRules();
+			int length = ruleList.getLength();
+			for (int j = 0; j < length; j++) {
+				CSSRule rule = ruleList.item(j);
+				if (rule instanceof ExtendedCSSRule) {
+					SelectorList selectorList = ((ExtendedCSSRule) rule)
+							.getSelectorList();
+					int l = selectorList.getLength();
+					for (int k = 0; k < l; k++) {
+						dependencies.addSelector(selectorList.item(k));
+					}
+				}
+			}
+		}
+		enabled = dependencies.isKnown() && !dependencies.dependsOnSiblings();
+		attributes = dependencies.getAttributes().toArray(new String[0]);
+		pseudoClasses = dependencies.getPseudoClasses().toArray(new String[0]);
+		styles = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+				return size() > MAX_STYLES;
+			}
+		};
+	}
+
+	private void appendSignature(StringBuilder key, Element elt) {
+		key.append(elt.getNamespaceURI()).append(':');
+		key.append(elt.getPrefix() == null ? elt.getNodeName() : elt
+				.getLocalName());
+		boolean stylable = elt instanceof CSSStylableElement;
+		for (int i = 0; i < attributes.length; i++) {
+			String attribute = attributes[i];
+			String value;
+			if (stylable && SelectorDependencies.ID.equals(attribute)) {
+				value = ((CSSStylableElement) elt).getCSSId();
+			} else if (stylable && SelectorDependencies.CLASS.equals(attribute)) {
+				value = ((CSSStylableElement) elt).getCSSClass();
+			} else {
+				value = elt.getAttribute(attribute);
+			}
+			// the length prefix keeps values containing separators apart
+			if (value == null) {
+				key.append("|-");
+			} else {
+				key.append('|').append(value.length()).append(':').append(value);
+			}
+		}
+		if (stylable && pseudoClasses.length > 0) {
+			CSSStylableElement stylableElement = (CSSStylableElement) elt;
+			key.append('|');
+			for (int i = 0; i < pseudoClasses.length; i++) {
+				String pseudoClass = pseudoClasses[i];
+				if (stylableElement.isPseudoInstanceOf(pseudoClass)) {
+					key.append(stylableElement
+							.isStaticPseudoInstance(pseudoClass) ? 's' : 'p');
+				} else {
+					key.append('-');
+				}
+			}
+		}
+		if (dependencies.dependsOnAncestors()) {
+			Node parent = elt.getParentNode();
+			while (parent != null && parent.getNodeType() != Node.ELEMENT_NODE) {
+				parent = parent.getParentNode();
+			}
+			key.append('<');
+			if (parent != null) {
+				appendSignature(key, (Element) parent);
+			}
+		}
+	}
+}
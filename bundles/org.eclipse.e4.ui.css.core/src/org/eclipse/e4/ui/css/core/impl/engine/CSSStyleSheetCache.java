@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.css.core.impl.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+
+import org.eclipse.e4.ui.css.core.impl.dom.CSSStyleSheetImpl;
+import org.eclipse.e4.ui.css.core.impl.dom.CSSStyleSheetSerializer;
+import org.w3c.css.sac.ConditionFactory;
+import org.w3c.css.sac.SelectorFactory;
+import org.w3c.dom.css.CSSStyleSheet;
+
+/**
+ * Disk cache of parsed style sheets, stored with
+ * {@link CSSStyleSheetSerializer} in a directory. An entry is keyed by the URI
+ * of the style sheet and is only used while the files it was parsed from (the
+ * style sheet and the style sheets it imports) keep the same time stamp and
+ * size.
+ * <p>
+ * Only style sheets coming from local files, or from entries of local jar
+ * files, can be cached. The cache is best effort: entries which cannot be
+ * read or written are ignored and the style sheet is parsed.
+ * </p>
+ */
+public class CSSStyleSheetCache {
+
+	private static final int MAGIC = 0x45344353; // "E4CS"
+
+	private static final String FILE_EXTENSION = ".bin";
+
+	private final File directory;
+
+	public CSSStyleSheetCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Return the directory the entries are stored in.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Return true if the style sheet at the given URI can be cached.
+	 */
+	public boolean isCacheable(String uri) {
+		return uri != null && getLocalFile(uri) != null;
+	}
+
+	/**
+	 * Load the style sheet parsed from <code>uri</code>, creating its
+	 * selectors with the given factories.
+	 *
+	 * @return the style sheet, or <code>null</code> if there is no entry for
+	 *         the URI or if one of the files it was parsed from changed
+	 */
+	public CSSStyleSheetImpl load(String uri, SelectorFactory selectorFactory,
+			ConditionFactory conditionFactory) {
+		if (selectorFactory == null || conditionFactory == null) {
+			return null;
+		}
+		File file = getEntryFile(uri);
+		if (!file.isFile()) {
+			return null;
+		}
+		CSSStyleSheetImpl styleSheet = null;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() == MAGIC && uri.equals(in.readUTF())
+					&& checkDependencies(in)) {
+				styleSheet = CSSStyleSheetSerializer.readStyleSheet(in,
+						selectorFactory, conditionFactory);
+			}
+		} catch (IOException e) {
+			styleSheet = null;
+		} finally {
+			close(in);
+		}
+		if (styleSheet == null) {
+			// stale or unreadable, it will be written again
+			file.delete();
+		}
+		return styleSheet;
+	}
+
+	/**
+	 * Store the style sheet parsed from <code>uri</code>.
+	 *
+	 * @param dependencies
+	 *            the URIs of the files the style sheet was parsed from,
+	 *            including <code>uri</code> itself
+	 */
+	public void store(String uri, List<String> dependencies,
+			CSSStyleSheet styleSheet) {
+		File file = getEntryFile(uri);
+		File tempFile = new File(directory, file.getName() + ".tmp");
+		boolean stored = false;
+		DataOutputStream out = null;
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				return;
+			}
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tempFile)));
+			out.writeInt(MAGIC);
+			out.writeUTF(uri);
+			out.writeInt(dependencies.size());
+			for (String dependency : dependencies) {
+				File dependencyFile = getLocalFile(dependency);
+				if (dependencyFile == null) {
+					return;
+				}
+				out.writeUTF(dependency);
+				out.writeLong(dependencyFile.lastModified());
+				out.writeLong(dependencyFile.length());
+			}
+			CSSStyleSheetSerializer.writeStyleSheet(styleSheet, out);
+			out.close();
+			out = null;
+			file.delete();
+			stored = tempFile.renameTo(file);
+		} catch (IOException e) {
+			// the style sheet is parsed next time
+		} finally {
+			close(out);
+			if (!stored) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Remove every entry of the cache.
+	 */
+	public void clear() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().endsWith(FILE_EXTENSION)) {
+				files[i].delete();
+			}
+		}
+	}
+
+	private boolean checkDependencies(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			File file = getLocalFile(in.readUTF());
+			long lastModified = in.readLong();
+			long length = in.readLong();
+			if (file == null || !file.isFile()
+					|| file.lastModified() != lastModified
+					|| file.length() != length) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private File getEntryFile(String uri) {
+		// collisions are detected with the URI stored in the entry
+		return new File(directory, Integer.toHexString(uri.hashCode())
+				+ FILE_EXTENSION);
+	}
+
+	/**
+	 * Return the local file holding the content of <code>uri</code>: the file
+	 * itself for a file URL, the jar file for a jar URL, <code>null</code>
+	 * otherwise.
+	 */
+	private static File getLocalFile(String uri) {
+		try {
+			URL url = new URL(uri);
+			if ("jar".equals(url.getProtocol())) {
+				String path = url.getPath();
+				int separator = path.indexOf("!/");
+				if (separator == -1) {
+					return null;
+				}
+				url = new URL(path.substring(0, separator));
+			}
+			if ("file".equals(url.getProtocol())) {
+				return new File(url.getPath());
+			}
+		} catch (MalformedURLException e) {
+			// not cacheable
+		}
+		return null;
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.css.core.impl.sac;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.w3c.css.sac.AttributeCondition;
+import org.w3c.css.sac.CombinatorCondition;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.DescendantSelector;
+import org.w3c.css.sac.NegativeCondition;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SiblingSelector;
+
+/**
+ * Collects the element state which a set of selectors depends on: the
+ * attributes (including <code>id</code> and <code>class</code>) and pseudo
+ * classes tested by their conditions, and whether ancestors or siblings of
+ * the element are tested too.
+ * <p>
+ * Selectors or conditions which are not understood make the dependencies
+ * unknown, see {@link #isKnown()}.
+ * </p>
+ */
+public class SelectorDependencies {
+
+	/**
+	 * Name used for the dependency on the CSS id of an element.
+	 */
+	public static final String ID = "id";
+
+	/**
+	 * Name used for the dependency on the CSS class of an element.
+	 */
+	public static final String CLASS = "class";
+
+	private final Set<String> attributes = new HashSet<String>();
+
+	private final Set<String> pseudoClasses = new HashSet<String>();
+
+	/**
+	 * Attributes and pseudo classes tested on the element itself, on its
+	 * ancestors and on its siblings.
+	 */
+	private final Set<String> elementNames = new HashSet<String>();
+
+	private final Set<String> ancestorNames = new HashSet<String>();
+
+	private final Set<String> siblingNames = new HashSet<String>();
+
+	private boolean ancestors;
+
+	private boolean siblings;
+
+	private boolean known = true;
+
+	/**
+	 * Add the dependencies of the given selector.
+	 */
+	public void addSelector(Selector selector) {
+		addSelector(selector, elementNames);
+	}
+
+	private void addSelector(Selector selector, Set<String> names) {
+		switch (selector.getSelectorType()) {
+		case Selector.SAC_ELEMENT_NODE_SELECTOR:
+		case Selector.SAC_PSEUDO_ELEMENT_SELECTOR:
+			break;
+		case Selector.SAC_CONDITIONAL_SELECTOR:
+			ConditionalSelector conditionalSelector = (ConditionalSelector) selector;
+			addSelector(conditionalSelector.getSimpleSelector(), names);
+			addCondition(conditionalSelector.getCondition(), names);
+			break;
+		case Selector.SAC_DESCENDANT_SELECTOR:
+		case Selector.SAC_CHILD_SELECTOR:
+			DescendantSelector descendantSelector = (DescendantSelector) selector;
+			ancestors = true;
+			addSelector(descendantSelector.getAncestorSelector(),
+					names == siblingNames ? siblingNames : ancestorNames);
+			addSelector(descendantSelector.getSimpleSelector(), names);
+			break;
+		case Selector.SAC_DIRECT_ADJACENT_SELECTOR:
+			SiblingSelector siblingSelector = (SiblingSelector) selector;
+			siblings = true;
+			addSelector(siblingSelector.getSelector(), siblingNames);
+			addSelector(siblingSelector.getSiblingSelector(), names);
+			break;
+		default:
+			known = false;
+		}
+	}
+
+	private void addCondition(Condition condition, Set<String> names) {
+		switch (condition.getConditionType()) {
+		case Condition.SAC_AND_CONDITION:
+		case Condition.SAC_OR_CONDITION:
+			CombinatorCondition combinatorCondition = (CombinatorCondition) condition;
+			addCondition(combinatorCondition.getFirstCondition(), names);
+			addCondition(combinatorCondition.getSecondCondition(), names);
+			break;
+		case Condition.SAC_NEGATIVE_CONDITION:
+			addCondition(((NegativeCondition) condition).getCondition(), names);
+			break;
+		case Condition.SAC_ID_CONDITION:
+			attributes.add(ID);
+			names.add(ID);
+			break;
+		case Condition.SAC_CLASS_CONDITION:
+			attributes.add(CLASS);
+			names.add(CLASS);
+			break;
+		case Condition.SAC_ATTRIBUTE_CONDITION:
+		case Condition.SAC_ONE_OF_ATTRIBUTE_CONDITION:
+		case Condition.SAC_BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+			String localName = ((AttributeCondition) condition)
+					.getLocalName();
+			if (localName == null) {
+				known = false;
+			} else {
+				attributes.add(localName);
+				names.add(localName);
+			}
+			break;
+		case Condition.SAC_PSEUDO_CLASS_CONDITION:
+			String pseudoClass = ((AttributeCondition) condition).getValue();
+			pseudoClasses.add(pseudoClass);
+			names.add(pseudoClass);
+			break;
+		default:
+			// lang, positional and content conditions depend on more than
+			// the element itself
+			known = false;
+		}
+	}
+
+	/**
+	 * Return the names of the attributes tested by the selectors, including
+	 * {@link #ID} and {@link #CLASS}.
+	 */
+	public Set<String> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Return the names of the pseudo classes tested by the selectors.
+	 */
+	public Set<String> getPseudoClasses() {
+		return pseudoClasses;
+	}
+
+	/**
+	 * Return true if the selectors test the ancestors of an element.
+	 */
+	public boolean dependsOnAncestors() {
+		return ancestors;
+	}
+
+	/**
+	 * Return true if the selectors test the siblings of an element.
+	 */
+	public boolean dependsOnSiblings() {
+		return siblings;
+	}
+
+	/**
+	 * Return true if the selectors test the given attribute or pseudo class
+	 * on the element they style.
+	 */
+	public boolean isTestedOnElement(String name) {
+		return elementNames.contains(name);
+	}
+
+	/**
+	 * Return true if the selectors test the given attribute or pseudo class
+	 * on an ancestor of the element they style.
+	 */
+	public boolean isTestedOnAncestors(String name) {
+		return ancestorNames.contains(name);
+	}
+
+	/**
+	 * Return true if the selectors test the given attribute or pseudo class
+	 * on a sibling of the element they style, or of one of its ancestors.
+	 */
+	public boolean isTestedOnSiblings(String name) {
+		return siblingNames.contains(name);
+	}
+
+	/**
+	 * Return false if a selector or condition could not be analyzed, in which
+	 * case the other dependencies are incomplete.
+	 */
+	public boolean isKnown() {
+		return known;
+	}
+}
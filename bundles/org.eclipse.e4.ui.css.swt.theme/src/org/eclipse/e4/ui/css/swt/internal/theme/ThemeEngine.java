@@ -33,6 +33,8 @@ import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.e4.ui.css.core.engine.CSSElementContext;
 import org.eclipse.e4.ui.css.core.engine.CSSEngine;
+import org.eclipse.e4.ui.css.core.impl.engine.AbstractCSSEngine;
+import org.eclipse.e4.ui.css.core.impl.engine.CSSStyleSheetCache;
 import org.eclipse.e4.ui.css.core.util.impl.resources.FileResourcesLocatorImpl;
 import org.eclipse.e4.ui.css.core.util.impl.resources.OSGiResourceLocator;
 import org.eclipse.e4.ui.css.core.util.resources.IResourceLocator;
@@ -68,6 +70,10 @@ public class ThemeEngine implements IThemeEngine {
 
 	private static final String THEMEID_KEY = "themeid";
 
+	private static final String STYLESHEET_CACHE_DIR = "stylesheets"; //$NON-NLS-1$
+
+	private CSSStyleSheetCache styleSheetCache;
+
 	public static final String THEME_PLUGIN_ID = "org.eclipse.e4.ui.css.swt.theme";
 
 	public ThemeEngine(Display display) {
@@ -527,10 +533,34 @@ public class ThemeEngine implements IThemeEngine {
 	}
 
 	public void addCSSEngine(CSSEngine cssEngine) {
+		if (cssEngine instanceof AbstractCSSEngine) {
+			AbstractCSSEngine engine = (AbstractCSSEngine) cssEngine;
+			if (engine.getStyleSheetCache() == null) {
+				engine.setStyleSheetCache(getStyleSheetCache());
+			}
+		}
 		cssEngines.add(cssEngine);
 		resetCurrentTheme();
 	}
 
+	/**
+	 * Return the cache of the parsed theme style sheets, kept in the data
+	 * area of this bundle, or <code>null</code> if there is no data area.
+	 */
+	private CSSStyleSheetCache getStyleSheetCache() {
+		if (styleSheetCache == null) {
+			Bundle bundle = FrameworkUtil.getBundle(ThemeEngine.class);
+			BundleContext context = bundle == null ? null : bundle
+					.getBundleContext();
+			File directory = context == null ? null : context
+					.getDataFile(STYLESHEET_CACHE_DIR);
+			if (directory != null) {
+				styleSheetCache = new CSSStyleSheetCache(directory);
+			}
+		}
+		return styleSheetCache;
+	}
+
 	public void removeCSSEngine(CSSEngine cssEngine) {
 		cssEngines.remove(cssEngine);
 	}
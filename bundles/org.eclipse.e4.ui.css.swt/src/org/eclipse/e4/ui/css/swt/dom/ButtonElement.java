@@ -29,7 +29,7 @@ public class ButtonElement extends ControlElement {
 		public void widgetSelected(SelectionEvent e) {
 			if (!e.widget.isDisposed()) {
 				ButtonElement.this.isSelected = getButton().getSelection();
-				doApplyStyles();
+				doApplyStyles("checked");
 			}
 		}
 	};
@@ -36,12 +36,12 @@ public class ControlElement extends WidgetElement {
 	private FocusListener focusListener = new FocusAdapter() {
 		public void focusGained(FocusEvent e) {
 			ControlElement.this.hasFocus = true;
-			doApplyStyles();
+			doApplyStyles("focus");
 		}
 
 		public void focusLost(FocusEvent e) {
 			ControlElement.this.hasFocus = false;
-			doApplyStyles();
+			doApplyStyles("focus");
 		}
 	};
 
@@ -51,13 +51,13 @@ public class ControlElement extends WidgetElement {
 			// mouse hover, apply styles
 			// into the SWT control
 			ControlElement.this.hasMouseHover = true;
-			doApplyStyles();
+			doApplyStyles("hover");
 		}
 
 		public void mouseExit(MouseEvent e) {
 			// mouse hover, apply styles
 			ControlElement.this.hasMouseHover = false;
-			doApplyStyles();
+			doApplyStyles("hover");
 
 		}
 	};
@@ -31,12 +31,12 @@ public class ShellElement extends CompositeElement {
 
 		public void shellActivated(ShellEvent e) {
 			ShellElement.this.isActive = true;
-			doApplyStyles();
+			doApplyStyles("active");
 		}
 
 		public void shellDeactivated(ShellEvent e) {
 			ShellElement.this.isActive = false;
-			doApplyStyles();
+			doApplyStyles("active");
 		}
 
 		public void shellDeiconified(ShellEvent e) {
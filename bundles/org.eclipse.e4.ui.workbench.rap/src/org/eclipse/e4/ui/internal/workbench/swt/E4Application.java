@@ -354,6 +354,25 @@ public class E4Application implements IApplication {
 		eclipseContext.set(E4Workbench.DELTA_RESTORE,
 				Boolean.valueOf(deltaRestore));
 
+		// Binary model format
+		boolean binaryModel;
+		value = getArgValue(E4Workbench.BINARY_MODEL, appContext, true);
+		binaryModel = value != null && Boolean.parseBoolean(value);
+		eclipseContext.set(E4Workbench.BINARY_MODEL,
+				Boolean.valueOf(binaryModel));
+
+		// Saving the model changes in the background
+		value = getArgValue(E4Workbench.MODEL_AUTO_SAVE_INTERVAL, appContext,
+				false);
+		if (value != null) {
+			try {
+				eclipseContext.set(E4Workbench.MODEL_AUTO_SAVE_INTERVAL,
+						Integer.valueOf(value));
+			} catch (NumberFormatException e) {
+				// the model is only saved when the application is closed
+			}
+		}
+
 		String resourceHandler = getArgValue(
 				E4Workbench.MODEL_RESOURCE_HANDLER, appContext, false);
 
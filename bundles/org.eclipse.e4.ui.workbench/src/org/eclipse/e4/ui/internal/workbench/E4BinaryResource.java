@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl.EObjectInputStream;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl.EObjectOutputStream;
+
+/**
+ * An {@link E4XMIResource} stored in the EMF binary resource format, which is smaller and much
+ * faster to load and save than XMI. The ids of the objects, which the binary format doesn't
+ * have, are stored after the objects in the order of their contents.
+ * <p>
+ * The model can still be written as XMI with {@link #saveXMI(OutputStream, Map)}.
+ * </p>
+ */
+public class E4BinaryResource extends E4XMIResource {
+
+	public E4BinaryResource() {
+	}
+
+	public E4BinaryResource(URI uri) {
+		super(uri);
+	}
+
+	@Override
+	public void doSave(OutputStream outputStream, Map<?, ?> options) throws IOException {
+		EObjectOutputStream out = new EObjectOutputStream(outputStream, options);
+		out.saveResource(this);
+		TreeIterator<EObject> it = getAllContents();
+		while (it.hasNext()) {
+			out.writeString(getID(it.next()));
+		}
+		out.flush();
+	}
+
+	@Override
+	public void doLoad(InputStream inputStream, Map<?, ?> options) throws IOException {
+		EObjectInputStream in = new EObjectInputStream(inputStream, options);
+		in.loadResource(this);
+		TreeIterator<EObject> it = getAllContents();
+		while (it.hasNext()) {
+			EObject eObject = it.next();
+			String id = in.readString();
+			if (id != null) {
+				setID(eObject, id);
+			}
+		}
+	}
+
+	@Override
+	public String getID(EObject eObject) {
+		// the ids are read after the objects, don't generate ids for the objects attached
+		// meanwhile
+		if (isLoading()) {
+			return null;
+		}
+		return super.getID(eObject);
+	}
+
+	/**
+	 * Write the contents of the resource as XMI, for instance to export or look at the model.
+	 *
+	 * @param outputStream
+	 *            the stream to write to
+	 * @param options
+	 *            the XMI save options
+	 * @throws IOException
+	 *             if the model cannot be written
+	 */
+	public void saveXMI(OutputStream outputStream, Map<?, ?> options) throws IOException {
+		super.doSave(outputStream, options);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2010 BestSolution.at and others.
+ * Copyright (c) 2008, 2012 BestSolution.at and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -46,6 +46,8 @@ public class E4Workbench implements IWorkbench {
 
 	public static final String CLEAR_PERSISTED_STATE = "clearPersistedState"; //$NON-NLS-1$
 	public static final String DELTA_RESTORE = "deltaRestore"; //$NON-NLS-1$
+	public static final String BINARY_MODEL = "binaryModel"; //$NON-NLS-1$
+	public static final String MODEL_AUTO_SAVE_INTERVAL = "modelAutoSaveInterval"; //$NON-NLS-1$
 
 	public static final String RTL_MODE = "dir"; //$NON-NLS-1$
 
@@ -69,8 +71,8 @@ public class E4Workbench implements IWorkbench {
 			init((MApplication) uiRoot);
 		}
 
-		uiEventPublisher = new UIEventPublisher(appContext);
-		((Notifier) uiRoot).eAdapters().add(uiEventPublisher);
+		// the resource handler attaches the publisher when it loads the model
+		uiEventPublisher = UIEventPublisher.attachPublisher((Notifier) uiRoot, appContext);
 	}
 
 	/**
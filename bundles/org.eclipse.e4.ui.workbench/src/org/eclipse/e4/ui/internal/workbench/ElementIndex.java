@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.e4.ui.model.application.impl.ApplicationPackageImpl;
+import org.eclipse.e4.ui.model.application.ui.MUIElement;
+import org.eclipse.emf.common.notify.Notification;
+
+/**
+ * Index of the UI elements of the application model by element id, by tag and by type. It is
+ * kept current by the {@link UIEventPublisher} attached to the model and used by
+ * {@link ModelServiceImpl} to find the candidates of a search instead of walking the model.
+ */
+class ElementIndex {
+	private static final Set<MUIElement> NONE = Collections.emptySet();
+
+	private Set<MUIElement> elements = new HashSet<MUIElement>();
+	private Map<String, Set<MUIElement>> elementsById = new HashMap<String, Set<MUIElement>>();
+	private Map<String, Set<MUIElement>> elementsByTag = new HashMap<String, Set<MUIElement>>();
+
+	// only the types which have been searched for are indexed
+	private Map<Class<?>, Set<MUIElement>> elementsByType = new HashMap<Class<?>, Set<MUIElement>>();
+
+	/**
+	 * Add an element which has been attached to the model.
+	 */
+	void add(MUIElement element) {
+		if (!elements.add(element))
+			return;
+
+		addTo(elementsById, element.getElementId(), element);
+		for (String tag : element.getTags()) {
+			addTo(elementsByTag, tag, element);
+		}
+		for (Map.Entry<Class<?>, Set<MUIElement>> entry : elementsByType.entrySet()) {
+			if (entry.getKey().isInstance(element)) {
+				entry.getValue().add(element);
+			}
+		}
+	}
+
+	/**
+	 * Remove an element which has been detached from the model.
+	 */
+	void remove(MUIElement element) {
+		if (!elements.remove(element))
+			return;
+
+		removeFrom(elementsById, element.getElementId(), element);
+		for (String tag : element.getTags()) {
+			removeFrom(elementsByTag, tag, element);
+		}
+		for (Set<MUIElement> typeElements : elementsByType.values()) {
+			typeElements.remove(element);
+		}
+	}
+
+	/**
+	 * Update the index after an element id or the tags of an element changed.
+	 */
+	void notifyChanged(Notification notification) {
+		Object notifier = notification.getNotifier();
+		if (!(notifier instanceof MUIElement) || !elements.contains(notifier))
+			return;
+
+		MUIElement element = (MUIElement) notifier;
+		Object feature = notification.getFeature();
+		if (feature == ApplicationPackageImpl.Literals.APPLICATION_ELEMENT__ELEMENT_ID) {
+			removeFrom(elementsById, (String) notification.getOldValue(), element);
+			addTo(elementsById, element.getElementId(), element);
+		} else if (feature == ApplicationPackageImpl.Literals.APPLICATION_ELEMENT__TAGS) {
+			switch (notification.getEventType()) {
+			case Notification.ADD:
+			case Notification.SET:
+			case Notification.REMOVE:
+			case Notification.ADD_MANY:
+			case Notification.REMOVE_MANY:
+				// the tags list may hold duplicates, check what it still contains
+				for (String tag : getTags(notification.getOldValue())) {
+					if (!element.getTags().contains(tag)) {
+						removeFrom(elementsByTag, tag, element);
+					}
+				}
+				for (String tag : getTags(notification.getNewValue())) {
+					addTo(elementsByTag, tag, element);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Return the elements which can match a search, taken from the most selective of the given
+	 * criteria.
+	 *
+	 * @return the candidates, or <code>null</code> if the criteria are too broad for the index to
+	 *         help
+	 */
+	Collection<MUIElement> getCandidates(String id, Class<?> clazz, List<String> tagsToMatch) {
+		if (id != null) {
+			return get(elementsById, id);
+		}
+
+		Collection<MUIElement> candidates = null;
+		if (tagsToMatch != null) {
+			for (String tag : tagsToMatch) {
+				Set<MUIElement> tagElements = get(elementsByTag, tag);
+				if (candidates == null || tagElements.size() < candidates.size()) {
+					candidates = tagElements;
+				}
+			}
+		}
+
+		if (clazz != null && !clazz.isAssignableFrom(MUIElement.class)) {
+			Set<MUIElement> typeElements = getElementsOfType(clazz);
+			if (candidates == null || typeElements.size() < candidates.size()) {
+				candidates = typeElements;
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Return the elements of the model which are instances of the given type.
+	 */
+	Set<MUIElement> getElementsOfType(Class<?> clazz) {
+		Set<MUIElement> typeElements = elementsByType.get(clazz);
+		if (typeElements == null) {
+			typeElements = new HashSet<MUIElement>();
+			for (MUIElement element : elements) {
+				if (clazz.isInstance(element)) {
+					typeElements.add(element);
+				}
+			}
+			elementsByType.put(clazz, typeElements);
+		}
+		return typeElements;
+	}
+
+	private static Collection<String> getTags(Object value) {
+		if (value instanceof String) {
+			return Collections.singleton((String) value);
+		} else if (value instanceof Collection<?>) {
+			return (Collection<String>) value;
+		}
+		return Collections.emptySet();
+	}
+
+	private static Set<MUIElement> get(Map<String, Set<MUIElement>> map, String key) {
+		Set<MUIElement> set = map.get(key);
+		return set == null ? NONE : set;
+	}
+
+	private static void addTo(Map<String, Set<MUIElement>> map, String key, MUIElement element) {
+		if (key == null)
+			return;
+
+		Set<MUIElement> set = map.get(key);
+		if (set == null) {
+			set = new HashSet<MUIElement>();
+			map.put(key, set);
+		}
+		set.add(element);
+	}
+
+	private static void removeFrom(Map<String, Set<MUIElement>> map, String key,
+			MUIElement element) {
+		if (key == null)
+			return;
+
+		Set<MUIElement> set = map.get(key);
+		if (set != null && set.remove(element) && set.isEmpty()) {
+			map.remove(key);
+		}
+	}
+}
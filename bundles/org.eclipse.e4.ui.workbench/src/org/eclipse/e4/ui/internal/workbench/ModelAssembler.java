@@ -69,6 +69,21 @@ public class ModelAssembler {
 	 * Process the model
 	 */
 	public void processModel() {
+		// the fragments and processors change many elements, publish their events as one batch
+		UIEventPublisher publisher = UIEventPublisher.getPublisher(application);
+		if (publisher != null) {
+			publisher.beginBatch();
+		}
+		try {
+			processExtensions();
+		} finally {
+			if (publisher != null) {
+				publisher.endBatch();
+			}
+		}
+	}
+
+	private void processExtensions() {
 		IExtensionRegistry registry = RegistryFactory.getRegistry();
 		IExtensionPoint extPoint = registry.getExtensionPoint(extensionPointID);
 		IExtension[] extensions = topoSort(extPoint.getExtensions());
@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.e4.core.services.log.Logger;
+import org.eclipse.e4.ui.di.UISynchronize;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Saves the application model in the background while the application runs. The objects changed
+ * since the last save are tracked through the notifications of the model, and their state is
+ * appended to a {@link ModelJournal} periodically and when the model is saved at shutdown.
+ * <p>
+ * The model is saved in full, and the journal started over, when the journal grows larger than
+ * the model file or when a change cannot be journaled. The records and the copy of the model
+ * saved in full are taken on the UI thread, the files are written in a job.
+ * </p>
+ */
+class ModelAutoSaver extends EContentAdapter {
+
+	private final E4XMIResource resource;
+	private final File modelFile;
+	private final ModelJournal journal;
+	private final UISynchronize uiSync;
+	private final Logger logger;
+
+	// modified on the UI thread only
+	private final Set<EObject> changedObjects = new LinkedHashSet<EObject>();
+	private boolean closed;
+
+	// set on the UI thread, or by the job when a write failed
+	private volatile boolean fullSaveNeeded;
+
+	// the records (byte[]) and model copies (Resource) to write, in the order they were taken
+	private final List<Object> pendingWrites = new ArrayList<Object>();
+	private final Object writeLock = new Object();
+
+	private volatile long interval;
+
+	private final Job job = new Job("Saving the workbench model") { //$NON-NLS-1$
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			uiSync.syncExec(new Runnable() {
+				public void run() {
+					if (!closed) {
+						takeSnapshot();
+					}
+				}
+			});
+			try {
+				writePending();
+			} catch (IOException e) {
+				logger.error(e, "Unable to save the workbench model"); //$NON-NLS-1$
+			}
+			if (interval > 0) {
+				schedule(interval);
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	/**
+	 * @param journalValid
+	 *            whether the journal holds the changes made to the model saved in
+	 *            <code>modelFile</code>, otherwise the model is saved in full first
+	 * @param uiSync
+	 *            the synchronizer of the UI thread, or <code>null</code> to save only when
+	 *            {@link #save()} is called
+	 */
+	ModelAutoSaver(E4XMIResource resource, File modelFile, ModelJournal journal,
+			boolean journalValid, UISynchronize uiSync, Logger logger) {
+		this.resource = resource;
+		this.modelFile = modelFile;
+		this.journal = journal;
+		this.uiSync = uiSync;
+		this.logger = logger;
+		fullSaveNeeded = !journalValid;
+		job.setSystem(true);
+	}
+
+	/**
+	 * Start tracking the changes of the model and save them every <code>interval</code>
+	 * milliseconds.
+	 */
+	void start(long interval) {
+		resource.eAdapters().add(this);
+		if (uiSync != null && interval > 0) {
+			this.interval = interval;
+			job.schedule(interval);
+		}
+	}
+
+	/**
+	 * Stop saving in the background and save the changes not saved yet. Must be called on the UI
+	 * thread.
+	 */
+	void save() throws IOException {
+		closed = true;
+		interval = 0;
+		job.cancel();
+		takeSnapshot();
+		writePending();
+	}
+
+	@Override
+	public void notifyChanged(Notification notification) {
+		super.notifyChanged(notification);
+		if (notification.isTouch()) {
+			return;
+		}
+
+		Object notifier = notification.getNotifier();
+		if (notifier instanceof Resource) {
+			if (notification.getFeatureID(Resource.class) == Resource.RESOURCE__CONTENTS) {
+				fullSaveNeeded = true;
+			}
+			return;
+		}
+
+		Object feature = notification.getFeature();
+		if (!(notifier instanceof EObject) || !(feature instanceof EStructuralFeature)
+				|| ((EStructuralFeature) feature).isTransient()) {
+			return;
+		}
+
+		// the entries of a map are saved with their owner
+		EObject eObject = (EObject) notifier;
+		while (eObject instanceof Map.Entry<?, ?>) {
+			eObject = eObject.eContainer();
+		}
+		if (eObject != null) {
+			changedObjects.add(eObject);
+		}
+
+		if (feature instanceof EReference && ((EReference) feature).isContainment()) {
+			switch (notification.getEventType()) {
+			case Notification.ADD:
+			case Notification.SET:
+				addContents(notification.getNewValue());
+				break;
+			case Notification.ADD_MANY:
+				for (Object value : (Collection<?>) notification.getNewValue()) {
+					addContents(value);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Mark an object added to the model, and everything it contains, as changed: they may not be
+	 * in the saved model yet.
+	 */
+	private void addContents(Object value) {
+		if (!(value instanceof EObject) || value instanceof Map.Entry<?, ?>) {
+			return;
+		}
+		changedObjects.add((EObject) value);
+		TreeIterator<EObject> it = ((EObject) value).eAllContents();
+		while (it.hasNext()) {
+			EObject child = it.next();
+			if (child instanceof Map.Entry<?, ?>) {
+				it.prune();
+			} else {
+				changedObjects.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Take the record of the changed objects, or a copy of the model if it must be saved in full.
+	 * Runs on the UI thread.
+	 */
+	private void takeSnapshot() {
+		if (!fullSaveNeeded && journal.length() > modelFile.length()) {
+			fullSaveNeeded = true;
+		}
+
+		Object snapshot = null;
+		if (!fullSaveNeeded && !changedObjects.isEmpty()) {
+			List<EObject> eObjects = new ArrayList<EObject>(changedObjects.size());
+			for (EObject eObject : changedObjects) {
+				// removed objects are gone from the contents of their former parent
+				if (eObject.eResource() == resource) {
+					eObjects.add(eObject);
+				}
+			}
+			snapshot = ModelJournal.createRecord(resource, eObjects);
+			fullSaveNeeded = snapshot == null;
+		}
+		if (fullSaveNeeded) {
+			snapshot = copyModel();
+			fullSaveNeeded = false;
+		}
+
+		if (snapshot != null) {
+			changedObjects.clear();
+			synchronized (pendingWrites) {
+				pendingWrites.add(snapshot);
+			}
+		}
+	}
+
+	/**
+	 * Copy the model in a resource of the same format, with the same ids.
+	 */
+	private Resource copyModel() {
+		EcoreUtil.Copier copier = new EcoreUtil.Copier() {
+			@Override
+			protected void copyReference(EReference eReference, EObject eObject,
+					EObject copyEObject) {
+				try {
+					super.copyReference(eReference, eObject, copyEObject);
+				} catch (RuntimeException e) {
+					// a stale reference rejected by the copy (e.g. a selected element which is
+					// not a child anymore), leave it out of the saved model
+					if (logger != null) {
+						logger.warn(e, "Unable to save the " + eReference.getName() //$NON-NLS-1$
+								+ " reference of " + eObject); //$NON-NLS-1$
+					}
+				}
+			}
+		};
+		Collection<EObject> contents = copier.copyAll(resource.getContents());
+		copier.copyReferences();
+
+		E4XMIResource copy = (E4XMIResource) resource.getResourceSet()
+				.getResourceFactoryRegistry().getFactory(resource.getURI())
+				.createResource(resource.getURI());
+		// set the ids first, otherwise new ones are generated when the objects are attached
+		for (Map.Entry<EObject, EObject> entry : copier.entrySet()) {
+			copy.setID(entry.getValue(), resource.getID(entry.getKey()));
+		}
+		copy.getContents().addAll(contents);
+		return copy;
+	}
+
+	private void writePending() throws IOException {
+		synchronized (writeLock) {
+			while (true) {
+				Object snapshot;
+				synchronized (pendingWrites) {
+					if (pendingWrites.isEmpty()) {
+						return;
+					}
+					snapshot = pendingWrites.remove(0);
+				}
+				try {
+					if (snapshot instanceof Resource) {
+						writeModel((Resource) snapshot);
+					} else {
+						journal.append((byte[]) snapshot);
+					}
+				} catch (IOException e) {
+					// the journal misses these changes now, the next snapshot is a full save
+					fullSaveNeeded = true;
+					synchronized (pendingWrites) {
+						pendingWrites.clear();
+					}
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void writeModel(Resource copy) throws IOException {
+		File tempFile = new File(modelFile.getPath() + ".tmp"); //$NON-NLS-1$
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+		try {
+			copy.save(out, null);
+		} finally {
+			out.close();
+		}
+		// the former model is kept until the new one is in place, see restoreBackup
+		File backupFile = getBackupFile(modelFile);
+		backupFile.delete();
+		if (modelFile.exists() && !modelFile.renameTo(backupFile)) {
+			tempFile.delete();
+			throw new IOException("Unable to write " + modelFile); //$NON-NLS-1$
+		}
+		if (!tempFile.renameTo(modelFile)) {
+			backupFile.renameTo(modelFile);
+			tempFile.delete();
+			throw new IOException("Unable to write " + modelFile); //$NON-NLS-1$
+		}
+		backupFile.delete();
+		journal.reset(modelFile);
+	}
+
+	private static File getBackupFile(File modelFile) {
+		return new File(modelFile.getPath() + ".bak"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Puts back the model file saved before the last save in full, if that save was interrupted
+	 * before the new model file was in place.
+	 * 
+	 * @param modelFile
+	 *            the model file
+	 * @return whether the model file was put back
+	 */
+	static boolean restoreBackup(File modelFile) {
+		File backupFile = getBackupFile(modelFile);
+		if (!backupFile.exists()) {
+			return false;
+		}
+		if (modelFile.exists()) {
+			// the new model is in place already
+			backupFile.delete();
+			return false;
+		}
+		return backupFile.renameTo(modelFile);
+	}
+}
@@ -0,0 +1,525 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Journal of the changes made to the application model since it was last saved in full. Each
+ * record holds the state of the objects which changed, identified by their XMI id: the values of
+ * their persisted attributes and the ids of the objects they contain and reference. Replaying the
+ * records in order on the saved model restores the model as it was when the last record was
+ * written.
+ * <p>
+ * The journal starts with the name, size and time stamp of the model file it applies to, so that
+ * it is ignored once the model file has been saved again.
+ * </p>
+ */
+class ModelJournal {
+
+	private static final int MAGIC = 0x45344d4a; // "E4MJ"
+	private static final int VERSION = 1;
+
+	// the kinds of feature values in a record
+	private static final byte UNSET = 0;
+	private static final byte VALUE = 1;
+	private static final byte VALUES = 2;
+	private static final byte REFERENCE = 3;
+	private static final byte REFERENCES = 4;
+	private static final byte ENTRIES = 5;
+
+	private final File file;
+
+	ModelJournal(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Return the size of the journal in bytes.
+	 */
+	long length() {
+		return file.length();
+	}
+
+	void delete() {
+		file.delete();
+	}
+
+	/**
+	 * Start an empty journal for the model saved in <code>modelFile</code>.
+	 */
+	void reset(File modelFile) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, modelFile.getName());
+			out.writeLong(modelFile.length());
+			out.writeLong(modelFile.lastModified());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Append a record created with {@link #createRecord(E4XMIResource, Collection)}.
+	 */
+	void append(byte[] record) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				file, true)));
+		try {
+			out.writeInt(record.length);
+			out.write(record);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Return whether the journal holds the changes made to the model saved in
+	 * <code>modelFile</code>, as the file is now.
+	 */
+	boolean isJournalOf(File modelFile) {
+		if (!file.isFile()) {
+			return false;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+					file)));
+			try {
+				return readHeader(in, modelFile);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Apply the records of the journal to the model loaded from the file the journal was started
+	 * for. A record which was not completely written is ignored.
+	 *
+	 * @return the number of records applied
+	 * @throws IOException
+	 *             if the journal cannot be read, doesn't match the model or holds a value the
+	 *             model rejects, in which case the model may have been partially modified and
+	 *             must be loaded again
+	 */
+	int replay(E4XMIResource resource) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (!readHeader(in, null)) {
+				throw new IOException("Invalid model journal " + file); //$NON-NLS-1$
+			}
+			int count = 0;
+			while (true) {
+				byte[] record;
+				try {
+					record = new byte[in.readInt()];
+					in.readFully(record);
+				} catch (EOFException e) {
+					break;
+				}
+				try {
+					applyRecord(resource, new DataInputStream(new ByteArrayInputStream(record)));
+				} catch (RuntimeException e) {
+					IOException ioe = new IOException("Invalid model journal record " + count //$NON-NLS-1$
+							+ " in " + file); //$NON-NLS-1$
+					ioe.initCause(e);
+					throw ioe;
+				}
+				count++;
+			}
+			return count;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static boolean readHeader(DataInputStream in, File modelFile) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			return false;
+		}
+		String name = readString(in);
+		long length = in.readLong();
+		long lastModified = in.readLong();
+		return modelFile == null
+				|| (modelFile.getName().equals(name) && modelFile.length() == length && modelFile
+						.lastModified() == lastModified);
+	}
+
+	/**
+	 * Create a record of the current state of the given objects of the resource. Must be called
+	 * on the thread which modifies the model.
+	 *
+	 * @return the record, or <code>null</code> if the objects reference objects which are not in
+	 *         the resource and the model has to be saved in full
+	 */
+	static byte[] createRecord(E4XMIResource resource, Collection<EObject> eObjects) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(eObjects.size());
+			for (EObject eObject : eObjects) {
+				if (!writeObject(out, resource, eObject)) {
+					return null;
+				}
+			}
+		} catch (IOException e) {
+			// not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static boolean writeObject(DataOutputStream out, E4XMIResource resource,
+			EObject eObject) throws IOException {
+		EClass eClass = eObject.eClass();
+		writeString(out, resource.getID(eObject));
+		writeString(out, eClass.getEPackage().getNsURI());
+		writeString(out, eClass.getName());
+
+		List<EStructuralFeature> features = getPersistedFeatures(eClass);
+		out.writeInt(features.size());
+		for (EStructuralFeature feature : features) {
+			writeString(out, feature.getName());
+			if (!eObject.eIsSet(feature)) {
+				out.writeByte(UNSET);
+			} else if (feature instanceof EAttribute) {
+				EDataType type = ((EAttribute) feature).getEAttributeType();
+				if (feature.isMany()) {
+					List<?> values = (List<?>) eObject.eGet(feature);
+					out.writeByte(VALUES);
+					out.writeInt(values.size());
+					for (Object value : values) {
+						writeString(out, EcoreUtil.convertToString(type, value));
+					}
+				} else {
+					out.writeByte(VALUE);
+					writeString(out, EcoreUtil.convertToString(type, eObject.eGet(feature)));
+				}
+			} else if (isEntry(((EReference) feature).getEReferenceType())) {
+				List<?> entries = (List<?>) eObject.eGet(feature);
+				out.writeByte(ENTRIES);
+				out.writeInt(entries.size());
+				for (Object entry : entries) {
+					if (!writeEntry(out, (EObject) entry)) {
+						return false;
+					}
+				}
+			} else if (feature.isMany()) {
+				List<?> values = (List<?>) eObject.eGet(feature);
+				out.writeByte(REFERENCES);
+				out.writeInt(values.size());
+				for (Object value : values) {
+					if (!writeReference(out, resource, (EObject) value)) {
+						return false;
+					}
+				}
+			} else {
+				out.writeByte(REFERENCE);
+				if (!writeReference(out, resource, (EObject) eObject.eGet(feature, false))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean writeEntry(DataOutputStream out, EObject entry) throws IOException {
+		List<EStructuralFeature> features = getPersistedFeatures(entry.eClass());
+		out.writeInt(features.size());
+		for (EStructuralFeature feature : features) {
+			if (!(feature instanceof EAttribute) || feature.isMany()) {
+				return false;
+			}
+			writeString(out, feature.getName());
+			writeString(out, EcoreUtil.convertToString(((EAttribute) feature).getEAttributeType(),
+					entry.eGet(feature)));
+		}
+		return true;
+	}
+
+	private static boolean writeReference(DataOutputStream out, E4XMIResource resource,
+			EObject value) throws IOException {
+		if (value == null) {
+			writeString(out, null);
+			return true;
+		}
+		if (value.eIsProxy() || value.eResource() != resource) {
+			return false;
+		}
+		writeString(out, resource.getID(value));
+		return true;
+	}
+
+	private static void applyRecord(E4XMIResource resource, DataInputStream in)
+			throws IOException {
+		int count = in.readInt();
+		List<ObjectState> states = new ArrayList<ObjectState>(count);
+		for (int i = 0; i < count; i++) {
+			states.add(readObject(in));
+		}
+
+		// find or create all the objects first, moving objects detaches them and removes their
+		// ids from the resource
+		Map<String, EObject> eObjects = new HashMap<String, EObject>();
+		for (ObjectState state : states) {
+			EObject eObject = resource.getIDToEObjectMap().get(state.id);
+			if (eObject == null) {
+				eObject = EcoreUtil.create(getEClass(resource, state.nsURI, state.className));
+				resource.setID(eObject, state.id);
+			}
+			eObjects.put(state.id, eObject);
+		}
+		for (ObjectState state : states) {
+			for (FeatureState featureState : state.features) {
+				if (featureState.kind == REFERENCE || featureState.kind == REFERENCES) {
+					for (String id : (List<String>) featureState.value) {
+						if (id != null && !eObjects.containsKey(id)) {
+							EObject eObject = resource.getIDToEObjectMap().get(id);
+							if (eObject == null) {
+								throw new IOException("Unknown model element " + id); //$NON-NLS-1$
+							}
+							eObjects.put(id, eObject);
+						}
+					}
+				}
+			}
+		}
+
+		// attributes first, then the contents, then the other references, the model checks
+		// some references against the rest of the state (e.g. the selected element of a
+		// container must be one of its rendered children)
+		for (int pass = 0; pass < 3; pass++) {
+			for (ObjectState state : states) {
+				EObject eObject = eObjects.get(state.id);
+				for (FeatureState featureState : state.features) {
+					EStructuralFeature feature = eObject.eClass().getEStructuralFeature(
+							featureState.name);
+					if (feature != null && getPass(feature) == pass) {
+						applyFeature(eObject, feature, featureState, eObjects);
+					}
+				}
+			}
+		}
+	}
+
+	private static int getPass(EStructuralFeature feature) {
+		if (feature instanceof EAttribute) {
+			return 0;
+		}
+		return ((EReference) feature).isContainment() ? 1 : 2;
+	}
+
+	private static void applyFeature(EObject eObject, EStructuralFeature feature,
+			FeatureState featureState, Map<String, EObject> eObjects) {
+		switch (featureState.kind) {
+		case UNSET:
+			eObject.eUnset(feature);
+			break;
+		case VALUE:
+			eObject.eSet(feature, EcoreUtil.createFromString(
+					((EAttribute) feature).getEAttributeType(), (String) featureState.value));
+			break;
+		case VALUES:
+			EDataType type = ((EAttribute) feature).getEAttributeType();
+			List<Object> values = new ArrayList<Object>();
+			for (String value : (List<String>) featureState.value) {
+				values.add(EcoreUtil.createFromString(type, value));
+			}
+			ECollections.setEList((EList<Object>) eObject.eGet(feature), values);
+			break;
+		case REFERENCE:
+			eObject.eSet(feature, eObjects.get(((List<String>) featureState.value).get(0)));
+			break;
+		case REFERENCES:
+			List<EObject> references = new ArrayList<EObject>();
+			for (String id : (List<String>) featureState.value) {
+				references.add(eObjects.get(id));
+			}
+			ECollections.setEList((EList<EObject>) eObject.eGet(feature), references);
+			break;
+		case ENTRIES:
+			EClass entryClass = ((EReference) feature).getEReferenceType();
+			List<EObject> entries = new ArrayList<EObject>();
+			for (Map<String, String> entryState : (List<Map<String, String>>) featureState.value) {
+				EObject entry = EcoreUtil.create(entryClass);
+				for (Map.Entry<String, String> value : entryState.entrySet()) {
+					EAttribute attribute = (EAttribute) entryClass.getEStructuralFeature(value
+							.getKey());
+					if (attribute != null) {
+						entry.eSet(attribute, EcoreUtil.createFromString(
+								attribute.getEAttributeType(), value.getValue()));
+					}
+				}
+				entries.add(entry);
+			}
+			EList<EObject> list = (EList<EObject>) eObject.eGet(feature);
+			list.clear();
+			list.addAll(entries);
+			break;
+		}
+	}
+
+	private static ObjectState readObject(DataInputStream in) throws IOException {
+		ObjectState state = new ObjectState();
+		state.id = readString(in);
+		state.nsURI = readString(in);
+		state.className = readString(in);
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			FeatureState featureState = new FeatureState();
+			featureState.name = readString(in);
+			featureState.kind = in.readByte();
+			switch (featureState.kind) {
+			case UNSET:
+				break;
+			case VALUE:
+				featureState.value = readString(in);
+				break;
+			case REFERENCE:
+				List<String> id = new ArrayList<String>(1);
+				id.add(readString(in));
+				featureState.value = id;
+				break;
+			case VALUES:
+			case REFERENCES:
+				int size = in.readInt();
+				List<String> values = new ArrayList<String>(size);
+				for (int j = 0; j < size; j++) {
+					values.add(readString(in));
+				}
+				featureState.value = values;
+				break;
+			case ENTRIES:
+				int entryCount = in.readInt();
+				List<Map<String, String>> entries = new ArrayList<Map<String, String>>(entryCount);
+				for (int j = 0; j < entryCount; j++) {
+					int valueCount = in.readInt();
+					Map<String, String> entry = new HashMap<String, String>();
+					for (int k = 0; k < valueCount; k++) {
+						entry.put(readString(in), readString(in));
+					}
+					entries.add(entry);
+				}
+				featureState.value = entries;
+				break;
+			default:
+				throw new IOException("Invalid model journal record"); //$NON-NLS-1$
+			}
+			state.features.add(featureState);
+		}
+		return state;
+	}
+
+	private static EClass getEClass(E4XMIResource resource, String nsURI, String className)
+			throws IOException {
+		EPackage ePackage = resource.getResourceSet() == null ? null : resource.getResourceSet()
+				.getPackageRegistry().getEPackage(nsURI);
+		if (ePackage == null) {
+			ePackage = EPackage.Registry.INSTANCE.getEPackage(nsURI);
+		}
+		EClassifier eClass = ePackage == null ? null : ePackage.getEClassifier(className);
+		if (!(eClass instanceof EClass)) {
+			throw new IOException("Unknown model class " + nsURI + '#' + className); //$NON-NLS-1$
+		}
+		return (EClass) eClass;
+	}
+
+	/**
+	 * Return the features of the class which are saved in the model file.
+	 */
+	private static List<EStructuralFeature> getPersistedFeatures(EClass eClass) {
+		List<EStructuralFeature> features = new ArrayList<EStructuralFeature>();
+		for (EStructuralFeature feature : eClass.getEAllStructuralFeatures()) {
+			if (feature.isTransient() || feature.isDerived() || !feature.isChangeable()) {
+				continue;
+			}
+			if (feature instanceof EReference && ((EReference) feature).isContainer()) {
+				continue;
+			}
+			if (feature instanceof EAttribute
+					&& !((EAttribute) feature).getEAttributeType().isSerializable()) {
+				continue;
+			}
+			features.add(feature);
+		}
+		return features;
+	}
+
+	private static boolean isEntry(EClass eClass) {
+		return eClass.getInstanceClass() == Map.Entry.class;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		// not writeUTF, persisted state such as mementos can be longer than 64K
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes("UTF-8"); //$NON-NLS-1$
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+
+	private static class ObjectState {
+		String id;
+		String nsURI;
+		String className;
+		List<FeatureState> features = new ArrayList<FeatureState>();
+	}
+
+	private static class FeatureState {
+		String name;
+		byte kind;
+		Object value;
+	}
+}
@@ -44,6 +44,27 @@ public class ModelReconcilingService implements IModelReconcilingService {
 		}
 
 		MultiStatus multiStatus = new MultiStatus(Activator.PI_WORKBENCH, 0, "", null); //$NON-NLS-1$
+
+		// the deltas change many elements, publish their events as one batch
+		UIEventPublisher publisher = null;
+		Iterator<ModelDelta> deltaIterator = deltas.iterator();
+		if (deltaIterator.hasNext()) {
+			publisher = UIEventPublisher.getPublisher(deltaIterator.next().getObject());
+		}
+		if (publisher != null) {
+			publisher.beginBatch();
+		}
+		try {
+			return applyDeltas(deltas, filters, multiStatus);
+		} finally {
+			if (publisher != null) {
+				publisher.endBatch();
+			}
+		}
+	}
+
+	private IStatus applyDeltas(Collection<ModelDelta> deltas, String[] filters,
+			MultiStatus multiStatus) {
 		LinkedList<ModelDelta> delayedDeltas = new LinkedList<ModelDelta>();
 
 		deltaIterationLoop: for (final ModelDelta delta : deltas) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 IBM Corporation and others.
+ * Copyright (c) 2010, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,12 @@
 package org.eclipse.e4.ui.internal.workbench;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.services.events.IEventBroker;
@@ -37,7 +42,10 @@ import org.eclipse.e4.ui.model.application.ui.basic.MTrimBar;
 import org.eclipse.e4.ui.model.application.ui.basic.MTrimmedWindow;
 import org.eclipse.e4.ui.model.application.ui.basic.MWindow;
 import org.eclipse.e4.ui.model.application.ui.basic.MWindowElement;
+import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedPackageImpl;
 import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicPackageImpl;
+import org.eclipse.e4.ui.model.application.ui.impl.UiPackageImpl;
 import org.eclipse.e4.ui.model.application.ui.menu.MToolControl;
 import org.eclipse.e4.ui.model.internal.ModelUtils;
 import org.eclipse.e4.ui.workbench.IPresentationEngine;
@@ -47,6 +55,7 @@ import org.eclipse.e4.ui.workbench.modeling.EModelService;
 import org.eclipse.e4.ui.workbench.modeling.EPartService;
 import org.eclipse.e4.ui.workbench.modeling.EPlaceholderResolver;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventHandler;
@@ -201,6 +210,143 @@ public class ModelServiceImpl implements EModelService {
 		}
 	}
 
+	/**
+	 * Return the index of the model containing the search root, or <code>null</code> if the search
+	 * root is not part of a model with a {@link UIEventPublisher} attached.
+	 */
+	private ElementIndex getElementIndex(MUIElement searchRoot) {
+		UIEventPublisher publisher = UIEventPublisher.getPublisher(searchRoot);
+		return publisher == null ? null : publisher.getElementIndex();
+	}
+
+	/**
+	 * Find the elements with the index of the model instead of walking the model: the candidates
+	 * which match are kept if the walk done by
+	 * {@link #findElementsRecursive(MUIElement, String, Class, List, List, int)} would reach them,
+	 * in the order it would reach them.
+	 * 
+	 * @return the elements found, or <code>null</code> if the search has to walk the model
+	 */
+	private <T> List<T> findIndexedElements(ElementIndex index, MUIElement searchRoot, String id,
+			Class<T> clazz, List<String> tagsToMatch, int searchFlags) {
+		Collection<MUIElement> candidates = index.getCandidates(id, clazz, tagsToMatch);
+		if (candidates == null)
+			return null;
+
+		final Map<MUIElement, int[]> paths = new HashMap<MUIElement, int[]>();
+		for (MUIElement candidate : candidates) {
+			if (match(candidate, id, clazz, tagsToMatch)) {
+				int[] path = getSearchPath(index, searchRoot, candidate, searchFlags);
+				if (path != null) {
+					paths.put(candidate, path);
+				}
+			}
+		}
+
+		List<MUIElement> found = new ArrayList<MUIElement>(paths.keySet());
+		if (found.size() > 1) {
+			Collections.sort(found, new Comparator<MUIElement>() {
+				public int compare(MUIElement e1, MUIElement e2) {
+					return comparePaths(paths.get(e1), paths.get(e2));
+				}
+			});
+		}
+		return (List<T>) found;
+	}
+
+	// the order in which findElementsRecursive goes through the features of an element
+	private static final int CHILDREN_STEP = 0;
+	private static final int TRIM_BARS_STEP = 1;
+	private static final int WINDOWS_STEP = 2;
+	private static final int REF_STEP = 3;
+
+	/**
+	 * Return the path from the search root to the element followed by
+	 * {@link #findElementsRecursive(MUIElement, String, Class, List, List, int)}, as pairs of
+	 * feature step and index. If the element is reached through several placeholders the first
+	 * path is returned.
+	 * 
+	 * @return the path, or <code>null</code> if the element is not reached from the search root
+	 */
+	private int[] getSearchPath(ElementIndex index, MUIElement searchRoot, MUIElement element,
+			int searchFlags) {
+		if (element == searchRoot)
+			return new int[0];
+
+		EObject eObj = (EObject) element;
+		EObject container = eObj.eContainer();
+		EStructuralFeature feature = eObj.eContainmentFeature();
+		if (!(container instanceof MUIElement))
+			return null;
+
+		int step;
+		if (feature == UiPackageImpl.Literals.ELEMENT_CONTAINER__CHILDREN) {
+			if (container instanceof MPerspectiveStack) {
+				if ((searchFlags & IN_ANY_PERSPECTIVE) != 0) {
+					// any perspective is searched
+				} else if ((searchFlags & IN_ACTIVE_PERSPECTIVE) != 0) {
+					if (((MPerspectiveStack) container).getSelectedElement() != element)
+						return null;
+				} else {
+					// searches of the shared areas only walk the model
+					return null;
+				}
+			}
+			step = CHILDREN_STEP;
+		} else if (feature == BasicPackageImpl.Literals.TRIMMED_WINDOW__TRIM_BARS) {
+			if ((searchFlags & IN_TRIM) == 0)
+				return null;
+			step = TRIM_BARS_STEP;
+		} else if (feature == BasicPackageImpl.Literals.WINDOW__WINDOWS
+				|| feature == AdvancedPackageImpl.Literals.PERSPECTIVE__WINDOWS) {
+			step = WINDOWS_STEP;
+		} else if (feature == BasicPackageImpl.Literals.WINDOW__SHARED_ELEMENTS) {
+			// shared elements are reached through the placeholders referencing them
+			if (element instanceof MArea && (searchFlags & IN_SHARED_AREA) == 0)
+				return null;
+
+			int[] path = null;
+			for (MUIElement ph : index.getElementsOfType(MPlaceholder.class)) {
+				if (((MPlaceholder) ph).getRef() == element) {
+					int[] phPath = getSearchPath(index, searchRoot, ph, searchFlags);
+					if (phPath != null) {
+						phPath = append(phPath, REF_STEP, 0);
+						if (path == null || comparePaths(phPath, path) < 0) {
+							path = phPath;
+						}
+					}
+				}
+			}
+			return path;
+		} else {
+			// menus, snippets, ... are not searched
+			return null;
+		}
+
+		int[] parentPath = getSearchPath(index, searchRoot, (MUIElement) container, searchFlags);
+		if (parentPath == null)
+			return null;
+		return append(parentPath, step, ((List<?>) container.eGet(feature)).indexOf(element));
+	}
+
+	private static int[] append(int[] path, int step, int position) {
+		int[] result = new int[path.length + 2];
+		System.arraycopy(path, 0, result, 0, path.length);
+		result[path.length] = step;
+		result[path.length + 1] = position;
+		return result;
+	}
+
+	private static int comparePaths(int[] path1, int[] path2) {
+		int length = Math.min(path1.length, path2.length);
+		for (int i = 0; i < length; i++) {
+			if (path1[i] != path2[i])
+				return path1[i] < path2[i] ? -1 : 1;
+		}
+		// an element is found before its descendants
+		return path1.length - path2.length;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -209,13 +355,23 @@ public class ModelServiceImpl implements EModelService {
 	 */
 	public <T> List<T> findElements(MUIElement searchRoot, String id, Class<T> clazz,
 			List<String> tagsToMatch) {
-		List<T> elements = new ArrayList<T>();
-		findElementsRecursive(searchRoot, id, clazz, tagsToMatch, elements, ANYWHERE);
-		return elements;
+		return findElements(searchRoot, id, clazz, tagsToMatch, ANYWHERE);
 	}
 
 	public <T> List<T> findElements(MUIElement searchRoot, String id, Class<T> clazz,
 			List<String> tagsToMatch, int searchFlags) {
+		// the index cannot tell which shared areas the walk looks up outside of the perspectives
+		boolean sharedAreasOnly = (searchFlags & (IN_ANY_PERSPECTIVE | IN_ACTIVE_PERSPECTIVE)) == 0
+				&& (searchFlags & IN_SHARED_AREA) != 0;
+		ElementIndex index = searchFlags == 0 || sharedAreasOnly ? null
+				: getElementIndex(searchRoot);
+		if (index != null) {
+			List<T> elements = findIndexedElements(index, searchRoot, id, clazz, tagsToMatch,
+					searchFlags);
+			if (elements != null)
+				return elements;
+		}
+
 		List<T> elements = new ArrayList<T>();
 		findElementsRecursive(searchRoot, id, clazz, tagsToMatch, elements, searchFlags);
 		return elements;
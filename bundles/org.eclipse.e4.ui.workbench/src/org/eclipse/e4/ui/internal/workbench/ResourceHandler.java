@@ -17,6 +17,7 @@ import java.net.URISyntaxException;
 import java.net.URLConnection;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -26,7 +27,9 @@ import org.eclipse.core.internal.runtime.PlatformURLPluginConnection;
 import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.e4.core.contexts.ContextInjectionFactory;
 import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Optional;
 import org.eclipse.e4.core.services.log.Logger;
+import org.eclipse.e4.ui.di.UISynchronize;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.e4.ui.model.application.MApplicationElement;
 import org.eclipse.e4.ui.model.application.commands.impl.CommandsPackageImpl;
@@ -39,6 +42,7 @@ import org.eclipse.e4.ui.workbench.IModelResourceHandler;
 import org.eclipse.e4.ui.workbench.modeling.IModelReconcilingService;
 import org.eclipse.e4.ui.workbench.modeling.ModelDelta;
 import org.eclipse.e4.ui.workbench.modeling.ModelReconciler;
+import org.eclipse.emf.common.notify.Notifier;
 import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EObject;
@@ -55,8 +59,19 @@ import org.w3c.dom.Document;
  */
 public class ResourceHandler implements IModelResourceHandler {
 
+	private static final String WORKBENCH_XMI = "workbench.xmi"; //$NON-NLS-1$
+
+	/**
+	 * The model is saved to this file when the binary format is selected.
+	 */
+	private static final String WORKBENCH_BINARY = "workbench.e4bin"; //$NON-NLS-1$
+	private static final String BINARY_EXTENSION = "e4bin"; //$NON-NLS-1$
+	private static final String WORKBENCH_JOURNAL = "workbench.journal"; //$NON-NLS-1$
+
 	private ResourceSetImpl resourceSetImpl;
 	private Resource resource;
+	private ModelJournal journal;
+	private ModelAutoSaver autoSaver;
 
 	@Inject
 	private Logger logger;
@@ -81,6 +96,23 @@ public class ResourceHandler implements IModelResourceHandler {
 	final private boolean saveAndRestore;
 	final private boolean clearPersistedState;
 
+	/**
+	 * Dictates whether the model is saved in the binary format instead of XMI.
+	 */
+	@Inject
+	@Optional
+	@Named(E4Workbench.BINARY_MODEL)
+	private boolean binaryModel;
+
+	/**
+	 * The number of seconds between two saves of the model changes in the background, 0 to save
+	 * the model only when the application is closed.
+	 */
+	@Inject
+	@Optional
+	@Named(E4Workbench.MODEL_AUTO_SAVE_INTERVAL)
+	private int autoSaveInterval;
+
 	/**
 	 * Constructor.
 	 * 
@@ -102,6 +134,8 @@ public class ResourceHandler implements IModelResourceHandler {
 		resourceSetImpl = new ResourceSetImpl();
 		resourceSetImpl.getResourceFactoryRegistry().getExtensionToFactoryMap()
 				.put(Resource.Factory.Registry.DEFAULT_EXTENSION, new E4XMIResourceFactory());
+		resourceSetImpl.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put(BINARY_EXTENSION, new E4BinaryResourceFactory());
 
 		resourceSetImpl.getPackageRegistry().put(ApplicationPackageImpl.eNS_URI,
 				ApplicationPackageImpl.eINSTANCE);
@@ -139,7 +173,7 @@ public class ResourceHandler implements IModelResourceHandler {
 				MApplication appElement = null;
 				try {
 					// create new resource in case code below fails somewhere
-					File workbenchData = new File(baseLocation, "workbench.xmi"); //$NON-NLS-1$			
+					File workbenchData = new File(baseLocation, getModelFileName());
 					URI restoreLocationNew = URI.createFileURI(workbenchData.getAbsolutePath());
 					resource = resourceSetImpl.createResource(restoreLocationNew);
 
@@ -147,6 +181,8 @@ public class ResourceHandler implements IModelResourceHandler {
 					appElement = (MApplication) oldResource.getContents().get(0);
 
 					context.set(MApplication.class, appElement);
+					// publish the changes of the processing and of the deltas in batches
+					UIEventPublisher.attachPublisher((Notifier) appElement, context);
 					ModelAssembler contribProcessor = ContextInjectionFactory.make(
 							ModelAssembler.class, context);
 					contribProcessor.processModel();
@@ -179,14 +215,33 @@ public class ResourceHandler implements IModelResourceHandler {
 			}
 		}
 
-		File workbenchData = new File(baseLocation, "workbench.xmi"); //$NON-NLS-1$			
+		File workbenchData = new File(baseLocation, getModelFileName());
+		File otherWorkbenchData = new File(baseLocation, binaryModel ? WORKBENCH_XMI
+				: WORKBENCH_BINARY);
+
+		journal = new ModelJournal(new File(baseLocation, WORKBENCH_JOURNAL));
 
-		if (clearPersistedState && workbenchData.exists())
-			workbenchData.delete();
+		// a background save may have been interrupted before the new model was in place
+		if (ModelAutoSaver.restoreBackup(workbenchData) && logger != null)
+			logger.warn("Restored the workbench model saved before an interrupted save"); //$NON-NLS-1$
+
+		if (clearPersistedState) {
+			if (workbenchData.exists())
+				workbenchData.delete();
+			if (otherWorkbenchData.exists())
+				otherWorkbenchData.delete();
+			journal.delete();
+		}
+
+		// the model saved in the other format is used when it is the most recent, i.e. the
+		// format has just been switched
+		File restoreData = workbenchData;
+		if (otherWorkbenchData.lastModified() > workbenchData.lastModified())
+			restoreData = otherWorkbenchData;
 
 		URI restoreLocation = null;
 		if (saveAndRestore)
-			restoreLocation = URI.createFileURI(workbenchData.getAbsolutePath());
+			restoreLocation = URI.createFileURI(restoreData.getAbsolutePath());
 
 		// last stored time-stamp
 		long restoreLastModified = restoreLocation == null ? 0L : new File(
@@ -198,23 +253,49 @@ public class ResourceHandler implements IModelResourceHandler {
 		boolean restore = restoreLastModified > 0;
 
 		resource = null;
+		URI saveLocation = URI.createFileURI(workbenchData.getAbsolutePath());
+		boolean journalValid = false;
 		if (restore && saveAndRestore) {
 			resource = loadResource(restoreLocation);
+			if (resource != null && journal.isJournalOf(restoreData)) {
+				try {
+					journal.replay((E4XMIResource) resource);
+					journalValid = true;
+				} catch (IOException e) {
+					// fall back to the last full save rather than a partially restored model
+					if (logger != null)
+						logger.error(e, "Unable to apply the changes saved in the model journal"); //$NON-NLS-1$
+					journal.delete();
+					resourceSetImpl.getResources().remove(resource);
+					resource = loadResource(restoreLocation);
+				}
+			}
+			if (resource != null && restoreData != workbenchData) {
+				resource = moveToResource(resource, saveLocation);
+				journalValid = false;
+			}
 		}
 		if (resource == null) {
 			Resource applicationResource = loadResource(applicationDefinitionInstance);
 			MApplication theApp = (MApplication) applicationResource.getContents().get(0);
-			if (restoreLocation == null)
-				restoreLocation = URI.createFileURI(workbenchData.getAbsolutePath());
-			resource = resourceSetImpl.createResource(restoreLocation);
+			resource = resourceSetImpl.createResource(saveLocation);
 			resource.getContents().add((EObject) theApp);
 		}
 
+		// track the changes made by the model processing too
+		if (saveAndRestore && autoSaveInterval > 0) {
+			autoSaver = new ModelAutoSaver((E4XMIResource) resource, workbenchData, journal,
+					journalValid, context.get(UISynchronize.class), logger);
+			autoSaver.start(autoSaveInterval * 1000L);
+		}
+
 		// Add model items described in the model extension point
 		// This has to be done before commands are put into the context
 		MApplication appElement = (MApplication) resource.getContents().get(0);
 
 		this.context.set(MApplication.class, appElement);
+		// publish the changes of the processing in batches
+		UIEventPublisher.attachPublisher((Notifier) appElement, context);
 		ModelAssembler contribProcessor = ContextInjectionFactory.make(ModelAssembler.class,
 				context);
 		contribProcessor.processModel();
@@ -223,8 +304,45 @@ public class ResourceHandler implements IModelResourceHandler {
 	}
 
 	public void save() throws IOException {
-		if (saveAndRestore)
+		if (!saveAndRestore)
+			return;
+
+		if (autoSaver != null) {
+			autoSaver.save();
+		} else {
 			resource.save(null);
+			if (journal != null)
+				journal.delete();
+		}
+	}
+
+	private String getModelFileName() {
+		return binaryModel ? WORKBENCH_BINARY : WORKBENCH_XMI;
+	}
+
+	/**
+	 * Move the model to a new resource, keeping the ids of its objects. Used to save a model in a
+	 * different format than the one it was loaded from.
+	 */
+	private Resource moveToResource(Resource resource, URI uri) {
+		E4XMIResource source = (E4XMIResource) resource;
+		Map<EObject, String> ids = new HashMap<EObject, String>();
+		TreeIterator<EObject> it = source.getAllContents();
+		while (it.hasNext()) {
+			EObject eObject = it.next();
+			String id = source.getID(eObject);
+			if (id != null)
+				ids.put(eObject, id);
+		}
+
+		// set the ids first, otherwise new ones are generated when the objects are attached
+		E4XMIResource target = (E4XMIResource) resourceSetImpl.createResource(uri);
+		for (Map.Entry<EObject, String> entry : ids.entrySet()) {
+			target.setID(entry.getKey(), entry.getValue());
+		}
+		target.getContents().addAll(source.getContents());
+		resourceSetImpl.getResources().remove(source);
+		return target;
 	}
 
 	// Ensures that even models with error are loaded!
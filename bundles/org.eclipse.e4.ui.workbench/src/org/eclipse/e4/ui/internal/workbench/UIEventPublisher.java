@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.eclipse.e4.ui.internal.workbench;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.e4.core.contexts.IEclipseContext;
@@ -22,18 +24,72 @@ import org.eclipse.e4.ui.model.application.ui.MUIElement;
 import org.eclipse.e4.ui.workbench.UIEvents;
 import org.eclipse.e4.ui.workbench.UIEvents.EventTags;
 import org.eclipse.e4.ui.workbench.UIEvents.EventTypes;
+import org.eclipse.emf.common.notify.Adapter;
 import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
 import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.osgi.service.event.Event;
 
 /**
  * Transforms E4 MPart events into 3.x legacy events.
+ * <p>
+ * Between {@link #beginBatch()} and {@link #endBatch()} the events are held back. Consecutive
+ * changes of the same attribute of an element are coalesced into one event, from the first old
+ * value to the last new value. At the end of the batch the events are sent one by one on their
+ * topics, then together on the {@link UIEvents.UIModelBatch#TOPIC} topic.
+ * </p>
  */
 public class UIEventPublisher extends EContentAdapter {
 
+	/**
+	 * An event held back until the end of a batch.
+	 */
+	private static class BatchedEvent {
+		String topic;
+		Map<String, Object> argMap;
+		boolean coalesced;
+
+		BatchedEvent(String topic, Map<String, Object> argMap) {
+			this.topic = topic;
+			this.argMap = argMap;
+		}
+	}
+
+	/**
+	 * Identifies the attribute of an element that SET events are coalesced on.
+	 */
+	private static class AttributeKey {
+		private final Object element;
+		private final String topic;
+
+		AttributeKey(Object element, String topic) {
+			this.element = element;
+			this.topic = topic;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof AttributeKey))
+				return false;
+			AttributeKey other = (AttributeKey) obj;
+			return element == other.element && topic.equals(other.topic);
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(element) * 31 + topic.hashCode();
+		}
+	}
+
 	private IEclipseContext context;
 
+	private ElementIndex elementIndex = new ElementIndex();
+
+	private int batchDepth;
+	private List<BatchedEvent> batchedEvents = new ArrayList<BatchedEvent>();
+	private Map<AttributeKey, BatchedEvent> lastAttributeEvents = new HashMap<AttributeKey, BatchedEvent>();
+
 	/**
 	 * @param e4Context
 	 */
@@ -41,6 +97,141 @@ public class UIEventPublisher extends EContentAdapter {
 		this.context = e4Context;
 	}
 
+	/**
+	 * Return the publisher attached to the given model object, if any.
+	 * 
+	 * @param notifier
+	 *            an object of the model
+	 * @return the publisher, or <code>null</code> if the object is not part of a model publishing
+	 *         its events
+	 */
+	public static UIEventPublisher getPublisher(Object notifier) {
+		if (!(notifier instanceof Notifier))
+			return null;
+
+		for (Adapter adapter : ((Notifier) notifier).eAdapters()) {
+			if (adapter instanceof UIEventPublisher)
+				return (UIEventPublisher) adapter;
+		}
+		return null;
+	}
+
+	/**
+	 * Return the publisher attached to the given model, attaching a new one first if there is
+	 * none. The publisher is attached while the model is loaded, so that the changes made by the
+	 * model processing are published in batches.
+	 * 
+	 * @param root
+	 *            the root of the model
+	 * @param e4Context
+	 *            the context providing the event broker of the new publisher
+	 * @return the publisher attached to the model
+	 */
+	public static UIEventPublisher attachPublisher(Notifier root, IEclipseContext e4Context) {
+		UIEventPublisher publisher = getPublisher(root);
+		if (publisher == null) {
+			publisher = new UIEventPublisher(e4Context);
+			root.eAdapters().add(publisher);
+		}
+		return publisher;
+	}
+
+	/**
+	 * Start holding back the events of the model until the matching {@link #endBatch()}. Batches
+	 * can be nested, the events are sent at the end of the outermost one.
+	 */
+	public void beginBatch() {
+		batchDepth++;
+	}
+
+	/**
+	 * End a batch started with {@link #beginBatch()}, sending the events held back if it is the
+	 * outermost one.
+	 */
+	public void endBatch() {
+		if (batchDepth == 0 || --batchDepth > 0)
+			return;
+
+		List<BatchedEvent> events = batchedEvents;
+		batchedEvents = new ArrayList<BatchedEvent>();
+		lastAttributeEvents.clear();
+
+		IEventBroker eventManager = context.get(IEventBroker.class);
+		if (eventManager == null)
+			return;
+
+		List<Event> sent = new ArrayList<Event>(events.size());
+		for (BatchedEvent event : events) {
+			if (event.argMap == null)
+				continue; // superseded by a later change of the attribute
+
+			if (event.coalesced) {
+				Object oldValue = event.argMap.get(EventTags.OLD_VALUE);
+				Object newValue = event.argMap.get(EventTags.NEW_VALUE);
+				if (oldValue == null ? newValue == null : oldValue.equals(newValue))
+					continue; // the attribute is back to its value
+			}
+			eventManager.send(event.topic, event.argMap);
+			sent.add(new Event(event.topic, event.argMap));
+		}
+
+		if (!sent.isEmpty()) {
+			Map<String, Object> argMap = new HashMap<String, Object>();
+			argMap.put(EventTags.EVENTS, sent);
+			eventManager.send(UIEvents.UIModelBatch.TOPIC, argMap);
+		}
+	}
+
+	/**
+	 * Hold back the event until the end of the batch, coalescing it with the previous change of
+	 * the same attribute.
+	 */
+	private void batchEvent(Notification notification, String topic, Map<String, Object> argMap) {
+		BatchedEvent event = new BatchedEvent(topic, argMap);
+		Object notifier = notification.getNotifier();
+		if (notification.getEventType() == Notification.SET
+				&& notifier instanceof MApplicationElement
+				&& !((EStructuralFeature) notification.getFeature()).isMany()) {
+			AttributeKey key = new AttributeKey(notifier, topic);
+			BatchedEvent previous = lastAttributeEvents.put(key, event);
+			if (previous != null) {
+				// keep the value the attribute had before the first change
+				Object oldValue = previous.argMap.get(EventTags.OLD_VALUE);
+				if (oldValue == null) {
+					argMap.remove(EventTags.OLD_VALUE);
+				} else {
+					argMap.put(EventTags.OLD_VALUE, oldValue);
+				}
+				event.coalesced = true;
+				previous.argMap = null;
+			}
+		}
+		batchedEvents.add(event);
+	}
+
+	/**
+	 * Return the index of the UI elements of the model this publisher is attached to.
+	 */
+	ElementIndex getElementIndex() {
+		return elementIndex;
+	}
+
+	@Override
+	protected void setTarget(EObject target) {
+		super.setTarget(target);
+		if (target instanceof MUIElement) {
+			elementIndex.add((MUIElement) target);
+		}
+	}
+
+	@Override
+	protected void unsetTarget(EObject target) {
+		super.unsetTarget(target);
+		if (target instanceof MUIElement) {
+			elementIndex.remove((MUIElement) target);
+		}
+	}
+
 	public void notifyChanged(Notification notification) {
 		super.notifyChanged(notification);
 
@@ -48,14 +239,21 @@ public class UIEventPublisher extends EContentAdapter {
 		if (notification.isTouch())
 			return;
 
+		elementIndex.notifyChanged(notification);
+
 		// Format the EMF event as an E4 UIEvent
 		Map<String, Object> argMap = new HashMap<String, Object>();
 
 		String topic = formatData(notification, argMap);
 
 		if (topic != null) {
-			IEventBroker eventManager = context.get(IEventBroker.class);
-			eventManager.send(topic, argMap);
+			if (batchDepth > 0) {
+				batchEvent(notification, topic, argMap);
+			} else {
+				IEventBroker eventManager = context.get(IEventBroker.class);
+				if (eventManager != null)
+					eventManager.send(topic, argMap);
+			}
 		}
 	}
 
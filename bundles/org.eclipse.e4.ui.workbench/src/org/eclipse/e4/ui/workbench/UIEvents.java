@@ -208,6 +208,22 @@ public class UIEvents {
 		 * The position (if applicable) of the change within the list.
 		 */
 		public static final String POSITION = "Position"; //$NON-NLS-1$
+		/**
+		 * The events of a batch (a list of {@link Event}), see {@link UIModelBatch}
+		 */
+		public static final String EVENTS = "Events"; //$NON-NLS-1$
+	}
+
+	/**
+	 * E4 UI model batch events. When the changes of a bulk model operation are published as a
+	 * batch, their events are sent on their topics at the end of the operation and then together
+	 * on this topic.
+	 */
+	public static interface UIModelBatch {
+		/**
+		 * Sent at the end of a batch, the events of the batch are in {@link EventTags#EVENTS}
+		 */
+		public static final String TOPIC = UITopicBase + "/ModelBatch"; //$NON-NLS-1$
 	}
 
 	/**
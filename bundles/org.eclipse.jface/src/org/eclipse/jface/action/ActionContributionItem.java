@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,6 +18,7 @@ import org.eclipse.jface.bindings.TriggerSequence;
 import org.eclipse.jface.bindings.keys.IKeyLookup;
 import org.eclipse.jface.bindings.keys.KeyLookupFactory;
 import org.eclipse.jface.bindings.keys.KeyStroke;
+import org.eclipse.jface.resource.ImageDataLoader;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.resource.JFaceResources;
 import org.eclipse.jface.resource.LocalResourceManager;
@@ -90,6 +91,33 @@ public class ActionContributionItem extends ContributionItem {
 		USE_COLOR_ICONS = useColorIcons;
 	}
 
+	private static boolean LOAD_IMAGES_IN_BACKGROUND = false;
+
+	/**
+	 * Returns whether the images of actions are loaded in the background.
+	 * 
+	 * @return <code>true</code> if the images of actions are loaded in the
+	 *         background, <code>false</code> otherwise
+	 * @since 3.9
+	 */
+	public static boolean getLoadImagesInBackground() {
+		return LOAD_IMAGES_IN_BACKGROUND;
+	}
+
+	/**
+	 * Sets whether the images of actions are loaded in the background. If
+	 * they are, an item whose action has images not loaded yet shows a
+	 * placeholder image until they are loaded by {@link ImageDataLoader}.
+	 * 
+	 * @param loadInBackground
+	 *            <code>true</code> if the images of actions should be loaded
+	 *            in the background, <code>false</code> otherwise
+	 * @since 3.9
+	 */
+	public static void setLoadImagesInBackground(boolean loadInBackground) {
+		LOAD_IMAGES_IN_BACKGROUND = loadInBackground;
+	}
+
 	/**
 	 * The presentation mode.
 	 */
@@ -119,6 +147,18 @@ public class ActionContributionItem extends ContributionItem {
 	 */
 	private LocalResourceManager imageManager;
 
+	/**
+	 * Updates the images once an image of the action is loaded in the
+	 * background.
+	 */
+	private final Runnable imageLoadedRunnable = new Runnable() {
+		public void run() {
+			if (widget != null && !widget.isDisposed()) {
+				update(IAction.IMAGE);
+			}
+		}
+	};
+
 	/**
 	 * Listener for SWT button widget events.
 	 */
@@ -1021,12 +1061,14 @@ public class ActionContributionItem extends ContributionItem {
 
 		if (widget instanceof ToolItem) {
 			if (USE_COLOR_ICONS) {
-				ImageDescriptor image = action.getHoverImageDescriptor();
+				ImageDescriptor image = getLoadedImageDescriptor(action
+						.getHoverImageDescriptor());
 				if (image == null) {
-					image = action.getImageDescriptor();
+					image = getLoadedImageDescriptor(action
+							.getImageDescriptor());
 				}
-				ImageDescriptor disabledImage = action
-						.getDisabledImageDescriptor();
+				ImageDescriptor disabledImage = getLoadedImageDescriptor(action
+						.getDisabledImageDescriptor());
 
 				// Make sure there is a valid image.
 				if (image == null && forceImage) {
@@ -1050,23 +1092,26 @@ public class ActionContributionItem extends ContributionItem {
 
 				return image != null;
 			}
-			ImageDescriptor image = action.getImageDescriptor();
-			ImageDescriptor hoverImage = action.getHoverImageDescriptor();
-			ImageDescriptor disabledImage = action.getDisabledImageDescriptor();
+			ImageDescriptor image = getLoadedImageDescriptor(action
+					.getImageDescriptor());
+			ImageDescriptor hoverImage = getLoadedImageDescriptor(action
+					.getHoverImageDescriptor());
+			ImageDescriptor disabledImage = getLoadedImageDescriptor(action
+					.getDisabledImageDescriptor());
 
 			// If there is no regular image, but there is a hover image,
 			// convert the hover image to gray and use it as the regular image.
 			if (image == null && hoverImage != null) {
-				image = ImageDescriptor.createWithFlags(action
-						.getHoverImageDescriptor(), SWT.IMAGE_GRAY);
+				image = ImageDescriptor.createWithFlags(hoverImage,
+						SWT.IMAGE_GRAY);
 			} else {
 				// If there is no hover image, use the regular image as the
 				// hover image,
 				// and convert the regular image to gray
 				if (hoverImage == null && image != null) {
 					hoverImage = image;
-					image = ImageDescriptor.createWithFlags(action
-							.getImageDescriptor(), SWT.IMAGE_GRAY);
+					image = ImageDescriptor.createWithFlags(hoverImage,
+							SWT.IMAGE_GRAY);
 				}
 			}
 
@@ -1098,9 +1143,10 @@ public class ActionContributionItem extends ContributionItem {
 		} else if (widget instanceof Item || widget instanceof Button) {
 
 			// Use hover image if there is one, otherwise use regular image.
-			ImageDescriptor image = action.getHoverImageDescriptor();
+			ImageDescriptor image = getLoadedImageDescriptor(action
+					.getHoverImageDescriptor());
 			if (image == null) {
-				image = action.getImageDescriptor();
+				image = getLoadedImageDescriptor(action.getImageDescriptor());
 			}
 			// Make sure there is a valid image.
 			if (image == null && forceImage) {
@@ -1130,6 +1176,25 @@ public class ActionContributionItem extends ContributionItem {
 		return false;
 	}
 
+	/**
+	 * Returns the given image descriptor if its image can be created at once,
+	 * or a placeholder if it is loaded in the background.
+	 * 
+	 * @param descriptor
+	 *            the image descriptor of the action, or <code>null</code>
+	 * @return the image descriptor to create the image of
+	 */
+	private ImageDescriptor getLoadedImageDescriptor(
+			ImageDescriptor descriptor) {
+		if (!LOAD_IMAGES_IN_BACKGROUND
+				|| ImageDataLoader.isLoaded(descriptor)) {
+			return descriptor;
+		}
+		ImageDataLoader.load(descriptor, widget.getDisplay(),
+				imageLoadedRunnable);
+		return ImageDataLoader.getPlaceholderImageDescriptor();
+	}
+
 	/**
 	 * Dispose any images allocated for this contribution item
 	 */
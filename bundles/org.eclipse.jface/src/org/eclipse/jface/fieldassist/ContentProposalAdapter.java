@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@
 package org.eclipse.jface.fieldassist;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.ListenerList;
@@ -582,6 +583,24 @@ public class ContentProposalAdapter {
 		 */
 		private String filterText = EMPTY;
 
+		/*
+		 * The proposals last filtered, the filter text applied to them and
+		 * the matching proposals. Used to narrow the previous matches instead
+		 * of filtering all the proposals again when the filter text is
+		 * extended.
+		 */
+		private IContentProposal[] lastUnfilteredProposals;
+
+		private String lastFilterText;
+
+		private IContentProposal[] lastFilteredProposals;
+
+		/*
+		 * Incremented each time the proposals are filtered, so that the
+		 * filtering of stale proposals still in progress is cancelled.
+		 */
+		private int filterCount = 0;
+
 		/**
 		 * Constructs a new instance of this popup, specifying the control for
 		 * which this popup is showing content, and how the proposals should be
@@ -647,7 +666,7 @@ public class ContentProposalAdapter {
 			}
 
 			// set the proposals to force population of the table.
-			setProposals(filterProposals(proposals, filterText));
+			filterAndSetProposals(proposals, filterText);
 
 			proposalTable.setHeaderVisible(false);
 			proposalTable.addSelectionListener(new SelectionListener() {
@@ -789,6 +808,32 @@ public class ContentProposalAdapter {
 			}
 		}
 
+		/*
+		 * Adds the specified proposals to the end of the table, keeping the
+		 * current selection. The proposals already shown must be a prefix of
+		 * the new proposals.
+		 */
+		private void appendProposals(IContentProposal[] newProposals) {
+			this.proposals = newProposals;
+			if (!isValid()) {
+				return;
+			}
+			int oldSize = proposalTable.getItemCount();
+			proposalTable.setItemCount(newProposals.length);
+			if (!USE_VIRTUAL) {
+				for (int i = oldSize; i < newProposals.length; i++) {
+					TableItem item = proposalTable.getItem(i);
+					IContentProposal proposal = newProposals[i];
+					item.setText(getString(proposal));
+					item.setImage(getImage(proposal));
+					item.setData(proposal);
+				}
+			}
+			if (oldSize == 0 && newProposals.length > 0) {
+				selectProposal(0);
+			}
+		}
+
 		/*
 		 * Get the string for the specified proposal. Always return a String of
 		 * some kind.
@@ -1003,14 +1048,120 @@ public class ContentProposalAdapter {
 			// close the popup.
 			// See https://bugs.eclipse.org/bugs/show_bug.cgi?id=147377
 			if (allProposals.length == 0) {
+				filterCount++;
 				proposals = allProposals;
 				close();
 			} else {
 				// Keep the popup open, but filter by any provided filter text
-				setProposals(filterProposals(allProposals, filterText));
+				filterAndSetProposals(allProposals, filterText);
 			}
 		}
 
+		/*
+		 * Filter the provided proposals according to the filter text and
+		 * show the result. If the filter text extends the one last applied to
+		 * the same proposals, only the previous matches are filtered. Large
+		 * lists of proposals are filtered a chunk at a time in async blocks,
+		 * so that keystrokes are processed in between, and the matches are
+		 * added to the table as they are found. Typing again cancels the
+		 * filtering in progress.
+		 */
+		private void filterAndSetProposals(
+				final IContentProposal[] allProposals,
+				final String filterString) {
+			final int count = ++filterCount;
+			if (filterString.length() == 0) {
+				setProposals(allProposals);
+				return;
+			}
+			IContentProposal[] candidates = allProposals;
+			if (lastFilterText != null
+					&& filterString.startsWith(lastFilterText)
+					&& isSameProposals(allProposals, lastUnfilteredProposals)) {
+				candidates = lastFilteredProposals;
+			}
+			if (candidates.length <= FILTER_CHUNK_SIZE || !isValid()) {
+				IContentProposal[] filtered = filterProposals(candidates,
+						filterString);
+				rememberFilteredProposals(allProposals, filterString,
+						filtered);
+				setProposals(filtered);
+				return;
+			}
+
+			final IContentProposal[] toFilter = candidates;
+			final List matches = new ArrayList();
+			Runnable runnable = new Runnable() {
+				private int next = 0;
+
+				public void run() {
+					// Stop if the proposals were filtered again meanwhile
+					if (count != filterCount || !isValid()) {
+						return;
+					}
+					int previousSize = matches.size();
+					int end = Math.min(next + FILTER_CHUNK_SIZE,
+							toFilter.length);
+					addMatches(toFilter, next, end, filterString, matches);
+					IContentProposal[] filtered = null;
+					if (next == 0 || matches.size() > previousSize) {
+						filtered = (IContentProposal[]) matches
+								.toArray(new IContentProposal[matches.size()]);
+						if (next == 0) {
+							setProposals(filtered);
+						} else {
+							appendProposals(filtered);
+						}
+					}
+					next = end;
+					if (next < toFilter.length) {
+						control.getDisplay().asyncExec(this);
+					} else {
+						if (filtered == null) {
+							filtered = proposals;
+						}
+						rememberFilteredProposals(allProposals, filterString,
+								filtered);
+					}
+				}
+			};
+			runnable.run();
+		}
+
+		/*
+		 * Remember the result of filtering the specified proposals, so that
+		 * it can be narrowed when the filter text is extended.
+		 */
+		private void rememberFilteredProposals(
+				IContentProposal[] allProposals, String filterString,
+				IContentProposal[] filtered) {
+			lastUnfilteredProposals = allProposals;
+			lastFilterText = filterString;
+			lastFilteredProposals = filtered;
+		}
+
+		/*
+		 * Answer whether the specified arrays contain the identical
+		 * proposals. Providers which do not filter typically return the same
+		 * proposals each time.
+		 */
+		private boolean isSameProposals(IContentProposal[] proposals1,
+				IContentProposal[] proposals2) {
+			if (proposals1 == proposals2) {
+				return true;
+			}
+			if (proposals1 == null || proposals2 == null
+					|| proposals1.length != proposals2.length) {
+				return false;
+			}
+			for (int i = 0; i < proposals1.length; i++) {
+				if (proposals1[i] != proposals2[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
 		/*
 		 * In an async block, request the proposals. This is used when clients
 		 * are in the middle of processing an event that affects the widget
@@ -1040,20 +1191,28 @@ public class ContentProposalAdapter {
 				return proposals;
 			}
 
+			ArrayList list = new ArrayList();
+			addMatches(proposals, 0, proposals.length, filterString, list);
+			return (IContentProposal[]) list.toArray(new IContentProposal[list
+					.size()]);
+		}
+
+		/*
+		 * Add the proposals in the specified range that match the filter text
+		 * to the list.
+		 */
+		private void addMatches(IContentProposal[] proposals, int start,
+				int end, String filterString, List list) {
 			// Check each string for a match. Use the string displayed to the
 			// user, not the proposal content.
-			ArrayList list = new ArrayList();
-			for (int i = 0; i < proposals.length; i++) {
+			for (int i = start; i < end; i++) {
 				String string = getString(proposals[i]);
 				if (string.length() >= filterString.length()
-						&& string.substring(0, filterString.length())
-								.equalsIgnoreCase(filterString)) {
+						&& string.regionMatches(true, 0, filterString, 0,
+								filterString.length())) {
 					list.add(proposals[i]);
 				}
-
 			}
-			return (IContentProposal[]) list.toArray(new IContentProposal[list
-					.size()]);
 		}
 
 		Listener getTargetControlListener() {
@@ -1137,6 +1296,12 @@ public class ContentProposalAdapter {
 	 */
 	private static final int POPUP_MINIMUM_WIDTH = 300;
 
+	/*
+	 * The number of proposals filtered at a time when the popup filters a
+	 * large list of proposals.
+	 */
+	private static final int FILTER_CHUNK_SIZE = 2000;
+
 	/*
 	 * The pixel offset of the popup from the bottom corner of the control.
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -39,6 +39,15 @@ public class SimpleContentProposalProvider implements IContentProposalProvider {
 	 */
 	private boolean filterProposals = false;
 
+	/*
+	 * The contents last used to filter the proposals, and the matching
+	 * proposals. Used to narrow the previous matches when the contents are
+	 * extended, rather than checking all the proposals again.
+	 */
+	private String lastContents;
+
+	private IContentProposal[] lastFilteredProposals;
+
 	/**
 	 * Construct a SimpleContentProposalProvider whose content proposals are
 	 * always the specified array of Objects.
@@ -67,15 +76,25 @@ public class SimpleContentProposalProvider implements IContentProposalProvider {
 	public IContentProposal[] getProposals(String contents, int position) {
 		if (filterProposals) {
 			ArrayList list = new ArrayList();
-			for (int i = 0; i < proposals.length; i++) {
-				if (proposals[i].length() >= contents.length()
-						&& proposals[i].substring(0, contents.length())
-								.equalsIgnoreCase(contents)) {
-					list.add(new ContentProposal(proposals[i]));
+			if (lastContents != null && contents.startsWith(lastContents)) {
+				for (int i = 0; i < lastFilteredProposals.length; i++) {
+					if (matches(lastFilteredProposals[i].getContent(),
+							contents)) {
+						list.add(lastFilteredProposals[i]);
+					}
+				}
+			} else {
+				for (int i = 0; i < proposals.length; i++) {
+					if (matches(proposals[i], contents)) {
+						list.add(new ContentProposal(proposals[i]));
+					}
 				}
 			}
-			return (IContentProposal[]) list.toArray(new IContentProposal[list
-					.size()]);
+			IContentProposal[] filtered = (IContentProposal[]) list
+					.toArray(new IContentProposal[list.size()]);
+			lastContents = contents;
+			lastFilteredProposals = filtered;
+			return (IContentProposal[]) filtered.clone();
 		}
 		if (contentProposals == null) {
 			contentProposals = new IContentProposal[proposals.length];
@@ -86,6 +105,15 @@ public class SimpleContentProposalProvider implements IContentProposalProvider {
 		return contentProposals;
 	}
 
+	/*
+	 * Answer whether the proposal starts with the contents, ignoring case.
+	 */
+	private boolean matches(String proposal, String contents) {
+		return proposal.length() >= contents.length()
+				&& proposal.regionMatches(true, 0, contents, 0, contents
+						.length());
+	}
+
 	/**
 	 * Set the Strings to be used as content proposals.
 	 * 
@@ -95,6 +123,8 @@ public class SimpleContentProposalProvider implements IContentProposalProvider {
 	public void setProposals(String[] items) {
 		this.proposals = items;
 		contentProposals = null;
+		lastContents = null;
+		lastFilteredProposals = null;
 	}
 
 	/**
@@ -112,5 +142,7 @@ public class SimpleContentProposalProvider implements IContentProposalProvider {
 		this.filterProposals = filterProposals;
 		// Clear any cached proposals.
 		contentProposals = null;
+		lastContents = null;
+		lastFilteredProposals = null;
 	}
 }
@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.resource;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Rectangle;
+
+/**
+ * A resource manager that keeps the images which are no longer referenced in a
+ * least recently used cache instead of releasing them at once, so that an
+ * image which is created again is reused rather than recreated from its
+ * descriptor. Like <code>LocalResourceManager</code>, it delegates all
+ * resource allocation and deallocation to a parent manager.
+ * <p>
+ * The cache is bounded by two budgets:
+ * </p>
+ * <ul>
+ * <li>a handle budget, the maximum number of images allocated through this
+ * manager, referenced or cached</li>
+ * <li>a size budget, the maximum number of bytes of pixel data of the cached
+ * images, estimated from their bounds</li>
+ * </ul>
+ * <p>
+ * When a budget is exceeded, the least recently used cached images are
+ * released until it is met again. Referenced images are never released, as
+ * their users may still draw them, so the handle budget may be exceeded by
+ * referenced images alone. An image that was released is transparently
+ * recreated from its descriptor the next time it is created.
+ * </p>
+ * <p>
+ * Only images are cached; other resources are released as soon as they are
+ * no longer referenced. The hit, miss and eviction counters only count
+ * images, and can be used to tune the budgets.
+ * </p>
+ * <p>
+ * An <code>ImageRegistry</code> created with this manager allocates its
+ * images through the cache, so that the images of entries removed from the
+ * registry stay available for a while.
+ * </p>
+ * <p>
+ * This class may be instantiated; it is not intended to be subclassed.
+ * </p>
+ *
+ * @see LocalResourceManager
+ * @see ImageRegistry#ImageRegistry(ResourceManager)
+ *
+ * @since 3.9
+ */
+public final class CachingResourceManager extends AbstractResourceManager {
+
+	/**
+	 * The estimated number of bytes of pixel data per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	private ResourceManager parentRegistry;
+
+	private int maxHandles;
+
+	private long maxSize;
+
+	/**
+	 * Maps the descriptors of the cached images onto their CacheEntry, in
+	 * access order.
+	 */
+	private LinkedHashMap cache = new LinkedHashMap(16, 0.75f, true);
+
+	/**
+	 * The sum of the sizes of the cached images.
+	 */
+	private long cacheSize = 0;
+
+	private int liveHandles = 0;
+
+	private int hits = 0;
+
+	private int misses = 0;
+
+	private int evictions = 0;
+
+	private boolean disposing = false;
+
+	/**
+	 * Holds an image which is no longer referenced.
+	 */
+	private static class CacheEntry {
+		Object resource;
+
+		long size;
+
+		CacheEntry(Object resource, long size) {
+			this.resource = resource;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Creates a caching resource manager that delegates to the given manager
+	 * for all resource allocation and deallocation.
+	 *
+	 * @param parentRegistry
+	 *            the manager that allocates the resources
+	 * @param maxHandles
+	 *            the maximum number of images allocated through this manager,
+	 *            referenced or cached, beyond which cached images are released
+	 * @param maxSize
+	 *            the maximum number of bytes of pixel data of the cached
+	 *            images, beyond which cached images are released
+	 */
+	public CachingResourceManager(ResourceManager parentRegistry,
+			int maxHandles, long maxSize) {
+		this.parentRegistry = parentRegistry;
+		this.maxHandles = maxHandles;
+		this.maxSize = maxSize;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.resource.ResourceManager#getDevice()
+	 */
+	public Device getDevice() {
+		return parentRegistry.getDevice();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.resource.AbstractResourceManager#allocate(org.eclipse.jface.resource.DeviceResourceDescriptor)
+	 */
+	protected Object allocate(DeviceResourceDescriptor descriptor)
+			throws DeviceResourceException {
+		if (!(descriptor instanceof ImageDescriptor)) {
+			return parentRegistry.create(descriptor);
+		}
+		CacheEntry entry = (CacheEntry) cache.remove(descriptor);
+		if (entry != null) {
+			hits++;
+			cacheSize -= entry.size;
+			return entry.resource;
+		}
+		misses++;
+		Object resource = parentRegistry.create(descriptor);
+		liveHandles++;
+		trim();
+		return resource;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.resource.AbstractResourceManager#deallocate(java.lang.Object, org.eclipse.jface.resource.DeviceResourceDescriptor)
+	 */
+	protected void deallocate(Object resource,
+			DeviceResourceDescriptor descriptor) {
+		if (!(descriptor instanceof ImageDescriptor)) {
+			parentRegistry.destroy(descriptor);
+			return;
+		}
+		Image image = (Image) resource;
+		if (disposing || image.isDisposed()) {
+			release(descriptor);
+			return;
+		}
+		long size = getSize(image);
+		cache.put(descriptor, new CacheEntry(resource, size));
+		cacheSize += size;
+		trim();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.resource.ResourceManager#getDefaultImage()
+	 */
+	protected Image getDefaultImage() {
+		return parentRegistry.getDefaultImage();
+	}
+
+	/**
+	 * Releases the cached images, and disposes any remaining resources
+	 * allocated by this manager.
+	 */
+	public void dispose() {
+		disposing = true;
+		try {
+			super.dispose();
+			clearCache();
+		} finally {
+			disposing = false;
+		}
+	}
+
+	/**
+	 * Releases all the cached images. The referenced images are left alone.
+	 */
+	public void clearCache() {
+		for (Iterator iter = cache.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry next = (Map.Entry) iter.next();
+			iter.remove();
+			cacheSize -= ((CacheEntry) next.getValue()).size;
+			evictions++;
+			release((DeviceResourceDescriptor) next.getKey());
+		}
+	}
+
+	/**
+	 * Releases the least recently used cached images until both budgets are
+	 * met, or no image is cached.
+	 */
+	private void trim() {
+		Iterator iter = cache.entrySet().iterator();
+		while ((liveHandles > maxHandles || cacheSize > maxSize)
+				&& iter.hasNext()) {
+			Map.Entry eldest = (Map.Entry) iter.next();
+			iter.remove();
+			cacheSize -= ((CacheEntry) eldest.getValue()).size;
+			evictions++;
+			release((DeviceResourceDescriptor) eldest.getKey());
+		}
+	}
+
+	private void release(DeviceResourceDescriptor descriptor) {
+		liveHandles--;
+		parentRegistry.destroy(descriptor);
+	}
+
+	private static long getSize(Image image) {
+		Rectangle bounds = image.getBounds();
+		return (long) bounds.width * bounds.height * BYTES_PER_PIXEL;
+	}
+
+	/**
+	 * Returns the number of images which were created again while they were
+	 * cached, and so were reused.
+	 *
+	 * @return the number of cache hits
+	 */
+	public int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of images which were allocated by the parent manager
+	 * because they were not referenced nor cached.
+	 *
+	 * @return the number of cache misses
+	 */
+	public int getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of cached images which were released to meet the
+	 * budgets, or because the cache was cleared.
+	 *
+	 * @return the number of evictions
+	 */
+	public int getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of images currently allocated through this manager,
+	 * referenced or cached.
+	 *
+	 * @return the number of live image handles
+	 */
+	public int getLiveHandleCount() {
+		return liveHandles;
+	}
+
+	/**
+	 * Returns the number of images which are no longer referenced but still
+	 * cached.
+	 *
+	 * @return the number of cached images
+	 */
+	public int getCachedImageCount() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the estimated number of bytes of pixel data of the cached
+	 * images.
+	 *
+	 * @return the size of the cache
+	 */
+	public long getCacheSize() {
+		return cacheSize;
+	}
+}
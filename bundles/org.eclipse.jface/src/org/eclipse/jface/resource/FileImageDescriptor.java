@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -86,9 +86,14 @@ class FileImageDescriptor extends ImageDescriptor {
 	 * @see org.eclipse.jface.resource.ImageDescriptor#getImageData() The
 	 *      FileImageDescriptor implementation of this method is not used by
 	 *      {@link ImageDescriptor#createImage(boolean, Device)} as of version
-	 *      3.4 so that the SWT OS optimised loading can be used.
+	 *      3.4 so that the SWT OS optimised loading can be used, unless the
+	 *      image data was loaded by {@link ImageDataLoader}.
 	 */
 	public ImageData getImageData() {
+		Object loaded = ImageDataLoader.getLoadedImageData(this);
+		if (loaded != ImageDataLoader.NOT_LOADED) {
+			return (ImageData) loaded;
+		}
 		InputStream in = getStream();
 		ImageData result = null;
 		if (in != null) {
@@ -169,6 +174,9 @@ class FileImageDescriptor extends ImageDescriptor {
 	 *      org.eclipse.swt.graphics.Device)
 	 */
 	public Image createImage(boolean returnMissingImageOnError, Device device) {
+		// use the image data decoded in the background, if any
+		if (ImageDataLoader.isLoaded(this))
+			return super.createImage(returnMissingImageOnError, device);
 		String path = getFilePath();
 		if (path == null)
 			return createDefaultImage(returnMissingImageOnError, device);
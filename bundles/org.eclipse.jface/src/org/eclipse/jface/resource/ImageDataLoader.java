@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.resource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.util.Policy;
+import org.eclipse.swt.SWTError;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Decodes the image data of image descriptors read from image files in
+ * background threads, so that the images can then be created without
+ * blocking the UI thread on file access and decoding.
+ * <p>
+ * Only the descriptors created from a URL or a file by
+ * {@link ImageDescriptor#createFromURL(java.net.URL)} and
+ * {@link ImageDescriptor#createFromFile(Class, String)} are decoded in the
+ * background. The decoded image data is kept in a cache keyed by the URL or
+ * the file, which these descriptors use when their image is created, instead
+ * of reading the file again. Other descriptors are considered loaded.
+ * </p>
+ * <p>
+ * A typical use in a label provider, which shows a placeholder until the image
+ * is ready:
+ * </p>
+ *
+ * <pre>
+ * public Image getImage(final Object element) {
+ * 	ImageDescriptor descriptor = getImageDescriptor(element);
+ * 	if (!ImageDataLoader.isLoaded(descriptor)) {
+ * 		ImageDataLoader.load(descriptor, display, new Runnable() {
+ * 			public void run() {
+ * 				viewer.update(element, null);
+ * 			}
+ * 		});
+ * 		descriptor = ImageDataLoader.getPlaceholderImageDescriptor();
+ * 	}
+ * 	return resourceManager.createImage(descriptor);
+ * }
+ * </pre>
+ * <p>
+ * This class provides static methods only; it is not intended to be
+ * instantiated or subclassed by clients.
+ * </p>
+ *
+ * @see org.eclipse.jface.action.ActionContributionItem#setLoadImagesInBackground(boolean)
+ *
+ * @since 3.9
+ */
+public final class ImageDataLoader {
+
+	/**
+	 * Loading images message string
+	 */
+	private static final String LOADING_IMAGES = JFaceResources
+			.getString("ImageDataLoader.loadingImages"); //$NON-NLS-1$
+
+	/**
+	 * The maximum number of decoded images in the cache.
+	 */
+	private static final int CACHE_SIZE = 256;
+
+	/**
+	 * The maximum number of threads decoding images.
+	 */
+	private static final int MAX_THREADS = Math.max(2, Math.min(4, Runtime
+			.getRuntime().availableProcessors()));
+
+	/**
+	 * The value returned by {@link #getLoadedImageData(ImageDescriptor)} for a
+	 * descriptor whose image data is not in the cache.
+	 */
+	static final Object NOT_LOADED = new Object();
+
+	/**
+	 * The cached value of a descriptor whose image data could not be read.
+	 */
+	private static final Object NO_IMAGE_DATA = new Object();
+
+	/**
+	 * This lock protects all the following variables.
+	 */
+	private static final Object lock = new Object();
+
+	/**
+	 * Maps the loaded descriptors onto their ImageData, or NO_IMAGE_DATA, in
+	 * access order.
+	 */
+	private static final Map cache = new LinkedHashMap(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Maps the descriptors being loaded onto the List of Callbacks to notify
+	 * when they are loaded.
+	 */
+	private static final Map pending = new HashMap();
+
+	/**
+	 * The descriptors not being decoded yet, in order.
+	 */
+	private static final LinkedList queue = new LinkedList();
+
+	private static int threads = 0;
+
+	private static ImageDescriptor placeholder;
+
+	/**
+	 * A runnable to run in the UI thread of a display.
+	 */
+	private static final class Callback {
+		final Display display;
+
+		final Runnable runnable;
+
+		Callback(Display display, Runnable runnable) {
+			this.display = display;
+			this.runnable = runnable;
+		}
+
+		void post() {
+			try {
+				display.asyncExec(runnable);
+			} catch (SWTException e) {
+				// the display was disposed
+			}
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Callback)) {
+				return false;
+			}
+			Callback other = (Callback) obj;
+			return other.display == display && other.runnable == runnable;
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(runnable);
+		}
+	}
+
+	private static final class LoaderThread extends Thread {
+		LoaderThread() {
+			super(LOADING_IMAGES);
+		}
+
+		public void run() {
+			boolean idle = false;
+			try {
+				for (;;) {
+					ImageDescriptor descriptor;
+					synchronized (lock) {
+						if (queue.isEmpty()) {
+							idle = true;
+							threads--;
+							return;
+						}
+						descriptor = (ImageDescriptor) queue.removeFirst();
+					}
+					decode(descriptor);
+				}
+			} finally {
+				if (!idle) {
+					// decoding failed with an error, let another thread
+					// decode the rest of the queue
+					synchronized (lock) {
+						threads--;
+						startThreads();
+					}
+				}
+			}
+		}
+	}
+
+	private ImageDataLoader() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Returns whether the image of the given descriptor can be created
+	 * without reading an image file, either because the descriptor is not
+	 * read from a file or because its image data was loaded.
+	 *
+	 * @param descriptor
+	 *            the image descriptor, or <code>null</code>
+	 * @return <code>true</code> if the image can be created without reading
+	 *         an image file, and <code>false</code> otherwise
+	 */
+	public static boolean isLoaded(ImageDescriptor descriptor) {
+		if (!isReadFromFile(descriptor)) {
+			return true;
+		}
+		synchronized (lock) {
+			return cache.containsKey(descriptor);
+		}
+	}
+
+	/**
+	 * Starts decoding the image data of the given descriptor in a background
+	 * thread, unless it is loaded or being loaded already. When the image data
+	 * is loaded, the given runnable is run in the UI thread of the given
+	 * display, so that the image can be created.
+	 *
+	 * @param descriptor
+	 *            the image descriptor
+	 * @param display
+	 *            the display in whose UI thread to run the runnable
+	 * @param runnable
+	 *            the runnable to run once the image data is loaded. A
+	 *            runnable which is already waiting for the same descriptor
+	 *            is only run once.
+	 */
+	public static void load(ImageDescriptor descriptor, Display display,
+			Runnable runnable) {
+		Callback callback = new Callback(display, runnable);
+		if (!isReadFromFile(descriptor)) {
+			callback.post();
+			return;
+		}
+		synchronized (lock) {
+			if (cache.containsKey(descriptor)) {
+				callback.post();
+				return;
+			}
+			List callbacks = (List) pending.get(descriptor);
+			if (callbacks != null) {
+				if (!callbacks.contains(callback)) {
+					callbacks.add(callback);
+				}
+				return;
+			}
+			callbacks = new ArrayList(1);
+			callbacks.add(callback);
+			pending.put(descriptor, callbacks);
+			queue.add(descriptor);
+			startThreads();
+		}
+	}
+
+	/**
+	 * Starts a loader thread if there are more queued descriptors than
+	 * threads and fewer than the maximum number of threads. Called with the
+	 * lock held.
+	 */
+	private static void startThreads() {
+		if (threads < MAX_THREADS && threads < queue.size()) {
+			threads++;
+			Thread thread = new LoaderThread();
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Returns a descriptor for a blank 16x16 image, suitable to show until
+	 * the image data of another descriptor is loaded.
+	 *
+	 * @return the placeholder image descriptor
+	 */
+	public static ImageDescriptor getPlaceholderImageDescriptor() {
+		synchronized (lock) {
+			if (placeholder == null) {
+				PaletteData palette = new PaletteData(new RGB[] {
+						new RGB(255, 255, 255), new RGB(0, 0, 0) });
+				ImageData data = new ImageData(16, 16, 1, palette);
+				data.transparentPixel = 0;
+				placeholder = ImageDescriptor.createFromImageData(data);
+			}
+			return placeholder;
+		}
+	}
+
+	/**
+	 * Removes all the decoded image data from the cache.
+	 */
+	public static void clearCache() {
+		synchronized (lock) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Returns a copy of the cached image data of the given descriptor.
+	 *
+	 * @param descriptor
+	 *            the image descriptor
+	 * @return the image data, <code>null</code> if the image data could not
+	 *         be read, or {@link #NOT_LOADED} if it is not in the cache
+	 */
+	static Object getLoadedImageData(ImageDescriptor descriptor) {
+		Object data;
+		synchronized (lock) {
+			data = cache.get(descriptor);
+		}
+		if (data == null) {
+			return NOT_LOADED;
+		}
+		if (data == NO_IMAGE_DATA) {
+			return null;
+		}
+		// callers may modify the image data they get
+		return ((ImageData) data).clone();
+	}
+
+	private static boolean isReadFromFile(ImageDescriptor descriptor) {
+		return descriptor instanceof URLImageDescriptor
+				|| descriptor instanceof FileImageDescriptor;
+	}
+
+	/**
+	 * Decodes the image data of the given descriptor, and notifies the
+	 * callbacks waiting for it, also when decoding fails. Called in a loader
+	 * thread.
+	 */
+	private static void decode(ImageDescriptor descriptor) {
+		Object data = null;
+		try {
+			data = descriptor.getImageData();
+		} catch (RuntimeException e) {
+			logDecodingFailure(descriptor, e);
+		} catch (SWTError e) {
+			logDecodingFailure(descriptor, e);
+		} finally {
+			List callbacks;
+			synchronized (lock) {
+				cache.put(descriptor, data == null ? NO_IMAGE_DATA : data);
+				callbacks = (List) pending.remove(descriptor);
+			}
+			for (int i = 0; i < callbacks.size(); i++) {
+				((Callback) callbacks.get(i)).post();
+			}
+		}
+	}
+
+	private static void logDecodingFailure(ImageDescriptor descriptor,
+			Throwable e) {
+		Policy.getLog().log(
+				new Status(IStatus.ERROR, Policy.JFACE,
+						"Could not load the image data of " //$NON-NLS-1$
+								+ descriptor, e));
+	}
+}
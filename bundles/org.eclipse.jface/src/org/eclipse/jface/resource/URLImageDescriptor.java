@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -64,6 +64,10 @@ class URLImageDescriptor extends ImageDescriptor {
 	 * image data cannot be read.
 	 */
 	public ImageData getImageData() {
+		Object loaded = ImageDataLoader.getLoadedImageData(this);
+		if (loaded != ImageDataLoader.NOT_LOADED) {
+			return (ImageData) loaded;
+		}
 		ImageData result = null;
 		InputStream in = getStream();
 		if (in != null) {
@@ -153,6 +157,10 @@ class URLImageDescriptor extends ImageDescriptor {
 	 */
 	public Image createImage(boolean returnMissingImageOnError, Device device) {
 
+		// Use the image data decoded in the background, if any.
+		if (ImageDataLoader.isLoaded(this))
+			return super.createImage(returnMissingImageOnError, device);
+
 		// Try to see if we can optimize using SWTs file based image support.
 		String path = getFilePath();
 		if (path == null)
@@ -33,12 +33,14 @@ import org.eclipse.jface.util.Policy;
 import org.eclipse.jface.util.SafeRunnable;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.BusyIndicator;
+import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.events.TreeEvent;
 import org.eclipse.swt.events.TreeListener;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Item;
 import org.eclipse.swt.widgets.Widget;
 
@@ -96,6 +98,14 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 */
 	private boolean isExpandableCheckFilters = false;
 
+	/**
+	 * Computes the children of the items expanded by the user in the
+	 * background, or <code>null</code> if they are computed in the UI thread.
+	 *
+	 * @see #setComputeChildrenInBackground(boolean)
+	 */
+	private BackgroundChildrenFetcher childrenFetcher = null;
+
 	/**
 	 * Safe runnable used to update an item.
 	 */
@@ -262,6 +272,11 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 			}
 		}
 
+		if (restartChildrenInBackground(widget)) {
+			// the children computed will include the added elements
+			return;
+		}
+
 		if (childElements.length > 0) {
 			// TODO: Add filtering back?
 			Object[] filtered = filter(parentElementOrTreePath, childElements);
@@ -640,7 +655,11 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		} else if (comparator != null) {
 			// be sure we're not modifying the original array from the model
 			result = (Object[]) result.clone();
-			comparator.sort(this, result);
+			if (getUseParallelSortAndFilter()) {
+				comparator.sortInParallel(this, result);
+			} else {
+				comparator.sort(this, result);
+			}
 		}
 		return result;
 	}
@@ -786,6 +805,10 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		boolean oldBusy = isBusy();
 		setBusy(true);
 		try {
+			if (childrenFetcher != null) {
+				// the children are created now instead
+				childrenFetcher.cancel(widget);
+			}
 			final Item[] tis = getChildren(widget);
 			if (tis != null && tis.length > 0) {
 				Object data = tis[0].getData();
@@ -1334,8 +1357,12 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 
 	/* (non-Javadoc) Method declared on StructuredViewer. */
 	protected Object[] getRawChildren(Object parentElementOrTreePath) {
+		// the children computed in the background do not make the viewer busy
+		boolean uiThread = Display.getCurrent() != null;
 		boolean oldBusy = isBusy();
-		setBusy(true);
+		if (uiThread) {
+			setBusy(true);
+		}
 		try {
 			Object parent;
 			TreePath path;
@@ -1380,7 +1407,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 			}
 			return new Object[0];
 		} finally {
-			setBusy(oldBusy);
+			if (uiThread) {
+				setBusy(oldBusy);
+			}
 		}
 	}
 
@@ -1485,6 +1514,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 *            the SWT tree event
 	 */
 	protected void handleTreeCollapse(TreeEvent event) {
+		if (childrenFetcher != null) {
+			childrenFetcher.cancel(event.item);
+		}
 		if (event.item.getData() != null) {
 			fireTreeCollapsed(new TreeExpansionEvent(this, event.item.getData()));
 		}
@@ -1497,7 +1529,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 *            the SWT tree event
 	 */
 	protected void handleTreeExpand(TreeEvent event) {
-		createChildren(event.item);
+		if (!fetchChildrenInBackground(event.item)) {
+			createChildren(event.item);
+		}
 		if (event.item.getData() != null) {
 			fireTreeExpanded(new TreeExpansionEvent(this, event.item.getData()));
 		}
@@ -1522,6 +1556,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 * tree and handles the automatic expand feature.
 	 */
 	protected void inputChanged(Object input, Object oldInput) {
+		if (childrenFetcher != null) {
+			childrenFetcher.cancelAll();
+		}
 		preservingSelection(new Runnable() {
 			public void run() {
 	            Control tree = getControl();
@@ -1537,6 +1574,18 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		});
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jface.viewers.StructuredViewer#handleDispose(org.eclipse.swt.events.DisposeEvent)
+	 */
+	protected void handleDispose(DisposeEvent event) {
+		if (childrenFetcher != null) {
+			childrenFetcher.cancelAll();
+		}
+		super.handleDispose(event);
+	}
+
 	/**
 	 * Initializes the tree with root items, expanding to the appropriate
 	 * level if necessary.
@@ -1958,7 +2007,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 			if (childItems.length > 0) {
 				for (int j = 0; j < childItems.length; j++) {
 					Widget childItem = childItems[j];
-					if (childItem instanceof Item) {
+					if (childItem instanceof Item && !childItem.isDisposed()
+							&& !restartChildrenInBackground(getParentItem(
+									(Item) childItem))) {
 						disassociate((Item) childItem);
 						childItem.dispose();
 					}
@@ -1973,7 +2024,8 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 					Widget[] parentItems = internalFindItems(parent);
 					for (int j = 0; j < parentItems.length; j++) {
 						Widget parentItem = parentItems[j];
-						if (parentItem instanceof Item) {
+						if (parentItem instanceof Item
+								&& !restartChildrenInBackground(parentItem)) {
 							updatePlus((Item) parentItem, parent);
 						}
 					}
@@ -1999,7 +2051,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 
 		// Find each place the parent appears in the tree
-		Widget[] parentItemArray = findItems(parent);
+		Widget[] parentItemArray = internalFindItems(parent);
+		Object parentElement = parent instanceof TreePath ? ((TreePath) parent)
+				.getLastSegment() : parent;
 		for (int i = 0; i < parentItemArray.length; i++) {
 			Widget parentItem = parentItemArray[i];
 
@@ -2008,13 +2062,17 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 			if (parentItem.isDisposed())
 				continue;
 
+			// The children computed will not include the removed elements
+			if (restartChildrenInBackground(parentItem))
+				continue;
+
 			// Iterate over the child items and remove each one
 			Item[] children = getChildren(parentItem);
 
 			if (children.length == 1 && children[0].getData() == null &&
 					parentItem instanceof Item) { // dummy node
 				// Remove plus if parent element has no children
-				updatePlus((Item) parentItem, parent);
+				updatePlus((Item) parentItem, parentElement);
 			} else {
 				for (int j = 0; j < children.length; j++) {
 					Item child = children[j];
@@ -2276,6 +2334,98 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		remove(new Object[] { elementsOrTreePaths });
 	}
 
+	/**
+	 * Applies the changes recorded in the given delta to this viewer. The
+	 * children recorded as removed from a parent are removed from every item
+	 * showing it, and the children recorded as added are created under the
+	 * expanded items showing it, sorted and filtered. Unlike
+	 * <code>refresh</code>, the children of the parents are not asked from the
+	 * content provider, unless the parent is recorded to be refreshed. The
+	 * selection is updated if required, and the tree is redrawn once all
+	 * changes are applied.
+	 * <p>
+	 * This method should be called (by the content provider) when the model
+	 * changed, in order to cause the viewer to accurately reflect the model.
+	 * This method only affects the viewer, not the model.
+	 * </p>
+	 *
+	 * @param delta
+	 *            the changes to apply
+	 * @see TreeDelta
+	 * @since 3.9
+	 */
+	public void applyDelta(final TreeDelta delta) {
+		Assert.isNotNull(delta);
+		if (delta.isEmpty()) {
+			return;
+		}
+		if (checkBusy())
+			return;
+		if (isCellEditorActive()) {
+			cancelEditing();
+		}
+		preservingSelection(new Runnable() {
+			public void run() {
+				Control tree = getControl();
+				tree.setRedraw(false);
+				try {
+					internalApplyDelta(delta);
+				} finally {
+					tree.setRedraw(true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Applies the changes of the given delta: the removals and additions of
+	 * each parent, merged, then the refreshes and the updates.
+	 */
+	private void internalApplyDelta(TreeDelta delta) {
+		List changes = delta.getChanges();
+		CustomHashtable refreshed = newHashtable(
+				CustomHashtable.DEFAULT_CAPACITY);
+		for (int i = 0; i < changes.size(); i++) {
+			TreeDelta.Change change = (TreeDelta.Change) changes.get(i);
+			if (change.kind == TreeDelta.REFRESH) {
+				refreshed.put(change.parent, change.parent);
+			}
+		}
+		List parentChanges = delta.getParentChanges(getComparer(), refreshed);
+		for (int i = 0; i < parentChanges.size(); i++) {
+			TreeDelta.ParentChanges changesOfParent = (TreeDelta.ParentChanges)
+					parentChanges.get(i);
+			Object[] removed = changesOfParent.getRemoved();
+			if (removed.length > 0) {
+				internalRemove(changesOfParent.parent, removed);
+			}
+		}
+		for (int i = 0; i < parentChanges.size(); i++) {
+			TreeDelta.ParentChanges changesOfParent = (TreeDelta.ParentChanges)
+					parentChanges.get(i);
+			Object[] added = changesOfParent.getAdded();
+			if (added.length > 0) {
+				Widget[] widgets = internalFindItems(changesOfParent.parent);
+				for (int j = 0; j < widgets.length; j++) {
+					if (!widgets[j].isDisposed()) {
+						internalAdd(widgets[j], changesOfParent.parent, added);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < changes.size(); i++) {
+			TreeDelta.Change change = (TreeDelta.Change) changes.get(i);
+			if (change.kind == TreeDelta.REFRESH) {
+				// an element recorded several times is refreshed once
+				if (refreshed.remove(change.parent) != null) {
+					internalRefresh(change.parent, true);
+				}
+			} else if (change.kind == TreeDelta.UPDATE) {
+				update(change.elements, change.properties);
+			}
+		}
+	}
+
 	/**
 	 * Removes all items from the given control.
 	 *
@@ -2601,6 +2751,10 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 */
 	private void updateChildren(Widget widget, Object parent,
 			Object[] elementChildren, boolean updateLabels) {
+		if (childrenFetcher != null) {
+			// the children are refreshed now instead
+			childrenFetcher.cancel(widget);
+		}
 		// optimization! prune collapsed subtrees
 		if (widget instanceof Item) {
 			Item ti = (Item) widget;
@@ -3190,4 +3344,119 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 	}
 
+	/**
+	 * Sets whether the children of the elements expanded by the user are
+	 * computed in a background thread, so that the UI stays responsive while
+	 * a content provider gets many or slow to compute children.
+	 * <p>
+	 * When an element is expanded, its pending children are represented by a
+	 * placeholder item, while the content provider is asked for them and they
+	 * are filtered and sorted in a background thread. Their items are then
+	 * created in the UI thread, by chunks when there are many. Collapsing the
+	 * element cancels the computation, as does a change of input. Elements
+	 * expanded programmatically, for instance using
+	 * {@link #expandToLevel(Object, int)}, and elements refreshed get their
+	 * children in the UI thread.
+	 * </p>
+	 * <p>
+	 * When this is on, the content provider, the filters and the comparator of
+	 * the viewer, as well as the label provider if the comparator compares
+	 * labels, must be safe to use in a background thread. A
+	 * {@link TreePathViewerSorter} is only given tree paths when the content
+	 * provider is an {@link ITreePathContentProvider}; otherwise the children
+	 * are computed in the UI thread. Lazy content providers are not supported.
+	 * </p>
+	 * <p>
+	 * The default is <code>false</code>.
+	 * </p>
+	 *
+	 * @param background
+	 *            <code>true</code> to compute the children of expanded
+	 *            elements in a background thread, <code>false</code> to
+	 *            compute them in the UI thread
+	 * @see #getComputeChildrenInBackground()
+	 * @since 3.9
+	 */
+	public void setComputeChildrenInBackground(boolean background) {
+		if (background == (childrenFetcher != null)) {
+			return;
+		}
+		if (background) {
+			childrenFetcher = new BackgroundChildrenFetcher(this);
+		} else {
+			Item[] pending = childrenFetcher.getPendingItems();
+			for (int i = 0; i < pending.length; i++) {
+				if (!pending[i].isDisposed()) {
+					createChildren(pending[i]);
+				}
+			}
+			childrenFetcher.cancelAll();
+			childrenFetcher = null;
+		}
+	}
+
+	/**
+	 * Returns whether the children of the elements expanded by the user are
+	 * computed in a background thread.
+	 *
+	 * @return <code>true</code> if the children are computed in a background
+	 *         thread, and <code>false</code> otherwise
+	 * @see #setComputeChildrenInBackground(boolean)
+	 * @since 3.9
+	 */
+	public boolean getComputeChildrenInBackground() {
+		return childrenFetcher != null;
+	}
+
+	/**
+	 * Starts computing the children of the given widget in the background, if
+	 * they are computed in the background and not created yet.
+	 *
+	 * @param widget
+	 *            the widget
+	 * @return <code>true</code> if the children are computed in the
+	 *         background, and <code>false</code> if they must be created in the
+	 *         UI thread
+	 */
+	private boolean fetchChildrenInBackground(Widget widget) {
+		if (childrenFetcher == null || !(widget instanceof Item)
+				|| widget.getData() == null) {
+			return false;
+		}
+		Item[] tis = getChildren(widget);
+		if (tis.length == 0 || tis[0].getData() != null) {
+			return false;
+		}
+		Object parentElementOrTreePath;
+		if (isTreePathContentProvider()) {
+			parentElementOrTreePath = getTreePathFromItem((Item) widget);
+		} else if (getComparator() instanceof TreePathViewerSorter) {
+			// the tree path to the element would be computed from the widget
+			return false;
+		} else {
+			parentElementOrTreePath = widget.getData();
+		}
+		childrenFetcher.fetch((Item) widget, parentElementOrTreePath);
+		return true;
+	}
+
+	/**
+	 * Computes the children of the given widget again if they are being
+	 * computed in the background, as they changed meanwhile.
+	 *
+	 * @param widget
+	 *            the widget, or <code>null</code>
+	 * @return <code>true</code> if the children are computed again, and
+	 *         <code>false</code> if they were not being computed
+	 */
+	private boolean restartChildrenInBackground(Widget widget) {
+		if (childrenFetcher == null || !childrenFetcher.cancel(widget)) {
+			return false;
+		}
+		if (!fetchChildrenInBackground(widget)) {
+			createChildren(widget);
+		}
+		return true;
+	}
+
 }
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.util.Policy;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Item;
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * Computes the children of the items expanded in an abstract tree viewer in a
+ * background thread. This is the implementation of
+ * {@link AbstractTreeViewer#setComputeChildrenInBackground(boolean)}.
+ * <p>
+ * Information flow is like this:
+ * </p>
+ * <ol>
+ * <li>The viewer asks for the children of an expanded item, whose dummy child
+ * is labelled as pending (in the UI thread)</li>
+ * <li>The children are obtained from the content provider, filtered and sorted
+ * by the viewer's <code>getSortedChildren</code> (in a background thread)</li>
+ * <li>The dummy child is replaced by the items of the children, created a
+ * chunk at a time so that the UI stays responsive when there are many children
+ * (in the UI thread)</li>
+ * </ol>
+ * <p>
+ * Requests are cancelled when the item is collapsed or when its children are
+ * created or changed by other means. A cancelled request whose children were
+ * partly created leaves its item with a dummy child again, so that its children
+ * are computed again the next time it is expanded.
+ * </p>
+ */
+/* package */final class BackgroundChildrenFetcher {
+
+	/**
+	 * Pending label message string
+	 */
+	private static final String PENDING = JFaceResources
+			.getString("AbstractTreeViewer.pending"); //$NON-NLS-1$
+
+	/**
+	 * Computing children message string
+	 */
+	private static final String COMPUTING_CHILDREN = JFaceResources
+			.getString("AbstractTreeViewer.computingChildren"); //$NON-NLS-1$
+
+	/**
+	 * The number of items created at once in the UI thread.
+	 */
+	static final int CHUNK_SIZE = 200;
+
+	private final AbstractTreeViewer viewer;
+
+	/**
+	 * Maps the items whose children are computed to their request. Only
+	 * accessed in the UI thread.
+	 */
+	private final Map requests = new HashMap();
+
+	/**
+	 * The requests whose children are not computed yet, in order.
+	 */
+	private final LinkedList queue = new LinkedList();
+
+	/**
+	 * This lock protects the queue and the boolean variable
+	 * fetchThreadStarted.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * True iff the fetch thread is running.
+	 */
+	private boolean fetchThreadStarted = false;
+
+	/**
+	 * The children of an item to compute, then to create items for.
+	 */
+	private final class Request implements Runnable {
+		final Item item;
+
+		final Object parentElementOrTreePath;
+
+		final Display display;
+
+		volatile boolean cancelled = false;
+
+		/**
+		 * The sorted children, set in the fetch thread.
+		 */
+		Object[] children;
+
+		/**
+		 * The exception thrown computing the children, set in the fetch
+		 * thread.
+		 */
+		RuntimeException exception;
+
+		/**
+		 * The number of children whose items were created.
+		 */
+		int created = 0;
+
+		Request(Item item, Object parentElementOrTreePath) {
+			this.item = item;
+			this.parentElementOrTreePath = parentElementOrTreePath;
+			this.display = item.getDisplay();
+		}
+
+		public void run() {
+			apply(this);
+		}
+	}
+
+	private final class FetchThread extends Thread {
+		private FetchThread(String name) {
+			super(name);
+		}
+
+		public void run() {
+			for (;;) {
+				Request request;
+				synchronized (lock) {
+					if (queue.isEmpty()) {
+						fetchThreadStarted = false;
+						return;
+					}
+					request = (Request) queue.removeFirst();
+				}
+				fetch(request);
+			}
+		}
+	}
+
+	/**
+	 * Creates a fetcher for the given viewer.
+	 *
+	 * @param viewer
+	 *            the viewer
+	 */
+	public BackgroundChildrenFetcher(AbstractTreeViewer viewer) {
+		this.viewer = viewer;
+	}
+
+	/**
+	 * Starts computing the children of the given item, which has a dummy
+	 * child. Must be called in the UI thread.
+	 *
+	 * @param item
+	 *            the item
+	 * @param parentElementOrTreePath
+	 *            the element of the item, or the tree path to it, to pass to
+	 *            <code>getSortedChildren</code>
+	 */
+	public void fetch(Item item, Object parentElementOrTreePath) {
+		if (requests.containsKey(item)) {
+			return;
+		}
+		Request request = new Request(item, parentElementOrTreePath);
+		requests.put(item, request);
+		Item[] dummies = viewer.getChildren(item);
+		for (int i = 0; i < dummies.length; i++) {
+			dummies[i].setText(PENDING);
+		}
+		synchronized (lock) {
+			queue.add(request);
+			if (!fetchThreadStarted) {
+				fetchThreadStarted = true;
+				Thread fetchThread = new FetchThread(COMPUTING_CHILDREN);
+				fetchThread.setDaemon(true);
+				fetchThread.setPriority(Thread.NORM_PRIORITY - 1);
+				fetchThread.start();
+			}
+		}
+	}
+
+	/**
+	 * Computes the children of the given request, then posts it to the UI
+	 * thread. Called in the fetch thread.
+	 */
+	private void fetch(Request request) {
+		if (request.cancelled) {
+			return;
+		}
+		try {
+			request.children = viewer
+					.getSortedChildren(request.parentElementOrTreePath);
+		} catch (RuntimeException e) {
+			request.exception = e;
+		}
+		if (!request.cancelled) {
+			try {
+				request.display.asyncExec(request);
+			} catch (SWTException e) {
+				// the display was disposed
+			}
+		}
+	}
+
+	/**
+	 * Creates the items of the next chunk of children of the given request.
+	 * Called in the UI thread.
+	 */
+	private void apply(Request request) {
+		Item item = request.item;
+		if (requests.get(item) != request) {
+			// cancelled
+			return;
+		}
+		if (item.isDisposed()) {
+			requests.remove(item);
+			return;
+		}
+		if (request.exception != null) {
+			requests.remove(item);
+			clearPending(item);
+			Policy.getLog().log(
+					new Status(IStatus.ERROR, Policy.JFACE,
+							"Could not compute the children of " //$NON-NLS-1$
+									+ item.getData(), request.exception));
+			return;
+		}
+		boolean oldBusy = viewer.isBusy();
+		viewer.setBusy(true);
+		try {
+			Object[] children = request.children;
+			if (request.created == 0) {
+				Item[] dummies = viewer.getChildren(item);
+				if (dummies.length > 0 && dummies[0].getData() != null) {
+					// children already there!
+					requests.remove(item);
+					return;
+				}
+				for (int i = 0; i < dummies.length; i++) {
+					dummies[i].dispose();
+				}
+			}
+			int end = Math.min(children.length, request.created + CHUNK_SIZE);
+			for (int i = request.created; i < end; i++) {
+				viewer.createTreeItem(item, children[i], -1);
+			}
+			request.created = end;
+			if (end < children.length) {
+				request.display.asyncExec(request);
+			} else {
+				requests.remove(item);
+			}
+		} finally {
+			viewer.setBusy(oldBusy);
+		}
+	}
+
+	/**
+	 * Cancels computing the children of the given widget, if any. If the items
+	 * of some of the children were created, they are removed and the widget
+	 * gets a dummy child again. Must be called in the UI thread.
+	 *
+	 * @param widget
+	 *            the widget, or <code>null</code>
+	 * @return <code>true</code> if the children of the widget were computed,
+	 *         and <code>false</code> otherwise
+	 */
+	public boolean cancel(Widget widget) {
+		if (requests.isEmpty()) {
+			return false;
+		}
+		Request request = (Request) requests.remove(widget);
+		if (request == null) {
+			return false;
+		}
+		request.cancelled = true;
+		Item item = request.item;
+		if (item.isDisposed()) {
+			return true;
+		}
+		if (request.created == 0) {
+			clearPending(item);
+		} else {
+			Item[] children = viewer.getChildren(item);
+			for (int i = 0; i < children.length; i++) {
+				if (children[i].getData() != null) {
+					viewer.disassociate(children[i]);
+				}
+				children[i].dispose();
+			}
+			viewer.newItem(item, SWT.NULL, -1);
+		}
+		return true;
+	}
+
+	/**
+	 * Cancels computing the children of all items, leaving the items alone.
+	 * Must be called in the UI thread.
+	 */
+	public void cancelAll() {
+		for (Iterator it = requests.values().iterator(); it.hasNext();) {
+			((Request) it.next()).cancelled = true;
+		}
+		requests.clear();
+	}
+
+	/**
+	 * Returns the items whose children are computed. Must be called in the UI
+	 * thread.
+	 *
+	 * @return the items
+	 */
+	public Item[] getPendingItems() {
+		return (Item[]) requests.keySet().toArray(new Item[requests.size()]);
+	}
+
+	private void clearPending(Item item) {
+		Item[] dummies = viewer.getChildren(item);
+		for (int i = 0; i < dummies.length; i++) {
+			if (dummies[i].getData() == null) {
+				dummies[i].setText(""); //$NON-NLS-1$
+			}
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * ElementMap maps the elements of a structured viewer to the widgets
+ * representing them. An element may be represented by several widgets, for
+ * instance when equal elements appear under different parents of a tree.
+ * Elements are compared using an optional element comparer, like in
+ * {@link CustomHashtable}.
+ * <p>
+ * The map uses open addressing with linear probing: each element/widget pair
+ * occupies a slot of a single array, next to the pairs of equal elements, so
+ * no entry object is allocated per element and no widget array is allocated
+ * per element represented by several widgets. The hash code of the element of
+ * each pair is kept, so that neither looking up an element nor growing the map
+ * computes the hash code of the elements in the map. Removed pairs are not
+ * marked as deleted but the following pairs are shifted back, so that lookups
+ * stay short however many elements are removed.
+ * </p>
+ * <p>
+ * The widgets of an element are returned in the order they were added.
+ * </p>
+ */
+/* package */final class ElementMap {
+
+	/**
+	 * The minimum number of slots, a power of two.
+	 */
+	private static final int MIN_CAPACITY = 4;
+
+	/**
+	 * The elements and widgets, as pairs of an element and a widget in slot
+	 * order. A slot is free if its element is <code>null</code>.
+	 */
+	private Object[] table;
+
+	/**
+	 * The hash codes of the elements, per slot.
+	 */
+	private int[] hashes;
+
+	/**
+	 * The number of element/widget pairs.
+	 */
+	private int size;
+
+	/**
+	 * The number of pairs above which the map grows.
+	 */
+	private int threshold;
+
+	/**
+	 * The number of bits to shift the scrambled hash codes right by to get a
+	 * slot index.
+	 */
+	private int shift;
+
+	private final IElementComparer comparer;
+
+	/**
+	 * Constructs a new map with a small capacity and the given element
+	 * comparer.
+	 *
+	 * @param comparer
+	 *            the element comparer to use to compare elements and obtain
+	 *            hash codes for elements, or <code>null</code> to use the
+	 *            normal <code>equals</code> and <code>hashCode</code> methods
+	 */
+	public ElementMap(IElementComparer comparer) {
+		this(0, comparer);
+	}
+
+	/**
+	 * Constructs a new map with the given capacity and the given element
+	 * comparer.
+	 *
+	 * @param capacity
+	 *            the number of element/widget pairs that can be added without
+	 *            growing the map
+	 * @param comparer
+	 *            the element comparer to use to compare elements and obtain
+	 *            hash codes for elements, or <code>null</code> to use the
+	 *            normal <code>equals</code> and <code>hashCode</code> methods
+	 */
+	public ElementMap(int capacity, IElementComparer comparer) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.comparer = comparer;
+		int length = MIN_CAPACITY;
+		while (length - (length >> 2) < capacity) {
+			length <<= 1;
+		}
+		allocate(length);
+	}
+
+	/**
+	 * Constructs a new map with all element/widget pairs of the given map,
+	 * using the given element comparer.
+	 *
+	 * @param map
+	 *            the map to copy from
+	 * @param comparer
+	 *            the element comparer to use to compare elements and obtain
+	 *            hash codes for elements, or <code>null</code> to use the
+	 *            normal <code>equals</code> and <code>hashCode</code> methods
+	 */
+	public ElementMap(ElementMap map, IElementComparer comparer) {
+		this(map.size, comparer);
+		Object[] oldTable = map.table;
+		int mask = map.hashes.length - 1;
+		int start = map.freeSlot();
+		for (int i = (start + 1) & mask; i != start; i = (i + 1) & mask) {
+			Object element = oldTable[i << 1];
+			if (element != null) {
+				put(element, (Widget) oldTable[(i << 1) + 1]);
+			}
+		}
+	}
+
+	private void allocate(int length) {
+		table = new Object[length << 1];
+		hashes = new int[length];
+		threshold = length - (length >> 2);
+		shift = 32;
+		while (length > 1) {
+			length >>= 1;
+			shift--;
+		}
+	}
+
+	/**
+	 * Answers the hash code for the given element.
+	 */
+	private int hashCode(Object element) {
+		if (comparer == null) {
+			return element.hashCode();
+		}
+		return comparer.hashCode(element);
+	}
+
+	/**
+	 * Compares two elements for equality.
+	 */
+	private boolean elementEquals(Object a, Object b) {
+		if (comparer == null) {
+			return a.equals(b);
+		}
+		return comparer.equals(a, b);
+	}
+
+	/**
+	 * Answers the first slot to look for an element with the given hash code
+	 * in. The hash code is scrambled, as hash codes of elements often differ
+	 * only in their high or low bits.
+	 */
+	private int indexFor(int hash) {
+		return (hash * 0x9E3779B9) >>> shift;
+	}
+
+	/**
+	 * Answers the index of a free slot. The map is never full.
+	 */
+	private int freeSlot() {
+		int i = 0;
+		while (table[i << 1] != null) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Answers the first widget representing the given element.
+	 *
+	 * @param element
+	 *            the element
+	 * @return the first widget added for the element, or <code>null</code> if
+	 *         none
+	 */
+	public Widget getFirst(Object element) {
+		int hash = hashCode(element);
+		int mask = hashes.length - 1;
+		Object[] table = this.table;
+		for (int i = indexFor(hash); table[i << 1] != null;
+				i = (i + 1) & mask) {
+			if (hashes[i] == hash && elementEquals(element, table[i << 1])) {
+				return (Widget) table[(i << 1) + 1];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Answers the widgets representing the given element.
+	 *
+	 * @param element
+	 *            the element
+	 * @return a new array with the widgets in the order they were added, or
+	 *         <code>null</code> if none
+	 */
+	public Widget[] get(Object element) {
+		int hash = hashCode(element);
+		int mask = hashes.length - 1;
+		Object[] table = this.table;
+		Widget[] result = null;
+		for (int i = indexFor(hash); table[i << 1] != null;
+				i = (i + 1) & mask) {
+			if (hashes[i] == hash && elementEquals(element, table[i << 1])) {
+				Widget item = (Widget) table[(i << 1) + 1];
+				if (result == null) {
+					result = new Widget[] { item };
+				} else {
+					int length = result.length;
+					System.arraycopy(result, 0,
+							result = new Widget[length + 1], 0, length);
+					result[length] = item;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the given widget to the widgets representing the given element,
+	 * unless it represents it already. Neither the element nor the widget can
+	 * be <code>null</code>.
+	 *
+	 * @param element
+	 *            the element
+	 * @param item
+	 *            the widget
+	 */
+	public void put(Object element, Widget item) {
+		if (element == null || item == null) {
+			throw new NullPointerException();
+		}
+		int hash = hashCode(element);
+		int mask = hashes.length - 1;
+		int i = indexFor(hash);
+		for (; table[i << 1] != null; i = (i + 1) & mask) {
+			if (table[(i << 1) + 1] == item && hashes[i] == hash
+					&& elementEquals(element, table[i << 1])) {
+				// avoid hanging onto elements that are equal but "old" -- see
+				// bug 30607
+				table[i << 1] = element;
+				return;
+			}
+		}
+		if (size == threshold) {
+			grow();
+			mask = hashes.length - 1;
+			i = indexFor(hash);
+			while (table[i << 1] != null) {
+				i = (i + 1) & mask;
+			}
+		}
+		table[i << 1] = element;
+		table[(i << 1) + 1] = item;
+		hashes[i] = hash;
+		size++;
+	}
+
+	/**
+	 * Doubles the number of slots. The pairs of equal elements are kept in
+	 * the order they were added, by moving the pairs in slot order from a
+	 * free slot on, so that no run of slots wraps around the end of the array.
+	 */
+	private void grow() {
+		Object[] oldTable = table;
+		int[] oldHashes = hashes;
+		int oldMask = oldHashes.length - 1;
+		int start = freeSlot();
+		allocate(oldHashes.length << 1);
+		int mask = hashes.length - 1;
+		for (int i = (start + 1) & oldMask; i != start; i = (i + 1) & oldMask) {
+			Object element = oldTable[i << 1];
+			if (element != null) {
+				int hash = oldHashes[i];
+				int j = indexFor(hash);
+				while (table[j << 1] != null) {
+					j = (j + 1) & mask;
+				}
+				table[j << 1] = element;
+				table[(j << 1) + 1] = oldTable[(i << 1) + 1];
+				hashes[j] = hash;
+			}
+		}
+	}
+
+	/**
+	 * Removes the given widget from the widgets representing the given
+	 * element.
+	 *
+	 * @param element
+	 *            the element
+	 * @param item
+	 *            the widget
+	 * @return <code>true</code> if the widget represented the element, and
+	 *         <code>false</code> otherwise
+	 */
+	public boolean remove(Object element, Widget item) {
+		int hash = hashCode(element);
+		int mask = hashes.length - 1;
+		for (int i = indexFor(hash); table[i << 1] != null;
+				i = (i + 1) & mask) {
+			if (table[(i << 1) + 1] == item && hashes[i] == hash
+					&& elementEquals(element, table[i << 1])) {
+				removeSlot(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all widgets representing the given element.
+	 *
+	 * @param element
+	 *            the element
+	 */
+	public void removeAll(Object element) {
+		int hash = hashCode(element);
+		int mask = hashes.length - 1;
+		int i = indexFor(hash);
+		while (table[i << 1] != null) {
+			if (hashes[i] == hash && elementEquals(element, table[i << 1])) {
+				// a following pair may have been shifted into the slot
+				removeSlot(i);
+			} else {
+				i = (i + 1) & mask;
+			}
+		}
+	}
+
+	/**
+	 * Frees the given slot, shifting back the following pairs which may be
+	 * found from it.
+	 */
+	private void removeSlot(int free) {
+		int mask = hashes.length - 1;
+		for (int i = (free + 1) & mask; table[i << 1] != null;
+				i = (i + 1) & mask) {
+			int home = indexFor(hashes[i]);
+			// the pair can move if its first slot is not between the free
+			// slot and its slot
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				table[free << 1] = table[i << 1];
+				table[(free << 1) + 1] = table[(i << 1) + 1];
+				hashes[free] = hashes[i];
+				free = i;
+			}
+		}
+		table[free << 1] = null;
+		table[(free << 1) + 1] = null;
+		size--;
+	}
+
+	/**
+	 * Answers the number of element/widget pairs in this map.
+	 *
+	 * @return the number of element/widget pairs
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.eclipse.jface.resource.JFaceResources;
+
+/**
+ * ParallelElements filters and sorts arrays of elements using several
+ * threads, with the same results as the sequential algorithms: filtering
+ * keeps the selected elements in order, and sorting is stable, like
+ * <code>java.util.Arrays#sort</code>.
+ * <p>
+ * The array is split into as many ranges as there are processors, provided
+ * each range has at least {@link #MIN_RANGE} elements. The first range is
+ * processed by the calling thread, the others by short-lived daemon threads,
+ * which the calling thread waits for. An exception thrown in one of these
+ * threads is rethrown in the calling thread.
+ * </p>
+ */
+/* package */final class ParallelElements {
+
+	/**
+	 * Sorting and filtering message string
+	 */
+	private static final String SORTING_AND_FILTERING = JFaceResources
+			.getString("StructuredViewer.sortingAndFiltering"); //$NON-NLS-1$
+
+	/**
+	 * The minimum number of elements processed by a thread.
+	 */
+	static final int MIN_RANGE = 4096;
+
+	/**
+	 * The parameter types of
+	 * {@link ViewerFilter#filter(Viewer, Object, Object[])}.
+	 */
+	private static final Class[] FILTER_PARAMETERS = new Class[] {
+			Viewer.class, Object.class, Object[].class };
+
+	/**
+	 * A task split in several parts, which may run concurrently.
+	 */
+	interface Task {
+		/**
+		 * Runs the given part of the task.
+		 *
+		 * @param part
+		 *            the index of the part
+		 */
+		void run(int part);
+	}
+
+	private ParallelElements() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Returns the number of threads to process the given number of elements
+	 * with.
+	 *
+	 * @param length
+	 *            the number of elements
+	 * @return the number of threads, <code>1</code> if the elements are better
+	 *         processed sequentially
+	 */
+	static int getParallelism(int length) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		return Math.max(1, Math.min(processors, length / MIN_RANGE));
+	}
+
+	/**
+	 * Returns the bounds of the given number of ranges of about the same size
+	 * covering the given number of elements.
+	 *
+	 * @return the bounds, range <code>i</code> going from
+	 *         <code>bounds[i]</code> inclusive to <code>bounds[i + 1]</code>
+	 *         exclusive
+	 */
+	private static int[] split(int length, int ranges) {
+		int[] bounds = new int[ranges + 1];
+		for (int i = 0; i <= ranges; i++) {
+			bounds[i] = (int) ((long) length * i / ranges);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Runs the given parts of the given task concurrently, and returns when
+	 * all are done.
+	 *
+	 * @param parts
+	 *            the number of parts
+	 * @param task
+	 *            the task
+	 */
+	static void run(int parts, final Task task) {
+		final Throwable[] exceptions = new Throwable[parts];
+		Thread[] threads = new Thread[parts];
+		for (int i = 1; i < parts; i++) {
+			final int part = i;
+			threads[i] = new Thread(SORTING_AND_FILTERING) {
+				public void run() {
+					try {
+						task.run(part);
+					} catch (Throwable e) {
+						exceptions[part] = e;
+					}
+				}
+			};
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		try {
+			task.run(0);
+		} catch (Throwable e) {
+			exceptions[0] = e;
+		}
+		boolean interrupted = false;
+		for (int i = 1; i < parts; i++) {
+			// the other threads must be done before the results are used
+			for (;;) {
+				try {
+					threads[i].join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		for (int i = 0; i < parts; i++) {
+			Throwable e = exceptions[i];
+			if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			} else if (e instanceof Error) {
+				throw (Error) e;
+			}
+		}
+	}
+
+	/**
+	 * Filters the given elements like
+	 * {@link ViewerFilter#filter(Viewer, Object, Object[])}, calling
+	 * <code>select</code> concurrently if there are many elements and the
+	 * filter does not reimplement <code>filter</code>.
+	 *
+	 * @param viewer
+	 *            the viewer
+	 * @param parent
+	 *            the parent element
+	 * @param filter
+	 *            the filter, whose <code>select</code> method must be safe to
+	 *            call from several threads
+	 * @param elements
+	 *            the elements to filter
+	 * @return the filtered elements
+	 */
+	static Object[] filter(final Viewer viewer, final Object parent,
+			final ViewerFilter filter, final Object[] elements) {
+		final int parallelism = getParallelism(elements.length);
+		if (parallelism == 1
+				|| !isDeclaredBy(filter.getClass(), ViewerFilter.class,
+						"filter", FILTER_PARAMETERS)) { //$NON-NLS-1$
+			return filter.filter(viewer, parent, elements);
+		}
+		final int[] bounds = split(elements.length, parallelism);
+		final boolean[] selected = new boolean[elements.length];
+		final int[] counts = new int[parallelism];
+		run(parallelism, new Task() {
+			public void run(int part) {
+				int count = 0;
+				for (int i = bounds[part]; i < bounds[part + 1]; i++) {
+					if (filter.select(viewer, parent, elements[i])) {
+						selected[i] = true;
+						count++;
+					}
+				}
+				counts[part] = count;
+			}
+		});
+		int size = 0;
+		for (int i = 0; i < parallelism; i++) {
+			size += counts[i];
+		}
+		Object[] result = new Object[size];
+		int j = 0;
+		for (int i = 0; i < elements.length; i++) {
+			if (selected[i]) {
+				result[j++] = elements[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sorts the given array in place, like
+	 * <code>java.util.Arrays#sort(Object[], Comparator)</code>. If there are
+	 * many elements, ranges of the array are sorted concurrently, then merged
+	 * pairwise concurrently.
+	 *
+	 * @param elements
+	 *            the array to sort
+	 * @param comparator
+	 *            the comparator, which must be safe to call from several
+	 *            threads
+	 */
+	static void sort(Object[] elements, final Comparator comparator) {
+		int parallelism = getParallelism(elements.length);
+		if (parallelism == 1) {
+			Arrays.sort(elements, comparator);
+			return;
+		}
+		final int[] bounds = split(elements.length, parallelism);
+		final Object[] sorted = elements;
+		run(parallelism, new Task() {
+			public void run(int part) {
+				Arrays.sort(sorted, bounds[part], bounds[part + 1], comparator);
+			}
+		});
+		Object[] source = elements;
+		Object[] target = new Object[elements.length];
+		int[] runs = bounds;
+		while (runs.length > 2) {
+			final Object[] from = source;
+			final Object[] to = target;
+			final int[] starts = runs;
+			int runCount = starts.length - 1;
+			if (runCount % 2 != 0) {
+				// the last run has no run to merge with
+				int start = starts[starts.length - 2];
+				System.arraycopy(from, start, to, start, elements.length
+						- start);
+			}
+			run(runCount / 2, new Task() {
+				public void run(int part) {
+					merge(from, starts[2 * part], starts[2 * part + 1],
+							starts[2 * part + 2], to, comparator);
+				}
+			});
+			int[] merged = new int[(runCount + 1) / 2 + 1];
+			for (int i = 0; i < merged.length - 1; i++) {
+				merged[i] = starts[2 * i];
+			}
+			merged[merged.length - 1] = elements.length;
+			runs = merged;
+			source = to;
+			target = from;
+		}
+		if (source != elements) {
+			System.arraycopy(source, 0, elements, 0, elements.length);
+		}
+	}
+
+	/**
+	 * Merges two adjacent sorted runs of the given array into the same range
+	 * of the target array. On ties, the elements of the first run come first,
+	 * which keeps the sort stable.
+	 */
+	private static void merge(Object[] source, int start, int middle,
+			int end, Object[] target, Comparator comparator) {
+		int i = start;
+		int j = middle;
+		int k = start;
+		while (i < middle && j < end) {
+			if (comparator.compare(source[j], source[i]) < 0) {
+				target[k++] = source[j++];
+			} else {
+				target[k++] = source[i++];
+			}
+		}
+		System.arraycopy(source, i, target, k, middle - i);
+		k += middle - i;
+		System.arraycopy(source, j, target, k, end - j);
+	}
+
+	/**
+	 * Returns whether the public method with the given name and parameter
+	 * types of the given type is the one declared by the given class, that is,
+	 * if it is not reimplemented by a subclass.
+	 */
+	static boolean isDeclaredBy(Class type, Class declaringClass,
+			String name, Class[] parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes).getDeclaringClass()
+					== declaringClass;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -59,11 +59,10 @@ import org.eclipse.swt.widgets.Widget;
 public abstract class StructuredViewer extends ContentViewer implements IPostSelectionProvider {
 
 	/**
-	 * A map from the viewer's model elements to SWT widgets. (key type:
-	 * <code>Object</code>, value type: <code>Widget</code>, or <code>Widget[]</code>).
+	 * A map from the viewer's model elements to SWT widgets.
 	 * <code>null</code> means that the element map is disabled.
 	 */
-	private CustomHashtable elementMap;
+	private ElementMap elementMap;
 
 	/**
 	 * The comparer to use for comparing elements, or <code>null</code> to use
@@ -83,6 +82,14 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	private List filters;
 
+	/**
+	 * Indicates whether the children are filtered and sorted using several
+	 * threads.
+	 *
+	 * @see #setUseParallelSortAndFilter(boolean)
+	 */
+	private boolean parallelSortAndFilter = false;
+
 	/**
 	 * Indicates whether the viewer should attempt to preserve the selection
 	 * across update operations.
@@ -777,8 +784,15 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 * @return the corresponding widget, or <code>null</code> if none
 	 */
 	protected final Widget findItem(Object element) {
-		Widget[] result = findItems(element);
-		return result.length == 0 ? null : result[0];
+		Widget result = doFindInputItem(element);
+		if (result != null) {
+			return result;
+		}
+		// if we have an element map use it, otherwise search for the item.
+		if (usingElementMap()) {
+			return elementMap.getFirst(element);
+		}
+		return doFindItem(element);
 	}
 
 	/**
@@ -813,14 +827,8 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		}
 		// if we have an element map use it, otherwise search for the item.
 		if (usingElementMap()) {
-			Object widgetOrWidgets = elementMap.get(element);
-			if (widgetOrWidgets==null) {
-				return NO_WIDGETS;
-			} else if (widgetOrWidgets instanceof Widget) {
-				return new Widget[] {(Widget) widgetOrWidgets};
-			} else {
-				return (Widget[])widgetOrWidgets;
-			}
+			Widget[] widgets = elementMap.get(element);
+			return widgets == null ? NO_WIDGETS : widgets;
 		}
 		result = doFindItem(element);
 		return result == null ? NO_WIDGETS : new Widget[] { result };
@@ -918,7 +926,13 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		if (filters != null) {
 			for (Iterator iter = filters.iterator(); iter.hasNext();) {
 				ViewerFilter f = (ViewerFilter) iter.next();
-				Object[] filteredResult = f.filter(this, parent, result);
+				Object[] filteredResult;
+				if (parallelSortAndFilter) {
+					filteredResult = ParallelElements.filter(this, parent, f,
+							result);
+				} else {
+					filteredResult = f.filter(this, parent, result);
+				}
 				if (associateListener != null && filteredResult.length != result.length) {
 					notifyFilteredOut(result, filteredResult);
 				}
@@ -1068,7 +1082,11 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		if (sorter != null) {
 			// be sure we're not modifying the original array from the model
 			result = (Object[]) result.clone();
-			sorter.sort(this, result);
+			if (parallelSortAndFilter) {
+				sorter.sortInParallel(this, result);
+			} else {
+				sorter.sort(this, result);
+			}
 		}
 		return result;
 	}
@@ -1313,25 +1331,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	protected void mapElement(Object element, Widget item) {
 		if (elementMap != null) {
-			Object widgetOrWidgets = elementMap.get(element);
-			if (widgetOrWidgets == null) {
-				elementMap.put(element, item);
-			} else if (widgetOrWidgets instanceof Widget) {
-				if (widgetOrWidgets != item) {
-					elementMap.put(element, new Widget[] {
-							(Widget) widgetOrWidgets, item });
-				}
-			} else {
-				Widget[] widgets = (Widget[]) widgetOrWidgets;
-				int indexOfItem = Arrays.asList(widgets).indexOf(item);
-				if (indexOfItem == -1) {
-					int length = widgets.length;
-					System.arraycopy(widgets, 0,
-							widgets = new Widget[length + 1], 0, length);
-					widgets[length] = item;
-					elementMap.put(element, widgets);
-				}
-			}
+			elementMap.put(element, item);
 		}
 	}
 
@@ -1822,12 +1822,57 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		Assert.isTrue(getInput() == null,
 				"Can only enable the hash look up before input has been set");//$NON-NLS-1$
 		if (enable) {
-			elementMap = newHashtable(CustomHashtable.DEFAULT_CAPACITY);
+			elementMap = new ElementMap(getComparer());
 		} else {
 			elementMap = null;
 		}
 	}
 
+	/**
+	 * Configures whether this structured viewer filters and sorts the
+	 * children of its elements using several threads, which speeds up
+	 * refreshing elements with many children on multi-processor machines.
+	 * The result is the same as when filtering and sorting sequentially.
+	 * <p>
+	 * When this is on, the <code>select</code> method of the filters which do
+	 * not reimplement {@link ViewerFilter#filter(Viewer, Object, Object[])}
+	 * is called concurrently from several threads, and must be safe to call
+	 * that way. Unless the comparator reimplements
+	 * {@link ViewerComparator#sort(Viewer, Object[])} or
+	 * {@link ViewerComparator#compare(Viewer, Object, Object)}, the category
+	 * and label of each child are computed once, in the calling thread, and
+	 * the labels are compared concurrently using the string comparator of
+	 * the viewer comparator, which must then be safe to call from several
+	 * threads. Otherwise the children are sorted sequentially. Few children
+	 * are always filtered and sorted sequentially.
+	 * </p>
+	 * <p>
+	 * The default is <code>false</code>.
+	 * </p>
+	 *
+	 * @param enable
+	 *            <code>true</code> to filter and sort using several threads,
+	 *            and <code>false</code> to filter and sort in the calling
+	 *            thread
+	 * @since 3.9
+	 */
+	public void setUseParallelSortAndFilter(boolean enable) {
+		parallelSortAndFilter = enable;
+	}
+
+	/**
+	 * Returns whether this structured viewer filters and sorts the children of
+	 * its elements using several threads.
+	 *
+	 * @return <code>true</code> if the children are filtered and sorted using
+	 *         several threads, and <code>false</code> otherwise
+	 * @see #setUseParallelSortAndFilter(boolean)
+	 * @since 3.9
+	 */
+	public boolean getUseParallelSortAndFilter() {
+		return parallelSortAndFilter;
+	}
+
 	/**
 	 * Sets the comparer to use for comparing elements, or <code>null</code>
 	 * to use the default <code>equals</code> and <code>hashCode</code>
@@ -1840,7 +1885,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	public void setComparer(IElementComparer comparer) {
 		this.comparer = comparer;
 		if (elementMap != null) {
-			elementMap = new CustomHashtable(elementMap, comparer);
+			elementMap = new ElementMap(elementMap, comparer);
 		}
 	}
 
@@ -1909,7 +1954,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	protected void unmapAllElements() {
 		if (elementMap != null) {
-			elementMap = newHashtable(CustomHashtable.DEFAULT_CAPACITY);
+			elementMap = new ElementMap(getComparer());
 		}
 	}
 
@@ -1927,7 +1972,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	protected void unmapElement(Object element) {
 		if (elementMap != null) {
-			elementMap.remove(element);
+			elementMap.removeAll(element);
 		}
 	}
 
@@ -1949,36 +1994,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		// double-check that the element actually maps to the given item before
 		// unmapping it
 		if (elementMap != null) {
-			Object widgetOrWidgets = elementMap.get(element);
-			if (widgetOrWidgets == null) {
-				// item was not mapped, return
-				return;
-			} else if (widgetOrWidgets instanceof Widget) {
-				if (item == widgetOrWidgets) {
-					elementMap.remove(element);
-				}
-			} else {
-				Widget[] widgets = (Widget[]) widgetOrWidgets;
-				int indexOfItem = Arrays.asList(widgets).indexOf(item);
-				if (indexOfItem == -1) {
-					return;
-				}
-				int length = widgets.length;
-				if (indexOfItem == 0) {
-					if(length == 1) {
-						elementMap.remove(element);
-					} else {
-						Widget[] updatedWidgets = new Widget[length - 1];
-						System.arraycopy(widgets, 1, updatedWidgets, 0, length -1 );
-						elementMap.put(element, updatedWidgets);
-					}
-				} else {
-					Widget[] updatedWidgets = new Widget[length - 1];
-					System.arraycopy(widgets, 0, updatedWidgets, 0, indexOfItem);
-					System.arraycopy(widgets, indexOfItem + 1, updatedWidgets, indexOfItem, length - indexOfItem - 1);
-					elementMap.put(element, updatedWidgets);
-				}
-			}
+			elementMap.remove(element, item);
 		}
 	}
 
@@ -2330,7 +2346,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		comparer = null;
 		if (filters != null)
 			filters.clear();
-		elementMap = newHashtable(1);
+		elementMap = new ElementMap(null);
 		openListeners.clear();
 		doubleClickListeners.clear();
 		colorAndFontCollector.clear();
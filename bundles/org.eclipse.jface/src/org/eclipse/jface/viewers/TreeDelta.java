@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.eclipse.core.runtime.Assert;
+
+/**
+ * A TreeDelta describes changes made to the model of a tree viewer: children
+ * added to, removed from or moved between parents, and elements whose
+ * presentation changed. The changes are recorded in the delta, then applied to
+ * the viewer at once by {@link AbstractTreeViewer#applyDelta(TreeDelta)}, which
+ * only updates the items of the parents named in the delta instead of asking
+ * the content provider for the children of every refreshed element.
+ * <p>
+ * For example, a content provider listening to a model which notifies of
+ * several changes at once may record them in a delta:
+ * </p>
+ *
+ * <pre>
+ * TreeDelta delta = new TreeDelta();
+ * delta.add(folder, addedFiles);
+ * delta.remove(folder, removedFiles);
+ * delta.move(oldFolder, newFolder, new Object[] { file });
+ * delta.update(changedFiles, null);
+ * viewer.applyDelta(delta);
+ * </pre>
+ * <p>
+ * The changes to a same parent are merged: an element added and then removed
+ * is not added, and the elements added to a parent are sorted and inserted
+ * together. Like the methods of the viewer they correspond to, the changes only
+ * affect the viewer, not the model, and are expected to reflect the model as it
+ * is when the delta is applied.
+ * </p>
+ * <p>
+ * This class is not intended to be subclassed by clients.
+ * </p>
+ *
+ * @see AbstractTreeViewer#applyDelta(TreeDelta)
+ * @since 3.9
+ */
+public final class TreeDelta {
+
+	/**
+	 * Kind of the changes adding children to a parent.
+	 */
+	static final int ADD = 0;
+
+	/**
+	 * Kind of the changes removing children from a parent.
+	 */
+	static final int REMOVE = 1;
+
+	/**
+	 * Kind of the changes updating the presentation of elements.
+	 */
+	static final int UPDATE = 2;
+
+	/**
+	 * Kind of the changes refreshing the subtree of an element.
+	 */
+	static final int REFRESH = 3;
+
+	/**
+	 * A change recorded in the delta.
+	 */
+	static final class Change {
+		final int kind;
+
+		/**
+		 * The parent element or tree path for additions and removals, the
+		 * element for refreshes, <code>null</code> for updates
+		 */
+		final Object parent;
+
+		final Object[] elements;
+
+		final String[] properties;
+
+		Change(int kind, Object parent, Object[] elements,
+				String[] properties) {
+			this.kind = kind;
+			this.parent = parent;
+			this.elements = elements;
+			this.properties = properties;
+		}
+	}
+
+	/**
+	 * The changes of a parent, merged.
+	 */
+	static final class ParentChanges {
+		final Object parent;
+
+		/**
+		 * The elements to add, in the order they were added, with
+		 * <code>null</code> in place of the elements removed afterwards.
+		 */
+		final List added = new ArrayList();
+
+		/**
+		 * Maps the elements to add to their index in {@link #added}.
+		 */
+		final CustomHashtable addedIndexes;
+
+		final CustomHashtable removed;
+
+		ParentChanges(Object parent, IElementComparer comparer) {
+			this.parent = parent;
+			addedIndexes = new CustomHashtable(comparer);
+			removed = new CustomHashtable(comparer);
+		}
+
+		void add(Object element) {
+			if (!addedIndexes.containsKey(element)) {
+				addedIndexes.put(element, new Integer(added.size()));
+				added.add(element);
+			}
+		}
+
+		void remove(Object element) {
+			Integer index = (Integer) addedIndexes.remove(element);
+			if (index != null) {
+				added.set(index.intValue(), null);
+			}
+			// the element may have been in the viewer before it was added
+			removed.put(element, element);
+		}
+
+		/**
+		 * @return the elements to add, in the order they were added
+		 */
+		Object[] getAdded() {
+			Object[] result = new Object[addedIndexes.size()];
+			int i = 0;
+			for (int j = 0; j < added.size(); j++) {
+				Object element = added.get(j);
+				if (element != null) {
+					result[i++] = element;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * @return the elements to remove
+		 */
+		Object[] getRemoved() {
+			Object[] result = new Object[removed.size()];
+			int i = 0;
+			for (Enumeration e = removed.keys(); e.hasMoreElements();) {
+				result[i++] = e.nextElement();
+			}
+			return result;
+		}
+	}
+
+	private final List changes = new ArrayList();
+
+	/**
+	 * Records that the given child elements were added to the given parent
+	 * element.
+	 *
+	 * @param parentElementOrTreePath
+	 *            the parent element, or the tree path to the parent
+	 * @param childElements
+	 *            the child elements added
+	 * @see AbstractTreeViewer#add(Object, Object[])
+	 */
+	public void add(Object parentElementOrTreePath, Object[] childElements) {
+		Assert.isNotNull(parentElementOrTreePath);
+		changes.add(new Change(ADD, parentElementOrTreePath,
+				copy(childElements), null));
+	}
+
+	/**
+	 * Records that the given child elements were removed from the given parent
+	 * element.
+	 *
+	 * @param parentElementOrTreePath
+	 *            the parent element, or the tree path to the parent
+	 * @param childElements
+	 *            the child elements removed
+	 * @see AbstractTreeViewer#remove(Object, Object[])
+	 */
+	public void remove(Object parentElementOrTreePath, Object[] childElements) {
+		Assert.isNotNull(parentElementOrTreePath);
+		changes.add(new Change(REMOVE, parentElementOrTreePath,
+				copy(childElements), null));
+	}
+
+	/**
+	 * Records that the given elements were moved from a parent element to
+	 * another, or to another position under the same parent element.
+	 *
+	 * @param oldParentElementOrTreePath
+	 *            the former parent element, or the tree path to it
+	 * @param newParentElementOrTreePath
+	 *            the new parent element, or the tree path to it
+	 * @param elements
+	 *            the elements moved
+	 */
+	public void move(Object oldParentElementOrTreePath,
+			Object newParentElementOrTreePath, Object[] elements) {
+		remove(oldParentElementOrTreePath, elements);
+		add(newParentElementOrTreePath, elements);
+	}
+
+	/**
+	 * Records that properties of the given elements changed, without changes
+	 * to their children.
+	 *
+	 * @param elements
+	 *            the elements
+	 * @param properties
+	 *            the properties that have changed, or <code>null</code> to
+	 *            indicate unknown
+	 * @see StructuredViewer#update(Object[], String[])
+	 */
+	public void update(Object[] elements, String[] properties) {
+		changes.add(new Change(UPDATE, null, copy(elements), properties));
+	}
+
+	/**
+	 * Records that the subtree of the given element changed in ways not
+	 * described by the delta, so that it must be refreshed from the content
+	 * provider. The additions and removals recorded for the element are then
+	 * ignored.
+	 *
+	 * @param element
+	 *            the element
+	 * @see StructuredViewer#refresh(Object)
+	 */
+	public void refresh(Object element) {
+		Assert.isNotNull(element);
+		changes.add(new Change(REFRESH, element, null, null));
+	}
+
+	/**
+	 * Returns whether no change was recorded in this delta.
+	 *
+	 * @return <code>true</code> if the delta is empty, and <code>false</code>
+	 *         otherwise
+	 */
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	/**
+	 * Removes all changes recorded in this delta.
+	 */
+	public void clear() {
+		changes.clear();
+	}
+
+	private static Object[] copy(Object[] elements) {
+		Assert.isNotNull(elements);
+		Object[] copy = new Object[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			Assert.isNotNull(elements[i]);
+			copy[i] = elements[i];
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the changes recorded, in order
+	 */
+	List getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Merges the additions and removals recorded for each parent.
+	 *
+	 * @param comparer
+	 *            the comparer of the viewer, or <code>null</code>
+	 * @param refreshed
+	 *            the elements refreshed, whose additions and removals are
+	 *            ignored
+	 * @return the changes of the parents, in the order they were first changed
+	 */
+	List getParentChanges(final IElementComparer comparer,
+			CustomHashtable refreshed) {
+		// compares parent elements and tree paths
+		IElementComparer parentComparer = new IElementComparer() {
+			public boolean equals(Object a, Object b) {
+				if (a instanceof TreePath) {
+					return b instanceof TreePath
+							&& ((TreePath) a).equals((TreePath) b, comparer);
+				}
+				if (b instanceof TreePath) {
+					return false;
+				}
+				return comparer == null ? a.equals(b) : comparer.equals(a, b);
+			}
+
+			public int hashCode(Object element) {
+				if (element instanceof TreePath) {
+					return ((TreePath) element).hashCode(comparer);
+				}
+				return comparer == null ? element.hashCode() : comparer
+						.hashCode(element);
+			}
+		};
+		CustomHashtable parents = new CustomHashtable(parentComparer);
+		List result = new ArrayList();
+		for (int i = 0; i < changes.size(); i++) {
+			Change change = (Change) changes.get(i);
+			if (change.kind != ADD && change.kind != REMOVE) {
+				continue;
+			}
+			Object parentElement = change.parent;
+			if (parentElement instanceof TreePath) {
+				parentElement = ((TreePath) parentElement).getLastSegment();
+			}
+			if (parentElement != null
+					&& refreshed.containsKey(parentElement)) {
+				continue;
+			}
+			ParentChanges parentChanges = (ParentChanges) parents
+					.get(change.parent);
+			if (parentChanges == null) {
+				parentChanges = new ParentChanges(change.parent, comparer);
+				parents.put(change.parent, parentChanges);
+				result.add(parentChanges);
+			}
+			for (int j = 0; j < change.elements.length; j++) {
+				if (change.kind == ADD) {
+					parentChanges.add(change.elements[j]);
+				} else {
+					parentChanges.remove(change.elements[j]);
+				}
+			}
+		}
+		return result;
+	}
+}
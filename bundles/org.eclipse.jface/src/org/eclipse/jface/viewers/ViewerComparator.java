@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2011 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 
 package org.eclipse.jface.viewers;
 
+import java.text.Collator;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -30,6 +31,14 @@ import org.eclipse.jface.util.Policy;
  * from the content viewer's label provider via <code>ILabelProvider.getText</code>.
  * </p>
  * <p>
+ * The default <code>sort</code> method computes the category and the sort key
+ * of each element once, instead of on each comparison. By default, the sort
+ * key of an element is the collation key of its label if the strings are
+ * compared by a <code>java.text.Collator</code>, so that sorting does not
+ * collate the labels again and again. Subclasses may reimplement
+ * <code>getSortKey</code> to supply precomputed sort keys.
+ * </p>
+ * <p>
  * Subclasses may implement the <code>isSorterProperty</code> method;
  * they may reimplement the <code>category</code> method to provide 
  * categorization; and they may override the <code>compare</code> methods
@@ -41,11 +50,92 @@ import org.eclipse.jface.util.Policy;
  * @since 3.2
  */
 public class ViewerComparator {
+	/**
+	 * The parameter types of {@link #sort(Viewer, Object[])}.
+	 */
+	private static final Class[] SORT_PARAMETERS = new Class[] {
+			Viewer.class, Object[].class };
+
+	/**
+	 * The parameter types of {@link #compare(Viewer, Object, Object)}.
+	 */
+	private static final Class[] COMPARE_PARAMETERS = new Class[] {
+			Viewer.class, Object.class, Object.class };
+
+	/**
+	 * The parameter types of {@link #getSortKey(Viewer, Object)}.
+	 */
+	private static final Class[] SORT_KEY_PARAMETERS = new Class[] {
+			Viewer.class, Object.class };
+
+	/**
+	 * Compares sort keys by category, then by key.
+	 */
+	private static final Comparator SORT_KEY_COMPARATOR = new Comparator() {
+		public int compare(Object a, Object b) {
+			SortKey key1 = (SortKey) a;
+			SortKey key2 = (SortKey) b;
+			if (key1.category != key2.category) {
+				return key1.category - key2.category;
+			}
+			return key1.key.compareTo(key2.key);
+		}
+	};
+
 	/**
 	 * The comparator to use to sort a viewer's contents.
 	 */
 	private Comparator comparator;
 
+	/**
+	 * Whether <code>compare</code> is not reimplemented, or
+	 * <code>null</code> if not known yet.
+	 */
+	private Boolean defaultCompare;
+
+	/**
+	 * Whether <code>getSortKey</code> is not reimplemented, or
+	 * <code>null</code> if not known yet.
+	 */
+	private Boolean defaultSortKey;
+
+	/**
+	 * The category and sort key of an element, as compared by the default
+	 * <code>compare</code> method.
+	 */
+	private static final class SortKey {
+		final Object element;
+
+		final int category;
+
+		final Comparable key;
+
+		SortKey(Object element, int category, Comparable key) {
+			this.element = element;
+			this.category = category;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The sort key of an element when the strings are not compared by a
+	 * collator: its label, compared with the string comparator.
+	 */
+	private static final class LabelKey implements Comparable {
+		private final String label;
+
+		private final Comparator comparator;
+
+		LabelKey(String label, Comparator comparator) {
+			this.label = label;
+			this.comparator = comparator;
+		}
+
+		public int compareTo(Object o) {
+			return comparator.compare(label, ((LabelKey) o).label);
+		}
+	}
+
 	/**
      * Creates a new {@link ViewerComparator}, which uses the default comparator
      * to sort strings.
@@ -105,7 +195,8 @@ public class ViewerComparator {
      * framework method. Elements within the same category are further 
      * subjected to a case insensitive compare of their label strings, either
      * as computed by the content viewer's label provider, or their 
-     * <code>toString</code> values in other cases. Subclasses may override.
+     * <code>toString</code> values in other cases, or of their sort keys if
+     * <code>getSortKey</code> is reimplemented. Subclasses may override.
      * </p>
      * 
      * @param viewer the viewer
@@ -123,6 +214,10 @@ public class ViewerComparator {
         if (cat1 != cat2) {
 			return cat1 - cat2;
 		}
+
+		if (!isDefaultSortKey()) {
+			return getSortKey(viewer, e1).compareTo(getSortKey(viewer, e2));
+		}
     	
         String name1 = getLabel(viewer, e1);
         String name2 = getLabel(viewer, e2);
@@ -151,6 +246,94 @@ public class ViewerComparator {
 		return name1;
 	}
 
+	/**
+	 * Returns the key the given element is sorted by within its category.
+	 * Sort keys are computed once per element and per sort, and compared
+	 * using their <code>compareTo</code> method, which must be consistent with
+	 * the order of the labels of the elements if <code>getSortKey</code> is
+	 * not reimplemented.
+	 * <p>
+	 * The default implementation returns the
+	 * <code>java.text.CollationKey</code> of the label of the element if the
+	 * comparator used to sort strings is a <code>java.text.Collator</code>,
+	 * and a key comparing the label using that comparator otherwise. The label
+	 * is obtained from the content viewer's label provider, or is the
+	 * <code>toString</code> value of the element in other cases.
+	 * </p>
+	 * <p>
+	 * Subclasses may reimplement this method to supply precomputed keys, for
+	 * instance keys kept in the model. Then the default <code>compare</code>
+	 * method compares the keys of the elements too.
+	 * </p>
+	 *
+	 * @param viewer
+	 *            the viewer
+	 * @param element
+	 *            the element
+	 * @return the sort key of the element, comparable to the sort keys of the
+	 *         other elements
+	 * @since 3.9
+	 */
+	protected Comparable getSortKey(Viewer viewer, Object element) {
+		String label = getLabel(viewer, element);
+		Comparator stringComparator = getComparator();
+		if (stringComparator instanceof Collator) {
+			return ((Collator) stringComparator).getCollationKey(label);
+		}
+		return new LabelKey(label, stringComparator);
+	}
+
+	/**
+	 * Returns whether <code>compare</code> is not reimplemented, so that
+	 * elements may be sorted by their sort keys.
+	 */
+	private boolean isDefaultCompare() {
+		if (defaultCompare == null) {
+			defaultCompare = Boolean.valueOf(ParallelElements.isDeclaredBy(
+					getClass(), ViewerComparator.class,
+					"compare", COMPARE_PARAMETERS)); //$NON-NLS-1$
+		}
+		return defaultCompare.booleanValue();
+	}
+
+	/**
+	 * Returns whether <code>getSortKey</code> is not reimplemented, so that
+	 * elements may be compared by their labels.
+	 */
+	private boolean isDefaultSortKey() {
+		if (defaultSortKey == null) {
+			boolean declared = true;
+			Class type = getClass();
+			while (declared && type != ViewerComparator.class) {
+				try {
+					type.getDeclaredMethod("getSortKey", //$NON-NLS-1$
+							SORT_KEY_PARAMETERS);
+					declared = false;
+				} catch (NoSuchMethodException e) {
+					// look in the superclass
+				} catch (SecurityException e) {
+					declared = false;
+				}
+				type = type.getSuperclass();
+			}
+			defaultSortKey = Boolean.valueOf(declared);
+		}
+		return defaultSortKey.booleanValue();
+	}
+
+	/**
+	 * Returns the category and sort key of the given elements.
+	 */
+	private SortKey[] getSortKeys(Viewer viewer, Object[] elements) {
+		SortKey[] keys = new SortKey[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			Object element = elements[i];
+			keys[i] = new SortKey(element, category(element), getSortKey(
+					viewer, element));
+		}
+		return keys;
+	}
+
     /**
      * Returns whether this viewer sorter would be affected 
      * by a change to the given property of the given element.
@@ -173,7 +356,9 @@ public class ViewerComparator {
      * <p>
      * The default implementation of this method uses the 
      * java.util.Arrays#sort algorithm on the given array, 
-     * calling <code>compare</code> to compare elements.
+     * calling <code>compare</code> to compare elements. If
+     * <code>compare</code> is not reimplemented, the category and the sort
+     * key of each element are computed once, and compared instead.
      * </p>
      * <p>
      * Subclasses may reimplement this method to provide a more optimized implementation.
@@ -184,6 +369,14 @@ public class ViewerComparator {
      */
 	public void sort(final Viewer viewer, Object[] elements) {
 		try {
+			if (elements.length > 1 && isDefaultCompare()) {
+				SortKey[] keys = getSortKeys(viewer, elements);
+				Arrays.sort(keys, SORT_KEY_COMPARATOR);
+				for (int i = 0; i < elements.length; i++) {
+					elements[i] = keys[i].element;
+				}
+				return;
+			}
 			Arrays.sort(elements, new Comparator() {
 				public int compare(Object a, Object b) {
 					return ViewerComparator.this.compare(viewer, a, b);
@@ -202,4 +395,32 @@ public class ViewerComparator {
 			throw e;
 		}
 	}
+
+	/**
+	 * Sorts the given elements in-place like {@link #sort(Viewer, Object[])},
+	 * using several threads when there are many elements. The category and
+	 * sort key of each element are computed once, in the calling thread, then
+	 * compared concurrently. A comparator which reimplements
+	 * <code>sort</code> or <code>compare</code> sorts the elements
+	 * sequentially.
+	 *
+	 * @param viewer
+	 *            the viewer
+	 * @param elements
+	 *            the elements to sort
+	 */
+	void sortInParallel(Viewer viewer, Object[] elements) {
+		if (ParallelElements.getParallelism(elements.length) == 1
+				|| !ParallelElements.isDeclaredBy(getClass(),
+						ViewerComparator.class, "sort", SORT_PARAMETERS) //$NON-NLS-1$
+				|| !isDefaultCompare()) {
+			sort(viewer, elements);
+			return;
+		}
+		SortKey[] keys = getSortKeys(viewer, elements);
+		ParallelElements.sort(keys, SORT_KEY_COMPARATOR);
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = keys[i].element;
+		}
+	}
 }
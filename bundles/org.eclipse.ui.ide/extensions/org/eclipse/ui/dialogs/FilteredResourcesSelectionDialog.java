@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -1042,6 +1042,17 @@ public class FilteredResourcesSelectionDialog extends
 			return false;			
 		}
 
+		/**
+		 * Matching a resource only reads the resource and the patterns, so
+		 * resources may be matched concurrently, unless a subclass overrides
+		 * how they are matched.
+		 * 
+		 * @see org.eclipse.ui.dialogs.FilteredItemsSelectionDialog.ItemsFilter#canMatchConcurrently()
+		 */
+		public boolean canMatchConcurrently() {
+			return getClass() == ResourceFilter.class;
+		}
+
 		private boolean nameMatches(String name) {
 			if (namePattern != null) {
 				// fix for https://bugs.eclipse.org/bugs/show_bug.cgi?id=212565
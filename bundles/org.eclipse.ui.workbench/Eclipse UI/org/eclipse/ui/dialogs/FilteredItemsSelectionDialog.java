@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -221,6 +221,18 @@ public abstract class FilteredItemsSelectionDialog extends
 
 	private static final String EMPTY_STRING = ""; //$NON-NLS-1$
 
+	/**
+	 * The number of cached items matched at a time when the items are matched
+	 * in parallel.
+	 */
+	private static final int MATCHING_CHUNK_SIZE = 4096;
+
+	/**
+	 * The number of matches that fill the visible part of the list, which are
+	 * shown before the remaining cached items are matched.
+	 */
+	private static final int FIRST_SCREEN_SIZE = 50;
+
 	private boolean refreshWithLastSelection = false;
 
 	private IHandlerActivation showViewHandler;
@@ -2057,6 +2069,9 @@ public abstract class FilteredItemsSelectionDialog extends
 	 * of the last, then <code>FilterJob</code> only filters in the cache. If
 	 * it is the first filtering or the new filter isn't a sub-filter of the
 	 * last one, a full search is run.
+	 * 
+	 * A large cache is filtered in parallel if the filter can match items
+	 * concurrently ({@link FilteredItemsSelectionDialog.ItemsFilter#canMatchConcurrently()}).
 	 */
 	private class FilterJob extends Job {
 
@@ -2146,6 +2161,14 @@ public abstract class FilteredItemsSelectionDialog extends
 			if (lastCompletedFilter != null
 					&& lastCompletedFilter.isSubFilter(this.itemsFilter)) {
 
+				if (itemsFilter.canMatchConcurrently()
+						&& lastCompletedResult.size() >= 2 * MATCHING_CHUNK_SIZE
+						&& Runtime.getRuntime().availableProcessors() > 1) {
+					new ParallelMatcher(lastCompletedResult.toArray(),
+							itemsFilter, monitor).run();
+					return;
+				}
+
 				int length = lastCompletedResult.size() / 500;
 				monitor
 						.beginTask(
@@ -2192,6 +2215,219 @@ public abstract class FilteredItemsSelectionDialog extends
 
 	}
 
+	/**
+	 * Matches the items of the last completed result against a sub-filter of
+	 * the last completed filter, in the filter job and in as many jobs as
+	 * there are other processors. The items are split into chunks, which are
+	 * matched in order. As the items are sorted, the matches of the chunks
+	 * put together in order are sorted too, and the first screen of matches
+	 * is shown as soon as the first chunks are matched.
+	 */
+	private class ParallelMatcher {
+
+		private final Object[] cachedItems;
+
+		private final ItemsFilter itemsFilter;
+
+		private final IProgressMonitor monitor;
+
+		/**
+		 * The matching items of each chunk, or <code>null</code> if the chunk
+		 * is not matched yet.
+		 */
+		private final List[] chunkMatches;
+
+		private int nextChunk = 0;
+
+		private int matchedChunks = 0;
+
+		private int runningJobs = 0;
+
+		private RuntimeException exception;
+
+		/**
+		 * Creates a new instance of the class.
+		 * 
+		 * @param cachedItems
+		 *            the sorted items to match
+		 * @param itemsFilter
+		 *            the filter, which can match items concurrently
+		 * @param monitor
+		 *            the progress monitor of the filter job
+		 */
+		ParallelMatcher(Object[] cachedItems, ItemsFilter itemsFilter,
+				IProgressMonitor monitor) {
+			this.cachedItems = cachedItems;
+			this.itemsFilter = itemsFilter;
+			this.monitor = monitor;
+			chunkMatches = new List[(cachedItems.length
+					+ MATCHING_CHUNK_SIZE - 1)
+					/ MATCHING_CHUNK_SIZE];
+		}
+
+		/**
+		 * Matches the items and adds the matches to the content provider.
+		 * Called in the filter job.
+		 */
+		void run() {
+			monitor
+					.beginTask(
+							WorkbenchMessages.FilteredItemsSelectionDialog_cacheSearchJob_taskName,
+							chunkMatches.length);
+			Job[] jobs = new Job[Math.min(Runtime.getRuntime()
+					.availableProcessors() - 1, chunkMatches.length - 1)];
+			for (int i = 0; i < jobs.length; i++) {
+				jobs[i] = new Job(
+						WorkbenchMessages.FilteredItemsSelectionDialog_jobLabel) {
+					protected IStatus run(IProgressMonitor jobMonitor) {
+						// a job which starts late finds no chunk left
+						synchronized (ParallelMatcher.this) {
+							runningJobs++;
+						}
+						try {
+							matchChunks();
+						} finally {
+							synchronized (ParallelMatcher.this) {
+								runningJobs--;
+								ParallelMatcher.this.notifyAll();
+							}
+						}
+						return Status.OK_STATUS;
+					}
+				};
+				jobs[i].setSystem(true);
+				jobs[i].schedule();
+			}
+			try {
+				matchAndShowFirstScreen();
+			} finally {
+				for (int i = 0; i < jobs.length; i++) {
+					jobs[i].cancel();
+				}
+			}
+		}
+
+		/**
+		 * Matches chunks in the filter job, waits for the chunks matched in
+		 * the other jobs, and adds the matches to the content provider.
+		 */
+		private void matchAndShowFirstScreen() {
+			int reported = 0;
+			int firstChunks = 0;
+			List firstMatches = new ArrayList();
+			boolean shown = false;
+			while (true) {
+				boolean more = matchChunk();
+				synchronized (this) {
+					while (!more && runningJobs > 0) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							// the matches are incomplete, they must not be
+							// shown
+							monitor.setCanceled(true);
+							return;
+						}
+					}
+					monitor.worked(matchedChunks - reported);
+					reported = matchedChunks;
+					if (exception != null) {
+						throw exception;
+					}
+					if (!shown) {
+						while (firstChunks < chunkMatches.length
+								&& chunkMatches[firstChunks] != null) {
+							firstMatches.addAll(chunkMatches[firstChunks++]);
+						}
+					}
+				}
+				if (monitor.isCanceled()) {
+					return;
+				}
+				if (!more) {
+					break;
+				}
+				if (!shown && firstMatches.size() >= FIRST_SCREEN_SIZE
+						&& firstChunks < chunkMatches.length) {
+					shown = true;
+					contentProvider.addSortedItems(sort(firstMatches),
+							itemsFilter);
+					contentProvider.refresh();
+				}
+			}
+
+			List matches = new ArrayList();
+			for (int i = 0; i < chunkMatches.length; i++) {
+				matches.addAll(chunkMatches[i]);
+			}
+			contentProvider.addSortedItems(sort(matches), itemsFilter);
+		}
+
+		/**
+		 * Matches chunks until there is none left. Called in the jobs.
+		 */
+		private void matchChunks() {
+			while (matchChunk()) {
+				// match the next chunk
+			}
+		}
+
+		/**
+		 * Matches the next chunk of items.
+		 * 
+		 * @return <code>false</code> if there were no chunks left, or if the
+		 *         filtering was canceled or failed
+		 */
+		private boolean matchChunk() {
+			int chunk;
+			synchronized (this) {
+				if (nextChunk == chunkMatches.length || exception != null
+						|| monitor.isCanceled()) {
+					return false;
+				}
+				chunk = nextChunk++;
+			}
+			int start = chunk * MATCHING_CHUNK_SIZE;
+			int end = Math.min(start + MATCHING_CHUNK_SIZE, cachedItems.length);
+			List matches = new ArrayList();
+			try {
+				for (int i = start; i < end; i++) {
+					if (itemsFilter.matchItem(cachedItems[i])) {
+						matches.add(cachedItems[i]);
+					}
+				}
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					exception = e;
+					notifyAll();
+				}
+				return false;
+			}
+			synchronized (this) {
+				chunkMatches[chunk] = matches;
+				matchedChunks++;
+				notifyAll();
+			}
+			return true;
+		}
+
+		/**
+		 * Sorts the given matches, unless they are in order already, which is
+		 * the case unless the history changed since the items were sorted.
+		 */
+		private List sort(List matches) {
+			Comparator comparator = getHistoryComparator();
+			for (int i = 1; i < matches.size(); i++) {
+				if (comparator.compare(matches.get(i - 1), matches.get(i)) > 0) {
+					Collections.sort(matches, comparator);
+					break;
+				}
+			}
+			return matches;
+		}
+	}
+
 	/**
 	 * History stores a list of key, object pairs. The list is bounded at a
 	 * certain size. If the list exceeds this size the oldest element is removed
@@ -2539,6 +2775,22 @@ public abstract class FilteredItemsSelectionDialog extends
 		 */
 		public abstract boolean isConsistentItem(Object item);
 
+		/**
+		 * Returns whether {@link #matchItem(Object)} may be called from
+		 * several threads at the same time. If it may, a large set of items
+		 * found for a previous filter of which this filter is a sub-filter is
+		 * matched in parallel. The default implementation returns
+		 * <code>false</code>. Subclasses whose <code>matchItem</code> only
+		 * reads state which does not change while filtering may override.
+		 * 
+		 * @return <code>true</code> if items may be matched concurrently,
+		 *         <code>false</code> otherwise
+		 * @since 3.103
+		 */
+		public boolean canMatchConcurrently() {
+			return false;
+		}
+
 	}
 
 	/**
@@ -2689,6 +2941,29 @@ public abstract class FilteredItemsSelectionDialog extends
 			}
 		}
 
+		/**
+		 * Adds items which match the filter and are sorted already. If they
+		 * are all the items, they become the sorted items, so that they are
+		 * not sorted again.
+		 * 
+		 * @param sortedItems
+		 *            the matching items, sorted with the history comparator
+		 * @param itemsFilter
+		 *            the filter
+		 */
+		public void addSortedItems(List sortedItems, ItemsFilter itemsFilter) {
+			if (itemsFilter != filter) {
+				return;
+			}
+			synchronized (lastSortedItems) {
+				this.items.addAll(sortedItems);
+				if (this.items.size() == sortedItems.size()) {
+					lastSortedItems.clear();
+					lastSortedItems.addAll(sortedItems);
+				}
+			}
+		}
+
 		/**
 		 * Add all history items to <code>contentProvider</code>.
 		 * 
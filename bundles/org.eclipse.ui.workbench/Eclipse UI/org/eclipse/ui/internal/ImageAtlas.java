@@ -0,0 +1,552 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+
+/**
+ * An image atlas packs the image files of frequently used icons into a single
+ * file, so that they are read from one memory mapped file at startup instead
+ * of being read one by one from their bundles.
+ * <p>
+ * The atlas records the URLs of the icons whose image data is requested
+ * through the image descriptors it creates. When it is saved at shutdown, the
+ * image files of the icons used in the session are packed into the atlas
+ * file, along with the icons already packed. In the next session, the image
+ * data of the packed icons is decoded from the atlas file. The atlas file is
+ * ignored if the installed bundles have changed since it was written.
+ * </p>
+ * <p>
+ * The atlas file starts with an index of the packed icons: their URL, and the
+ * offset and length of their image file in the atlas file.
+ * </p>
+ *
+ * @since 3.103
+ */
+public final class ImageAtlas {
+
+	private static final String ATLAS_FILE_NAME = "imageAtlas.bin"; //$NON-NLS-1$
+
+	private static final String NEW_FILE_SUFFIX = ".new"; //$NON-NLS-1$
+
+	private static final String OLD_FILE_SUFFIX = ".old"; //$NON-NLS-1$
+
+	private static final String URL_ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	private static final int MAGIC = 0x49434f4e;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The maximum number of icons in the atlas.
+	 */
+	private static final int MAX_ENTRIES = 2048;
+
+	/**
+	 * The maximum size of the image file of an icon in the atlas.
+	 */
+	private static final int MAX_IMAGE_FILE_SIZE = 64 * 1024;
+
+	private static ImageAtlas defaultAtlas;
+
+	private static boolean defaultAtlasInitialized = false;
+
+	private final File file;
+
+	private final long stamp;
+
+	/**
+	 * The content of the atlas file, or <code>null</code> if there is no
+	 * valid atlas file.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Maps the external form of the URLs of the packed icons onto the offset
+	 * and length (<code>int[2]</code>) of their image file in the buffer.
+	 * Not modified once the atlas file is read.
+	 */
+	private Map entries = new HashMap();
+
+	/**
+	 * Maps the external form of the URLs of the icons used in this session
+	 * onto their URL, in order of first use.
+	 */
+	private final Map used = new LinkedHashMap();
+
+	/**
+	 * An image descriptor which reads its image data from the atlas if it is
+	 * packed, and from its URL otherwise.
+	 */
+	private static final class AtlasImageDescriptor extends ImageDescriptor {
+		private final ImageAtlas atlas;
+
+		private final URL url;
+
+		private final ImageDescriptor descriptor;
+
+		AtlasImageDescriptor(ImageAtlas atlas, URL url) {
+			this.atlas = atlas;
+			this.url = url;
+			this.descriptor = ImageDescriptor.createFromURL(url);
+		}
+
+		public Image createImage(boolean returnMissingImageOnError,
+				Device device) {
+			if (atlas.contains(url)) {
+				return super.createImage(returnMissingImageOnError, device);
+			}
+			// let SWT load the file directly
+			atlas.recordUse(url);
+			return descriptor.createImage(returnMissingImageOnError, device);
+		}
+
+		public ImageData getImageData() {
+			ImageData data = atlas.getImageData(url);
+			if (data == null) {
+				data = descriptor.getImageData();
+			}
+			return data;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof AtlasImageDescriptor)) {
+				return false;
+			}
+			return ((AtlasImageDescriptor) obj).descriptor.equals(descriptor);
+		}
+
+		public int hashCode() {
+			return descriptor.hashCode();
+		}
+
+		public String toString() {
+			return "AtlasImageDescriptor(" + url + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * An input stream on the remaining bytes of a byte buffer.
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer data;
+
+		ByteBufferInputStream(ByteBuffer data) {
+			this.data = data;
+		}
+
+		public int read() {
+			return data.hasRemaining() ? data.get() & 0xFF : -1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (!data.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(len, data.remaining());
+			data.get(b, off, count);
+			return count;
+		}
+
+		public int available() {
+			return data.remaining();
+		}
+	}
+
+	/**
+	 * Creates an image atlas stored in the given file, and reads the file if
+	 * it was written with the same stamp.
+	 *
+	 * @param file
+	 *            the atlas file
+	 * @param stamp
+	 *            the stamp identifying the icons the atlas file is valid for
+	 */
+	public ImageAtlas(File file, long stamp) {
+		this.file = file;
+		this.stamp = stamp;
+		read();
+	}
+
+	/**
+	 * Returns an image descriptor for the icon at the given URL, which uses
+	 * the workbench image atlas.
+	 *
+	 * @param url
+	 *            the URL of the icon, or <code>null</code>
+	 * @return the image descriptor
+	 * @see ImageDescriptor#createFromURL(URL)
+	 */
+	public static ImageDescriptor createFromURL(URL url) {
+		ImageAtlas atlas = getDefault();
+		if (url == null || atlas == null) {
+			return ImageDescriptor.createFromURL(url);
+		}
+		return atlas.createImageDescriptor(url);
+	}
+
+	/**
+	 * Saves the workbench image atlas, if it was used. Called when the
+	 * workbench is shutting down.
+	 */
+	public static void saveDefault() {
+		ImageAtlas atlas;
+		synchronized (ImageAtlas.class) {
+			atlas = defaultAtlas;
+		}
+		if (atlas != null) {
+			try {
+				atlas.save();
+			} catch (IOException e) {
+				WorkbenchPlugin.log("Could not save the image atlas", e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Returns the workbench image atlas, stored in the state location of the
+	 * workbench plug-in.
+	 *
+	 * @return the image atlas, or <code>null</code> if there is no state
+	 *         location
+	 */
+	private static synchronized ImageAtlas getDefault() {
+		if (!defaultAtlasInitialized) {
+			defaultAtlasInitialized = true;
+			WorkbenchPlugin plugin = WorkbenchPlugin.getDefault();
+			IPath location = plugin == null ? null : plugin.getDataLocation();
+			if (location != null) {
+				File atlasFile = location.append(ATLAS_FILE_NAME).toFile();
+				defaultAtlas = new ImageAtlas(atlasFile, Platform
+						.getStateStamp());
+			}
+		}
+		return defaultAtlas;
+	}
+
+	/**
+	 * Returns an image descriptor for the icon at the given URL, which reads
+	 * its image data from this atlas if it is packed.
+	 *
+	 * @param url
+	 *            the URL of the icon
+	 * @return the image descriptor
+	 */
+	public ImageDescriptor createImageDescriptor(URL url) {
+		return new AtlasImageDescriptor(this, url);
+	}
+
+	/**
+	 * Returns whether the icon at the given URL is packed in this atlas.
+	 *
+	 * @param url
+	 *            the URL of the icon
+	 * @return <code>true</code> if the icon is packed, and
+	 *         <code>false</code> otherwise
+	 */
+	public boolean contains(URL url) {
+		return entries.containsKey(url.toExternalForm());
+	}
+
+	/**
+	 * Returns the number of icons packed in this atlas.
+	 *
+	 * @return the number of icons
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Records that the icon at the given URL is used, so that it is packed
+	 * the next time the atlas is saved.
+	 *
+	 * @param url
+	 *            the URL of the icon
+	 */
+	public void recordUse(URL url) {
+		String key = url.toExternalForm();
+		synchronized (used) {
+			if (!used.containsKey(key)) {
+				used.put(key, url);
+			}
+		}
+	}
+
+	/**
+	 * Decodes the image data of the icon at the given URL from the atlas
+	 * file, and records that the icon is used.
+	 *
+	 * @param url
+	 *            the URL of the icon
+	 * @return the image data, or <code>null</code> if the icon is not packed
+	 *         in this atlas or could not be decoded
+	 */
+	public ImageData getImageData(URL url) {
+		recordUse(url);
+		ByteBuffer data = getImageFile(url.toExternalForm());
+		if (data == null) {
+			return null;
+		}
+		try {
+			return new ImageData(new ByteBufferInputStream(data));
+		} catch (SWTException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the atlas file, unless it already packs all the icons used in
+	 * this session. The new atlas file only takes effect in the next session.
+	 *
+	 * @return <code>true</code> if the atlas file was written, and
+	 *         <code>false</code> otherwise
+	 * @throws IOException
+	 *             if the atlas file could not be written
+	 */
+	public boolean save() throws IOException {
+		Map toPack = new LinkedHashMap();
+		synchronized (used) {
+			if (entries.keySet().containsAll(used.keySet())
+					&& (buffer != null || used.isEmpty())) {
+				return false;
+			}
+			toPack.putAll(used);
+		}
+		// keep the icons packed before, which may be used in later sessions
+		for (Iterator i = entries.keySet().iterator(); i.hasNext();) {
+			Object key = i.next();
+			if (!toPack.containsKey(key)) {
+				toPack.put(key, null);
+			}
+		}
+
+		Map imageFiles = new LinkedHashMap();
+		for (Iterator i = toPack.entrySet().iterator(); i.hasNext()
+				&& imageFiles.size() < MAX_ENTRIES;) {
+			Map.Entry next = (Map.Entry) i.next();
+			String key = (String) next.getKey();
+			byte[] bytes = readImageFile(key, (URL) next.getValue());
+			if (bytes != null) {
+				imageFiles.put(key, bytes);
+			}
+		}
+		write(imageFiles);
+		return true;
+	}
+
+	/**
+	 * Returns the image file of the given icon: from the atlas file if it is
+	 * packed, or from its URL otherwise.
+	 *
+	 * @return the content of the image file, or <code>null</code> if it could
+	 *         not be read or is too large
+	 */
+	private byte[] readImageFile(String key, URL url) {
+		ByteBuffer data = getImageFile(key);
+		if (data != null) {
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			return bytes;
+		}
+		if (url == null) {
+			return null;
+		}
+		try {
+			InputStream in = url.openStream();
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] bytes = new byte[4096];
+				int count;
+				while ((count = in.read(bytes)) != -1) {
+					out.write(bytes, 0, count);
+					if (out.size() > MAX_IMAGE_FILE_SIZE) {
+						return null;
+					}
+				}
+				return out.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// the icon is missing, leave it out
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a buffer on the image file of the given icon in the atlas file.
+	 *
+	 * @return the buffer, or <code>null</code> if the icon is not packed
+	 */
+	private ByteBuffer getImageFile(String key) {
+		int[] entry = (int[]) entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		// the positions of the shared buffer are never changed
+		ByteBuffer data = buffer.duplicate();
+		data.position(entry[0]);
+		data.limit(entry[0] + entry[1]);
+		return data;
+	}
+
+	/**
+	 * Maps the atlas file in memory and reads its index, if it is valid.
+	 */
+	private void read() {
+		// a new atlas file could not replace the mapped one last session
+		replaceWithNewFile();
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			try {
+				FileChannel channel = in.getChannel();
+				if (channel.size() > Integer.MAX_VALUE) {
+					return;
+				}
+				ByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY,
+						0, channel.size());
+				if (content.getInt() != MAGIC || content.getInt() != VERSION
+						|| content.getLong() != stamp) {
+					return;
+				}
+				int count = content.getInt();
+				if (count < 0 || count > MAX_ENTRIES) {
+					return;
+				}
+				Map index = new HashMap(count * 2);
+				for (int i = 0; i < count; i++) {
+					int keyLength = content.getInt();
+					if (keyLength < 0 || keyLength > content.remaining()) {
+						return;
+					}
+					byte[] key = new byte[keyLength];
+					content.get(key);
+					int offset = content.getInt();
+					int length = content.getInt();
+					if (offset < 0 || length < 0
+							|| offset > content.limit() - length) {
+						return;
+					}
+					index.put(new String(key, URL_ENCODING), new int[] {
+							offset, length });
+				}
+				content.clear();
+				buffer = content;
+				entries = index;
+			} finally {
+				// the mapping stays valid once the file is closed
+				in.close();
+			}
+		} catch (IOException e) {
+			// rebuilt when saved
+		} catch (BufferUnderflowException e) {
+			// truncated, rebuilt when saved
+		}
+	}
+
+	/**
+	 * Writes an atlas file packing the given image files.
+	 *
+	 * @param imageFiles
+	 *            maps the external form of the URLs of the icons onto the
+	 *            content of their image file
+	 */
+	private void write(Map imageFiles) throws IOException {
+		int headerLength = 4 + 4 + 8 + 4;
+		byte[][] keys = new byte[imageFiles.size()][];
+		int k = 0;
+		for (Iterator i = imageFiles.keySet().iterator(); i.hasNext(); k++) {
+			keys[k] = ((String) i.next()).getBytes(URL_ENCODING);
+			headerLength += 4 + keys[k].length + 4 + 4;
+		}
+
+		File newFile = new File(file.getPath() + NEW_FILE_SUFFIX);
+		OutputStream stream = new FileOutputStream(newFile);
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(stamp);
+			out.writeInt(keys.length);
+			int offset = headerLength;
+			k = 0;
+			for (Iterator i = imageFiles.values().iterator(); i.hasNext(); k++) {
+				byte[] bytes = (byte[]) i.next();
+				out.writeInt(keys[k].length);
+				out.write(keys[k]);
+				out.writeInt(offset);
+				out.writeInt(bytes.length);
+				offset += bytes.length;
+			}
+			for (Iterator i = imageFiles.values().iterator(); i.hasNext();) {
+				out.write((byte[]) i.next());
+			}
+			out.flush();
+		} finally {
+			stream.close();
+		}
+		// fails on some platforms while the old atlas file is mapped, in
+		// which case the new one replaces it when the next session starts
+		replaceWithNewFile();
+	}
+
+	/**
+	 * Replaces the atlas file with the new atlas file, if there is one. The
+	 * atlas file is only discarded once the new one has taken its place, and
+	 * is kept otherwise.
+	 */
+	private void replaceWithNewFile() {
+		File newFile = new File(file.getPath() + NEW_FILE_SUFFIX);
+		if (!newFile.exists() || newFile.renameTo(file)) {
+			return;
+		}
+		// the target of a rename must not exist on some platforms
+		File oldFile = new File(file.getPath() + OLD_FILE_SUFFIX);
+		oldFile.delete();
+		if (file.exists() && !file.renameTo(oldFile)) {
+			return;
+		}
+		if (newFile.renameTo(file)) {
+			oldFile.delete();
+		} else {
+			oldFile.renameTo(file);
+		}
+	}
+}
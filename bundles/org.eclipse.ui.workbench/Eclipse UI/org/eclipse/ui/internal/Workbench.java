@@ -1585,6 +1585,7 @@ public final class Workbench extends EventManager implements IWorkbench {
 	 * @since 3.0
 	 */
 	private void uninitializeImages() {
+		ImageAtlas.saveDefault();
 		WorkbenchImages.dispose();
 		Image[] images = Window.getDefaultImages();
 		Window.setDefaultImage(null);
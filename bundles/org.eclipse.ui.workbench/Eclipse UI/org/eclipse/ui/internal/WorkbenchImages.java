@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -110,7 +110,7 @@ public/*final*/class WorkbenchImages {
     private final static void declareImage(String key, String path,
             boolean shared) {
         URL url = BundleUtility.find(PlatformUI.PLUGIN_ID, path);
-        ImageDescriptor desc = ImageDescriptor.createFromURL(url);
+        ImageDescriptor desc = ImageAtlas.createFromURL(url);
         declareImage(key, desc, shared);
     }
 
@@ -661,6 +661,6 @@ public/*final*/class WorkbenchImages {
 	 * @return ImageDescriptor
 	 */
 	public static ImageDescriptor getWorkbenchImageDescriptor(String relativePath){
-		return ImageDescriptor.createFromURL(BundleUtility.find(PlatformUI.PLUGIN_ID, ICONS_PATH + relativePath));
+		return ImageAtlas.createFromURL(BundleUtility.find(PlatformUI.PLUGIN_ID, ICONS_PATH + relativePath));
 	}
 }
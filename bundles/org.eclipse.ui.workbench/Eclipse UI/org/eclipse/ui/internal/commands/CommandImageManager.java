@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2008 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,6 +18,7 @@ import java.util.Set;
 
 import org.eclipse.core.commands.common.EventManager;
 import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.ui.internal.ImageAtlas;
 
 /**
  * <p>
@@ -95,7 +96,7 @@ public final class CommandImageManager extends EventManager {
 	 */
 	public final void bind(final String commandId, final int type,
 			final String style, final URL url) {
-		final ImageDescriptor descriptor = ImageDescriptor.createFromURL(url);
+		final ImageDescriptor descriptor = ImageAtlas.createFromURL(url);
 		bind(commandId, type, style, descriptor);
 	}
 
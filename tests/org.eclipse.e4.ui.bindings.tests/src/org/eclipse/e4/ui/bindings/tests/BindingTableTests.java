@@ -1,6 +1,7 @@
 package org.eclipse.e4.ui.bindings.tests;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -169,6 +170,68 @@ public class BindingTableTests extends TestCase {
 		assertFalse(table.isPartialMatch(ctrl8));
 	}
 
+	public void testRemovePartialMatch() throws Exception {
+		BindingTable table = loadTable(ID_TEXT);
+		Binding paste = getTestBinding(PASTE_ID, "CTRL+5 V");
+		KeySequence ctrl5 = KeySequence.getInstance("CTRL+5");
+		KeySequence ctrl5V = KeySequence.getInstance("CTRL+5 V");
+		assertTrue(table.isPartialMatch(ctrl5));
+		assertFalse(table.isPartialMatch(ctrl5V));
+		assertEquals(paste, table.getPerfectMatch(ctrl5V));
+
+		table.removeBinding(paste);
+		assertFalse(table.isPartialMatch(ctrl5));
+		assertNull(table.getPartialMatches(ctrl5));
+		assertNull(table.getPerfectMatch(ctrl5V));
+
+		table.addBinding(paste);
+		assertTrue(table.isPartialMatch(ctrl5));
+		assertEquals(1, table.getPartialMatches(ctrl5).size());
+		assertEquals(paste, table.getPerfectMatch(ctrl5V));
+	}
+
+	public void testPartialMatchesInInsertionOrder() throws Exception {
+		BindingTable table = new BindingTable(contextManager.getContext(ID_TEXT));
+		Binding copy = createTestBinding(COPY_ID, "CTRL+6 X Y", ID_TEXT);
+		Binding cut = createTestBinding(CUT_ID, "CTRL+6 Z", ID_TEXT);
+		Binding paste = createTestBinding(PASTE_ID, "CTRL+6 X Z", ID_TEXT);
+		table.addBinding(copy);
+		table.addBinding(cut);
+		table.addBinding(paste);
+		KeySequence ctrl6 = KeySequence.getInstance("CTRL+6");
+		assertEquals(Arrays.asList(copy, cut, paste), table.getPartialMatches(ctrl6));
+
+		table.removeBinding(copy);
+		table.addBinding(copy);
+		assertEquals(Arrays.asList(cut, paste, copy), table.getPartialMatches(ctrl6));
+	}
+
+	public void testSequencesSortedAfterSchemeChange() throws Exception {
+		String defaultScheme = "org.eclipse.ui.defaultAcceleratorConfiguration";
+		String customScheme = "custom";
+		BindingTable table = new BindingTable(contextManager.getContext(ID_TEXT));
+		Binding defaultCopy = createTestBinding(COPY_ID, "CTRL+6 C", ID_TEXT, defaultScheme);
+		Binding customCopy = createTestBinding(COPY_ID, "CTRL+7 C", ID_TEXT, customScheme);
+		Binding customCopy2 = createTestBinding(COPY_ID, "CTRL+SHIFT+7 C", ID_TEXT,
+				customScheme);
+		try {
+			BindingTable.BEST_SEQUENCE.setActiveSchemes(new String[] { defaultScheme,
+					customScheme });
+			table.addBinding(defaultCopy);
+			table.addBinding(customCopy);
+			assertSame(defaultCopy, table.getBestSequenceFor(defaultCopy.getParameterizedCommand()));
+
+			BindingTable.BEST_SEQUENCE.setActiveSchemes(new String[] { customScheme,
+					defaultScheme });
+			table.addBinding(customCopy2);
+			assertEquals(Arrays.asList(customCopy, customCopy2, defaultCopy),
+					table.getSequencesFor(defaultCopy.getParameterizedCommand()));
+			assertSame(customCopy, table.getBestSequenceFor(defaultCopy.getParameterizedCommand()));
+		} finally {
+			BindingTable.BEST_SEQUENCE.setActiveSchemes(null);
+		}
+	}
+
 	public void testContextSet() throws Exception {
 		BindingTableManager manager = (BindingTableManager) ContextInjectionFactory
 				.make(BindingTableManager.class, workbenchContext);
@@ -353,6 +416,27 @@ public class BindingTableTests extends TestCase {
 		assertEquals(about, it.next());
 	}
 
+	public void testManagerTableChanged() throws Exception {
+		BindingTableManager manager = createManager();
+		ContextSet javaSet = createJavaSet(manager);
+		Binding paste = getTestBinding(PASTE_ID, "CTRL+5 V");
+		KeySequence ctrl5 = KeySequence.getInstance("CTRL+5");
+		KeySequence ctrl5V = KeySequence.getInstance("CTRL+5 V");
+		assertEquals(paste, manager.getPerfectMatch(javaSet, ctrl5V));
+		assertTrue(manager.isPartialMatch(javaSet, ctrl5));
+
+		BindingTable table = manager.getTable(paste.getContextId());
+		table.removeBinding(paste);
+		assertNull(manager.getPerfectMatch(javaSet, ctrl5V));
+		assertTrue(manager.isPartialMatch(javaSet, ctrl5));
+
+		table.addBinding(paste);
+		assertEquals(paste, manager.getPerfectMatch(javaSet, ctrl5V));
+
+		manager.removeTable(table);
+		assertNull(manager.getPerfectMatch(javaSet, ctrl5V));
+	}
+
 	private BindingTable loadTable(String contextId) {
 		Context context = contextManager.getContext(contextId);
 		BindingTable table = new BindingTable(context);
@@ -373,6 +457,31 @@ public class BindingTableTests extends TestCase {
 		return null;
 	}
 
+	private Binding getTestBinding(String commandId, String sequence)
+			throws Exception {
+		KeySequence keySequence = KeySequence.getInstance(sequence);
+		for (Binding binding : loadedBindings) {
+			if (commandId.equals(binding.getParameterizedCommand().getId())
+					&& keySequence.equals(binding.getTriggerSequence())) {
+				return binding;
+			}
+		}
+		return null;
+	}
+
+	private Binding createTestBinding(String commandId, String sequence, String contextId)
+			throws Exception {
+		return createTestBinding(commandId, sequence, contextId,
+				"org.eclipse.ui.defaultAcceleratorConfiguration");
+	}
+
+	private Binding createTestBinding(String commandId, String sequence, String contextId,
+			String schemeId) throws Exception {
+		return new KeyBinding(KeySequence.getInstance(sequence), new ParameterizedCommand(
+				commandManager.getCommand(commandId), null), schemeId, contextId, null, null,
+				null, Binding.SYSTEM);
+	}
+
 	private void assertContextSet(ContextSet set, String[] contextIds) {
 		List<Context> contexts = set.getContexts();
 		assertEquals(contexts.toString(), contextIds.length, contexts.size());
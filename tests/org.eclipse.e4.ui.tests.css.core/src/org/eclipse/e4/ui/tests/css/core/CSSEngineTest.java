@@ -1,11 +1,13 @@
 package org.eclipse.e4.ui.tests.css.core;
 
+import java.io.StringReader;
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -80,6 +82,28 @@ public class CSSEngineTest extends TestCase {
 		}
 	}
 
+	private static class TestWidget {
+		String cssClass;
+	}
+
+	public static class TestWidgetElement extends BaseElement {
+		public TestWidgetElement(TestWidget widget, CSSEngine engine) {
+			super(widget, engine);
+		}
+
+		public String getLocalName() {
+			return "Button";
+		}
+
+		public String getCSSClass() {
+			return ((TestWidget) getNativeWidget()).cssClass;
+		}
+
+		public String getAttribute(String arg0) {
+			return "";
+		}
+	}
+
 	public void testBug363053() {
 		TestCSSEngine engine = new TestCSSEngine();
 		// must be class not interface
@@ -118,4 +142,43 @@ public class CSSEngineTest extends TestCase {
 		assertTrue(engine.matches(list.item(0), new Date(), null));
 	}
 
+	public void testApplyStylesOnAttributeChange() throws Exception {
+		final List<Object> styled = new ArrayList<Object>();
+		TestCSSEngine engine = new TestCSSEngine() {
+			public void applyStyles(Object element,
+					boolean applyStylesToChildNodes, boolean computeDefaultStyle) {
+				styled.add(getNativeWidget(element));
+				super.applyStyles(element, applyStylesToChildNodes,
+						computeDefaultStyle);
+			}
+		};
+		engine.setElementProvider(new IElementProvider() {
+			public Element getElement(Object element, CSSEngine engine) {
+				return new TestWidgetElement((TestWidget) element, engine);
+			}
+		});
+		engine.parseStyleSheet(new StringReader(
+				"Button.special { color: red; }"));
+
+		TestWidget widget = new TestWidget();
+		engine.applyStyles(widget, false);
+		assertEquals(1, styled.size());
+
+		// the computed style doesn't change
+		styled.clear();
+		widget.cssClass = "other";
+		engine.applyStylesOnAttributeChange(widget, "class");
+		assertTrue(styled.isEmpty());
+
+		widget.cssClass = "special";
+		engine.applyStylesOnAttributeChange(widget, "class");
+		assertEquals(1, styled.size());
+		assertSame(widget, styled.get(0));
+
+		// no selector tests the id
+		styled.clear();
+		engine.applyStylesOnAttributeChange(widget, "id");
+		assertTrue(styled.isEmpty());
+	}
+
 }
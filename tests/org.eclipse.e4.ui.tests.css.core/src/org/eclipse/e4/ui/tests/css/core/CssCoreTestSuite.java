@@ -8,6 +8,7 @@ import org.eclipse.e4.ui.tests.css.core.parser.FontFaceRulesTest;
 import org.eclipse.e4.ui.tests.css.core.parser.RGBColorImplTest;
 import org.eclipse.e4.ui.tests.css.core.parser.SelectorTest;
 import org.eclipse.e4.ui.tests.css.core.parser.StyleRuleTest;
+import org.eclipse.e4.ui.tests.css.core.parser.StyleSheetCacheTest;
 import org.eclipse.e4.ui.tests.css.core.parser.ValueTest;
 import org.eclipse.e4.ui.tests.css.core.parser.ViewCSSTest;
 
@@ -28,6 +29,7 @@ public class CssCoreTestSuite extends TestSuite {
 		addTestSuite(ValueTest.class);
 		addTestSuite(SelectorTest.class);
 		addTestSuite(CSSEngineTest.class);
+		addTestSuite(StyleSheetCacheTest.class);
 		// $JUnit-END$
 	}
 }
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.tests.css.core.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.eclipse.e4.ui.css.core.dom.ExtendedCSSRule;
+import org.eclipse.e4.ui.css.core.impl.dom.CSSStyleSheetImpl;
+import org.eclipse.e4.ui.css.core.impl.dom.CSSStyleSheetSerializer;
+import org.eclipse.e4.ui.css.core.impl.engine.CSSEngineImpl;
+import org.eclipse.e4.ui.css.core.impl.engine.CSSStyleSheetCache;
+import org.eclipse.e4.ui.css.core.impl.sac.CSSSelectorFactoryImpl;
+import org.eclipse.e4.ui.css.swt.engine.CSSSWTEngineImpl;
+import org.eclipse.e4.ui.tests.css.core.util.ParserTestUtil;
+import org.eclipse.swt.widgets.Display;
+import org.w3c.css.sac.InputSource;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleRule;
+import org.w3c.dom.css.CSSStyleSheet;
+
+public class StyleSheetCacheTest extends TestCase {
+
+	private static final String CSS = "Button, Label { color: #FF0220 !important; }\n"
+			+ "Shell .special > #myid:selected { font: Verdana 12px bold; }\n"
+			+ "CTabFolder[style~='SWT.CLOSE'] { background-color: gradient rgb(10, 20, 30) white 100%; }\n"
+			+ "Text + Label:focus { background-image: url(./image.png); font-family: 'Times New Roman'; }\n"
+			+ "* { margin: 0 1.5em inherit; }\n";
+
+	private File directory;
+
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("cssCache", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		directory.delete();
+	}
+
+	public void testWriteAndRead() throws Exception {
+		CSSStyleSheet styleSheet = ParserTestUtil.parseCss(CSS);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CSSStyleSheetSerializer.writeStyleSheet(styleSheet,
+				new DataOutputStream(bytes));
+		CSSStyleSheet copy = CSSStyleSheetSerializer.readStyleSheet(
+				new DataInputStream(new ByteArrayInputStream(bytes
+						.toByteArray())), CSSSelectorFactoryImpl.INSTANCE,
+				CSSEngineImpl.CONDITIONFACTORY_INSTANCE);
+		assertSameRules(styleSheet, copy);
+	}
+
+	public void testVersionMismatch() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeInt(-1);
+		try {
+			CSSStyleSheetSerializer.readStyleSheet(new DataInputStream(
+					new ByteArrayInputStream(bytes.toByteArray())),
+					CSSSelectorFactoryImpl.INSTANCE,
+					CSSEngineImpl.CONDITIONFACTORY_INSTANCE);
+			fail("Version must be checked");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testParseWithCache() throws Exception {
+		File cssFile = new File(directory, "theme.css");
+		write(cssFile, CSS);
+		CSSStyleSheetCache cache = new CSSStyleSheetCache(directory);
+
+		CSSStyleSheet parsed = parse(cssFile, cache);
+		assertEquals(2, directory.list().length);
+
+		// second start, the style sheet comes from the cache
+		CSSStyleSheet cached = parse(cssFile, cache);
+		assertNotSame(parsed, cached);
+		assertSameRules(parsed, cached);
+
+		// the cache entry is dropped when the file changes
+		write(cssFile, "Button { color: red; }");
+		cssFile.setLastModified(cssFile.lastModified() + 2000);
+		CSSStyleSheet changed = parse(cssFile, cache);
+		assertEquals(1, changed.getCssRules().getLength());
+		assertEquals("red", ((CSSStyleRule) changed.getCssRules().item(0))
+				.getStyle().getPropertyCSSValue("color").getCssText());
+		assertEquals(1, parse(cssFile, cache).getCssRules().getLength());
+
+		cache.clear();
+		assertEquals(1, directory.list().length);
+	}
+
+	private static CSSStyleSheet parse(File file, CSSStyleSheetCache cache)
+			throws IOException {
+		CSSSWTEngineImpl engine = new CSSSWTEngineImpl(Display.getDefault());
+		engine.setStyleSheetCache(cache);
+		InputStream stream = new FileInputStream(file);
+		try {
+			InputSource source = new InputSource();
+			source.setByteStream(stream);
+			source.setURI(file.toURI().toURL().toString());
+			CSSStyleSheet styleSheet = (CSSStyleSheet) engine
+					.parseStyleSheet(source);
+			assertTrue(styleSheet instanceof CSSStyleSheetImpl);
+			return styleSheet;
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void assertSameRules(CSSStyleSheet expected,
+			CSSStyleSheet actual) {
+		CSSRuleList expectedRules = expected.getCssRules();
+		CSSRuleList actualRules = actual.getCssRules();
+		assertEquals(expectedRules.getLength(), actualRules.getLength());
+		for (int i = 0; i < expectedRules.getLength(); i++) {
+			SelectorList expectedSelectors = ((ExtendedCSSRule) expectedRules
+					.item(i)).getSelectorList();
+			SelectorList actualSelectors = ((ExtendedCSSRule) actualRules
+					.item(i)).getSelectorList();
+			assertEquals(expectedSelectors.getLength(), actualSelectors
+					.getLength());
+			for (int j = 0; j < expectedSelectors.getLength(); j++) {
+				assertEquals(expectedSelectors.item(j).toString(),
+						actualSelectors.item(j).toString());
+			}
+			assertEquals(((CSSStyleRule) expectedRules.item(i)).getStyle()
+					.getCssText(), ((CSSStyleRule) actualRules.item(i))
+					.getStyle().getCssText());
+		}
+	}
+}
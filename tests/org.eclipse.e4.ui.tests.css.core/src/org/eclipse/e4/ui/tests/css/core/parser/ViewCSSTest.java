@@ -15,10 +15,12 @@ import junit.framework.TestCase;
 
 import org.eclipse.e4.ui.css.core.impl.dom.DocumentCSSImpl;
 import org.eclipse.e4.ui.css.core.impl.dom.ViewCSSImpl;
+import org.eclipse.e4.ui.css.core.impl.engine.CSSComputedStyleCache;
 import org.eclipse.e4.ui.css.swt.engine.CSSSWTEngineImpl;
 import org.eclipse.e4.ui.tests.css.core.util.ParserTestUtil;
 import org.eclipse.e4.ui.tests.css.core.util.TestElement;
 import org.eclipse.swt.widgets.Display;
+import org.w3c.dom.Element;
 import org.w3c.dom.css.CSSStyleDeclaration;
 import org.w3c.dom.css.CSSStyleSheet;
 import org.w3c.dom.css.ViewCSS;
@@ -57,6 +59,109 @@ public class ViewCSSTest extends TestCase {
 		assertEquals( 2, buttonStyle.getLength() );
 	}
 
+	public void testGetComputedStyleClassAndId() throws Exception {
+		// Rules are looked up by id, class, element name and universal
+		// selector, the result must not depend on which bucket they are in
+		String css = "* { color: black; }\n"
+			+ ".special { font-weight: bold; }\n"
+			+ "Button.other, #myid { color: red; }\n"
+			+ "Label { color: blue; }\n"
+			+ ".other { color: green; }\n";
+		ViewCSS viewCSS = createViewCss(css);
+
+		TestElement button = new TestElement("Button", engine);
+		CSSStyleDeclaration style = viewCSS.getComputedStyle(button, null);
+		assertEquals(1, style.getLength());
+		assertEquals("black", style.getPropertyCSSValue("color").getCssText());
+
+		button.setClass("special  other");
+		style = viewCSS.getComputedStyle(button, null);
+		assertEquals(2, style.getLength());
+		assertEquals("bold", style.getPropertyCSSValue("font-weight")
+				.getCssText());
+		assertEquals("red", style.getPropertyCSSValue("color").getCssText());
+
+		TestElement label = new TestElement("Label", engine);
+		label.setClass("other");
+		style = viewCSS.getComputedStyle(label, null);
+		assertEquals("green", style.getPropertyCSSValue("color").getCssText());
+
+		label.setId("myid");
+		style = viewCSS.getComputedStyle(label, null);
+		assertEquals("red", style.getPropertyCSSValue("color").getCssText());
+	}
+
+	public void testComputedStyleCache() throws Exception {
+		String css = "Button { color: blue; }\n"
+			+ "Button.special { color: green; }\n"
+			+ "Button[BORDER] { color: gray; }\n";
+		CSSStyleSheet styleSheet = ParserTestUtil.parseCss(css);
+		DocumentCSSImpl docCss = new DocumentCSSImpl();
+		docCss.addStyleSheet(styleSheet);
+		CSSComputedStyleCache cache = new CSSComputedStyleCache(docCss,
+				new ViewCSSImpl(docCss));
+
+		TestElement button1 = new TestElement("Button", engine);
+		TestElement button2 = new TestElement("Button", engine);
+		CSSStyleDeclaration style1 = cache.getComputedStyle(button1, null);
+		assertSame(style1, cache.getComputedStyle(button2, null));
+		assertEquals("blue", style1.getPropertyCSSValue("color").getCssText());
+
+		button2.setClass("special");
+		CSSStyleDeclaration style2 = cache.getComputedStyle(button2, null);
+		assertNotSame(style1, style2);
+		assertEquals("green", style2.getPropertyCSSValue("color").getCssText());
+
+		button1.setAttribute("BORDER", "true");
+		assertEquals("gray", cache.getComputedStyle(button1, null)
+				.getPropertyCSSValue("color").getCssText());
+
+		TestElement label = new TestElement("Label", engine);
+		assertNull(cache.getComputedStyle(label, null));
+
+		docCss.removeAllStyleSheets();
+		docCss.addStyleSheet(ParserTestUtil.parseCss("Label { color: red; }"));
+		cache.invalidate();
+		assertEquals("red", cache.getComputedStyle(label, null)
+				.getPropertyCSSValue("color").getCssText());
+	}
+
+	public void testComputedStyleCacheBounded() throws Exception {
+		String css = "Button { color: blue; }\n"
+			+ "#special { color: green; }\n";
+		CSSStyleSheet styleSheet = ParserTestUtil.parseCss(css);
+		DocumentCSSImpl docCss = new DocumentCSSImpl();
+		docCss.addStyleSheet(styleSheet);
+		final int[] computed = new int[1];
+		CSSComputedStyleCache cache = new CSSComputedStyleCache(docCss,
+				new ViewCSSImpl(docCss) {
+					public CSSStyleDeclaration getComputedStyle(Element elt,
+							String pseudoElt) {
+						computed[0]++;
+						return super.getComputedStyle(elt, pseudoElt);
+					}
+				});
+
+		TestElement first = new TestElement("Button", engine);
+		first.setId("button0");
+		cache.getComputedStyle(first, null);
+		cache.getComputedStyle(first, null);
+		assertEquals(1, computed[0]);
+
+		// more ids than the cache keeps styles for
+		for (int i = 1; i < 2048; i++) {
+			TestElement button = new TestElement("Button", engine);
+			button.setId("button" + i);
+			cache.getComputedStyle(button, null);
+		}
+		assertEquals(2048, computed[0]);
+
+		// the least recently used styles were dropped
+		assertEquals("blue", cache.getComputedStyle(first, null)
+				.getPropertyCSSValue("color").getCssText());
+		assertEquals(2049, computed[0]);
+	}
+
 	private static ViewCSS createViewCss(String css) throws IOException {
 		CSSStyleSheet styleSheet = ParserTestUtil.parseCss(css);
 		DocumentCSSImpl docCss = new DocumentCSSImpl();
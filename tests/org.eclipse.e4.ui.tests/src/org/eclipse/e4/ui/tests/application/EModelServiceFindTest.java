@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.List;
 import junit.framework.TestCase;
 import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.internal.workbench.UIEventPublisher;
 import org.eclipse.e4.ui.internal.workbench.swt.E4Application;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.e4.ui.model.application.impl.ApplicationFactoryImpl;
@@ -29,6 +30,7 @@ import org.eclipse.e4.ui.model.application.ui.basic.MPartStack;
 import org.eclipse.e4.ui.model.application.ui.basic.MWindow;
 import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
 import org.eclipse.e4.ui.workbench.modeling.EModelService;
+import org.eclipse.emf.common.notify.Notifier;
 
 public class EModelServiceFindTest extends TestCase {
 
@@ -277,4 +279,109 @@ public class EModelServiceFindTest extends TestCase {
 		assertEquals(1, elements.size());
 		assertEquals(part, elements.get(0));
 	}
+
+	public void testFindElementsIndexed() {
+		MApplication application = createApplication();
+		UIEventPublisher publisher = new UIEventPublisher(applicationContext);
+		((Notifier) application).eAdapters().add(publisher);
+
+		EModelService modelService = (EModelService) application.getContext()
+				.get(EModelService.class.getName());
+		assertNotNull(modelService);
+
+		MWindow window = (MWindow) modelService.find("singleValidId",
+				application);
+		assertNotNull(window);
+		MPartSashContainer psc = (MPartSashContainer) window.getChildren()
+				.get(0);
+		MPartStack stack = (MPartStack) psc.getChildren().get(0);
+
+		// the elements are found in the order of the model
+		List<MUIElement> elements = modelService.findElements(application,
+				"twoValidIds", null, null);
+		assertEquals(2, elements.size());
+		assertEquals(psc, elements.get(0));
+		assertEquals(stack.getChildren().get(0), elements.get(1));
+
+		List<MPart> parts = modelService.findElements(stack, null,
+				MPart.class, null);
+		assertEquals(2, parts.size());
+
+		// the index follows the changes of the model
+		MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+		part.setElementId("newId");
+		stack.getChildren().add(0, part);
+		assertEquals(part, modelService.find("newId", application));
+		parts = modelService.findElements(application, null, MPart.class, null);
+		assertEquals(4, parts.size());
+		assertEquals(part, parts.get(0));
+
+		part.setElementId("renamedId");
+		assertNull(modelService.find("newId", application));
+		assertEquals(part, modelService.find("renamedId", application));
+
+		List<String> tags = new ArrayList<String>();
+		tags.add("newTag");
+		part.getTags().add("newTag");
+		assertEquals(1,
+				modelService.findElements(application, null, null, tags).size());
+		part.getTags().remove("newTag");
+		assertEquals(0,
+				modelService.findElements(application, null, null, tags).size());
+
+		stack.getChildren().remove(part);
+		assertNull(modelService.find("renamedId", application));
+		assertEquals(3,
+				modelService.findElements(application, null, MPart.class, null)
+						.size());
+
+		((Notifier) application).eAdapters().remove(publisher);
+	}
+
+	public void testFindElementsIndexedPerspectives() {
+		MApplication application = ApplicationFactoryImpl.eINSTANCE
+				.createApplication();
+		application.setContext(applicationContext);
+		MWindow window = BasicFactoryImpl.eINSTANCE.createWindow();
+		application.getChildren().add(window);
+
+		MPerspectiveStack perspectiveStack = AdvancedFactoryImpl.eINSTANCE
+				.createPerspectiveStack();
+		window.getChildren().add(perspectiveStack);
+
+		MPerspective perspectiveA = AdvancedFactoryImpl.eINSTANCE
+				.createPerspective();
+		perspectiveStack.getChildren().add(perspectiveA);
+		MPerspective perspectiveB = AdvancedFactoryImpl.eINSTANCE
+				.createPerspective();
+		perspectiveStack.getChildren().add(perspectiveB);
+		perspectiveStack.setSelectedElement(perspectiveA);
+
+		MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+		part.setElementId("sharedPart");
+		window.getSharedElements().add(part);
+
+		MPlaceholder placeholder = AdvancedFactoryImpl.eINSTANCE
+				.createPlaceholder();
+		placeholder.setRef(part);
+		perspectiveB.getChildren().add(placeholder);
+
+		((Notifier) application).eAdapters().add(
+				new UIEventPublisher(applicationContext));
+		EModelService modelService = (EModelService) application.getContext()
+				.get(EModelService.class.getName());
+
+		assertEquals(1, modelService.findElements(window, "sharedPart", null,
+				null, EModelService.ANYWHERE).size());
+		assertEquals(0, modelService.findElements(window, "sharedPart", null,
+				null, EModelService.IN_ACTIVE_PERSPECTIVE).size());
+
+		perspectiveStack.setSelectedElement(perspectiveB);
+		assertEquals(1, modelService.findElements(window, "sharedPart", null,
+				null, EModelService.IN_ACTIVE_PERSPECTIVE).size());
+
+		placeholder.setRef(null);
+		assertEquals(0, modelService.findElements(window, "sharedPart", null,
+				null, EModelService.ANYWHERE).size());
+	}
 }
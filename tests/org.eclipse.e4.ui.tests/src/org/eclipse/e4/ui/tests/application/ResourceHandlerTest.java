@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 IBM Corporation and others.
+ * Copyright (c) 2010, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,12 +11,29 @@
 
 package org.eclipse.e4.ui.tests.application;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.e4.core.contexts.ContextInjectionFactory;
 import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.ui.internal.workbench.E4BinaryResource;
 import org.eclipse.e4.ui.internal.workbench.E4Workbench;
 import org.eclipse.e4.ui.internal.workbench.E4XMIResource;
 import org.eclipse.e4.ui.internal.workbench.ResourceHandler;
+import org.eclipse.e4.ui.internal.workbench.UIEventPublisher;
 import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.ui.basic.MPartStack;
+import org.eclipse.e4.ui.model.application.ui.basic.MWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.MWindowElement;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.e4.ui.workbench.UIEvents;
+import org.eclipse.emf.common.notify.Notifier;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
@@ -25,6 +42,8 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
 import org.osgi.util.tracker.ServiceTracker;
 
 /**
@@ -52,11 +71,25 @@ public class ResourceHandlerTest extends HeadlessStartupTest {
 	}
 
 	private ResourceHandler createHandler(URI uri) {
+		return createHandler(uri, false, true);
+	}
+
+	private ResourceHandler createHandler(URI uri, boolean binaryModel,
+			boolean clearPersistedState) {
+		return createHandler(uri, binaryModel, clearPersistedState, 0);
+	}
+
+	private ResourceHandler createHandler(URI uri, boolean binaryModel,
+			boolean clearPersistedState, int autoSaveInterval) {
 		IEclipseContext localContext = applicationContext.createChild();
 		localContext.set(E4Workbench.INSTANCE_LOCATION, getInstanceLocation());
 		localContext.set(E4Workbench.PERSIST_STATE, Boolean.TRUE);
-		localContext.set(E4Workbench.CLEAR_PERSISTED_STATE, Boolean.TRUE);
+		localContext.set(E4Workbench.CLEAR_PERSISTED_STATE,
+				Boolean.valueOf(clearPersistedState));
 		localContext.set(E4Workbench.DELTA_RESTORE, Boolean.TRUE);
+		localContext.set(E4Workbench.BINARY_MODEL, Boolean.valueOf(binaryModel));
+		localContext.set(E4Workbench.MODEL_AUTO_SAVE_INTERVAL,
+				Integer.valueOf(autoSaveInterval));
 
 		localContext.set(E4Workbench.INITIAL_WORKBENCH_MODEL_URI, uri);
 
@@ -162,4 +195,219 @@ public class ResourceHandlerTest extends HeadlessStartupTest {
 				.getChildren().get(0).getChildren().get(7).getElementId());
 	}
 
+	public void testModelProcessingPublishedInBatch() {
+		final List<Event> batches = new ArrayList<Event>();
+		EventHandler handler = new EventHandler() {
+			public void handleEvent(Event event) {
+				batches.add(event);
+			}
+		};
+		IEventBroker eventBroker = applicationContext.get(IEventBroker.class);
+		eventBroker.subscribe(UIEvents.UIModelBatch.TOPIC, handler);
+		try {
+			URI uri = URI.createPlatformPluginURI(
+					"org.eclipse.e4.ui.tests/xmi/modelprocessor/base.e4xmi",
+					true);
+			Resource resource = createHandler(uri).loadMostRecentModel();
+			MApplication application = (MApplication) resource.getContents()
+					.get(0);
+			MWindow contributedWindow = application.getChildren().get(1);
+			assertEquals("fragment.contributedWindow",
+					contributedWindow.getElementId());
+
+			// the publisher attached by the handler is kept by the workbench
+			UIEventPublisher publisher = UIEventPublisher
+					.getPublisher(application);
+			assertNotNull(publisher);
+			assertSame(publisher, UIEventPublisher.attachPublisher(
+					(Notifier) application, applicationContext));
+
+			// the changes of the processors and fragments are sent together
+			assertEquals(1, batches.size());
+			@SuppressWarnings("unchecked")
+			List<Event> events = (List<Event>) batches.get(0).getProperty(
+					UIEvents.EventTags.EVENTS);
+			boolean windowAdded = false;
+			for (Event event : events) {
+				Object newValue = event
+						.getProperty(UIEvents.EventTags.NEW_VALUE);
+				if (event.getProperty(UIEvents.EventTags.ELEMENT) == application
+						&& (newValue == contributedWindow || newValue instanceof List<?>
+								&& ((List<?>) newValue)
+										.contains(contributedWindow))) {
+					windowAdded = true;
+				}
+			}
+			assertTrue(windowAdded);
+		} finally {
+			eventBroker.unsubscribe(handler);
+		}
+	}
+
+	public void testBinaryModel() throws IOException {
+		URI uri = URI.createPlatformPluginURI(
+				"org.eclipse.e4.ui.tests/xmi/modelprocessor/base.e4xmi", true);
+
+		ResourceHandler handler = createHandler(uri, true, true);
+		Resource resource = handler.loadMostRecentModel();
+		assertEquals(E4BinaryResource.class, resource.getClass());
+		MApplication application = (MApplication) resource.getContents().get(0);
+		String windowId = ((E4XMIResource) resource)
+				.getID((EObject) application.getChildren().get(1));
+		handler.save();
+
+		// restored from the binary file, with the ids
+		handler = createHandler(uri, true, false);
+		resource = handler.loadMostRecentModel();
+		assertEquals(E4BinaryResource.class, resource.getClass());
+		application = (MApplication) resource.getContents().get(0);
+		assertEquals(2, application.getChildren().size());
+		assertEquals("fragment.contributedWindow", application.getChildren()
+				.get(1).getElementId());
+		assertEquals(windowId, ((E4XMIResource) resource)
+				.getID((EObject) application.getChildren().get(1)));
+
+		// the model can still be written as XMI
+		ByteArrayOutputStream xmi = new ByteArrayOutputStream();
+		((E4BinaryResource) resource).saveXMI(xmi, null);
+		E4XMIResource xmiResource = new E4XMIResource();
+		xmiResource.load(new ByteArrayInputStream(xmi.toByteArray()), null);
+		application = (MApplication) xmiResource.getContents().get(0);
+		assertEquals(windowId,
+				xmiResource.getID((EObject) application.getChildren().get(1)));
+
+		// switching back to XMI restores the binary model, which is newer
+		handler = createHandler(uri, false, false);
+		resource = handler.loadMostRecentModel();
+		assertEquals(E4XMIResource.class, resource.getClass());
+		application = (MApplication) resource.getContents().get(0);
+		assertEquals(windowId, ((E4XMIResource) resource)
+				.getID((EObject) application.getChildren().get(1)));
+
+		// don't leave the saved model to other tests
+		createHandler(uri, true, true).loadMostRecentModel();
+	}
+
+	public void testModelAutoSave() throws Exception {
+		URI uri = URI.createPlatformPluginURI(
+				"org.eclipse.e4.ui.tests/xmi/modelprocessor/base.e4xmi", true);
+		File modelFile = new File(URIUtil.toURI(getInstanceLocation().getURL()));
+		modelFile = new File(modelFile,
+				".metadata/.plugins/org.eclipse.e4.workbench/workbench.xmi");
+
+		// the first save writes the whole model
+		ResourceHandler handler = createHandler(uri, false, true, 3600);
+		handler.loadMostRecentModel();
+		handler.save();
+		assertTrue(modelFile.exists());
+		long length = modelFile.length();
+		long lastModified = modelFile.lastModified();
+
+		// then only the changes are saved
+		handler = createHandler(uri, false, false, 3600);
+		Resource resource = handler.loadMostRecentModel();
+		MApplication application = (MApplication) resource.getContents().get(0);
+		MWindow window = application.getChildren().get(1);
+		String windowId = ((E4XMIResource) resource).getID((EObject) window);
+		window.setLabel("changed");
+		window.getTags().add("journaled");
+		window.getPersistedState().put("key", "value");
+		MPartStack stack = BasicFactoryImpl.eINSTANCE.createPartStack();
+		stack.setElementId("journaled.stack");
+		window.getChildren().add(stack);
+		String stackId = ((E4XMIResource) resource).getID((EObject) stack);
+		handler.save();
+		assertEquals(length, modelFile.length());
+		assertEquals(lastModified, modelFile.lastModified());
+
+		handler = createHandler(uri, false, false);
+		resource = handler.loadMostRecentModel();
+		application = (MApplication) resource.getContents().get(0);
+		window = application.getChildren().get(1);
+		assertEquals(windowId, ((E4XMIResource) resource).getID((EObject) window));
+		assertEquals("changed", window.getLabel());
+		assertTrue(window.getTags().contains("journaled"));
+		assertEquals("value", window.getPersistedState().get("key"));
+		MWindowElement last = window.getChildren().get(
+				window.getChildren().size() - 1);
+		assertEquals("journaled.stack", last.getElementId());
+		assertEquals(stackId, ((E4XMIResource) resource).getID((EObject) last));
+
+		// don't leave the saved model to other tests
+		createHandler(uri, false, true).loadMostRecentModel();
+	}
+
+	public void testInvalidJournalDiscarded() throws Exception {
+		URI uri = URI.createPlatformPluginURI(
+				"org.eclipse.e4.ui.tests/xmi/modelprocessor/base.e4xmi", true);
+		File directory = new File(URIUtil.toURI(getInstanceLocation().getURL()));
+		directory = new File(directory,
+				".metadata/.plugins/org.eclipse.e4.workbench");
+		File journalFile = new File(directory, "workbench.journal");
+
+		ResourceHandler handler = createHandler(uri, false, true, 3600);
+		handler.loadMostRecentModel();
+		handler.save();
+
+		handler = createHandler(uri, false, false, 3600);
+		Resource resource = handler.loadMostRecentModel();
+		MApplication application = (MApplication) resource.getContents().get(0);
+		application.getChildren().get(1).setLabel("changed");
+		handler.save();
+		assertTrue(journalFile.exists());
+
+		// the object count of the first record, after the magic number, the
+		// version, the model file name, length and time stamp, and the record
+		// length
+		int offset = 4 + 4 + 4 + "workbench.xmi".getBytes("UTF-8").length + 8
+				+ 8 + 4;
+		RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+		try {
+			journal.seek(offset);
+			journal.writeInt(-1);
+		} finally {
+			journal.close();
+		}
+
+		// the last full save is restored, without any of the journal
+		handler = createHandler(uri, false, false);
+		resource = handler.loadMostRecentModel();
+		application = (MApplication) resource.getContents().get(0);
+		assertFalse("changed".equals(application.getChildren().get(1)
+				.getLabel()));
+		assertFalse(journalFile.exists());
+
+		// don't leave the saved model to other tests
+		createHandler(uri, false, true).loadMostRecentModel();
+	}
+
+	public void testModelRestoredFromBackup() throws Exception {
+		URI uri = URI.createPlatformPluginURI(
+				"org.eclipse.e4.ui.tests/xmi/modelprocessor/base.e4xmi", true);
+		File modelFile = new File(URIUtil.toURI(getInstanceLocation().getURL()));
+		modelFile = new File(modelFile,
+				".metadata/.plugins/org.eclipse.e4.workbench/workbench.xmi");
+
+		ResourceHandler handler = createHandler(uri, false, true, 3600);
+		Resource resource = handler.loadMostRecentModel();
+		MApplication application = (MApplication) resource.getContents().get(0);
+		application.getChildren().get(1).setLabel("saved");
+		handler.save();
+
+		// a save interrupted after the former model was moved aside
+		File backupFile = new File(modelFile.getPath() + ".bak");
+		assertFalse(backupFile.exists());
+		assertTrue(modelFile.renameTo(backupFile));
+
+		handler = createHandler(uri, false, false);
+		resource = handler.loadMostRecentModel();
+		application = (MApplication) resource.getContents().get(0);
+		assertEquals("saved", application.getChildren().get(1).getLabel());
+		assertTrue(modelFile.exists());
+		assertFalse(backupFile.exists());
+
+		// don't leave the saved model to other tests
+		createHandler(uri, false, true).loadMostRecentModel();
+	}
+
 }
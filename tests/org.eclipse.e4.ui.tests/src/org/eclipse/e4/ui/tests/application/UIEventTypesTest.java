@@ -12,8 +12,10 @@
 package org.eclipse.e4.ui.tests.application;
 
 import java.util.Arrays;
+import java.util.List;
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.ui.internal.workbench.UIEventPublisher;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.e4.ui.model.application.MApplicationElement;
 import org.eclipse.e4.ui.model.application.MApplicationFactory;
@@ -29,6 +31,7 @@ import org.osgi.service.event.EventHandler;
 public class UIEventTypesTest extends HeadlessApplicationElementTest {
 	private Event event;
 	private int eventCount;
+	private Event batchEvent;
 
 	/*
 	 * (non-Javadoc)
@@ -63,7 +66,12 @@ public class UIEventTypesTest extends HeadlessApplicationElementTest {
 						UIEventTypesTest.this.event = event;
 					}
 				});
-
+		batchEvent = null;
+		appEB.subscribe(UIEvents.UIModelBatch.TOPIC, new EventHandler() {
+			public void handleEvent(Event event) {
+				batchEvent = event;
+			}
+		});
 	}
 
 	public void testAdd() {
@@ -230,4 +238,53 @@ public class UIEventTypesTest extends HeadlessApplicationElementTest {
 		assertEquals(null, event.getProperty(UIEvents.EventTags.NEW_VALUE));
 	}
 
+	public void testBatch() {
+		UIEventPublisher publisher = UIEventPublisher
+				.getPublisher(applicationElement);
+		assertNotNull(publisher);
+
+		publisher.beginBatch();
+		applicationElement.setElementId("aaa");
+		applicationElement.getTags().add("0");
+		applicationElement.setElementId("bbb");
+		assertEquals(0, eventCount);
+		assertNull(batchEvent);
+		publisher.endBatch();
+
+		// the elementId changes are coalesced and sent after the tag change
+		assertEquals(2, eventCount);
+		assertEquals(UIEvents.ApplicationElement.ELEMENTID,
+				event.getProperty(UIEvents.EventTags.ATTNAME));
+		assertEquals(null, event.getProperty(UIEvents.EventTags.OLD_VALUE));
+		assertEquals("bbb", event.getProperty(UIEvents.EventTags.NEW_VALUE));
+
+		assertNotNull(batchEvent);
+		List<?> events = (List<?>) batchEvent
+				.getProperty(UIEvents.EventTags.EVENTS);
+		assertEquals(2, events.size());
+		assertEquals(UIEvents.ApplicationElement.TAGS, ((Event) events.get(0))
+				.getProperty(UIEvents.EventTags.ATTNAME));
+		assertEquals(UIEvents.ApplicationElement.ELEMENTID,
+				((Event) events.get(1))
+						.getProperty(UIEvents.EventTags.ATTNAME));
+	}
+
+	public void testBatchRevertedChange() {
+		UIEventPublisher publisher = UIEventPublisher
+				.getPublisher(applicationElement);
+		String elementId = applicationElement.getElementId();
+
+		publisher.beginBatch();
+		applicationElement.setElementId("aaa");
+		publisher.beginBatch();
+		applicationElement.setElementId(elementId);
+		publisher.endBatch();
+		assertEquals(0, eventCount);
+		publisher.endBatch();
+
+		// the element id is back to its value, nothing is sent
+		assertEquals(0, eventCount);
+		assertNull(batchEvent);
+	}
+
 }
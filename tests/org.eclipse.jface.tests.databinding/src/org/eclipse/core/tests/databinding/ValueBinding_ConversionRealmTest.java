@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.core.tests.databinding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.databinding.AggregateValidationStatus;
+import org.eclipse.core.databinding.Binding;
+import org.eclipse.core.databinding.DataBindingContext;
+import org.eclipse.core.databinding.UpdateValueStrategy;
+import org.eclipse.core.databinding.conversion.Converter;
+import org.eclipse.core.databinding.observable.Realm;
+import org.eclipse.core.databinding.observable.value.WritableValue;
+import org.eclipse.core.databinding.validation.IValidator;
+import org.eclipse.core.databinding.validation.ValidationStatus;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jface.databinding.conformance.util.ChangeEventTracker;
+import org.eclipse.jface.databinding.conformance.util.RealmTester;
+import org.eclipse.jface.databinding.conformance.util.StaleEventTracker;
+import org.eclipse.jface.databinding.conformance.util.ValueChangeEventTracker;
+
+/**
+ * Tests for the bindings with an update strategy running in a
+ * {@link UpdateValueStrategy#setConversionRealm(Realm) conversion realm}.
+ *
+ * @since 1.5
+ */
+public class ValueBinding_ConversionRealmTest extends TestCase {
+	private QueueRealm realm;
+	private QueueRealm conversionRealm;
+
+	private WritableValue target;
+	private WritableValue model;
+	private DataBindingContext dbc;
+	private int conversions;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		realm = new QueueRealm();
+		conversionRealm = new QueueRealm();
+		RealmTester.setDefault(realm);
+
+		target = WritableValue.withValueType(String.class);
+		model = WritableValue.withValueType(Integer.class);
+		dbc = new DataBindingContext();
+	}
+
+	protected void tearDown() throws Exception {
+		dbc.dispose();
+		RealmTester.setDefault(null);
+		super.tearDown();
+	}
+
+	public void testConversionRunsInConversionRealm() throws Exception {
+		bind(null);
+
+		target.setValue("1");
+		assertNull(model.getValue());
+		assertEquals(1, conversionRealm.size());
+		assertEquals(0, realm.size());
+
+		conversionRealm.runAll();
+		assertNull(model.getValue());
+
+		realm.runAll();
+		assertEquals(new Integer(1), model.getValue());
+	}
+
+	public void testValidationStatusStaleWhilePending() throws Exception {
+		Binding binding = bind(null);
+		StaleEventTracker staleEvents = StaleEventTracker.observe(binding
+				.getValidationStatus());
+		ChangeEventTracker changeEvents = ChangeEventTracker.observe(binding
+				.getValidationStatus());
+
+		target.setValue("1");
+		assertTrue(binding.getValidationStatus().isStale());
+		assertEquals(1, staleEvents.count);
+
+		conversionRealm.runAll();
+		realm.runAll();
+		assertFalse(binding.getValidationStatus().isStale());
+		assertEquals(1, changeEvents.count);
+		assertTrue(((IStatus) binding.getValidationStatus().getValue()).isOK());
+	}
+
+	public void testAggregateValidationStatusStaleWhilePending() throws Exception {
+		bind(errorValidator());
+		AggregateValidationStatus status = new AggregateValidationStatus(dbc,
+				AggregateValidationStatus.MAX_SEVERITY);
+		assertFalse(status.isStale());
+
+		target.setValue("1");
+		assertTrue(status.isStale());
+
+		conversionRealm.runAll();
+		realm.runAll();
+		assertFalse(status.isStale());
+		assertEquals(IStatus.ERROR, ((IStatus) status.getValue())
+				.getSeverity());
+		assertNull(model.getValue());
+	}
+
+	public void testSupersededUpdateSkipped() throws Exception {
+		bind(null);
+
+		target.setValue("1");
+		target.setValue("2");
+		conversionRealm.runAll();
+		assertEquals(1, conversions);
+
+		realm.runAll();
+		assertEquals(new Integer(2), model.getValue());
+	}
+
+	public void testSupersededResultDiscarded() throws Exception {
+		bind(null);
+		ValueChangeEventTracker modelChanges = ValueChangeEventTracker
+				.observe(model);
+
+		target.setValue("1");
+		conversionRealm.runAll();
+		target.setValue("2");
+		conversionRealm.runAll();
+		realm.runAll();
+
+		assertEquals(1, modelChanges.count);
+		assertEquals(new Integer(2), model.getValue());
+	}
+
+	public void testValidationDoesNotSupersedePendingUpdate() throws Exception {
+		Binding binding = bind(null);
+
+		target.setValue("1");
+		binding.validateTargetToModel();
+		conversionRealm.runAll();
+		realm.runAll();
+		assertEquals(new Integer(1), model.getValue());
+		assertFalse(binding.getValidationStatus().isStale());
+	}
+
+	public void testValidationDuringPendingUpdateConversion() throws Exception {
+		Binding binding = bind(null);
+
+		target.setValue("1");
+		conversionRealm.runAll();
+		// validated while the converted value is waiting to be set
+		binding.validateTargetToModel();
+		assertTrue(binding.getValidationStatus().isStale());
+		conversionRealm.runAll();
+		realm.runAll();
+		assertEquals(new Integer(1), model.getValue());
+		assertFalse(binding.getValidationStatus().isStale());
+	}
+
+	public void testResultDiscardedWhenSourceUpdatedFromDestination()
+			throws Exception {
+		Binding binding = bind(null, new UpdateValueStrategy()
+				.setConverter(new Converter(Integer.class, String.class) {
+					public Object convert(Object fromObject) {
+						return fromObject == null ? null : fromObject.toString();
+					}
+				}));
+
+		target.setValue("1");
+		// the target is updated from the model before the conversion of its
+		// former value completes
+		model.setValue(new Integer(2));
+		assertEquals("2", target.getValue());
+
+		conversionRealm.runAll();
+		realm.runAll();
+		assertEquals(new Integer(2), model.getValue());
+		assertEquals("2", target.getValue());
+		assertFalse(binding.getValidationStatus().isStale());
+	}
+
+	public void testResultDiscardedAfterDispose() throws Exception {
+		Binding binding = bind(null);
+
+		target.setValue("1");
+		binding.dispose();
+		conversionRealm.runAll();
+		realm.runAll();
+		assertNull(model.getValue());
+	}
+
+	private Binding bind(IValidator afterConvertValidator) {
+		return bind(afterConvertValidator, new UpdateValueStrategy(
+				UpdateValueStrategy.POLICY_NEVER));
+	}
+
+	private Binding bind(IValidator afterConvertValidator,
+			UpdateValueStrategy modelToTarget) {
+		UpdateValueStrategy targetToModel = new UpdateValueStrategy()
+				.setConverter(new Converter(String.class, Integer.class) {
+					public Object convert(Object fromObject) {
+						conversions++;
+						return fromObject == null ? null : Integer
+								.valueOf((String) fromObject);
+					}
+				}).setAfterConvertValidator(afterConvertValidator)
+				.setConversionRealm(conversionRealm);
+		Binding binding = dbc.bindValue(target, model, targetToModel,
+				modelToTarget);
+		conversionRealm.runAll();
+		realm.runAll();
+		conversions = 0;
+		return binding;
+	}
+
+	private IValidator errorValidator() {
+		return new IValidator() {
+			public IStatus validate(Object value) {
+				return ValidationStatus.error("");
+			}
+		};
+	}
+
+	/**
+	 * A realm queueing the runnables given to {@link #asyncExec(Runnable)}
+	 * until {@link #runAll()} is called.
+	 */
+	private static class QueueRealm extends Realm {
+		private final List queue = new ArrayList();
+
+		public boolean isCurrent() {
+			return true;
+		}
+
+		public void asyncExec(Runnable runnable) {
+			queue.add(runnable);
+		}
+
+		int size() {
+			return queue.size();
+		}
+
+		void runAll() {
+			while (!queue.isEmpty()) {
+				((Runnable) queue.remove(0)).run();
+			}
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 Brad Reynolds.
+ * Copyright (c) 2006, 2012 Brad Reynolds.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,11 +14,17 @@
 
 package org.eclipse.core.tests.databinding.observable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import org.eclipse.core.databinding.observable.AbstractObservable;
+import org.eclipse.core.databinding.observable.ChangeEvent;
 import org.eclipse.core.databinding.observable.DisposeEvent;
+import org.eclipse.core.databinding.observable.IChangeListener;
 import org.eclipse.core.databinding.observable.IDisposeListener;
 import org.eclipse.core.databinding.observable.IObservable;
 import org.eclipse.core.databinding.observable.IStaleListener;
@@ -174,6 +180,55 @@ public class AbstractObservableTest extends AbstractDefaultRealmTestCase {
 		assertTrue(observable.lastListenerRemoved);
 	}
 
+	public void testAddListenerTwice() throws Exception {
+		ChangeEventTracker listener = new ChangeEventTracker();
+		observable.addChangeListener(listener);
+		observable.addChangeListener(listener);
+
+		observable.fireChange();
+		assertEquals(1, listener.count);
+
+		observable.removeChangeListener(listener);
+		assertFalse(observable.hasListeners());
+		assertTrue(observable.lastListenerRemoved);
+	}
+
+	public void testListenersNotifiedInOrderAdded() throws Exception {
+		final List notified = new ArrayList();
+		ChangeEventTracker listener1 = new ChangeEventTracker(notified);
+		StaleEventTracker staleListener = new StaleEventTracker();
+		ChangeEventTracker listener2 = new ChangeEventTracker(notified);
+		ChangeEventTracker listener3 = new ChangeEventTracker(notified);
+		observable.addChangeListener(listener1);
+		observable.addStaleListener(staleListener);
+		observable.addChangeListener(listener2);
+		observable.addChangeListener(listener3);
+		observable.removeChangeListener(listener2);
+
+		observable.fireChange();
+
+		assertEquals(Arrays.asList(new Object[] { listener1, listener3 }),
+				notified);
+		assertEquals(0, staleListener.count);
+	}
+
+	public void testListenerRemovedWhileFiring() throws Exception {
+		final ChangeEventTracker listener2 = new ChangeEventTracker();
+		observable.addChangeListener(new IChangeListener() {
+			public void handleChange(ChangeEvent event) {
+				observable.removeChangeListener(listener2);
+			}
+		});
+		observable.addChangeListener(listener2);
+
+		// the listeners registered when the event is fired are notified
+		observable.fireChange();
+		assertEquals(1, listener2.count);
+
+		observable.fireChange();
+		assertEquals(1, listener2.count);
+	}
+
 	public void testFireStaleRealmChecks() throws Exception {
 		RealmTester.setDefault(new CurrentRealm(true));
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2008 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,7 +14,9 @@ package org.eclipse.core.tests.databinding.observable;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -256,6 +258,70 @@ public class Diffs_ListDiffTests extends TestCase {
 				Arrays.asList(new Object[] { "c", "a", "b" }));
 	}
 
+	public void testComputeListDiff_LongListMoves() {
+		List oldList = createList("a", 1000);
+		List newList = new ArrayList(oldList);
+		Random random = new Random(0);
+		for (int i = 0; i < 20; i++) {
+			newList.add(random.nextInt(newList.size()), newList.remove(random
+					.nextInt(newList.size())));
+		}
+		checkComputedListDiff(oldList, newList);
+		ListDiff diff = Diffs.computeListDiff(oldList, newList);
+		assertTrue(diff.getDifferences().length <= 40);
+	}
+
+	public void testComputeListDiff_LongListInsertsAndRemoves() {
+		List oldList = createList("a", 1000);
+		List newList = new ArrayList(oldList);
+		Random random = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			newList.remove(random.nextInt(newList.size()));
+			newList.add(random.nextInt(newList.size() + 1), "b" + i);
+		}
+		checkComputedListDiff(oldList, newList);
+		ListDiff diff = Diffs.computeListDiff(oldList, newList);
+		assertTrue(diff.getDifferences().length <= 200);
+	}
+
+	public void testComputeListDiff_LongListDuplicatesAndNulls() {
+		Random random = new Random(0);
+		for (int n = 0; n < 100; n++) {
+			List oldList = new ArrayList();
+			List newList = new ArrayList();
+			for (int i = 0; i < 50; i++) {
+				oldList.add(random.nextInt(4) == 0 ? null : "a"
+						+ random.nextInt(5));
+				newList.add(random.nextInt(4) == 0 ? null : "a"
+						+ random.nextInt(5));
+			}
+			checkComputedListDiff(oldList, newList);
+		}
+	}
+
+	public void testComputeListDiff_LongListReplace() {
+		List oldList = createList("a", 1000);
+		List newList = createList("b", 1000);
+		checkComputedListDiff(oldList, newList);
+		assertEquals(2000,
+				Diffs.computeListDiff(oldList, newList).getDifferences().length);
+	}
+
+	public void testComputeListDiff_LongListShuffle() {
+		List oldList = createList("a", 10000);
+		List newList = new ArrayList(oldList);
+		Collections.shuffle(newList, new Random(0));
+		checkComputedListDiff(oldList, newList);
+	}
+
+	private static List createList(String prefix, int size) {
+		List list = new ArrayList(size);
+		for (int i = 0; i < size; i++) {
+			list.add(prefix + i);
+		}
+		return list;
+	}
+
 	private static void checkComputedListDiff(List oldList, List newList) {
 		ListDiff diff = Diffs.computeListDiff(oldList, newList);
 
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.core.tests.databinding.observable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.databinding.observable.Realm;
+import org.eclipse.core.databinding.observable.list.ListDiffVisitor;
+import org.eclipse.core.databinding.observable.list.WritableList;
+import org.eclipse.core.databinding.observable.map.WritableMap;
+import org.eclipse.core.databinding.observable.set.WritableSet;
+import org.eclipse.core.databinding.observable.value.IValueChangeListener;
+import org.eclipse.core.databinding.observable.value.ValueChangeEvent;
+import org.eclipse.core.databinding.observable.value.WritableValue;
+import org.eclipse.jface.databinding.conformance.util.ChangeEventTracker;
+import org.eclipse.jface.databinding.conformance.util.CurrentRealm;
+import org.eclipse.jface.databinding.conformance.util.ListChangeEventTracker;
+import org.eclipse.jface.databinding.conformance.util.MapChangeEventTracker;
+import org.eclipse.jface.databinding.conformance.util.RealmTester;
+import org.eclipse.jface.databinding.conformance.util.SetChangeEventTracker;
+import org.eclipse.jface.databinding.conformance.util.ValueChangeEventTracker;
+
+/**
+ * Tests for {@link Realm#runBatch(Runnable)}.
+ *
+ * @since 1.5
+ */
+public class Realm_RunBatchTest extends TestCase {
+	private Realm realm;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		realm = new CurrentRealm(true);
+		RealmTester.setDefault(realm);
+	}
+
+	protected void tearDown() throws Exception {
+		RealmTester.setDefault(null);
+		super.tearDown();
+	}
+
+	public void testListChangesMerged() {
+		final WritableList list = new WritableList();
+		list.add("a");
+		ChangeEventTracker changes = ChangeEventTracker.observe(list);
+		ListChangeEventTracker listChanges = ListChangeEventTracker
+				.observe(list);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				list.add("b");
+				list.add(0, "c");
+				list.remove("a");
+			}
+		});
+
+		assertEquals(1, changes.count);
+		assertEquals(1, listChanges.count);
+		final List applied = new ArrayList(Collections.singletonList("a"));
+		listChanges.event.diff.accept(new ListDiffVisitor() {
+			public void handleAdd(int index, Object element) {
+				applied.add(index, element);
+			}
+
+			public void handleRemove(int index, Object element) {
+				assertEquals(element, applied.remove(index));
+			}
+		});
+		assertEquals(list, applied);
+	}
+
+	public void testSetChangesMerged() {
+		final WritableSet set = new WritableSet();
+		set.add("a");
+		SetChangeEventTracker setChanges = SetChangeEventTracker.observe(set);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				set.add("b");
+				set.remove("a");
+				set.add("c");
+				set.remove("c");
+			}
+		});
+
+		assertEquals(1, setChanges.count);
+		assertEquals(Collections.singleton("b"),
+				setChanges.event.diff.getAdditions());
+		assertEquals(Collections.singleton("a"),
+				setChanges.event.diff.getRemovals());
+	}
+
+	public void testMapChangesMerged() {
+		final WritableMap map = new WritableMap();
+		map.put("a", "1");
+		map.put("b", "2");
+		MapChangeEventTracker mapChanges = MapChangeEventTracker.observe(map);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				map.put("a", "3");
+				map.put("a", "4");
+				map.remove("b");
+				map.put("c", "5");
+				map.put("d", "6");
+				map.remove("d");
+			}
+		});
+
+		assertEquals(1, mapChanges.count);
+		assertEquals(Collections.singleton("c"),
+				mapChanges.event.diff.getAddedKeys());
+		assertEquals(Collections.singleton("b"),
+				mapChanges.event.diff.getRemovedKeys());
+		assertEquals(Collections.singleton("a"),
+				mapChanges.event.diff.getChangedKeys());
+		assertEquals("1", mapChanges.event.diff.getOldValue("a"));
+		assertEquals("4", mapChanges.event.diff.getNewValue("a"));
+		assertEquals("2", mapChanges.event.diff.getOldValue("b"));
+		assertEquals("5", mapChanges.event.diff.getNewValue("c"));
+	}
+
+	public void testValueChangesMerged() {
+		final WritableValue value = new WritableValue("a", String.class);
+		ValueChangeEventTracker valueChanges = ValueChangeEventTracker
+				.observe(value);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				value.setValue("b");
+				value.setValue("c");
+			}
+		});
+
+		assertEquals(1, valueChanges.count);
+		assertEquals("a", valueChanges.event.diff.getOldValue());
+		assertEquals("c", valueChanges.event.diff.getNewValue());
+	}
+
+	public void testCancellingChangesNotFired() {
+		final WritableSet set = new WritableSet();
+		ChangeEventTracker changes = ChangeEventTracker.observe(set);
+		SetChangeEventTracker setChanges = SetChangeEventTracker.observe(set);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				set.add("a");
+				set.remove("a");
+			}
+		});
+
+		assertEquals(0, changes.count);
+		assertEquals(0, setChanges.count);
+	}
+
+	public void testCancellingValueChangesNotFired() {
+		final WritableValue value = new WritableValue("a", String.class);
+		ChangeEventTracker changes = ChangeEventTracker.observe(value);
+		ValueChangeEventTracker valueChanges = ValueChangeEventTracker
+				.observe(value);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				value.setValue("b");
+				value.setValue("a");
+			}
+		});
+
+		assertEquals(0, changes.count);
+		assertEquals(0, valueChanges.count);
+	}
+
+	public void testNestedBatch() {
+		final WritableList list = new WritableList();
+		final ListChangeEventTracker listChanges = ListChangeEventTracker
+				.observe(list);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				list.add("a");
+				realm.runBatch(new Runnable() {
+					public void run() {
+						list.add("b");
+					}
+				});
+				assertEquals(0, listChanges.count);
+				list.add("c");
+			}
+		});
+
+		assertEquals(1, listChanges.count);
+		assertEquals(3, listChanges.event.diff.getDifferences().length);
+	}
+
+	public void testObservablesNotifiedInOrderOfChange() {
+		final WritableValue first = new WritableValue();
+		final WritableValue second = new WritableValue();
+		final List queue = new ArrayList();
+		ValueChangeEventTracker firstTracker = new ValueChangeEventTracker(
+				queue);
+		ValueChangeEventTracker secondTracker = new ValueChangeEventTracker(
+				queue);
+		first.addValueChangeListener(firstTracker);
+		second.addValueChangeListener(secondTracker);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				second.setValue("a");
+				first.setValue("b");
+				second.setValue("c");
+			}
+		});
+
+		assertEquals(Arrays.asList(new Object[] { secondTracker,
+				firstTracker }), queue);
+	}
+
+	public void testChangesByListenersFiredAfterBatch() {
+		final WritableValue source = new WritableValue();
+		final WritableValue target = new WritableValue();
+		source.addValueChangeListener(new IValueChangeListener() {
+			public void handleValueChange(ValueChangeEvent event) {
+				target.setValue(event.diff.getNewValue());
+			}
+		});
+		ValueChangeEventTracker targetChanges = ValueChangeEventTracker
+				.observe(target);
+
+		realm.runBatch(new Runnable() {
+			public void run() {
+				source.setValue("a");
+				source.setValue("b");
+			}
+		});
+
+		assertEquals("b", target.getValue());
+		assertEquals(1, targetChanges.count);
+	}
+
+	public void testEventsFiredWhenRunnableFails() {
+		final WritableList list = new WritableList();
+		ListChangeEventTracker listChanges = ListChangeEventTracker
+				.observe(list);
+
+		try {
+			realm.runBatch(new Runnable() {
+				public void run() {
+					list.add("a");
+					throw new IllegalStateException();
+				}
+			});
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+
+		assertEquals(1, listChanges.count);
+		list.add("b");
+		assertEquals(2, listChanges.count);
+	}
+
+	public void testEventsFiredAfterListenerFailure() {
+		final WritableValue first = new WritableValue();
+		final WritableValue second = new WritableValue();
+		first.addValueChangeListener(new IValueChangeListener() {
+			public void handleValueChange(ValueChangeEvent event) {
+				throw new IllegalStateException();
+			}
+		});
+		ValueChangeEventTracker secondChanges = ValueChangeEventTracker
+				.observe(second);
+
+		try {
+			realm.runBatch(new Runnable() {
+				public void run() {
+					first.setValue("a");
+					second.setValue("b");
+				}
+			});
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+		assertEquals(0, secondChanges.count);
+
+		// the events of the failed batch are not held back in the next one
+		realm.runBatch(new Runnable() {
+			public void run() {
+				second.setValue("c");
+			}
+		});
+		assertEquals(1, secondChanges.count);
+		assertEquals("b", secondChanges.event.diff.getOldValue());
+		assertEquals("c", secondChanges.event.diff.getNewValue());
+		second.setValue("d");
+		assertEquals(2, secondChanges.count);
+	}
+}
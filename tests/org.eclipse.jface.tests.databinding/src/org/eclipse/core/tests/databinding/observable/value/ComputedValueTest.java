@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,7 +17,12 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.eclipse.core.databinding.observable.ChangeEvent;
+import org.eclipse.core.databinding.observable.IChangeListener;
 import org.eclipse.core.databinding.observable.value.ComputedValue;
+import org.eclipse.core.databinding.observable.value.IObservableValue;
+import org.eclipse.core.databinding.observable.value.IValueChangeListener;
+import org.eclipse.core.databinding.observable.value.ValueChangeEvent;
 import org.eclipse.core.databinding.observable.value.WritableValue;
 import org.eclipse.jface.tests.databinding.AbstractDefaultRealmTestCase;
 
@@ -131,4 +136,104 @@ public class ComputedValueTest extends AbstractDefaultRealmTestCase {
         } catch (UnsupportedOperationException e) {
         }
     }
+
+    private static class CountingComputedValue extends ComputedValue {
+        private final IObservableValue left;
+        private final IObservableValue right;
+        int count;
+
+        CountingComputedValue(IObservableValue left, IObservableValue right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        protected Object calculate() {
+            count++;
+            return new Integer(((Integer) left.getValue()).intValue()
+                    + ((Integer) right.getValue()).intValue());
+        }
+    }
+
+    public void testDiamondDependenciesNotifiedWithoutGlitch() throws Exception {
+        final WritableValue source = new WritableValue(new Integer(1), Integer.TYPE);
+        CountingComputedValue twice = new CountingComputedValue(source, source);
+        CountingComputedValue thrice = new CountingComputedValue(twice, source);
+        final CountingComputedValue sum = new CountingComputedValue(twice, thrice);
+        final List values = new ArrayList();
+        sum.addValueChangeListener(new IValueChangeListener() {
+            public void handleValueChange(ValueChangeEvent event) {
+                values.add(sum.getValue());
+            }
+        });
+        assertEquals(new Integer(5), sum.getValue());
+        assertEquals(1, twice.count);
+        assertEquals(1, thrice.count);
+        assertEquals(1, sum.count);
+
+        source.setValue(new Integer(2));
+
+        // the listener only sees the value computed from the new source
+        assertEquals(1, values.size());
+        assertEquals(new Integer(10), values.get(0));
+        assertEquals(2, twice.count);
+        assertEquals(2, thrice.count);
+        assertEquals(2, sum.count);
+    }
+
+    private static class ListenerCountingValue extends WritableValue {
+        int listenersAdded;
+
+        ListenerCountingValue(Object initialValue) {
+            super(initialValue, Integer.TYPE);
+        }
+
+        public synchronized void addChangeListener(IChangeListener listener) {
+            listenersAdded++;
+            super.addChangeListener(listener);
+        }
+    }
+
+    public void testListenersNotAddedAgainForSameDependencies() throws Exception {
+        ListenerCountingValue value1 = new ListenerCountingValue(new Integer(1));
+        ListenerCountingValue value2 = new ListenerCountingValue(new Integer(1));
+        CountingComputedValue cv = new CountingComputedValue(value1, value2);
+        cv.addChangeListener(new IChangeListener() {
+            public void handleChange(ChangeEvent event) {
+            }
+        });
+        assertEquals(new Integer(2), cv.getValue());
+        assertEquals(1, value1.listenersAdded);
+        assertEquals(1, value2.listenersAdded);
+
+        value1.setValue(new Integer(2));
+        assertEquals(new Integer(3), cv.getValue());
+        value2.setValue(new Integer(2));
+        assertEquals(new Integer(4), cv.getValue());
+
+        assertEquals(3, cv.count);
+        assertEquals(1, value1.listenersAdded);
+        assertEquals(1, value2.listenersAdded);
+    }
+
+    public void testStopsListeningWhenDirtyWithoutListeners() throws Exception {
+        WritableValueExt value = new WritableValueExt(Integer.TYPE, new Integer(1));
+        CountingComputedValue cv = new CountingComputedValue(value, value);
+        cv.getValue();
+        assertTrue(value.hasListeners());
+
+        value.setValue(new Integer(2));
+        assertFalse(value.hasListeners());
+        assertEquals(new Integer(4), cv.getValue());
+        assertTrue(value.hasListeners());
+    }
+
+    public void testDisposeRemovesListeners() throws Exception {
+        WritableValueExt value = new WritableValueExt(Integer.TYPE, new Integer(1));
+        CountingComputedValue cv = new CountingComputedValue(value, value);
+        cv.getValue();
+        assertTrue(value.hasListeners());
+
+        cv.dispose();
+        assertFalse(value.hasListeners());
+    }
 }
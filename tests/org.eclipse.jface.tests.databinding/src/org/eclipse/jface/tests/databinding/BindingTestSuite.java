@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -35,6 +35,7 @@ import org.eclipse.core.tests.databinding.UpdateSetStrategyTest;
 import org.eclipse.core.tests.databinding.UpdateStrategyTest;
 import org.eclipse.core.tests.databinding.UpdateValueStrategyTest;
 import org.eclipse.core.tests.databinding.ValueBindingTest;
+import org.eclipse.core.tests.databinding.ValueBinding_ConversionRealmTest;
 import org.eclipse.core.tests.databinding.beans.AnonymousBeanValuePropertyTest;
 import org.eclipse.core.tests.databinding.beans.AnonymousPojoValuePropertyTest;
 import org.eclipse.core.tests.databinding.beans.BeanPropertiesTest;
@@ -52,6 +53,7 @@ import org.eclipse.core.tests.databinding.observable.Diffs_ListDiffTests;
 import org.eclipse.core.tests.databinding.observable.ObservableTrackerTest;
 import org.eclipse.core.tests.databinding.observable.ObservablesTest;
 import org.eclipse.core.tests.databinding.observable.RealmTest;
+import org.eclipse.core.tests.databinding.observable.Realm_RunBatchTest;
 import org.eclipse.core.tests.databinding.observable.list.AbstractObservableListTest;
 import org.eclipse.core.tests.databinding.observable.list.ComputedListTest;
 import org.eclipse.core.tests.databinding.observable.list.DecoratingObservableListTest;
@@ -251,6 +253,7 @@ public class BindingTestSuite extends TestSuite {
 		addTestSuite(UpdateSetStrategyTest.class);
 		addTestSuite(UpdateValueStrategyTest.class);
 		addTestSuite(ValueBindingTest.class);
+		addTestSuite(ValueBinding_ConversionRealmTest.class);
 		addTestSuite(ObservablesManagerTest.class);
 
 		// org.eclipse.core.tests.databinding.util
@@ -278,6 +281,7 @@ public class BindingTestSuite extends TestSuite {
 		addTestSuite(ObservablesTest.class);
 		addTestSuite(ObservableTrackerTest.class);
 		addTestSuite(RealmTest.class);
+		addTestSuite(Realm_RunBatchTest.class);
 
 		// org.eclipse.core.tests.databinding.observable.list
 		addTest(AbstractObservableListTest.suite());
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2006 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -116,6 +116,30 @@ public class TableViewerRefreshTest extends ViewerTest {
 		assertPerformance();
 	}
 
+	/**
+	 * Test the time for doing a refresh, sorting using several threads.
+	 * 
+	 * @throws Throwable
+	 */
+	public void testRefreshSortedParallel() throws Throwable {
+		openBrowser();
+		viewer.setSorter(new ViewerSorter());
+		viewer.setUseParallelSortAndFilter(true);
+
+		exercise(new TestRunnable() {
+			public void run() {
+				startMeasuring();
+				viewer.refresh();
+				processEvents();
+				stopMeasuring();
+			}
+		}, MIN_ITERATIONS, slowGTKIterations(),
+				JFacePerformanceSuite.MAX_TIME);
+
+		commitMeasurements();
+		assertPerformance();
+	}
+
 	/**
 	 * Test the time for doing a refresh.
 	 * 
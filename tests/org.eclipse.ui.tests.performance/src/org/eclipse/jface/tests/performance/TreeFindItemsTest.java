@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.tests.performance;
+
+import org.eclipse.ui.tests.performance.TestRunnable;
+
+/**
+ * TreeFindItemsTest measures the element map of a tree viewer using hash
+ * lookup: the time taken to look up the items of the elements of a large
+ * expanded tree, and the time and heap taken to map them when the tree is
+ * expanded.
+ *
+ * @since 3.8
+ */
+public class TreeFindItemsTest extends TreeTest {
+
+	private static final int CHILDREN = 100;
+
+	private static final int LOOKUPS = 10;
+
+	public TreeFindItemsTest(String testName) {
+		super(testName);
+	}
+
+	public TreeFindItemsTest(String testName, int tagging) {
+		super(testName, tagging);
+	}
+
+	/**
+	 * Test looking up every element of a tree of 10000 items.
+	 */
+	public void testFindItems() {
+		openBrowser();
+
+		exercise(new TestRunnable() {
+			public void run() {
+				TestTreeElement input = createInput();
+				viewer.setInput(input);
+				viewer.expandAll();
+				processEvents();
+
+				startMeasuring();
+				for (int i = 0; i < LOOKUPS; i++) {
+					for (int j = 0; j < CHILDREN; j++) {
+						TestTreeElement child = input.children[j];
+						viewer.testFindItem(child);
+						for (int k = 0; k < CHILDREN; k++) {
+							viewer.testFindItems(child.children[k]);
+						}
+					}
+				}
+				stopMeasuring();
+			}
+		}, MIN_ITERATIONS, ITERATIONS, JFacePerformanceSuite.MAX_TIME);
+
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	/**
+	 * Test expanding a tree of 10000 items, which maps every element.
+	 */
+	public void testMapElements() {
+		openBrowser();
+
+		exercise(new TestRunnable() {
+			public void run() {
+				TestTreeElement input = createInput();
+				viewer.setInput(input);
+				processEvents();
+
+				startMeasuring();
+				viewer.expandAll();
+				stopMeasuring();
+			}
+		}, MIN_ITERATIONS, ITERATIONS, JFacePerformanceSuite.MAX_TIME);
+
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	private TestTreeElement createInput() {
+		TestTreeElement input = new TestTreeElement(0, null);
+		input.createChildren(CHILDREN);
+		for (int i = 0; i < CHILDREN; i++) {
+			input.children[i].createChildren(CHILDREN);
+		}
+		return input;
+	}
+}
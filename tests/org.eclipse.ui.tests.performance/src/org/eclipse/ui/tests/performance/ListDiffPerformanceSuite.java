@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * @since 3.8
+ */
+public class ListDiffPerformanceSuite extends TestSuite {
+
+    public static Test suite() {
+        return new ListDiffPerformanceSuite();
+    }
+
+    public ListDiffPerformanceSuite() {
+        for (int scenario = ListDiffPerformanceTest.REORDER; scenario <= ListDiffPerformanceTest.REPLACE; scenario++) {
+            addTest(new ListDiffPerformanceTest(scenario, false, BasicPerformanceTest.NONE));
+            addTest(new ListDiffPerformanceTest(scenario, true, BasicPerformanceTest.NONE));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.core.databinding.observable.Diffs;
+
+/**
+ * Measures {@link Diffs#computeListDiff(List, List)} on long lists, and the
+ * move detecting list diff it replaced for comparison.
+ */
+public class ListDiffPerformanceTest extends BasicPerformanceTest {
+
+	public static final int REORDER = 0;
+
+	public static final int INSERT = 1;
+
+	public static final int REPLACE = 2;
+
+	private static final String[] SCENARIOS = { "reorder", "insert",
+			"replace" };
+
+	private static final int SIZE = 5000;
+
+	private int scenario;
+
+	private boolean reference;
+
+	/**
+	 * @param scenario
+	 *            one of {@link #REORDER}, {@link #INSERT} and {@link #REPLACE}
+	 * @param reference
+	 *            whether the former list diff is measured instead of
+	 *            {@link Diffs#computeListDiff(List, List)}
+	 */
+	public ListDiffPerformanceTest(int scenario, boolean reference, int tagging) {
+		super("testListDiff:" + SCENARIOS[scenario]
+				+ (reference ? " (reference)" : ""), tagging);
+		this.scenario = scenario;
+		this.reference = reference;
+	}
+
+	protected void runTest() throws Throwable {
+		final List oldList = new ArrayList(SIZE);
+		for (int i = 0; i < SIZE; i++) {
+			oldList.add("element" + i);
+		}
+		final List newList = new ArrayList(oldList);
+		Random random = new Random(0);
+		switch (scenario) {
+		case REORDER:
+			for (int i = 0; i < 50; i++) {
+				newList.add(random.nextInt(SIZE), newList.remove(random
+						.nextInt(SIZE)));
+			}
+			break;
+		case INSERT:
+			for (int i = 0; i < SIZE / 10; i++) {
+				newList.add(random.nextInt(newList.size() + 1), "inserted" + i);
+			}
+			break;
+		case REPLACE:
+			newList.clear();
+			for (int i = 0; i < SIZE; i++) {
+				newList.add("replaced" + i);
+			}
+			break;
+		}
+
+		exercise(new TestRunnable() {
+			public void run() throws Exception {
+				startMeasuring();
+				if (reference) {
+					computeMoveListDiff(new ArrayList(oldList), newList);
+				} else {
+					Diffs.computeListDiff(oldList, newList).getDifferences();
+				}
+				stopMeasuring();
+			}
+		});
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	/**
+	 * The list diff of Diffs 1.3, adapted from EMF's ListDifferenceAnalyzer,
+	 * counting the diff entries only.
+	 */
+	private static int computeMoveListDiff(List oldList, List newList) {
+		int entries = 0;
+		int index = 0;
+		for (Iterator it = newList.iterator(); it.hasNext();) {
+			Object newValue = it.next();
+			if (oldList.size() <= index) {
+				entries++;
+			} else {
+				boolean done;
+				do {
+					done = true;
+					Object oldValue = oldList.get(index);
+					if (!Diffs.equals(oldValue, newValue)) {
+						int oldIndexOfNewValue = listIndexOf(oldList, newValue,
+								index);
+						if (oldIndexOfNewValue != -1) {
+							int newIndexOfOldValue = listIndexOf(newList,
+									oldValue, index);
+							if (newIndexOfOldValue == -1) {
+								entries++;
+								oldList.remove(index);
+								done = false;
+							} else if (newIndexOfOldValue > oldIndexOfNewValue) {
+								if (oldList.size() <= newIndexOfOldValue) {
+									newIndexOfOldValue = oldList.size() - 1;
+								}
+								entries += 2;
+								oldList.remove(index);
+								oldList.add(newIndexOfOldValue, oldValue);
+								done = false;
+							} else {
+								entries += 2;
+								oldList.remove(oldIndexOfNewValue);
+								oldList.add(index, newValue);
+							}
+						} else {
+							entries++;
+							oldList.add(index, newValue);
+						}
+					}
+				} while (!done);
+			}
+			++index;
+		}
+		return entries + Math.max(oldList.size() - index, 0);
+	}
+
+	private static int listIndexOf(List list, Object object, int index) {
+		int size = list.size();
+		for (int i = index; i < size; i++) {
+			if (Diffs.equals(list.get(i), object)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
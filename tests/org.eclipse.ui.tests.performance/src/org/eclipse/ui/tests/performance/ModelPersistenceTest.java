@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import java.io.File;
+
+import org.eclipse.e4.ui.internal.workbench.E4BinaryResource;
+import org.eclipse.e4.ui.internal.workbench.E4XMIResource;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.impl.ApplicationFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspective;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspectiveStack;
+import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MPart;
+import org.eclipse.e4.ui.model.application.ui.basic.MPartStack;
+import org.eclipse.e4.ui.model.application.ui.basic.MWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * Compares saving and loading the workbench model as XMI and in the binary
+ * format.
+ */
+public class ModelPersistenceTest extends BasicPerformanceTest {
+
+	private static final int WINDOWS = 10;
+	private static final int PERSPECTIVES = 5;
+	private static final int PARTS = 40;
+
+	private boolean binary;
+	private boolean load;
+	private File file;
+
+	/**
+	 * @param binary
+	 *            whether the binary format is used instead of XMI
+	 * @param load
+	 *            whether loading is measured instead of saving
+	 */
+	public ModelPersistenceTest(boolean binary, boolean load, int tagging) {
+		super("testModelPersistence:" + (binary ? "binary " : "XMI ")
+				+ (load ? "load" : "save"), tagging);
+		this.binary = binary;
+		this.load = load;
+	}
+
+	protected void doSetUp() throws Exception {
+		super.doSetUp();
+		file = File.createTempFile("workbench", binary ? ".e4bin" : ".xmi");
+	}
+
+	protected void doTearDown() throws Exception {
+		file.delete();
+		super.doTearDown();
+	}
+
+	protected void runTest() throws Throwable {
+		// the ids of the objects are generated by the first save
+		final Resource model = createResource();
+		model.getContents().add((EObject) createModel());
+		model.save(null);
+		assertTrue(file.length() > 0);
+
+		exercise(new TestRunnable() {
+			public void run() throws Exception {
+				if (load) {
+					Resource resource = createResource();
+					startMeasuring();
+					resource.load(null);
+					stopMeasuring();
+					assertEquals(WINDOWS, ((MApplication) resource.getContents()
+							.get(0)).getChildren().size());
+				} else {
+					startMeasuring();
+					model.save(null);
+					stopMeasuring();
+				}
+			}
+		});
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	private Resource createResource() {
+		URI uri = URI.createFileURI(file.getAbsolutePath());
+		return binary ? new E4BinaryResource(uri) : new E4XMIResource(uri);
+	}
+
+	/**
+	 * Create a model the size of a busy workbench: windows holding
+	 * perspectives with stacks of parts.
+	 */
+	private static MApplication createModel() {
+		MApplication application = ApplicationFactoryImpl.eINSTANCE
+				.createApplication();
+		for (int i = 0; i < WINDOWS; i++) {
+			MWindow window = BasicFactoryImpl.eINSTANCE.createTrimmedWindow();
+			window.setElementId("window" + i);
+			application.getChildren().add(window);
+			MPerspectiveStack perspectiveStack = AdvancedFactoryImpl.eINSTANCE
+					.createPerspectiveStack();
+			window.getChildren().add(perspectiveStack);
+			for (int j = 0; j < PERSPECTIVES; j++) {
+				MPerspective perspective = AdvancedFactoryImpl.eINSTANCE
+						.createPerspective();
+				perspective.setElementId("perspective" + j);
+				perspective.setLabel("Perspective " + j);
+				perspectiveStack.getChildren().add(perspective);
+				MPartStack partStack = BasicFactoryImpl.eINSTANCE
+						.createPartStack();
+				perspective.getChildren().add(partStack);
+				for (int k = 0; k < PARTS; k++) {
+					MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+					part.setElementId("part" + k);
+					part.setLabel("Part " + k);
+					part.setContributionURI("bundleclass://org.eclipse.ui.tests.performance/Part"
+							+ k);
+					part.getTags().add("View");
+					part.getPersistedState().put("memento", "<memento id=\"" + k + "\"/>");
+					partStack.getChildren().add(part);
+				}
+			}
+		}
+		return application;
+	}
+}
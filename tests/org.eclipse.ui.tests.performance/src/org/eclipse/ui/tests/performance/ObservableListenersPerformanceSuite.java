@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * @since 3.8
+ */
+public class ObservableListenersPerformanceSuite extends TestSuite {
+
+    public static Test suite() {
+        return new ObservableListenersPerformanceSuite();
+    }
+
+    public ObservableListenersPerformanceSuite() {
+        for (int scenario = ObservableListenersPerformanceTest.ADD_REMOVE; scenario <= ObservableListenersPerformanceTest.CREATE; scenario++) {
+            addTest(new ObservableListenersPerformanceTest(scenario, BasicPerformanceTest.NONE));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import org.eclipse.core.databinding.observable.ChangeEvent;
+import org.eclipse.core.databinding.observable.IChangeListener;
+import org.eclipse.core.databinding.observable.Realm;
+import org.eclipse.core.databinding.observable.value.IValueChangeListener;
+import org.eclipse.core.databinding.observable.value.ValueChangeEvent;
+import org.eclipse.core.databinding.observable.value.WritableValue;
+
+/**
+ * Measures the listener management of observables: adding and removing
+ * listeners, firing events, and the memory used by many observables with a
+ * single listener, as with one observable per cell of a table.
+ */
+public class ObservableListenersPerformanceTest extends BasicPerformanceTest {
+
+	public static final int ADD_REMOVE = 0;
+
+	public static final int FIRE = 1;
+
+	public static final int CREATE = 2;
+
+	private static final String[] SCENARIOS = { "addRemove", "fire",
+			"create" };
+
+	private static final int COUNT = 100000;
+
+	private static final Realm REALM = new Realm() {
+		public boolean isCurrent() {
+			return true;
+		}
+	};
+
+	private static final IChangeListener CHANGE_LISTENER = new IChangeListener() {
+		public void handleChange(ChangeEvent event) {
+		}
+	};
+
+	private static final IValueChangeListener VALUE_CHANGE_LISTENER = new IValueChangeListener() {
+		public void handleValueChange(ValueChangeEvent event) {
+		}
+	};
+
+	private int scenario;
+
+	/**
+	 * @param scenario
+	 *            one of {@link #ADD_REMOVE}, {@link #FIRE} and {@link #CREATE}
+	 */
+	public ObservableListenersPerformanceTest(int scenario, int tagging) {
+		super("testObservableListeners:" + SCENARIOS[scenario], tagging);
+		this.scenario = scenario;
+	}
+
+	protected void runTest() throws Throwable {
+		final WritableValue value = new WritableValue(REALM, null, null);
+		exercise(new TestRunnable() {
+			public void run() throws Exception {
+				switch (scenario) {
+				case ADD_REMOVE:
+					startMeasuring();
+					for (int i = 0; i < COUNT; i++) {
+						value.addChangeListener(CHANGE_LISTENER);
+						value.addValueChangeListener(VALUE_CHANGE_LISTENER);
+						value.removeChangeListener(CHANGE_LISTENER);
+						value.removeValueChangeListener(VALUE_CHANGE_LISTENER);
+					}
+					stopMeasuring();
+					break;
+				case FIRE:
+					value.addChangeListener(CHANGE_LISTENER);
+					value.addValueChangeListener(VALUE_CHANGE_LISTENER);
+					startMeasuring();
+					for (int i = 0; i < COUNT; i++) {
+						value.setValue(new Integer(i));
+					}
+					stopMeasuring();
+					value.removeChangeListener(CHANGE_LISTENER);
+					value.removeValueChangeListener(VALUE_CHANGE_LISTENER);
+					break;
+				case CREATE:
+					// the heap used by the values is measured too
+					startMeasuring();
+					WritableValue[] values = new WritableValue[COUNT];
+					for (int i = 0; i < COUNT; i++) {
+						values[i] = new WritableValue(REALM, null, null);
+						values[i].addChangeListener(CHANGE_LISTENER);
+					}
+					stopMeasuring();
+					break;
+				}
+			}
+		});
+		commitMeasurements();
+		assertPerformance();
+	}
+}
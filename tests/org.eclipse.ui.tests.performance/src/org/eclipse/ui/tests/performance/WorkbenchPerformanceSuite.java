@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2009 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -84,6 +84,14 @@ class WorkbenchPerformanceSuite extends TestSuite {
         addPerspectiveOpenCloseScenarios();
         addWindowOpenCloseScenarios();
         addContributionScenarios();
+        addModelPersistenceScenarios();
+    }
+
+    private void addModelPersistenceScenarios() {
+        addTest(new ModelPersistenceTest(false, false, BasicPerformanceTest.NONE));
+        addTest(new ModelPersistenceTest(true, false, BasicPerformanceTest.NONE));
+        addTest(new ModelPersistenceTest(false, true, BasicPerformanceTest.NONE));
+        addTest(new ModelPersistenceTest(true, true, BasicPerformanceTest.NONE));
     }
 
     /**
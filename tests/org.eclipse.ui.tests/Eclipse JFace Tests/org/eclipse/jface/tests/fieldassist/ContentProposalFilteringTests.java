@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.jface.tests.fieldassist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.bindings.keys.KeyStroke;
+import org.eclipse.jface.fieldassist.ContentProposalAdapter;
+import org.eclipse.jface.fieldassist.IContentProposal;
+import org.eclipse.jface.fieldassist.IContentProposalProvider;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+
+/**
+ * Tests the filtering of a list of proposals too large to be filtered at once
+ * by the proposal popup. The keys are sent directly to the listeners of the
+ * control rather than posted to the display, so that the tests do not depend
+ * on the focus.
+ *
+ * @since 3.8
+ */
+public class ContentProposalFilteringTests extends AbstractFieldAssistTestCase {
+
+	/**
+	 * More proposals than <code>ContentProposalAdapter</code> filters in
+	 * one async block.
+	 */
+	private static final int PROPOSAL_COUNT = 10000;
+
+	private static final char[] LETTERS = { 'a', 'b', 'c' };
+
+	private CountingProposal[] proposals;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		proposals = new CountingProposal[PROPOSAL_COUNT];
+		for (int i = 0; i < PROPOSAL_COUNT; i++) {
+			proposals[i] = new CountingProposal(LETTERS[i % LETTERS.length]
+					+ Integer.toString(i));
+		}
+		AbstractFieldAssistWindow window = getFieldAssistWindow();
+		window.setPropagateKeys(false);
+		window.setFilterStyle(ContentProposalAdapter.FILTER_CUMULATIVE);
+		window.setKeyStroke(KeyStroke.getInstance(SWT.F4));
+		// the same proposals are returned each time, as by a provider which
+		// does not filter
+		window.setContentProposalProvider(new IContentProposalProvider() {
+			public IContentProposal[] getProposals(String contents,
+					int position) {
+				return proposals;
+			}
+		});
+	}
+
+	protected AbstractFieldAssistWindow createFieldAssistWindow() {
+		return new TextFieldAssistWindow();
+	}
+
+	public void testTypeExtendAndRetypeFilter() {
+		openPopup();
+		assertProposals("1.0", "");
+
+		sendKey('a');
+		spinEventLoop();
+		assertProposals("2.0", "a");
+
+		sendKey('1');
+		spinEventLoop();
+		assertProposals("3.0", "a1");
+
+		sendKey(SWT.BS);
+		spinEventLoop();
+		assertProposals("4.0", "a");
+
+		sendKey(SWT.BS);
+		sendKey('b');
+		spinEventLoop();
+		assertProposals("5.0", "b");
+	}
+
+	public void testExtendedFilterNarrowsPreviousMatches() {
+		openPopup();
+		sendKey('a');
+		spinEventLoop();
+		assertProposals("1.0", "a");
+
+		resetCounts();
+		sendKey('1');
+		spinEventLoop();
+		assertProposals("2.0", "a1");
+		for (int i = 0; i < proposals.length; i++) {
+			if (!proposals[i].label.startsWith("a")) {
+				assertEquals("2.1 " + proposals[i].label, 0,
+						proposals[i].count);
+			}
+		}
+	}
+
+	public void testRetypingCancelsFiltering() {
+		openPopup();
+		resetCounts();
+		// the filters are all applied before any chunk is filtered
+		// asynchronously
+		sendKey('a');
+		sendKey('1');
+		sendKey('2');
+		spinEventLoop();
+		assertProposals("1.0", "a12");
+
+		// only the first chunk was filtered for each of the superseded
+		// filters, and the displayed proposals are labelled again
+		int count = 0;
+		for (int i = 0; i < proposals.length; i++) {
+			count += proposals[i].count;
+		}
+		assertTrue("1.1 " + count, count < 2 * PROPOSAL_COUNT);
+	}
+
+	private void openPopup() {
+		AbstractFieldAssistWindow window = getFieldAssistWindow();
+		window.open();
+		sendFocusInToControl();
+		Event event = new Event();
+		event.keyCode = SWT.F4;
+		window.getFieldAssistControl().notifyListeners(SWT.KeyDown, event);
+		assertTwoShellsUp();
+	}
+
+	private void sendKey(char character) {
+		Event event = new Event();
+		event.character = character;
+		event.keyCode = character;
+		getFieldAssistWindow().getFieldAssistControl().notifyListeners(
+				SWT.KeyDown, event);
+	}
+
+	private void resetCounts() {
+		for (int i = 0; i < proposals.length; i++) {
+			proposals[i].count = 0;
+		}
+	}
+
+	/**
+	 * Checks that the popup shows the proposals starting with the specified
+	 * filter, ignoring case, in their original order.
+	 */
+	private void assertProposals(String message, String filter) {
+		List expected = new ArrayList();
+		for (int i = 0; i < proposals.length; i++) {
+			if (proposals[i].label.toLowerCase().startsWith(
+					filter.toLowerCase())) {
+				expected.add(proposals[i].label);
+			}
+		}
+		Table table = getProposalTable();
+		List actual = new ArrayList();
+		for (int i = 0; i < table.getItemCount(); i++) {
+			// the virtual table requests the text of the item
+			actual.add(table.getItem(i).getText());
+		}
+		assertEquals(message, expected, actual);
+	}
+
+	private Table getProposalTable() {
+		Shell[] shells = getDisplay().getShells();
+		for (int i = 0; i < shells.length; i++) {
+			if (shells[i] != getFieldAssistWindow().getShell()) {
+				Table table = findTable(shells[i]);
+				if (table != null) {
+					return table;
+				}
+			}
+		}
+		fail("The proposal popup is not open");
+		return null;
+	}
+
+	private static Table findTable(Composite composite) {
+		Control[] children = composite.getChildren();
+		for (int i = 0; i < children.length; i++) {
+			if (children[i] instanceof Table) {
+				return (Table) children[i];
+			}
+			if (children[i] instanceof Composite) {
+				Table table = findTable((Composite) children[i]);
+				if (table != null) {
+					return table;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A proposal counting the requests for its label.
+	 */
+	private static class CountingProposal implements IContentProposal {
+		final String label;
+
+		int count;
+
+		CountingProposal(String label) {
+			this.label = label;
+		}
+
+		public String getContent() {
+			return label;
+		}
+
+		public int getCursorPosition() {
+			return label.length();
+		}
+
+		public String getLabel() {
+			count++;
+			return label;
+		}
+
+		public String getDescription() {
+			return null;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.jface.tests.fieldassist;
 
 import org.eclipse.jface.fieldassist.ContentProposal;
 import org.eclipse.jface.fieldassist.IContentProposal;
+import org.eclipse.jface.fieldassist.SimpleContentProposalProvider;
 
 public class FieldAssistAPITests extends AbstractFieldAssistTestCase {
 
@@ -48,6 +49,27 @@ public class FieldAssistAPITests extends AbstractFieldAssistTestCase {
 
 
 	}
+
+	public void testSimpleContentProposalProviderFiltering() {
+		SimpleContentProposalProvider provider;
+		provider = new SimpleContentProposalProvider(new String[] { "alpha",
+				"Alpine", "beta", "al" });
+		provider.setFiltering(true);
+		assertEquals("1.0", 3, provider.getProposals("a", 1).length);
+		// narrowing the previous matches
+		IContentProposal[] proposals = provider.getProposals("alP", 3);
+		assertEquals("2.0", 2, proposals.length);
+		assertEquals("2.1", "alpha", proposals[0].getContent());
+		assertEquals("2.2", "Alpine", proposals[1].getContent());
+		proposals[0] = null;
+		assertEquals("3.0", 1, provider.getProposals("alph", 4).length);
+		// not an extension of the previous contents
+		assertEquals("4.0", 1, provider.getProposals("b", 1).length);
+		assertEquals("4.1", 4, provider.getProposals("", 0).length);
+		provider.setProposals(new String[] { "gamma" });
+		assertEquals("5.0", 0, provider.getProposals("a", 1).length);
+		assertEquals("5.1", 1, provider.getProposals("", 0).length);
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.eclipse.jface.tests.fieldassist.AbstractFieldAssistTestCase#createFieldAssistWindow()
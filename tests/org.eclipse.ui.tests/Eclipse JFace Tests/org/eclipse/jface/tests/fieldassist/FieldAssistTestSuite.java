@@ -34,5 +34,6 @@ public class FieldAssistTestSuite extends TestSuite {
 		// addTest(new TestSuite(ComboFieldAssistTests.class));
 		addTest(new TestSuite(ControlDecorationTests.class));
 		addTest(new TestSuite(FieldAssistAPITests.class));
+		addTest(new TestSuite(ContentProposalFilteringTests.class));
 	}
 }
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.tests.images;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.resource.CachingResourceManager;
+import org.eclipse.jface.resource.DeviceResourceException;
+import org.eclipse.jface.resource.DeviceResourceManager;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.resource.ImageRegistry;
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Tests the least recently used image cache of
+ * {@link CachingResourceManager}.
+ *
+ * @since 3.9
+ */
+public class CachingResourceManagerTest extends TestCase {
+
+	/**
+	 * The size of a 16x16 test image.
+	 */
+	private static final int IMAGE_SIZE = 16 * 16 * 4;
+
+	private DeviceResourceManager globalResourceManager;
+
+	private TestImageDescriptor[] descriptors;
+
+	private static int liveImages;
+
+	private static final class TestImageDescriptor extends ImageDescriptor {
+		private final int id;
+
+		TestImageDescriptor(int id) {
+			this.id = id;
+		}
+
+		public Object createResource(Device device)
+				throws DeviceResourceException {
+			Object result = super.createResource(device);
+			liveImages++;
+			return result;
+		}
+
+		public void destroyResource(Object previouslyCreatedObject) {
+			liveImages--;
+			super.destroyResource(previouslyCreatedObject);
+		}
+
+		public ImageData getImageData() {
+			return new ImageData(16, 16, 24, new PaletteData(0xFF, 0xFF00,
+					0xFF0000));
+		}
+
+		public boolean equals(Object obj) {
+			return obj instanceof TestImageDescriptor
+					&& ((TestImageDescriptor) obj).id == id;
+		}
+
+		public int hashCode() {
+			return id;
+		}
+	}
+
+	public CachingResourceManagerTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		liveImages = 0;
+		globalResourceManager = new DeviceResourceManager(Display.getCurrent());
+		descriptors = new TestImageDescriptor[10];
+		for (int i = 0; i < descriptors.length; i++) {
+			descriptors[i] = new TestImageDescriptor(i);
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		globalResourceManager.dispose();
+		assertEquals("Detected leaks", 0, liveImages);
+		super.tearDown();
+	}
+
+	public void testUnreferencedImageReused() {
+		CachingResourceManager cache = new CachingResourceManager(
+				globalResourceManager, 10, 10 * IMAGE_SIZE);
+		Image image = cache.createImage(descriptors[0]);
+		cache.destroyImage(descriptors[0]);
+		assertFalse(image.isDisposed());
+		assertEquals(1, cache.getCachedImageCount());
+		assertEquals(IMAGE_SIZE, cache.getCacheSize());
+
+		assertSame(image, cache.createImage(descriptors[0]));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0, cache.getCachedImageCount());
+		assertEquals(1, liveImages);
+
+		cache.dispose();
+		assertTrue(image.isDisposed());
+		assertEquals(0, cache.getLiveHandleCount());
+	}
+
+	public void testHandleBudget() {
+		CachingResourceManager cache = new CachingResourceManager(
+				globalResourceManager, 3, 10 * IMAGE_SIZE);
+		for (int i = 0; i < 5; i++) {
+			cache.createImage(descriptors[i]);
+			cache.destroyImage(descriptors[i]);
+		}
+		assertEquals(3, cache.getLiveHandleCount());
+		assertEquals(3, liveImages);
+		assertEquals(2, cache.getEvictionCount());
+
+		// the least recently used images were released, and are recreated
+		cache.createImage(descriptors[0]);
+		assertEquals(0, cache.getHitCount());
+		assertEquals(6, cache.getMissCount());
+		cache.createImage(descriptors[4]);
+		assertEquals(1, cache.getHitCount());
+
+		cache.dispose();
+	}
+
+	public void testSizeBudget() {
+		CachingResourceManager cache = new CachingResourceManager(
+				globalResourceManager, 10, 2 * IMAGE_SIZE);
+		for (int i = 0; i < 3; i++) {
+			cache.createImage(descriptors[i]);
+		}
+		// referenced images are not counted in the size budget
+		assertEquals(0, cache.getCacheSize());
+
+		cache.destroyImage(descriptors[0]);
+		cache.destroyImage(descriptors[1]);
+		// using the first image makes the second one the least recently used
+		cache.createImage(descriptors[0]);
+		cache.destroyImage(descriptors[0]);
+		cache.destroyImage(descriptors[2]);
+
+		assertEquals(2 * IMAGE_SIZE, cache.getCacheSize());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(2, liveImages);
+		cache.createImage(descriptors[0]);
+		cache.createImage(descriptors[2]);
+		assertEquals(3, cache.getHitCount());
+
+		cache.dispose();
+	}
+
+	public void testReferencedImagesNotReleased() {
+		CachingResourceManager cache = new CachingResourceManager(
+				globalResourceManager, 2, 0);
+		Image[] images = new Image[4];
+		for (int i = 0; i < images.length; i++) {
+			images[i] = cache.createImage(descriptors[i]);
+		}
+		assertEquals(4, cache.getLiveHandleCount());
+		for (int i = 0; i < images.length; i++) {
+			assertFalse(images[i].isDisposed());
+		}
+
+		cache.destroyImage(descriptors[0]);
+		assertTrue(images[0].isDisposed());
+		assertEquals(3, cache.getLiveHandleCount());
+
+		cache.dispose();
+	}
+
+	public void testClearCache() {
+		CachingResourceManager cache = new CachingResourceManager(
+				globalResourceManager, 10, 10 * IMAGE_SIZE);
+		for (int i = 0; i < 4; i++) {
+			cache.createImage(descriptors[i]);
+		}
+		cache.destroyImage(descriptors[0]);
+		cache.destroyImage(descriptors[1]);
+
+		cache.clearCache();
+		assertEquals(0, cache.getCachedImageCount());
+		assertEquals(0, cache.getCacheSize());
+		assertEquals(2, cache.getLiveHandleCount());
+		assertEquals(2, liveImages);
+
+		cache.dispose();
+	}
+
+	public void testImageRegistry() {
+		CachingResourceManager cache = new CachingResourceManager(
+				globalResourceManager, 10, 10 * IMAGE_SIZE);
+		ImageRegistry registry = new ImageRegistry(cache);
+		registry.put("image", descriptors[0]);
+		Image image = registry.get("image");
+		registry.remove("image");
+		assertFalse(image.isDisposed());
+
+		registry.put("image", descriptors[0]);
+		assertSame(image, registry.get("image"));
+		assertEquals(1, cache.getHitCount());
+
+		cache.dispose();
+		assertTrue(image.isDisposed());
+		assertNull(registry.get("image"));
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.tests.images;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.resource.ImageDataLoader;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Tests decoding the image data of image descriptors in the background with
+ * {@link ImageDataLoader}.
+ *
+ * @since 3.9
+ */
+public class ImageDataLoaderTest extends TestCase {
+
+	private static final long TIMEOUT = 5000;
+
+	private Display display;
+
+	private int runCount;
+
+	private Runnable runnable = new Runnable() {
+		public void run() {
+			runCount++;
+		}
+	};
+
+	public ImageDataLoaderTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		display = Display.getCurrent();
+		ImageDataLoader.clearCache();
+		runCount = 0;
+	}
+
+	protected void tearDown() throws Exception {
+		ImageDataLoader.clearCache();
+		super.tearDown();
+	}
+
+	public void testLoad() {
+		ImageDescriptor descriptor = ImageDescriptor.createFromFile(
+				ImageDataLoaderTest.class, "anything.gif");
+		assertFalse(ImageDataLoader.isLoaded(descriptor));
+
+		ImageDataLoader.load(descriptor, display, runnable);
+		ImageDataLoader.load(descriptor, display, runnable);
+		waitForRunnable();
+		assertEquals("The runnable should run once", 1, runCount);
+		assertTrue(ImageDataLoader.isLoaded(descriptor));
+
+		ImageData data = descriptor.getImageData();
+		// each call returns a new image data
+		assertNotSame(data, descriptor.getImageData());
+		Image image = descriptor.createImage(false);
+		assertNotNull(image);
+		assertEquals(data.width, image.getBounds().width);
+		assertEquals(data.height, image.getBounds().height);
+		image.dispose();
+	}
+
+	public void testLoadMissingFile() {
+		ImageDescriptor descriptor = ImageDescriptor.createFromFile(
+				ImageDataLoaderTest.class, "missing.gif");
+		ImageDataLoader.load(descriptor, display, runnable);
+		waitForRunnable();
+		assertTrue(ImageDataLoader.isLoaded(descriptor));
+		assertNull(descriptor.getImageData());
+		assertNull(descriptor.createImage(false));
+	}
+
+	public void testNotReadFromFile() {
+		ImageDescriptor descriptor = ImageDataLoader
+				.getPlaceholderImageDescriptor();
+		assertTrue(ImageDataLoader.isLoaded(descriptor));
+
+		ImageDataLoader.load(descriptor, display, runnable);
+		waitForRunnable();
+		assertEquals(1, runCount);
+	}
+
+	public void testPlaceholder() {
+		ImageData data = ImageDataLoader.getPlaceholderImageDescriptor()
+				.getImageData();
+		assertEquals(16, data.width);
+		assertEquals(16, data.height);
+	}
+
+	private void waitForRunnable() {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (runCount == 0 && System.currentTimeMillis() < end) {
+			if (!display.readAndDispatch()) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		// let duplicate runnables run, if any
+		while (display.readAndDispatch()) {
+			// keep dispatching
+		}
+	}
+}
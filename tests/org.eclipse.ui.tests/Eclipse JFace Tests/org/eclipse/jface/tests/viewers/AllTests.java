@@ -66,5 +66,8 @@ public class AllTests extends TestSuite {
 		addTestSuite(Bug287765Test.class);
 		addTestSuite(StyledStringBuilderTest.class);
 		addTestSuite(TreeManagerTest.class);
+		addTestSuite(TreeDeltaTest.class);
+		addTestSuite(TreeViewerBackgroundChildrenTest.class);
+		addTestSuite(TableViewerParallelSortAndFilterTest.class);
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2006 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,10 +10,13 @@
  *******************************************************************************/
 package org.eclipse.jface.tests.viewers;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.eclipse.jface.viewers.AbstractTreeViewer;
+import org.eclipse.jface.viewers.IElementComparer;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.ITreeSelection;
 import org.eclipse.jface.viewers.StructuredSelection;
@@ -151,6 +154,54 @@ public class MultipleEqualElementsTreeViewerTest extends TreeViewerTest {
 		assertEquals(4, getTreeViewer().testFindItems(element_2_1_2).length);
 	}
 
+	public void testElementMapAfterSetComparer() {
+		getTreeViewer().expandToLevel(element_1, AbstractTreeViewer.ALL_LEVELS);
+		getTreeViewer().expandToLevel(element_2, AbstractTreeViewer.ALL_LEVELS);
+		Widget[] items = getTreeViewer().testFindItems(element_2_1_2);
+		getTreeViewer().setComparer(new IElementComparer() {
+			public boolean equals(Object a, Object b) {
+				return a.equals(b);
+			}
+
+			public int hashCode(Object element) {
+				return element.hashCode();
+			}
+		});
+		assertEquals(1, getTreeViewer().testFindItems(element_1).length);
+		assertEquals(2, getTreeViewer().testFindItems(element_2).length);
+		assertEquals(3, getTreeViewer().testFindItems(element_2_1).length);
+		assertEquals(Arrays.asList(items), Arrays.asList(getTreeViewer()
+				.testFindItems(element_2_1_2)));
+		assertSame(items[0], getTreeViewer().testFindItem(element_2_1_2));
+	}
+
+	public void testElementMapAfterRemove() {
+		getTreeViewer().expandToLevel(element_1, AbstractTreeViewer.ALL_LEVELS);
+		getTreeViewer().expandToLevel(element_2, AbstractTreeViewer.ALL_LEVELS);
+		List items = new ArrayList(Arrays.asList(getTreeViewer()
+				.testFindItems(element_2_1_2)));
+		for (Iterator it = items.iterator(); it.hasNext();) {
+			TreeItem item = (TreeItem) it.next();
+			if (item.getParentItem().getData() == element_1) {
+				it.remove();
+			}
+		}
+		assertEquals(3, items.size());
+		element_1.basicDeleteChild(element_2_1_2);
+		getTreeViewer().remove(element_1, new Object[] { element_2_1_2 });
+		// the other items are kept in order
+		assertEquals(items, Arrays.asList(getTreeViewer().testFindItems(
+				element_2_1_2)));
+
+		element_1.basicDeleteChild(element_2_1);
+		element_2.basicDeleteChild(element_2_1);
+		getTreeViewer().remove(element_2_1);
+		assertEquals(0, getTreeViewer().testFindItems(element_2_1).length);
+		assertEquals(0, getTreeViewer().testFindItems(element_2_1_2).length);
+		assertNull(getTreeViewer().testFindItem(element_2_1_2));
+		assertEquals(2, getTreeViewer().testFindItems(element_2).length);
+	}
+
 	public void testSelection() {
 		getTreeViewer().expandToLevel(element_1, AbstractTreeViewer.ALL_LEVELS);
 		getTreeViewer().expandToLevel(element_2, AbstractTreeViewer.ALL_LEVELS);
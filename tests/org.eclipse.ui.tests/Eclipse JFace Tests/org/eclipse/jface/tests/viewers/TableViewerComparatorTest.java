@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import org.eclipse.jface.viewers.ColumnWeightData;
 import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.TableLayout;
 import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerComparator;
 import org.eclipse.jface.viewers.ViewerSorter;
 import org.eclipse.swt.SWT;
@@ -28,6 +29,21 @@ import org.eclipse.swt.widgets.TableItem;
  *
  */
 public class TableViewerComparatorTest extends ViewerComparatorTest {
+	protected String[] TEAM1_SORTED_BY_REVERSED_NAME = {"Andrea", "Eric", "Tod", 
+			"Karice", "Mike", "Michael", "Paul", "Kim", "Susan", "Boris"};
+	protected String[] TEAM1_SORTED_BY_REVERSED_NAME_WITH_INSERT = {"Andrea", "Eric", 
+			"Tod", "Karice", "Mike", "Duong", "Michael", "Paul", "Kim", "Susan", "Boris"};
+
+	/*
+	 * sorts the team members by their names spelled backwards, using
+	 * precomputed sort keys
+	 */
+	private class ReversedNameComparator extends ViewerComparator {
+		protected Comparable getSortKey(Viewer viewer, Object element) {
+			return new StringBuffer(((TeamMember) element).name).reverse()
+					.toString();
+		}
+	}
 
 	/**
 	 * @param name
@@ -88,6 +104,17 @@ public class TableViewerComparatorTest extends ViewerComparatorTest {
 		assertSortedResult(TEAM1_SORTED_WITH_INSERT);
 	}
 	
+	public void testViewerComparatorSortKey(){
+		fViewer.setComparator(new ReversedNameComparator());
+		assertSortedResult(TEAM1_SORTED_BY_REVERSED_NAME);
+	}
+	
+	public void testViewerComparatorSortKeyInsertElement(){
+		fViewer.setComparator(new ReversedNameComparator());
+		team1.addMember("Duong");
+		assertSortedResult(TEAM1_SORTED_BY_REVERSED_NAME_WITH_INSERT);
+	}
+	
 	private void assertSortedResult(String[] expected){
 		TableItem[] items = getTableViewer().getTable().getItems();
 		for (int i = 0; i < items.length; i++){
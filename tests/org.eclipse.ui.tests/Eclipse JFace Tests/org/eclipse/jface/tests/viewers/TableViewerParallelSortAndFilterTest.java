@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.tests.viewers;
+
+import java.util.Random;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.jface.viewers.ViewerSorter;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
+
+/**
+ * Tests that filtering and sorting using several threads gives the same
+ * result as filtering and sorting sequentially.
+ *
+ * @since 3.9
+ */
+public class TableViewerParallelSortAndFilterTest extends ViewerTestCase {
+
+	private static final int ELEMENT_COUNT = 20000;
+
+	private TableViewer viewer;
+
+	private String[] input;
+
+	public TableViewerParallelSortAndFilterTest(String name) {
+		super(name);
+	}
+
+	protected StructuredViewer createViewer(Composite parent) {
+		viewer = new TableViewer(parent);
+		viewer.setContentProvider(new ArrayContentProvider());
+		viewer.setLabelProvider(new LabelProvider());
+		return viewer;
+	}
+
+	protected void setInput() {
+		Random random = new Random(0);
+		input = new String[ELEMENT_COUNT];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = Integer.toString(random.nextInt(), 36);
+		}
+		viewer.setInput(input);
+	}
+
+	public void testSorted() {
+		viewer.setSorter(new ViewerSorter());
+		assertSameAsSequential();
+	}
+
+	public void testSortedByCategory() {
+		viewer.setComparator(new ViewerComparator() {
+			public int category(Object element) {
+				return ((String) element).length() % 3;
+			}
+		});
+		assertSameAsSequential();
+	}
+
+	public void testSortedByCompare() {
+		viewer.setComparator(new ViewerComparator() {
+			public int compare(Viewer viewer, Object e1, Object e2) {
+				return ((String) e2).compareTo((String) e1);
+			}
+		});
+		assertSameAsSequential();
+	}
+
+	public void testFiltered() {
+		viewer.addFilter(new ViewerFilter() {
+			public boolean select(Viewer viewer, Object parentElement,
+					Object element) {
+				return ((String) element).hashCode() % 3 != 0;
+			}
+		});
+		assertSameAsSequential();
+	}
+
+	public void testFilteredAndSorted() {
+		viewer.addFilter(new ViewerFilter() {
+			public boolean select(Viewer viewer, Object parentElement,
+					Object element) {
+				return ((String) element).indexOf('a') == -1;
+			}
+		});
+		viewer.setSorter(new ViewerSorter());
+		assertSameAsSequential();
+	}
+
+	private void assertSameAsSequential() {
+		viewer.setUseParallelSortAndFilter(false);
+		viewer.refresh();
+		Object[] expected = getElements();
+
+		viewer.setUseParallelSortAndFilter(true);
+		viewer.refresh();
+		Object[] actual = getElements();
+
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertSame(expected[i], actual[i]);
+		}
+	}
+
+	private Object[] getElements() {
+		Table table = viewer.getTable();
+		Object[] elements = new Object[table.getItemCount()];
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = table.getItem(i).getData();
+		}
+		return elements;
+	}
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.tests.viewers;
+
+import org.eclipse.jface.viewers.StructuredSelection;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TreeDelta;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.TreeItem;
+
+/**
+ * Tests applying a {@link TreeDelta} to a tree viewer.
+ *
+ * @since 3.9
+ */
+public class TreeDeltaTest extends ViewerTestCase {
+
+	private TreeViewer viewer;
+
+	private int getChildrenCount;
+
+	private TestElement element_0;
+
+	private TestElement element_1;
+
+	public TreeDeltaTest(String name) {
+		super(name);
+	}
+
+	protected StructuredViewer createViewer(Composite parent) {
+		viewer = new TreeViewer(parent);
+		viewer.setContentProvider(new TestModelContentProvider() {
+			public Object[] getChildren(Object element) {
+				getChildrenCount++;
+				return super.getChildren(element);
+			}
+		});
+		return viewer;
+	}
+
+	public void setUp() {
+		super.setUp();
+		element_0 = fRootElement.getChildAt(0);
+		element_1 = fRootElement.getChildAt(1);
+		viewer.expandToLevel(element_0, 1);
+		viewer.expandToLevel(element_1, 1);
+		getChildrenCount = 0;
+	}
+
+	public void testAddAndRemove() {
+		TestElement added = element_0.basicAddChild();
+		TestElement removed = element_0.getChildAt(0);
+		element_0.basicDeleteChild(removed);
+
+		TreeDelta delta = new TreeDelta();
+		delta.add(element_0, new Object[] { added });
+		delta.remove(element_0, new Object[] { removed });
+		viewer.applyDelta(delta);
+
+		assertEquals(0, getChildrenCount);
+		assertChildren(element_0);
+		assertNull(viewer.testFindItem(removed));
+		assertNotNull(viewer.testFindItem(added));
+	}
+
+	public void testAddedThenRemovedNotAdded() {
+		TestElement added = element_0.basicAddChild();
+		element_0.basicDeleteChild(added);
+
+		TreeDelta delta = new TreeDelta();
+		delta.add(element_0, new Object[] { added });
+		delta.remove(element_0, new Object[] { added });
+		viewer.applyDelta(delta);
+
+		assertChildren(element_0);
+		assertNull(viewer.testFindItem(added));
+	}
+
+	public void testMove() {
+		TestElement moved = element_0.getChildAt(1);
+		element_0.basicDeleteChild(moved);
+		element_1.fChildren.add(moved);
+
+		TreeDelta delta = new TreeDelta();
+		delta.move(element_0, element_1, new Object[] { moved });
+		viewer.applyDelta(delta);
+
+		assertEquals(0, getChildrenCount);
+		assertChildren(element_0);
+		assertChildren(element_1);
+		assertEquals(element_1, ((TreeItem) viewer.testFindItem(moved))
+				.getParentItem().getData());
+	}
+
+	public void testTreePathParent() {
+		TestElement added = element_1.basicAddChild();
+
+		TreeDelta delta = new TreeDelta();
+		delta.add(new TreePath(new Object[] { element_1 }),
+				new Object[] { added });
+		viewer.applyDelta(delta);
+
+		assertChildren(element_1);
+	}
+
+	public void testAddToCollapsedParent() {
+		TestElement element_2 = fRootElement.getChildAt(2);
+		TestElement added = element_2.basicAddChild();
+
+		TreeDelta delta = new TreeDelta();
+		delta.add(element_2, new Object[] { added });
+		viewer.applyDelta(delta);
+
+		assertNull(viewer.testFindItem(added));
+		viewer.expandToLevel(element_2, 1);
+		assertChildren(element_2);
+	}
+
+	public void testRefreshIgnoresAdditions() {
+		TestElement added = element_0.basicAddChild();
+
+		TreeDelta delta = new TreeDelta();
+		delta.add(element_0, new Object[] { added });
+		delta.refresh(element_0);
+		delta.refresh(element_0);
+		viewer.applyDelta(delta);
+
+		assertChildren(element_0);
+		// the children of the refreshed element are asked once
+		assertEquals(1, getChildrenCount);
+	}
+
+	public void testUpdate() {
+		TestElement updated = element_0.getChildAt(0);
+		updated.fSomeName = "updated";
+
+		TreeDelta delta = new TreeDelta();
+		delta.update(new Object[] { updated }, null);
+		viewer.applyDelta(delta);
+
+		assertEquals(0, getChildrenCount);
+		assertEquals(updated.toString(), ((TreeItem) viewer
+				.testFindItem(updated)).getText());
+	}
+
+	public void testSelectionPreserved() {
+		TestElement selected = element_1.getChildAt(0);
+		viewer.setSelection(new StructuredSelection(selected));
+		TestElement removed = element_0.getChildAt(0);
+		element_0.basicDeleteChild(removed);
+
+		TreeDelta delta = new TreeDelta();
+		delta.remove(element_0, new Object[] { removed });
+		viewer.applyDelta(delta);
+
+		assertEquals(new StructuredSelection(selected), viewer.getSelection());
+	}
+
+	private void assertChildren(TestElement parent) {
+		TreeItem item = (TreeItem) viewer.testFindItem(parent);
+		TestElement[] children = parent.getChildren();
+		assertEquals(children.length, item.getItemCount());
+		for (int i = 0; i < children.length; i++) {
+			assertEquals(children[i], item.getItem(i).getData());
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.tests.viewers;
+
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.TreeItem;
+
+/**
+ * Tests computing the children of the elements expanded in a tree viewer in
+ * the background.
+ *
+ * @since 3.9
+ */
+public class TreeViewerBackgroundChildrenTest extends ViewerTestCase {
+
+	private static final long TIMEOUT = 5000;
+
+	private TreeViewer viewer;
+
+	private TestElement element_0;
+
+	public TreeViewerBackgroundChildrenTest(String name) {
+		super(name);
+	}
+
+	protected StructuredViewer createViewer(Composite parent) {
+		viewer = new TreeViewer(parent);
+		viewer.setContentProvider(new TestModelContentProvider());
+		viewer.setComputeChildrenInBackground(true);
+		return viewer;
+	}
+
+	public void setUp() {
+		super.setUp();
+		element_0 = fRootElement.getChildAt(0);
+	}
+
+	public void testChildrenComputedInBackground() {
+		TreeItem item = expand(element_0);
+		assertPending(item);
+
+		waitForChildren(element_0);
+		assertChildren(element_0);
+	}
+
+	public void testManyChildrenCreatedInChunks() {
+		for (int i = 0; i < 450; i++) {
+			element_0.basicAddChild();
+		}
+		expand(element_0);
+
+		waitForChildren(element_0);
+		assertChildren(element_0);
+	}
+
+	public void testCollapseCancels() {
+		TreeItem item = expand(element_0);
+		collapse(element_0);
+		waitForIdle();
+		assertPending(item);
+
+		expand(element_0);
+		waitForChildren(element_0);
+		assertChildren(element_0);
+	}
+
+	public void testExpandToLevelComputesChildren() {
+		viewer.expandToLevel(element_0, 1);
+		assertChildren(element_0);
+	}
+
+	public void testRefreshWhilePending() {
+		expand(element_0);
+		viewer.refresh(element_0);
+		assertChildren(element_0);
+
+		waitForIdle();
+		assertChildren(element_0);
+	}
+
+	public void testAddWhilePending() {
+		expand(element_0);
+		element_0.addChild(TestModelChange.INSERT);
+
+		waitForChildren(element_0);
+		assertChildren(element_0);
+	}
+
+	public void testRemoveWhilePending() {
+		expand(element_0);
+		element_0.deleteChild(element_0.getChildAt(0));
+
+		waitForChildren(element_0);
+		assertChildren(element_0);
+	}
+
+	public void testTurnedOffWhilePending() {
+		expand(element_0);
+		viewer.setComputeChildrenInBackground(false);
+		assertChildren(element_0);
+
+		waitForIdle();
+		assertChildren(element_0);
+	}
+
+	private TreeItem expand(TestElement element) {
+		TreeItem item = (TreeItem) viewer.testFindItem(element);
+		Event event = new Event();
+		event.item = item;
+		item.getParent().notifyListeners(SWT.Expand, event);
+		item.setExpanded(true);
+		return item;
+	}
+
+	private void collapse(TestElement element) {
+		TreeItem item = (TreeItem) viewer.testFindItem(element);
+		Event event = new Event();
+		event.item = item;
+		item.getParent().notifyListeners(SWT.Collapse, event);
+		item.setExpanded(false);
+	}
+
+	private void waitForChildren(TestElement parent) {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (!hasChildren(parent) && System.currentTimeMillis() < end) {
+			waitForEvents();
+		}
+		// let the last chunks be created
+		waitForIdle();
+	}
+
+	private void waitForIdle() {
+		long end = System.currentTimeMillis() + 200;
+		while (System.currentTimeMillis() < end) {
+			waitForEvents();
+		}
+	}
+
+	private void waitForEvents() {
+		Display display = fShell.getDisplay();
+		if (!display.readAndDispatch()) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private boolean hasChildren(TestElement parent) {
+		TreeItem item = (TreeItem) viewer.testFindItem(parent);
+		return item.getItemCount() == parent.getChildCount()
+				&& item.getItem(0).getData() != null;
+	}
+
+	private void assertPending(TreeItem item) {
+		assertEquals(1, item.getItemCount());
+		assertNull(item.getItem(0).getData());
+	}
+
+	private void assertChildren(TestElement parent) {
+		TreeItem item = (TreeItem) viewer.testFindItem(parent);
+		TestElement[] children = parent.getChildren();
+		assertEquals(children.length, item.getItemCount());
+		for (int i = 0; i < children.length; i++) {
+			assertEquals(children[i], item.getItem(i).getData());
+		}
+	}
+}
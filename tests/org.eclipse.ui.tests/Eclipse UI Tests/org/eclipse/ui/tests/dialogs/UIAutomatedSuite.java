@@ -44,5 +44,6 @@ public class UIAutomatedSuite extends TestSuite {
 		addTest(new TestSuite(UIEditWorkingSetWizardAuto.class));
 		addTest(new TestSuite(SearchPatternAuto.class));
 		addTest(new TestSuite(UIFilteredResourcesSelectionDialogAuto.class));
+		addTest(new TestSuite(UIFilteredItemsSelectionDialogAuto.class));
 	}
 }
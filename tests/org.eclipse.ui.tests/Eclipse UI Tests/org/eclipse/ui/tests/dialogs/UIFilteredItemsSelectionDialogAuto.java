@@ -0,0 +1,454 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.dialogs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.IJobChangeListener;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.jface.dialogs.DialogSettings;
+import org.eclipse.jface.dialogs.IDialogSettings;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.dialogs.FilteredItemsSelectionDialog;
+
+/**
+ * Tests the matching of the cached items of a
+ * {@link FilteredItemsSelectionDialog} against a sub-filter, in parallel when
+ * the filter can match items concurrently.
+ *
+ * @since 3.5
+ */
+public class UIFilteredItemsSelectionDialogAuto extends TestCase {
+
+	/**
+	 * The number of cached items matched at a time in parallel, as in
+	 * <code>FilteredItemsSelectionDialog</code>.
+	 */
+	private static final int MATCHING_CHUNK_SIZE = 4096;
+
+	private static final long TIMEOUT = 30000;
+
+	private ItemsDialog dialog;
+
+	protected void tearDown() throws Exception {
+		if (dialog != null) {
+			dialog.close();
+			dialog = null;
+		}
+		super.tearDown();
+	}
+
+	/**
+	 * Checks that the matches found in parallel are the ones found one item
+	 * at a time, in the same order.
+	 */
+	public void testParallelMatchesSameAsSequential() {
+		String[] items = createItems(5 * MATCHING_CHUNK_SIZE);
+		List expected = new ArrayList();
+		for (int i = 0; i < items.length; i++) {
+			if (items[i].startsWith("item1")) {
+				expected.add(items[i]);
+			}
+		}
+		Collections.sort(expected);
+
+		List sequential = filter(items, false, "item1");
+		List parallel = filter(items, true, "item1");
+
+		assertEquals(expected, sequential);
+		assertEquals(expected, parallel);
+	}
+
+	/**
+	 * Checks that the first matches are shown before all the items are
+	 * matched.
+	 */
+	public void testFirstScreenShownEarly() {
+		if (Runtime.getRuntime().availableProcessors() == 1) {
+			// the items are not matched in parallel
+			return;
+		}
+		final String[] items = createItems(5 * MATCHING_CHUNK_SIZE);
+		String[] sorted = sort(items);
+		final String last = sorted[sorted.length - 1];
+		openDialog(items, true);
+		setPattern("i", items.length);
+
+		final Gate gate = new Gate();
+		dialog.hook = new MatchHook() {
+			public void matching(String item) {
+				if (item.equals(last)) {
+					gate.pass();
+				}
+			}
+		};
+		try {
+			setPattern("it");
+			waitUntil(new Condition() {
+				public boolean holds() {
+					int count = getItemCount();
+					return count > 0 && count < items.length;
+				}
+			});
+			// the last item is still being matched
+			assertEquals(Arrays.asList(sorted).subList(0, getItemCount()),
+					getItems());
+		} finally {
+			gate.open();
+		}
+		waitForItemCount(items.length);
+		assertEquals(Arrays.asList(sorted), getItems());
+	}
+
+	/**
+	 * Checks that the jobs matching in parallel stop when the filtering is
+	 * canceled.
+	 */
+	public void testCancelStopsMatching() throws Exception {
+		int processors = Runtime.getRuntime().availableProcessors();
+		String[] items = createItems(2 * Math.max(processors, 4)
+				* MATCHING_CHUNK_SIZE);
+		openDialog(items, true);
+		setPattern("i", items.length);
+
+		final Gate gate = new Gate();
+		final Set threads = Collections.synchronizedSet(new HashSet());
+		final int[] calls = new int[1];
+		dialog.hook = new MatchHook() {
+			public void matching(String item) {
+				threads.add(Thread.currentThread());
+				gate.pass();
+				synchronized (calls) {
+					calls[0]++;
+				}
+			}
+		};
+		try {
+			setPattern("it");
+			final int expectedThreads = Math.min(processors, 2);
+			waitUntil(new Condition() {
+				public boolean holds() {
+					return threads.size() >= expectedThreads;
+				}
+			});
+			// cancels the filtering
+			dialog.hook = null;
+			setPattern("x");
+		} finally {
+			gate.open();
+		}
+
+		int matched;
+		int stable;
+		do {
+			synchronized (calls) {
+				matched = calls[0];
+			}
+			Thread.sleep(500);
+			synchronized (calls) {
+				stable = calls[0];
+			}
+		} while (matched != stable);
+		// every thread stopped after the chunk it was matching
+		assertTrue(matched <= threads.size() * MATCHING_CHUNK_SIZE);
+		assertTrue(matched < items.length);
+	}
+
+	/**
+	 * Checks that an exception thrown while matching an item in parallel ends
+	 * the filter job with that exception.
+	 */
+	public void testMatchExceptionReachesFilterJob() {
+		String[] items = createItems(5 * MATCHING_CHUNK_SIZE);
+		String[] sorted = sort(items);
+		final String failing = sorted[3 * MATCHING_CHUNK_SIZE];
+		openDialog(items, true);
+		setPattern("i", items.length);
+
+		final RuntimeException exception = new IllegalStateException();
+		final List results = Collections.synchronizedList(new ArrayList());
+		IJobChangeListener listener = new JobChangeAdapter() {
+			public void done(IJobChangeEvent event) {
+				results.add(event.getResult());
+			}
+		};
+		Job.getJobManager().addJobChangeListener(listener);
+		try {
+			dialog.hook = new MatchHook() {
+				public void matching(String item) {
+					if (item.equals(failing)) {
+						throw exception;
+					}
+				}
+			};
+			setPattern("it");
+			waitUntil(new Condition() {
+				public boolean holds() {
+					synchronized (results) {
+						for (int i = 0; i < results.size(); i++) {
+							IStatus result = (IStatus) results.get(i);
+							if (result != null
+									&& result.getException() == exception) {
+								return true;
+							}
+						}
+					}
+					return false;
+				}
+			});
+		} finally {
+			Job.getJobManager().removeJobChangeListener(listener);
+		}
+	}
+
+	private List filter(String[] items, boolean concurrent, String subPattern) {
+		openDialog(items, concurrent);
+		setPattern("i", items.length);
+		setPattern(subPattern, countMatches(items, subPattern));
+		List result = getItems();
+		dialog.close();
+		dialog = null;
+		return result;
+	}
+
+	private static int countMatches(String[] items, String prefix) {
+		int count = 0;
+		for (int i = 0; i < items.length; i++) {
+			if (items[i].startsWith(prefix)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static String[] createItems(int count) {
+		String[] items = new String[count];
+		for (int i = 0; i < count; i++) {
+			items[i] = "item" + i;
+		}
+		return items;
+	}
+
+	private static String[] sort(String[] items) {
+		String[] sorted = (String[]) items.clone();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private void openDialog(String[] items, boolean concurrent) {
+		Shell parent = PlatformUI.getWorkbench().getActiveWorkbenchWindow()
+				.getShell();
+		dialog = new ItemsDialog(parent, items, concurrent);
+		dialog.setBlockOnOpen(false);
+		dialog.open();
+	}
+
+	private void setPattern(String text) {
+		((Text) dialog.getPatternControl()).setText(text);
+	}
+
+	private void setPattern(String text, int count) {
+		setPattern(text);
+		waitForItemCount(count);
+	}
+
+	private void waitForItemCount(final int count) {
+		waitUntil(new Condition() {
+			public boolean holds() {
+				return getItemCount() == count;
+			}
+		});
+	}
+
+	private int getItemCount() {
+		return getTable().getItemCount();
+	}
+
+	private Table getTable() {
+		return findTable(dialog.getShell());
+	}
+
+	private static Table findTable(Composite composite) {
+		Control[] children = composite.getChildren();
+		for (int i = 0; i < children.length; i++) {
+			if (children[i] instanceof Table) {
+				return (Table) children[i];
+			}
+			if (children[i] instanceof Composite) {
+				Table table = findTable((Composite) children[i]);
+				if (table != null) {
+					return table;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the items shown in the list, without the separator.
+	 */
+	private List getItems() {
+		Table table = getTable();
+		List items = new ArrayList();
+		for (int i = 0; i < table.getItemCount(); i++) {
+			// the virtual table requests the element of the item
+			Object data = table.getItem(i).getData();
+			if (data instanceof String) {
+				items.add(data);
+			}
+		}
+		return items;
+	}
+
+	private static void waitUntil(Condition condition) {
+		Display display = Display.getCurrent();
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (!condition.holds()) {
+			if (System.currentTimeMillis() > end) {
+				fail("timed out");
+			}
+			if (!display.readAndDispatch()) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					// check again
+				}
+			}
+		}
+	}
+
+	private interface Condition {
+		boolean holds();
+	}
+
+	private interface MatchHook {
+		void matching(String item);
+	}
+
+	/**
+	 * Holds back the threads matching items until it is opened.
+	 */
+	private static class Gate {
+		private boolean open;
+
+		synchronized void pass() {
+			long end = System.currentTimeMillis() + TIMEOUT;
+			while (!open && System.currentTimeMillis() < end) {
+				try {
+					wait(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		synchronized void open() {
+			open = true;
+			notifyAll();
+		}
+	}
+
+	private static class ItemsDialog extends FilteredItemsSelectionDialog {
+
+		private final String[] items;
+
+		private final boolean concurrent;
+
+		/**
+		 * Called for every item matched by the filters created from now on,
+		 * or <code>null</code>
+		 */
+		volatile MatchHook hook;
+
+		ItemsDialog(Shell shell, String[] items, boolean concurrent) {
+			super(shell, true);
+			this.items = items;
+			this.concurrent = concurrent;
+		}
+
+		protected Control createExtendedContentArea(Composite parent) {
+			return null;
+		}
+
+		protected IDialogSettings getDialogSettings() {
+			return new DialogSettings("items"); //$NON-NLS-1$
+		}
+
+		protected IStatus validateItem(Object item) {
+			return Status.OK_STATUS;
+		}
+
+		protected ItemsFilter createFilter() {
+			final MatchHook filterHook = hook;
+			return new ItemsFilter() {
+				public boolean matchItem(Object item) {
+					if (filterHook != null) {
+						filterHook.matching((String) item);
+					}
+					return matches((String) item);
+				}
+
+				public boolean isConsistentItem(Object item) {
+					return true;
+				}
+
+				public boolean canMatchConcurrently() {
+					return concurrent;
+				}
+			};
+		}
+
+		protected Comparator getItemsComparator() {
+			return new Comparator() {
+				public int compare(Object o1, Object o2) {
+					return ((String) o1).compareTo((String) o2);
+				}
+			};
+		}
+
+		protected void fillContentProvider(
+				AbstractContentProvider contentProvider,
+				ItemsFilter itemsFilter, IProgressMonitor progressMonitor)
+				throws CoreException {
+			progressMonitor.beginTask("", items.length); //$NON-NLS-1$
+			for (int i = 0; i < items.length; i++) {
+				contentProvider.add(items[i], itemsFilter);
+				progressMonitor.worked(1);
+			}
+			progressMonitor.done();
+		}
+
+		public String getElementName(Object item) {
+			return (String) item;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -46,6 +46,15 @@ public class UIFilteredResourcesSelectionDialogAuto extends
 
 		closeDialog(dialog);
 	}
+
+	/**
+	 * Checks that the resource filter allows matching resources in parallel.
+	 */
+	public void testFilterMatchesConcurrently() {
+		MockedFilteredResourcesSelectionDialog dialog = createDialog();
+		assertTrue(dialog.canFilterMatchConcurrently());
+		closeDialog(dialog);
+	}
 	
 	private static MockedFilteredResourcesSelectionDialog createDialog() {
 		final IWorkbenchWindow window = PlatformUI.getWorkbench()
@@ -92,6 +101,10 @@ public class UIFilteredResourcesSelectionDialogAuto extends
 			return getSelectionHistory().getHistoryItems();
 		}
 
+		public boolean canFilterMatchConcurrently() {
+			return createFilter().canMatchConcurrently();
+		}
+
 	}
 
 }
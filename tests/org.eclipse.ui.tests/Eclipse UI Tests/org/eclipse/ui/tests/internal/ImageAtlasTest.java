@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.ui.tests.internal;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.ui.internal.ImageAtlas;
+import org.eclipse.ui.tests.TestPlugin;
+
+/**
+ * Tests packing icons in an {@link ImageAtlas} and reading them back.
+ *
+ * @since 3.103
+ */
+public class ImageAtlasTest extends TestCase {
+
+	private static final long STAMP = 42;
+
+	private File file;
+
+	private URL anything;
+
+	private URL view;
+
+	public ImageAtlasTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("imageAtlas", ".bin");
+		file.delete();
+		anything = TestPlugin.getDefault().getBundle().getEntry(
+				"icons/anything.gif");
+		view = TestPlugin.getDefault().getBundle().getEntry("icons/view.gif");
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+		new File(file.getPath() + ".new").delete();
+		new File(file.getPath() + ".old").delete();
+		super.tearDown();
+	}
+
+	public void testUsedIconsPacked() throws IOException {
+		ImageAtlas atlas = new ImageAtlas(file, STAMP);
+		assertEquals(0, atlas.size());
+		assertNull(atlas.getImageData(anything));
+		assertTrue(atlas.save());
+
+		atlas = new ImageAtlas(file, STAMP);
+		assertEquals(1, atlas.size());
+		assertTrue(atlas.contains(anything));
+		assertFalse(atlas.contains(view));
+		assertImageData(anything, atlas.getImageData(anything));
+	}
+
+	public void testPackedIconsKept() throws IOException {
+		ImageAtlas atlas = new ImageAtlas(file, STAMP);
+		atlas.recordUse(anything);
+		atlas.save();
+
+		atlas = new ImageAtlas(file, STAMP);
+		atlas.recordUse(view);
+		atlas.save();
+
+		atlas = new ImageAtlas(file, STAMP);
+		assertEquals(2, atlas.size());
+		assertImageData(anything, atlas.getImageData(anything));
+		assertImageData(view, atlas.getImageData(view));
+	}
+
+	public void testNotSavedWhenUnchanged() throws IOException {
+		ImageAtlas atlas = new ImageAtlas(file, STAMP);
+		atlas.recordUse(anything);
+		atlas.save();
+
+		atlas = new ImageAtlas(file, STAMP);
+		atlas.getImageData(anything);
+		assertFalse(atlas.save());
+	}
+
+	public void testStampChanged() throws IOException {
+		ImageAtlas atlas = new ImageAtlas(file, STAMP);
+		atlas.recordUse(anything);
+		atlas.save();
+
+		atlas = new ImageAtlas(file, STAMP + 1);
+		assertEquals(0, atlas.size());
+		assertNull(atlas.getImageData(anything));
+	}
+
+	public void testImageDescriptor() throws IOException {
+		ImageAtlas atlas = new ImageAtlas(file, STAMP);
+		Image image = atlas.createImageDescriptor(anything).createImage();
+		image.dispose();
+		atlas.save();
+
+		atlas = new ImageAtlas(file, STAMP);
+		ImageDescriptor descriptor = atlas.createImageDescriptor(anything);
+		assertImageData(anything, descriptor.getImageData());
+		image = descriptor.createImage(false);
+		assertNotNull(image);
+		image.dispose();
+	}
+
+	public void testNewFileReplacesAtlasFile() throws IOException {
+		ImageAtlas atlas = new ImageAtlas(file, STAMP);
+		atlas.recordUse(anything);
+		atlas.save();
+		File newFile = new File(file.getPath() + ".new");
+		assertTrue(file.renameTo(newFile));
+		writeIndex(0, 0);
+
+		atlas = new ImageAtlas(file, STAMP);
+		assertFalse(newFile.exists());
+		assertEquals(1, atlas.size());
+		assertImageData(anything, atlas.getImageData(anything));
+	}
+
+	public void testInvalidCount() throws IOException {
+		writeIndex(-1, 0);
+		assertEquals(0, new ImageAtlas(file, STAMP).size());
+
+		writeIndex(Integer.MAX_VALUE, 0);
+		assertEquals(0, new ImageAtlas(file, STAMP).size());
+	}
+
+	public void testInvalidKeyLength() throws IOException {
+		writeIndex(1, -1);
+		assertEquals(0, new ImageAtlas(file, STAMP).size());
+
+		writeIndex(1, Integer.MAX_VALUE);
+		assertEquals(0, new ImageAtlas(file, STAMP).size());
+	}
+
+	/**
+	 * Writes an atlas file whose index holds the given number of entries,
+	 * followed by the given key length.
+	 */
+	private void writeIndex(int count, int keyLength) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x49434f4e);
+			out.writeInt(1);
+			out.writeLong(STAMP);
+			out.writeInt(count);
+			out.writeInt(keyLength);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void assertImageData(URL url, ImageData data) {
+		assertNotNull(data);
+		ImageData expected = ImageDescriptor.createFromURL(url).getImageData();
+		assertEquals(expected.width, data.width);
+		assertEquals(expected.height, data.height);
+		assertEquals(expected.depth, data.depth);
+		assertEquals(expected.data.length, data.data.length);
+		for (int i = 0; i < expected.data.length; i++) {
+			assertEquals(expected.data[i], data.data[i]);
+		}
+	}
+}
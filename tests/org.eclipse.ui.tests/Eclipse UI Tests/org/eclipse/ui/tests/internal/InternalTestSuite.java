@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -63,5 +63,6 @@ public class InternalTestSuite extends TestSuite {
         addTest(new TestSuite(PerspectiveSwitcherTest.class));
         addTest(new TestSuite(StickyViewManagerTest.class));
         addTest(new TestSuite(FileEditorMappingTest.class));
+        addTest(new TestSuite(ImageAtlasTest.class));
     }
 }